@@ -0,0 +1,113 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.kylin.benchmark;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+
+/**
+ * Compares two JMH result files, as written by "java -jar benchmarks.jar -rf json -rff result.json", and
+ * exits with 1 if any benchmark of the current run is slower than the baseline by more than the threshold.
+ * <p>
+ * Usage: BenchmarkRegressionCheck baseline.json current.json [thresholdPercent, default 10]
+ */
+public class BenchmarkRegressionCheck {
+
+    public static class Result {
+        final String mode;
+        final double score;
+        final String unit;
+
+        Result(String mode, double score, String unit) {
+            this.mode = mode;
+            this.score = score;
+            this.unit = unit;
+        }
+
+        boolean higherIsBetter() {
+            return "thrpt".equals(mode);
+        }
+    }
+
+    /** results keyed by the benchmark name and its sorted params, like "...filter{cardinality=10, ...}" */
+    public static Map<String, Result> readResults(File jsonFile) throws IOException {
+        Map<String, Result> results = Maps.newLinkedHashMap();
+        JsonNode root = new ObjectMapper().readTree(jsonFile);
+        for (JsonNode run : root) {
+            Map<String, String> params = new TreeMap<String, String>();
+            JsonNode paramsNode = run.get("params");
+            if (paramsNode != null) {
+                Iterator<Map.Entry<String, JsonNode>> it = paramsNode.fields();
+                while (it.hasNext()) {
+                    Map.Entry<String, JsonNode> e = it.next();
+                    params.put(e.getKey(), e.getValue().asText());
+                }
+            }
+            JsonNode metric = run.get("primaryMetric");
+            String key = run.get("benchmark").asText() + (params.isEmpty() ? "" : params.toString());
+            results.put(key, new Result(run.get("mode").asText(), metric.get("score").asDouble(), metric.get("scoreUnit").asText()));
+        }
+        return results;
+    }
+
+    /** return a description of each benchmark in current that is worse than in baseline by more than thresholdPercent */
+    public static List<String> findRegressions(Map<String, Result> baseline, Map<String, Result> current, double thresholdPercent) {
+        List<String> regressions = Lists.newArrayList();
+        for (Map.Entry<String, Result> e : current.entrySet()) {
+            Result base = baseline.get(e.getKey());
+            Result cur = e.getValue();
+            if (base == null || !base.mode.equals(cur.mode) || base.score == 0)
+                continue;
+
+            double changePercent = (cur.score - base.score) / base.score * 100;
+            double worsePercent = cur.higherIsBetter() ? -changePercent : changePercent;
+            if (worsePercent > thresholdPercent) {
+                regressions.add(String.format("%s: %.3f -> %.3f %s (%.1f%% worse)", e.getKey(), base.score, cur.score, cur.unit, worsePercent));
+            }
+        }
+        return regressions;
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2) {
+            System.out.println("Usage: BenchmarkRegressionCheck baseline.json current.json [thresholdPercent]");
+            System.exit(2);
+        }
+        double threshold = args.length > 2 ? Double.parseDouble(args[2]) : 10;
+
+        Map<String, Result> baseline = readResults(new File(args[0]));
+        Map<String, Result> current = readResults(new File(args[1]));
+        List<String> regressions = findRegressions(baseline, current, threshold);
+
+        System.out.println(current.size() + " benchmarks compared, " + regressions.size() + " regressed by more than " + threshold + "%");
+        for (String r : regressions) {
+            System.out.println(r);
+        }
+        System.exit(regressions.isEmpty() ? 0 : 1);
+    }
+}
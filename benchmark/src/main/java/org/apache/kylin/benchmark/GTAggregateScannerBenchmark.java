@@ -0,0 +1,99 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.kylin.benchmark;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.kylin.common.util.ImmutableBitSet;
+import org.apache.kylin.gridtable.GTAggregateScanner;
+import org.apache.kylin.gridtable.GTRecord;
+import org.apache.kylin.gridtable.GTScanRequest;
+import org.apache.kylin.gridtable.GTScanRequestBuilder;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Time to aggregate all records of a GridTableData by their first groupByCount dimensions, with the
+ * sorted map aggregation or the primitive hash aggregation of GTAggregateScanner.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+public class GTAggregateScannerBenchmark {
+
+    @Param({ "10", "1000", "100000" })
+    public int cardinality;
+
+    @Param({ "3", "9" })
+    public int columnCount;
+
+    @Param({ "1", "2" })
+    public int groupByCount;
+
+    @Param({ "false", "true" })
+    public boolean hashAggregation;
+
+    @Param({ "100000" })
+    public int rowCount;
+
+    private GridTableData data;
+    private GTScanRequest req;
+
+    @Setup
+    public void setup() {
+        data = new GridTableData(columnCount, cardinality, rowCount);
+
+        ImmutableBitSet groupBy = new ImmutableBitSet(0, Math.min(groupByCount, columnCount));
+        req = new GTScanRequestBuilder().setInfo(data.info).setRanges(null).setDimensions(groupBy)//
+                .setAggrGroupBy(groupBy).setAggrMetrics(data.metrics).setAggrMetricsFuncs(GridTableData.AGGR_FUNCS)//
+                .setFilterPushDown(null).setAllowHashAggregation(hashAggregation).createGTScanRequest();
+    }
+
+    @SuppressWarnings("unused")
+    @Benchmark
+    public long aggregate() throws IOException {
+        long count = 0;
+        GTAggregateScanner scanner = new GTAggregateScanner(data.scanner(), req, Long.MAX_VALUE);
+        for (GTRecord rec : scanner) {
+            count++;
+        }
+        scanner.close();
+        return count;
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(GTAggregateScannerBenchmark.class.getSimpleName()).build()).run();
+    }
+}
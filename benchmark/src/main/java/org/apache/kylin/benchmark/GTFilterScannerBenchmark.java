@@ -0,0 +1,107 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.kylin.benchmark;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.kylin.gridtable.GTFilterScanner;
+import org.apache.kylin.gridtable.GTRecord;
+import org.apache.kylin.gridtable.GTScanRequest;
+import org.apache.kylin.gridtable.GTScanRequestBuilder;
+import org.apache.kylin.metadata.filter.TupleFilter;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Time to filter all records of a GridTableData through GTFilterScanner.
+ * <ul>
+ * <li>IN: one IN condition on the first dimension</li>
+ * <li>AND_OR: a range on the first dimension, AND an OR of IN conditions on the last two dimensions</li>
+ * </ul>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+public class GTFilterScannerBenchmark {
+
+    @Param({ "10", "1000", "100000" })
+    public int cardinality;
+
+    @Param({ "3", "9" })
+    public int columnCount;
+
+    @Param({ "IN", "AND_OR" })
+    public String filterType;
+
+    @Param({ "100000" })
+    public int rowCount;
+
+    private GridTableData data;
+    private GTScanRequest req;
+
+    @Setup
+    public void setup() {
+        data = new GridTableData(columnCount, cardinality, rowCount);
+
+        int last = columnCount - 1;
+        TupleFilter filter;
+        if ("IN".equals(filterType)) {
+            filter = data.in(0, 1, 3, 5, 7);
+        } else {
+            filter = data.and(//
+                    data.gt(0, cardinality / 2), //
+                    data.or(//
+                            data.in(last, 1, 2, 3, 5, 8, 13, 21, 34), //
+                            data.in(last - 1, 0, cardinality / 3, cardinality / 2)));
+        }
+        req = new GTScanRequestBuilder().setInfo(data.info).setRanges(null).setDimensions(data.info.getAllColumns()).setFilterPushDown(filter).createGTScanRequest();
+    }
+
+    @SuppressWarnings("unused")
+    @Benchmark
+    public long filter() throws IOException {
+        long count = 0;
+        GTFilterScanner scanner = new GTFilterScanner(data.scanner(), req);
+        for (GTRecord rec : scanner) {
+            count++;
+        }
+        scanner.close();
+        return count;
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(GTFilterScannerBenchmark.class.getSimpleName()).build()).run();
+    }
+}
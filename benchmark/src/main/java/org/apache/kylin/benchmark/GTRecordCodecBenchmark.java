@@ -0,0 +1,115 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.kylin.benchmark;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.kylin.common.util.ImmutableBitSet;
+import org.apache.kylin.gridtable.GTRecord;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Time to export all records of a GridTableData into one buffer the way storage does, to load them back
+ * into a GTRecord, and to decode the loaded cells into values.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+public class GTRecordCodecBenchmark {
+
+    @Param({ "1000" })
+    public int cardinality;
+
+    @Param({ "3", "9", "20" })
+    public int columnCount;
+
+    @Param({ "100000" })
+    public int rowCount;
+
+    private GridTableData data;
+    private ImmutableBitSet columns;
+    private ByteBuffer buffer;
+    private GTRecord reuse;
+    private Object[] values;
+
+    @Setup
+    public void setup() {
+        data = new GridTableData(columnCount, cardinality, rowCount);
+        columns = data.info.getAllColumns();
+
+        int maxRecordLength = 0;
+        for (int c = 0; c < data.info.getColumnCount(); c++) {
+            maxRecordLength += data.info.getCodeSystem().maxCodeLength(c);
+        }
+        buffer = ByteBuffer.allocate(maxRecordLength * rowCount);
+        encode();
+
+        reuse = new GTRecord(data.info);
+        values = new Object[data.info.getColumnCount()];
+    }
+
+    @Benchmark
+    public ByteBuffer encode() {
+        buffer.clear();
+        for (GTRecord rec : data.records) {
+            rec.exportColumns(columns, buffer);
+        }
+        return buffer;
+    }
+
+    @Benchmark
+    public GTRecord decode() {
+        ByteBuffer buf = (ByteBuffer) buffer.duplicate().flip();
+        for (int i = 0; i < rowCount; i++) {
+            reuse.loadColumns(columns, buf);
+        }
+        return reuse;
+    }
+
+    @Benchmark
+    public Object[] decodeValues() {
+        ByteBuffer buf = (ByteBuffer) buffer.duplicate().flip();
+        for (int i = 0; i < rowCount; i++) {
+            reuse.loadColumns(columns, buf);
+            reuse.getValues(columns, values);
+        }
+        return values;
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(GTRecordCodecBenchmark.class.getSimpleName()).build()).run();
+    }
+}
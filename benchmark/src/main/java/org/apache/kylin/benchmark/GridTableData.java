@@ -0,0 +1,161 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.kylin.benchmark;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+
+import org.apache.kylin.common.util.ByteArray;
+import org.apache.kylin.common.util.ImmutableBitSet;
+import org.apache.kylin.gridtable.GTInfo;
+import org.apache.kylin.gridtable.GTRecord;
+import org.apache.kylin.gridtable.GTSampleCodeSystem;
+import org.apache.kylin.gridtable.IGTScanner;
+import org.apache.kylin.metadata.datatype.DataType;
+import org.apache.kylin.metadata.datatype.DoubleMutable;
+import org.apache.kylin.metadata.datatype.IntMutable;
+import org.apache.kylin.metadata.datatype.LongMutable;
+import org.apache.kylin.metadata.filter.ColumnTupleFilter;
+import org.apache.kylin.metadata.filter.CompareTupleFilter;
+import org.apache.kylin.metadata.filter.ConstantTupleFilter;
+import org.apache.kylin.metadata.filter.LogicalTupleFilter;
+import org.apache.kylin.metadata.filter.TupleFilter;
+import org.apache.kylin.metadata.filter.TupleFilter.FilterOperatorEnum;
+
+import com.google.common.collect.Lists;
+
+/**
+ * An in-memory grid table for the grid table benchmarks. It has dimCount int4 dimensions, each holding
+ * random values in [0, cardinality), followed by three measures: bigint SUM, bigint MAX and double SUM.
+ * Records are generated once with a fixed seed, so every run and every fork scans the same data.
+ */
+public class GridTableData {
+
+    public static final String[] AGGR_FUNCS = new String[] { "SUM", "MAX", "SUM" };
+
+    public final GTInfo info;
+    public final GTRecord[] records;
+    public final ImmutableBitSet dimensions;
+    public final ImmutableBitSet metrics;
+
+    public GridTableData(int dimCount, int cardinality, int rowCount) {
+        DataType[] types = new DataType[dimCount + AGGR_FUNCS.length];
+        Arrays.fill(types, 0, dimCount, DataType.getType("int4"));
+        types[dimCount] = DataType.getType("bigint");
+        types[dimCount + 1] = DataType.getType("bigint");
+        types[dimCount + 2] = DataType.getType("double");
+
+        dimensions = new ImmutableBitSet(0, dimCount);
+        metrics = new ImmutableBitSet(dimCount, types.length);
+
+        GTInfo.Builder builder = GTInfo.builder();
+        builder.setCodeSystem(new GTSampleCodeSystem());
+        builder.setColumns(types);
+        builder.setPrimaryKey(dimensions);
+        builder.setColumnPreferIndex(dimensions);
+        info = builder.build();
+
+        Random rand = new Random(0);
+        records = new GTRecord[rowCount];
+        Object[] values = new Object[types.length];
+        for (int i = 0; i < rowCount; i++) {
+            for (int c = 0; c < dimCount; c++) {
+                values[c] = new IntMutable(rand.nextInt(cardinality));
+            }
+            long l = rand.nextInt(10000);
+            values[dimCount] = new LongMutable(l);
+            values[dimCount + 1] = new LongMutable(l);
+            values[dimCount + 2] = new DoubleMutable(l / 100.0);
+            records[i] = new GTRecord(info).setValues(values);
+        }
+    }
+
+    public int getDimensionCount() {
+        return dimensions.trueBitCount();
+    }
+
+    /** a scanner over all records, can be iterated any number of times */
+    public IGTScanner scanner() {
+        return new IGTScanner() {
+            @Override
+            public GTInfo getInfo() {
+                return info;
+            }
+
+            @Override
+            public long getScannedRowCount() {
+                return records.length;
+            }
+
+            @Override
+            public void close() throws IOException {
+            }
+
+            @Override
+            public Iterator<GTRecord> iterator() {
+                return Arrays.asList(records).iterator();
+            }
+        };
+    }
+
+    // ============================================================================
+
+    public LogicalTupleFilter and(TupleFilter... filters) {
+        return logical(FilterOperatorEnum.AND, filters);
+    }
+
+    public LogicalTupleFilter or(TupleFilter... filters) {
+        return logical(FilterOperatorEnum.OR, filters);
+    }
+
+    private LogicalTupleFilter logical(FilterOperatorEnum op, TupleFilter[] filters) {
+        LogicalTupleFilter r = new LogicalTupleFilter(op);
+        for (TupleFilter f : filters)
+            r.addChild(f);
+        return r;
+    }
+
+    public CompareTupleFilter gt(int col, int v) {
+        CompareTupleFilter r = new CompareTupleFilter(FilterOperatorEnum.GT);
+        r.addChild(new ColumnTupleFilter(info.colRef(col)));
+        r.addChild(new ConstantTupleFilter(encode(col, v)));
+        return r;
+    }
+
+    public CompareTupleFilter in(int col, int... values) {
+        CompareTupleFilter r = new CompareTupleFilter(FilterOperatorEnum.IN);
+        r.addChild(new ColumnTupleFilter(info.colRef(col)));
+        List<ByteArray> list = Lists.newArrayList();
+        for (int v : values) {
+            list.add(encode(col, v));
+        }
+        r.addChild(new ConstantTupleFilter(list));
+        return r;
+    }
+
+    private ByteArray encode(int col, int v) {
+        ByteBuffer buf = ByteBuffer.allocate(info.getCodeSystem().maxCodeLength(col));
+        info.getCodeSystem().encodeColumnValue(col, new IntMutable(v), buf);
+        return new ByteArray(buf.array(), 0, buf.position());
+    }
+}
@@ -0,0 +1,159 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.kylin.benchmark;
+
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.kylin.measure.bitmap.BitmapCounter;
+import org.apache.kylin.measure.hllc.HyperLogLogPlusCounter;
+import org.apache.kylin.metadata.datatype.DataType;
+import org.apache.kylin.metadata.datatype.DataTypeSerializer;
+import org.apache.kylin.metadata.datatype.DoubleMutable;
+import org.apache.kylin.metadata.datatype.LongMutable;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Time to serialize, deserialize and peek the length of one measure value, for the basic measure types and
+ * the count distinct counters. Counters hold cardinality distinct values each.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+public class MeasureSerializerBenchmark {
+
+    static final int VALUES = 1000;
+
+    @Param({ "bigint", "double", "decimal(19,4)", "hllc(14)", "bitmap" })
+    public String dataType;
+
+    @Param({ "100" })
+    public int cardinality;
+
+    private DataTypeSerializer<Object> serializer;
+    private Object[] values;
+    private ByteBuffer buffer;
+
+    @SuppressWarnings("unchecked")
+    @Setup
+    public void setup() {
+        DataType type = DataType.getType(dataType);
+        serializer = (DataTypeSerializer<Object>) DataTypeSerializer.create(type);
+
+        Random rand = new Random(0);
+        values = new Object[VALUES];
+        for (int i = 0; i < VALUES; i++) {
+            values[i] = newValue(type, rand);
+        }
+
+        ByteBuffer scratch = ByteBuffer.allocate(serializer.maxLength());
+        int total = 0;
+        for (Object v : values) {
+            scratch.clear();
+            serializer.serialize(v, scratch);
+            total += scratch.position();
+        }
+        buffer = ByteBuffer.allocate(total);
+        serialize();
+    }
+
+    private Object newValue(DataType type, Random rand) {
+        String name = type.getName();
+        if (name.equals("bigint"))
+            return new LongMutable(rand.nextLong() >> rand.nextInt(64));
+        if (name.equals("double"))
+            return new DoubleMutable(rand.nextDouble() * 10000);
+        if (name.equals("decimal"))
+            return BigDecimal.valueOf(rand.nextLong() % 100000000, 4);
+        if (name.equals("hllc")) {
+            HyperLogLogPlusCounter hllc = new HyperLogLogPlusCounter(type.getPrecision());
+            for (int i = 0; i < cardinality; i++) {
+                hllc.add(rand.nextInt());
+            }
+            return hllc;
+        }
+        if (name.equals("bitmap")) {
+            BitmapCounter bitmap = new BitmapCounter();
+            for (int i = 0; i < cardinality; i++) {
+                bitmap.add(rand.nextInt(cardinality * 100));
+            }
+            return bitmap;
+        }
+        throw new IllegalArgumentException("Unsupported data type " + type);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(VALUES)
+    public ByteBuffer serialize() {
+        buffer.clear();
+        for (Object v : values) {
+            serializer.serialize(v, buffer);
+        }
+        return buffer;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(VALUES)
+    public Object deserialize() {
+        ByteBuffer buf = buffer.duplicate();
+        buf.rewind();
+        Object last = null;
+        for (int i = 0; i < VALUES; i++) {
+            last = serializer.deserialize(buf);
+        }
+        return last;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(VALUES)
+    public int peekLength() {
+        ByteBuffer buf = buffer.duplicate();
+        buf.rewind();
+        int total = 0;
+        for (int i = 0; i < VALUES; i++) {
+            int len = serializer.peekLength(buf);
+            buf.position(buf.position() + len);
+            total += len;
+        }
+        return total;
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(MeasureSerializerBenchmark.class.getSimpleName()).build()).run();
+    }
+}
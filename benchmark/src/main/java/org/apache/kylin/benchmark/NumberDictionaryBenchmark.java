@@ -0,0 +1,141 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+*/
+package org.apache.kylin.benchmark;
+
+import java.math.BigDecimal;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.kylin.common.util.Bytes;
+import org.apache.kylin.common.util.Dictionary;
+import org.apache.kylin.dict.NumberDictionaryBuilder;
+import org.apache.kylin.dict.PrimitiveNumberDictionaryBuilder;
+import org.apache.kylin.dict.StringBytesConverter;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Time of one number dictionary lookup, the trie based NumberDictionary against PrimitiveNumberDictionary,
+ * on cardinality random integers or 2-digit decimals looked up in random order. Only the bytes based lookups,
+ * which encoding during cubing uses, are measured, the value based ones would mostly measure the value cache.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+public class NumberDictionaryBenchmark {
+
+    static final int LOOKUPS = 10000;
+
+    @Param({ "1000", "100000", "1000000" })
+    public int cardinality;
+
+    @Param({ "trie", "primitive" })
+    public String impl;
+
+    @Param({ "0", "2" })
+    public int scale;
+
+    private Dictionary<String> dict;
+    private byte[][] valueBytes;
+    private int[] ids;
+    private byte[] returnValue;
+
+    @Setup
+    public void setup() {
+        Random rand = new Random(0);
+        String[] all = new String[cardinality];
+        for (int i = 0; i < cardinality; i++) {
+            all[i] = BigDecimal.valueOf(rand.nextLong() % 10000000000L, scale).toPlainString();
+        }
+
+        if ("trie".equals(impl)) {
+            NumberDictionaryBuilder<String> builder = new NumberDictionaryBuilder<String>(new StringBytesConverter());
+            for (String v : all)
+                builder.addValue(v);
+            dict = builder.build(0);
+        } else {
+            PrimitiveNumberDictionaryBuilder builder = new PrimitiveNumberDictionaryBuilder();
+            for (String v : all) {
+                byte[] bytes = Bytes.toBytes(v);
+                if (builder.addValue(bytes, 0, bytes.length) == false)
+                    throw new IllegalStateException("Not a primitive number: " + v);
+            }
+            dict = builder.build(0);
+        }
+
+        valueBytes = new byte[LOOKUPS][];
+        ids = new int[LOOKUPS];
+        for (int i = 0; i < LOOKUPS; i++) {
+            valueBytes[i] = Bytes.toBytes(all[rand.nextInt(cardinality)]);
+            ids[i] = dict.getIdFromValueBytes(valueBytes[i], 0, valueBytes[i].length);
+        }
+        returnValue = new byte[dict.getSizeOfValue()];
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(LOOKUPS)
+    public int idFromValueBytes() {
+        int sum = 0;
+        for (int i = 0; i < LOOKUPS; i++) {
+            byte[] v = valueBytes[i];
+            sum += dict.getIdFromValueBytes(v, 0, v.length);
+        }
+        return sum;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(LOOKUPS)
+    public int idFromValueBytesRounding() {
+        int sum = 0;
+        for (int i = 0; i < LOOKUPS; i++) {
+            byte[] v = valueBytes[i];
+            sum += dict.getIdFromValueBytes(v, 0, v.length, 1);
+        }
+        return sum;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(LOOKUPS)
+    public int valueBytesFromId() {
+        int sum = 0;
+        for (int i = 0; i < LOOKUPS; i++) {
+            sum += dict.getValueBytesFromId(ids[i], returnValue, 0);
+        }
+        return sum;
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(NumberDictionaryBenchmark.class.getSimpleName()).build()).run();
+    }
+}
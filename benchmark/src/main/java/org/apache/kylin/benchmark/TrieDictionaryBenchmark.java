@@ -0,0 +1,134 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.kylin.benchmark;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.kylin.common.util.Bytes;
+import org.apache.kylin.dict.StringBytesConverter;
+import org.apache.kylin.dict.TrieDictionary;
+import org.apache.kylin.dict.TrieDictionaryBuilder;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Time of one TrieDictionary lookup, on a dictionary of cardinality random strings looked up in random order.
+ * The value based lookups are served by the value cache once warmed up, the bytes based ones walk the trie.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+public class TrieDictionaryBenchmark {
+
+    static final int LOOKUPS = 10000;
+
+    @Param({ "1000", "100000", "1000000" })
+    public int cardinality;
+
+    private TrieDictionary<String> dict;
+    private String[] values;
+    private byte[][] valueBytes;
+    private int[] ids;
+    private byte[] returnValue;
+
+    @Setup
+    public void setup() {
+        Random rand = new Random(0);
+        TrieDictionaryBuilder<String> builder = new TrieDictionaryBuilder<String>(new StringBytesConverter());
+        String[] all = new String[cardinality];
+        for (int i = 0; i < cardinality; i++) {
+            // a common prefix and a random tail, like most codes and names
+            all[i] = "VALUE_" + Long.toString(rand.nextLong() & Long.MAX_VALUE, 36) + "_" + i;
+            builder.addValue(all[i]);
+        }
+        dict = builder.build(0);
+
+        values = new String[LOOKUPS];
+        valueBytes = new byte[LOOKUPS][];
+        ids = new int[LOOKUPS];
+        for (int i = 0; i < LOOKUPS; i++) {
+            values[i] = all[rand.nextInt(cardinality)];
+            valueBytes[i] = Bytes.toBytes(values[i]);
+            ids[i] = dict.getIdFromValue(values[i]);
+        }
+        returnValue = new byte[dict.getSizeOfValue()];
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(LOOKUPS)
+    public int idFromValue() {
+        int sum = 0;
+        for (int i = 0; i < LOOKUPS; i++) {
+            sum += dict.getIdFromValue(values[i]);
+        }
+        return sum;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(LOOKUPS)
+    public int idFromValueBytes() {
+        int sum = 0;
+        for (int i = 0; i < LOOKUPS; i++) {
+            byte[] v = valueBytes[i];
+            sum += dict.getIdFromValueBytes(v, 0, v.length);
+        }
+        return sum;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(LOOKUPS)
+    public int valueFromId() {
+        int sum = 0;
+        for (int i = 0; i < LOOKUPS; i++) {
+            sum += dict.getValueFromId(ids[i]).length();
+        }
+        return sum;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(LOOKUPS)
+    public int valueBytesFromId() {
+        int sum = 0;
+        for (int i = 0; i < LOOKUPS; i++) {
+            sum += dict.getValueBytesFromId(ids[i], returnValue, 0);
+        }
+        return sum;
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(TrieDictionaryBenchmark.class.getSimpleName()).build()).run();
+    }
+}
@@ -0,0 +1,69 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.kylin.benchmark;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.kylin.benchmark.BenchmarkRegressionCheck.Result;
+import org.junit.Test;
+
+public class BenchmarkRegressionCheckTest {
+
+    @Test
+    public void testFindRegressions() throws IOException {
+        Map<String, Result> baseline = read(run("a.filter", "avgt", 100, "cardinality", "10") + "," //
+                + run("a.filter", "avgt", 100, "cardinality", "1000") + "," //
+                + run("a.encode", "thrpt", 1000, null, null));
+        Map<String, Result> current = read(run("a.filter", "avgt", 105, "cardinality", "10") + "," //
+                + run("a.filter", "avgt", 150, "cardinality", "1000") + "," //
+                + run("a.encode", "thrpt", 800, null, null) + "," //
+                + run("a.newOne", "avgt", 1, null, null));
+        assertEquals(4, current.size());
+
+        List<String> regressions = BenchmarkRegressionCheck.findRegressions(baseline, current, 10);
+        assertEquals(2, regressions.size());
+        assertTrue(regressions.get(0).startsWith("a.filter{cardinality=1000}"));
+        assertTrue(regressions.get(1).startsWith("a.encode"));
+
+        assertEquals(0, BenchmarkRegressionCheck.findRegressions(baseline, current, 60).size());
+    }
+
+    private String run(String benchmark, String mode, double score, String param, String value) {
+        String params = param == null ? "" : "\"params\": {\"" + param + "\": \"" + value + "\"}, ";
+        return "{\"benchmark\": \"" + benchmark + "\", \"mode\": \"" + mode + "\", " + params //
+                + "\"primaryMetric\": {\"score\": " + score + ", \"scoreError\": 1.0, \"scoreUnit\": \"ms/op\"}}";
+    }
+
+    private Map<String, Result> read(String runs) throws IOException {
+        File file = File.createTempFile("jmh-result", ".json");
+        try {
+            FileUtils.writeStringToFile(file, "[" + runs + "]");
+            return BenchmarkRegressionCheck.readResults(file);
+        } finally {
+            file.delete();
+        }
+    }
+}
@@ -329,6 +329,11 @@ abstract public class KylinConfigBase implements Serializable {
         return Integer.parseInt(getOptional("kylin.job.mapreduce.max.reducer.number", "500"));
     }
 
+    /** Whether layered cubing plans reducers and partitions by the cuboid sizes in segment statistics. */
+    public boolean isLayerCubingStatsPartitioned() {
+        return Boolean.parseBoolean(getOptional("kylin.job.cubing.layer.stats.partition", "false"));
+    }
+
     public int getHadoopJobMapperInputRows() {
         return Integer.parseInt(getOptional("kylin.job.mapreduce.mapper.input.rows", "1000000"));
     }
@@ -439,6 +444,11 @@ abstract public class KylinConfigBase implements Serializable {
         return Integer.parseInt(getOptional("kylin.cube.algorithm.auto.mapper.limit", "500"));
     }
 
+    /** Whether to plan the cuboid spanning tree of a new segment by its statistics, instead of the structural rule. */
+    public boolean isCuboidTreeCostBased() {
+        return Boolean.parseBoolean(getOptional("kylin.cube.cuboid.tree.cost.based", "false"));
+    }
+
     @Deprecated
     public int getCubeAggrGroupMaxSize() {
         return Integer.parseInt(getOptional("kylin.cube.aggrgroup.max.size", "12"));
@@ -448,6 +458,10 @@ abstract public class KylinConfigBase implements Serializable {
         return Integer.parseInt(getOptional("kylin.cube.aggrgroup.max.combination", "4096"));
     }
 
+    public int getSegmentPrefetchThreads() {
+        return Integer.parseInt(getOptional("kylin.cube.segment.prefetch.threads", "4"));
+    }
+
     public boolean getCubeAggrGroupIsMandatoryOnlyValid() {
         return Boolean.parseBoolean(getOptional("kylin.cube.aggrgroup.isMandatoryOnlyValid", "false"));
     }
@@ -521,10 +535,46 @@ abstract public class KylinConfigBase implements Serializable {
         return Integer.parseInt(getOptional("kylin.dict.cache.max.entry", "3000"));
     }
 
+    public int getDictValueCacheMaxEntries() {
+        return Integer.parseInt(getOptional("kylin.dict.value.cache.max.entry", "100000"));
+    }
+
+    public boolean isDictMmapEnabled() {
+        return Boolean.parseBoolean(getOptional("kylin.dict.mmap.enabled", "false"));
+    }
+
+    public String getDictMmapDir() {
+        return getOptional("kylin.dict.mmap.dir", System.getProperty("java.io.tmpdir") + "/kylin_dict_mmap");
+    }
+
+    public long getCachedDictMaxMB() {
+        return Long.parseLong(getOptional("kylin.dict.cache.max.mb", "4096"));
+    }
+
+    public boolean isDictNumberPrimitiveEnabled() {
+        return Boolean.parseBoolean(getOptional("kylin.dict.number.primitive.enabled", "true"));
+    }
+
     public int getCachedSnapshotMaxEntrySize() {
         return Integer.parseInt(getOptional("kylin.snapshot.cache.max.entry", "500"));
     }
 
+    public boolean isSnapshotIncrementalEnabled() {
+        return Boolean.parseBoolean(getOptional("kylin.snapshot.incremental.enabled", "true"));
+    }
+
+    public boolean isSnapshotColumnarEnabled() {
+        return Boolean.parseBoolean(getOptional("kylin.snapshot.columnar.enabled", "true"));
+    }
+
+    public long getCachedSnapshotMaxMB() {
+        return Long.parseLong(getOptional("kylin.snapshot.cache.max.mb", "0"));
+    }
+
+    public long getCachedLookupTableMaxMB() {
+        return Long.parseLong(getOptional("kylin.snapshot.lookup.cache.max.mb", "300"));
+    }
+
     public boolean getQueryRunLocalCoprocessor() {
         return Boolean.parseBoolean(getOptional("kylin.query.run.local.coprocessor", "false"));
     }
@@ -545,6 +595,53 @@ abstract public class KylinConfigBase implements Serializable {
         return Double.parseDouble(this.getOptional("kylin.query.coprocessor.mem.gb", "3.0"));
     }
 
+    /** aggregate fixed width measures (SUM/MIN/MAX of numbers) in a primitive hash table at storage side and in in-mem cubing */
+    public boolean isQueryCoprocessorHashAggregationEnabled() {
+        return Boolean.parseBoolean(this.getOptional("kylin.query.coprocessor.hash.aggregation.enabled", "true"));
+    }
+
+    /** max number of segments scanned concurrently by one query, 1 means one by one */
+    public int getQuerySegmentScanParallelism() {
+        return Integer.parseInt(this.getOptional("kylin.query.segment.scan.parallelism", "1"));
+    }
+
+    /** threads shared by all queries to scan segments concurrently */
+    public int getQuerySegmentScanThreads() {
+        return Integer.parseInt(this.getOptional("kylin.query.segment.scan.threads", "64"));
+    }
+
+    /** max records of a segment fetched ahead of the query thread */
+    public int getQuerySegmentScanQueueSize() {
+        return Integer.parseInt(this.getOptional("kylin.query.segment.scan.queue.size", "10000"));
+    }
+
+    public boolean isQuerySegmentCacheEnabled() {
+        return Boolean.parseBoolean(this.getOptional("kylin.query.segment.cache.enabled", "false"));
+    }
+
+    public int getQuerySegmentCacheMaxMB() {
+        return Integer.parseInt(this.getOptional("kylin.query.segment.cache.max.mb", "256"));
+    }
+
+    public int getQuerySegmentCacheMaxEntryMB() {
+        return Integer.parseInt(this.getOptional("kylin.query.segment.cache.max.entry.mb", "16"));
+    }
+
+    /** number of threads shared by all queries to call coprocessors */
+    public int getQueryEndpointRPCThreads() {
+        return Integer.parseInt(this.getOptional("kylin.query.endpoint.rpc.threads", "64"));
+    }
+
+    /** max number of coprocessor calls waiting for a thread, further calls fail the query; 0 means unbounded */
+    public int getQueryEndpointRPCQueueMax() {
+        return Integer.parseInt(this.getOptional("kylin.query.endpoint.rpc.queue.max", "10000"));
+    }
+
+    /** streamed query results that must be counted before being sent are buffered in memory up to this size, then spilled to disk */
+    public int getQueryResultSpillThresholdMB() {
+        return Integer.parseInt(this.getOptional("kylin.query.result.spill.threshold.mb", "64"));
+    }
+
     public int getQueryCoprocessorTimeoutSeconds() {
         return Integer.parseInt(this.getOptional("kylin.query.coprocessor.timeout.seconds", "0"));
     }
@@ -617,6 +714,25 @@ abstract public class KylinConfigBase implements Serializable {
         return percent;
     }
 
+    /** Threads to calculate cuboids in memory, 0 means by the vcores of the map task, -1 means one per available core. */
+    public int getCubingInMemThreads() {
+        return Integer.parseInt(getOptional("kylin.job.cubing.inmem.threads", "0"));
+    }
+
+    public int getCubingInMemCuboidSplitRows() {
+        return Integer.parseInt(getOptional("kylin.job.cubing.inmem.cuboid.split.rows", "500000"));
+    }
+
+    /** Whether cuboids of in-mem cubing stay in memory as far as the budget permits, instead of on disk only. */
+    public boolean isCubingInMemCuboidMemStore() {
+        return Boolean.parseBoolean(getOptional("kylin.job.cubing.inmem.cuboid.mem.store", "false"));
+    }
+
+    /** Whether blocks spilled to disk by in-mem cubing are compressed, trading CPU for disk I/O. */
+    public boolean isCubingInMemSpillCompress() {
+        return Boolean.parseBoolean(getOptional("kylin.job.cubing.inmem.spill.compress", "false"));
+    }
+
     public String getHbaseDefaultCompressionCodec() {
         return getOptional("kylin.hbase.default.compression.codec", "none");
     }
@@ -789,6 +905,28 @@ abstract public class KylinConfigBase implements Serializable {
         return Boolean.parseBoolean(getOptional("kylin.query.endpoint.compression.result", "true"));
     }
 
+    /**
+     * Rows returned by the coprocessor are cut (and compressed) in chunks of about this many bytes, 0 to disable chunking
+     */
+    public int getQueryEndpointResultChunkSize() {
+        return Integer.parseInt(getOptional("kylin.query.endpoint.result.chunk.size", String.valueOf(1024 * 1024)));
+    }
+
+    /**
+     * NONE, DEFLATE, LZ4 or SNAPPY, only used when kylin.query.endpoint.compression.result is true
+     */
+    public String getQueryEndpointCompressionCodec() {
+        return getOptional("kylin.query.endpoint.compression.codec", "LZ4");
+    }
+
+    public int getQueryEndpointCompressionMinBytes() {
+        return Integer.parseInt(getOptional("kylin.query.endpoint.compression.min.bytes", "1024"));
+    }
+
+    public double getQueryEndpointCompressionMaxRatio() {
+        return Double.parseDouble(getOptional("kylin.query.endpoint.compression.max.ratio", "0.9"));
+    }
+
     public Map<String, String> getUDFs() {
         Map<String, String> udfMap = getPropertiesByPrefix("kylin.query.udf.");
         return udfMap;
@@ -824,6 +962,22 @@ abstract public class KylinConfigBase implements Serializable {
         setProperty("kylin.dict.append.cache.size", String.valueOf(cacheSize));
     }
 
+    public int getAppendDictCacheMaxMB() {
+        return Integer.parseInt(getOptional("kylin.dict.append.cache.max.mb", "0"));
+    }
+
+    public boolean isAppendDictCacheOffHeap() {
+        return Boolean.parseBoolean(getOptional("kylin.dict.append.cache.offheap", "false"));
+    }
+
+    public int getAppendDictBuildThreads() {
+        return Integer.parseInt(getOptional("kylin.dict.append.build.threads", "1"));
+    }
+
+    public int getAppendDictBuildBatchSize() {
+        return Integer.parseInt(getOptional("kylin.dict.append.build.batch.size", "1000000"));
+    }
+
     @Deprecated
     public String getCreateFlatHiveTableMethod() {
         return getOptional("kylin.hive.create.flat.table.method", "1");
@@ -33,6 +33,11 @@ public class BackdoorToggles {
         _backdoorToggles.set(toggles);
     }
 
+    /** The toggles of the current thread, to be passed on to threads working on its behalf. */
+    public static Map<String, String> getToggles() {
+        return _backdoorToggles.get();
+    }
+
     public static String getCoprocessorBehavior() {
         return getString(DEBUG_TOGGLE_COPROCESSOR_BEHAVIOR);
     }
@@ -65,10 +70,18 @@ public class BackdoorToggles {
             return Integer.valueOf(v);
     }
 
+    public static String getEndpointResultCodec() {
+        return getString(DEBUG_TOGGLE_ENDPOINT_RESULT_CODEC);
+    }
+
     public static String getQueryId() {
         return getString(KEY_QUERY_ID);
     }
 
+    public static String getQueryUser() {
+        return getString(KEY_QUERY_USER);
+    }
+
     public static Pair<Short, Short> getShardAssignment() {
         String v = getString(DEBUG_TOGGLE_SHARD_ASSIGNMENT);
         if (v == null) {
@@ -98,6 +111,8 @@ public class BackdoorToggles {
 
     public final static String KEY_QUERY_ID = "QUERY_ID";
 
+    public final static String KEY_QUERY_USER = "QUERY_USER";
+
     /**
      * set DEBUG_TOGGLE_DISABLE_FUZZY_KEY=true to disable fuzzy key for debug/profile usage
      *
@@ -183,4 +198,14 @@ public class BackdoorToggles {
      */
     public final static String DEBUG_TOGGLE_SHARD_ASSIGNMENT = "DEBUG_TOGGLE_SHARD_ASSIGNMENT";
 
+    /**
+     * set DEBUG_TOGGLE_ENDPOINT_RESULT_CODEC=NONE/DEFLATE/LZ4/SNAPPY to choose how coprocessor compresses results for current query
+     *
+     example:(put it into request body)
+     "backdoorToggles": {
+     "DEBUG_TOGGLE_ENDPOINT_RESULT_CODEC": "SNAPPY"
+     }
+     */
+    public final static String DEBUG_TOGGLE_ENDPOINT_RESULT_CODEC = "DEBUG_TOGGLE_ENDPOINT_RESULT_CODEC";
+
 }
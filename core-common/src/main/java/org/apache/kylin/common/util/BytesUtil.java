@@ -83,6 +83,16 @@ public class BytesUtil {
         return integer;
     }
 
+    /** like readUnsigned(byte[], int, int), reads at an absolute offset and leaves the buffer position untouched */
+    public static int readUnsigned(ByteBuffer buf, int offset, int size) {
+        int integer = 0;
+        for (int i = offset, n = offset + size; i < n; i++) {
+            integer <<= 8;
+            integer |= (int) buf.get(i) & 0xFF;
+        }
+        return integer;
+    }
+
     public static void writeSignedLong(long num, byte[] bytes, int offset, int size) {
         writeLong(num, bytes, offset, size);
     }
@@ -112,6 +122,16 @@ public class BytesUtil {
         return integer;
     }
 
+    /** like readLong(byte[], int, int), reads at an absolute offset and leaves the buffer position untouched */
+    public static long readLong(ByteBuffer buf, int offset, int size) {
+        long integer = 0;
+        for (int i = offset, n = offset + size; i < n; i++) {
+            integer <<= 8;
+            integer |= (long) buf.get(i) & 0xFF;
+        }
+        return integer;
+    }
+
     public static void writeLong(long num, ByteBuffer out) {
         for (int i = 0; i < 8; i++) {
             out.put((byte) num);
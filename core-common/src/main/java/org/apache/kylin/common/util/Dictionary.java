@@ -132,6 +132,20 @@ abstract public class Dictionary<T> implements Serializable {
 
     abstract protected T getValueFromIdImpl(int id);
 
+    /**
+     * Batch form of <code>getValueFromId(id)</code>, decodes ids[0, n) into
+     * result[0, n). Subclasses may override to decode a batch cheaper than
+     * one id at a time.
+     * 
+     * @throws IllegalArgumentException
+     *             if any ID is not found in dictionary
+     */
+    public void getValuesFromIds(int[] ids, int n, T[] result) throws IllegalArgumentException {
+        for (int i = 0; i < n; i++) {
+            result[i] = getValueFromId(ids[i]);
+        }
+    }
+
     /**
      * Convenient form of
      * <code>getIdFromValueBytes(value, offset, len, 0)</code>
@@ -179,6 +193,20 @@ abstract public class Dictionary<T> implements Serializable {
 
     abstract protected byte[] getValueBytesFromIdImpl(int id);
 
+    /**
+     * Batch form of <code>getValueBytesFromId(id)</code>, decodes ids[0, n)
+     * into result[0, n). Subclasses may override to decode a batch cheaper
+     * than one id at a time.
+     * 
+     * @throws IllegalArgumentException
+     *             if any ID is not found in dictionary
+     */
+    public void getValueBytesFromIds(int[] ids, int n, byte[][] result) throws IllegalArgumentException {
+        for (int i = 0; i < n; i++) {
+            result[i] = getValueBytesFromId(ids[i]);
+        }
+    }
+
     /**
      * A lower level API, get byte values from ID, return the number of bytes
      * written. Bypassing the cache layer, this could be significantly slower
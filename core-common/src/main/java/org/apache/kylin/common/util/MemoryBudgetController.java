@@ -18,6 +18,9 @@
 
 package org.apache.kylin.common.util;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.locks.ReentrantLock;
 
@@ -35,6 +38,39 @@ public class MemoryBudgetController {
         int freeUp(int mb);
     }
 
+    /**
+     * A consumer holding data that can be re-read from elsewhere, e.g. disk. When memory runs out, such consumers are
+     * asked to free up before others, the ones expecting fewer reads first and the bigger first among equals.
+     */
+    public interface SpillableConsumer extends MemoryConsumer {
+        // number of reads still expected on the data held
+        int getPendingReads();
+    }
+
+    // snapshot of a consumer entry to sort on, as the entry itself may change while sorting
+    private static class Victim implements Comparable<Victim> {
+        final ConsumerEntry entry;
+        final boolean spillable;
+        final int pendingReads;
+        final int reservedMB;
+
+        Victim(ConsumerEntry entry) {
+            this.entry = entry;
+            this.spillable = entry.consumer instanceof SpillableConsumer;
+            this.pendingReads = spillable ? ((SpillableConsumer) entry.consumer).getPendingReads() : 0;
+            this.reservedMB = entry.reservedMB;
+        }
+
+        @Override
+        public int compareTo(Victim o) {
+            if (spillable != o.spillable)
+                return spillable ? -1 : 1;
+            if (pendingReads != o.pendingReads)
+                return pendingReads < o.pendingReads ? -1 : 1;
+            return o.reservedMB < reservedMB ? -1 : (o.reservedMB == reservedMB ? 0 : 1);
+        }
+    }
+
     @SuppressWarnings("serial")
     public static class NotEnoughBudgetException extends IllegalStateException {
 
@@ -155,7 +191,13 @@ public class MemoryBudgetController {
 
     private void tryFreeUp(int gap) {
         // note don't hold lock when calling consumer.freeUp(), that method holding lock for itself and may cause deadlock
+        List<Victim> victims = new ArrayList<Victim>();
         for (ConsumerEntry entry : booking.values()) {
+            victims.add(new Victim(entry));
+        }
+        Collections.sort(victims);
+        for (Victim victim : victims) {
+            ConsumerEntry entry = victim.entry;
             int mb = entry.consumer.freeUp(gap);
             if (mb > 0) {
                 lock.lock();
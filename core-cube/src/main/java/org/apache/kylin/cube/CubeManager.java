@@ -34,6 +34,11 @@ import java.util.Random;
 import java.util.Set;
 import java.util.UUID;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 
 import org.apache.commons.lang3.StringUtils;
 import org.apache.kylin.common.KylinConfig;
@@ -41,6 +46,7 @@ import org.apache.kylin.common.KylinConfigExt;
 import org.apache.kylin.common.persistence.JsonSerializer;
 import org.apache.kylin.common.persistence.ResourceStore;
 import org.apache.kylin.common.persistence.Serializer;
+import org.apache.kylin.common.util.DaemonThreadFactory;
 import org.apache.kylin.common.util.Dictionary;
 import org.apache.kylin.common.util.Pair;
 import org.apache.kylin.cube.model.CubeDesc;
@@ -92,6 +98,9 @@ public class CubeManager implements IRealizationProvider {
     // static cached instances
     private static final ConcurrentHashMap<KylinConfig, CubeManager> CACHE = new ConcurrentHashMap<KylinConfig, CubeManager>();
 
+    // loads dictionaries and snapshots of newly ready segments, shared by all instances and created on first use
+    private static volatile ExecutorService prefetchExecutor = null;
+
     public static CubeManager getInstance(KylinConfig config) {
         CubeManager r = CACHE.get(config);
         if (r != null) {
@@ -339,6 +348,15 @@ public class CubeManager implements IRealizationProvider {
     public CubeInstance updateCube(CubeUpdate update) throws IOException {
         CubeInstance cube = updateCubeWithRetry(update, 0);
 
+        for (CubeSegment[] segs : new CubeSegment[][] { update.getToAddSegs(), update.getToUpdateSegs() }) {
+            if (segs != null) {
+                for (CubeSegment seg : segs) {
+                    if (isReady(seg))
+                        prefetchSegment(seg);
+                }
+            }
+        }
+
         if (listener != null)
             listener.afterCubeUpdate(cube);
 
@@ -671,9 +689,8 @@ public class CubeManager implements IRealizationProvider {
             throw new IllegalStateException("No snaphot for table '" + tableName + "' found on cube segment" + cubeSegment.getCubeInstance().getName() + "/" + cubeSegment);
 
         try {
-            SnapshotTable snapshot = getSnapshotManager().getSnapshotTable(snapshotResPath);
             TableDesc tableDesc = getMetadataManager().getTableDesc(tableName);
-            return new LookupStringTable(tableDesc, pkCols, snapshot);
+            return getSnapshotManager().getLookupTable(snapshotResPath, tableDesc, pkCols);
         } catch (IOException e) {
             throw new IllegalStateException("Failed to load lookup table " + tableName + " from snapshot " + snapshotResPath, e);
         }
@@ -936,8 +953,18 @@ public class CubeManager implements IRealizationProvider {
             }
 
             cube.setConfig((KylinConfigExt) cubeDesc.getConfig());
+            CubeInstance previous = cubeMap.get(cubeName);
             cubeMap.putLocal(cubeName, cube);
 
+            // segments got ready elsewhere, e.g. by a job server; nothing to prefetch on initial loading
+            if (previous != null) {
+                for (CubeSegment segment : cube.getSegments(SegmentStatusEnum.READY)) {
+                    CubeSegment previousSeg = previous.getSegmentById(segment.getUuid());
+                    if (previousSeg == null || isReady(previousSeg) == false)
+                        prefetchSegment(segment);
+                }
+            }
+
             for (CubeSegment segment : cube.getSegments()) {
                 usedStorageLocation.put(cubeName.toUpperCase(), segment.getStorageLocationIdentifier());
             }
@@ -951,6 +978,66 @@ public class CubeManager implements IRealizationProvider {
         }
     }
 
+    /**
+     * Loads the dictionaries and snapshots of a segment into their caches in the background, so the first queries
+     * on a newly ready segment don't pay for it. Queries coming meanwhile wait for the same in-flight loads
+     * instead of starting their own. Returns one future per resource, none if prefetch is disabled.
+     */
+    public List<Future<?>> prefetchSegment(final CubeSegment segment) {
+        ExecutorService executor = getPrefetchExecutor();
+        if (executor == null)
+            return Collections.emptyList();
+
+        logger.info("Prefetching dictionaries and snapshots of segment " + segment);
+        List<Future<?>> futures = Lists.newArrayList();
+        for (final String path : segment.getDictionaryPaths()) {
+            futures.add(executor.submit(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        getDictionaryManager().getDictionaryInfo(path);
+                    } catch (Exception e) {
+                        logger.warn("Failed to prefetch dictionary " + path + " of segment " + segment, e);
+                    }
+                }
+            }));
+        }
+        for (final String path : segment.getSnapshotPaths()) {
+            futures.add(executor.submit(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        getSnapshotManager().getSnapshotTable(path);
+                    } catch (Exception e) {
+                        logger.warn("Failed to prefetch snapshot " + path + " of segment " + segment, e);
+                    }
+                }
+            }));
+        }
+        return futures;
+    }
+
+    private ExecutorService getPrefetchExecutor() {
+        // a job server does not serve queries
+        int threads = config.getSegmentPrefetchThreads();
+        if (threads <= 0 || "job".equals(config.getServerMode()))
+            return null;
+
+        if (prefetchExecutor != null)
+            return prefetchExecutor;
+
+        synchronized (CubeManager.class) {
+            if (prefetchExecutor == null) {
+                // idle threads time out, the pool costs nothing between segments
+                ThreadPoolExecutor tpe = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(), new DaemonThreadFactory());
+                tpe.allowCoreThreadTimeOut(true);
+                logger.info("Creating segment prefetch thread pool of {} threads", threads);
+                prefetchExecutor = tpe;
+            }
+            return prefetchExecutor;
+        }
+    }
+
     private MetadataManager getMetadataManager() {
         return MetadataManager.getInstance(config);
     }
@@ -31,6 +31,7 @@ import org.apache.kylin.common.KylinConfig;
 import org.apache.kylin.common.persistence.ResourceStore;
 import org.apache.kylin.common.util.Dictionary;
 import org.apache.kylin.common.util.ShardingHash;
+import org.apache.kylin.cube.cuboid.CuboidScheduler;
 import org.apache.kylin.cube.kv.CubeDimEncMap;
 import org.apache.kylin.cube.kv.RowConstants;
 import org.apache.kylin.cube.model.CubeDesc;
@@ -115,6 +116,10 @@ public class CubeSegment implements Comparable<CubeSegment>, IBuildable, ISegmen
     @JsonInclude(JsonInclude.Include.NON_EMPTY)
     private Map<String, String> additionalInfo = new LinkedHashMap<String, String>();
 
+    @JsonProperty("cuboid_parents")
+    @JsonInclude(JsonInclude.Include.NON_EMPTY)
+    private Map<Long, Long> cuboidParents = Maps.newHashMap(); // cuboid id ==> parent cuboid id, where the planned tree differs from the default
+
     private Map<Long, Short> cuboidBaseShards = Maps.newConcurrentMap(); // cuboid id ==> base(starting) shard for this cuboid
 
     public CubeDesc getCubeDesc() {
@@ -530,6 +535,19 @@ public class CubeSegment implements Comparable<CubeSegment>, IBuildable, ISegmen
         return this.blackoutCuboids;
     }
 
+    public Map<Long, Long> getCuboidParents() {
+        return cuboidParents;
+    }
+
+    public void setCuboidParents(Map<Long, Long> cuboidParents) {
+        this.cuboidParents = cuboidParents;
+    }
+
+    /** The cuboid spanning tree to build this segment, which is the planned one if any, see CostBasedCuboidPlanner. */
+    public CuboidScheduler getCuboidScheduler() {
+        return new CuboidScheduler(getCubeDesc(), cuboidParents);
+    }
+
     public IRealization getRealization() {
         return cubeInstance;
     }
@@ -0,0 +1,157 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+*/
+
+package org.apache.kylin.cube.cuboid;
+
+import java.util.LinkedList;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.kylin.cube.model.AggregationGroup;
+import org.apache.kylin.cube.model.CubeDesc;
+
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+
+/**
+ * Plans the cuboid spanning tree by estimated cuboid rows, e.g. from segment statistics. Each cuboid is aggregated from
+ * the candidate parent of the least rows, instead of the one of the least dimensions.
+ *
+ * A cuboid keeps its depth of the default tree, so the layered cubing still builds the same cuboids at each layer. The
+ * default parent is kept where any row estimate is missing.
+ */
+public class CostBasedCuboidPlanner {
+
+    private final CubeDesc cubeDesc;
+    private final Map<Long, Long> cuboidRows;
+    private final CuboidScheduler defaultScheduler;
+
+    private long defaultRowsProcessed;
+    private long plannedRowsProcessed;
+
+    public CostBasedCuboidPlanner(CubeDesc cubeDesc, Map<Long, Long> cuboidRows) {
+        this.cubeDesc = cubeDesc;
+        this.cuboidRows = cuboidRows;
+        this.defaultScheduler = new CuboidScheduler(cubeDesc);
+    }
+
+    /**
+     * Returns the cuboids whose planned parent differs from the default, mapped to the planned parent. Feed it to
+     * CuboidScheduler to get the planned tree.
+     */
+    public Map<Long, Long> plan() {
+        Map<Long, Integer> depths = getDefaultDepths();
+        Map<Long, Long> overrides = Maps.newHashMap();
+        defaultRowsProcessed = 0;
+        plannedRowsProcessed = 0;
+
+        long baseCuboidId = Cuboid.getBaseCuboidId(cubeDesc);
+        for (Map.Entry<Long, Integer> entry : depths.entrySet()) {
+            long cuboid = entry.getKey();
+            if (cuboid == baseCuboidId)
+                continue;
+
+            long defaultParent = defaultScheduler.getParent(cuboid);
+            Long defaultRows = cuboidRows.get(defaultParent);
+            long bestParent = defaultParent;
+            long bestRows = defaultRows == null ? 0 : defaultRows;
+
+            if (defaultRows != null) {
+                for (long candidate : getCandidateParents(cuboid)) {
+                    Long rows = cuboidRows.get(candidate);
+                    if (rows == null || rows >= bestRows)
+                        continue;
+
+                    // same depth as the default parent, and the candidate must be able to span the cuboid
+                    Integer candidateDepth = depths.get(candidate);
+                    if (candidateDepth == null || candidateDepth != entry.getValue() - 1)
+                        continue;
+                    if (!defaultScheduler.getPotentialChildren(candidate).contains(cuboid))
+                        continue;
+
+                    bestParent = candidate;
+                    bestRows = rows;
+                }
+            }
+
+            if (bestParent != defaultParent)
+                overrides.put(cuboid, bestParent);
+            defaultRowsProcessed += defaultRows == null ? 0 : defaultRows;
+            plannedRowsProcessed += bestRows;
+        }
+
+        return overrides;
+    }
+
+    /** Estimated rows aggregated to build the cuboids (except the base) by the default tree, valid after plan(). */
+    public long getDefaultRowsProcessed() {
+        return defaultRowsProcessed;
+    }
+
+    /** Estimated rows aggregated to build the cuboids (except the base) by the planned tree, valid after plan(). */
+    public long getPlannedRowsProcessed() {
+        return plannedRowsProcessed;
+    }
+
+    public String getReport(Map<Long, Long> overrides) {
+        double saving = defaultRowsProcessed == 0 ? 0 : 100.0 * (defaultRowsProcessed - plannedRowsProcessed) / defaultRowsProcessed;
+        return "Cost based cuboid tree re-parents " + overrides.size() + " cuboids, estimated rows processed " + plannedRowsProcessed + " vs " + defaultRowsProcessed + " by the default tree (" + String.format("%.2f", saving) + "% less)";
+    }
+
+    private Map<Long, Integer> getDefaultDepths() {
+        Map<Long, Integer> depths = Maps.newLinkedHashMap(); // in breadth first order
+        long baseCuboidId = Cuboid.getBaseCuboidId(cubeDesc);
+        LinkedList<Long> queue = new LinkedList<Long>();
+        queue.add(baseCuboidId);
+        depths.put(baseCuboidId, 0);
+        while (!queue.isEmpty()) {
+            long cuboid = queue.removeFirst();
+            int depth = depths.get(cuboid);
+            for (Long child : defaultScheduler.getSpanningCuboid(cuboid)) {
+                depths.put(child, depth + 1);
+                queue.add(child);
+            }
+        }
+        return depths;
+    }
+
+    // over-generates, plan() filters out the invalid ones
+    private Set<Long> getCandidateParents(long child) {
+        Set<Long> candidates = Sets.newTreeSet();
+        candidates.add(Cuboid.getBaseCuboidId(cubeDesc));
+        for (AggregationGroup agg : Cuboid.getValidAggGroupForCuboid(cubeDesc, child)) {
+            candidates.add(agg.getPartialCubeFullMask());
+            for (long normalDim : agg.getNormalDims()) {
+                if ((child & normalDim) == 0)
+                    candidates.add(child | normalDim);
+            }
+            for (AggregationGroup.HierarchyMask hierarchyMask : agg.getHierarchyMasks()) {
+                for (long dim : hierarchyMask.dims) {
+                    if ((child & dim) == 0)
+                        candidates.add(child | dim);
+                }
+            }
+            for (long joint : agg.getJoints()) {
+                if ((child & joint) == 0)
+                    candidates.add(child | joint);
+            }
+        }
+        candidates.remove(child);
+        return candidates;
+    }
+}
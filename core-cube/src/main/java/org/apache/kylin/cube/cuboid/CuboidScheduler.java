@@ -39,15 +39,34 @@ public class CuboidScheduler {
     private final CubeDesc cubeDesc;
     private final long max;
     private final Map<Long, List<Long>> cache;
+    private final Map<Long, Long> parentOverrides;
 
     public CuboidScheduler(CubeDesc cubeDesc) {
+        this(cubeDesc, Collections.<Long, Long> emptyMap());
+    }
+
+    /**
+     * A scheduler of a planned spanning tree, see CostBasedCuboidPlanner. The overrides map a cuboid to its parent
+     * where the plan differs from the default rule.
+     */
+    public CuboidScheduler(CubeDesc cubeDesc, Map<Long, Long> parentOverrides) {
         this.cubeDesc = cubeDesc;
         int size = this.cubeDesc.getRowkey().getRowKeyColumns().length;
         this.max = (long) Math.pow(2, size) - 1;
         this.cache = new ConcurrentHashMap<Long, List<Long>>();
+        this.parentOverrides = parentOverrides;
     }
 
     public long getParent(long child) {
+        Long parent = parentOverrides.get(child);
+        if (parent != null) {
+            return parent;
+        }
+        return getDefaultParent(child);
+    }
+
+    // the structural rule, picks the candidate parent of the least dimensions
+    public long getDefaultParent(long child) {
         List<Long> candidates = Lists.newArrayList();
         long baseCuboidID = Cuboid.getBaseCuboidId(cubeDesc);
         if (child == baseCuboidID || !Cuboid.isValid(cubeDesc, child)) {
@@ -21,9 +21,11 @@ package org.apache.kylin.cube.inmemcubing;
 import java.io.IOException;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
 import java.util.concurrent.BlockingQueue;
 
 import org.apache.kylin.common.util.Dictionary;
+import org.apache.kylin.cube.cuboid.CuboidScheduler;
 import org.apache.kylin.cube.model.CubeDesc;
 import org.apache.kylin.gridtable.GTRecord;
 import org.apache.kylin.gridtable.GTScanRequest;
@@ -48,6 +50,11 @@ abstract public class AbstractInMemCubeBuilder {
 
     protected int taskThreadCount = 4;
     protected int reserveMemoryMB = 100;
+    protected int cuboidSplitRows = 500000;
+    protected boolean cuboidMemStore = false;
+    protected boolean spillCompress = false;
+    protected SpillStats spillStats = new SpillStats();
+    protected CuboidScheduler cuboidScheduler;
 
     public AbstractInMemCubeBuilder(CubeDesc cubeDesc, IJoinedFlatTableDesc flatDesc, Map<TblColRef, Dictionary<String>> dictionaryMap) {
         if (flatDesc == null)
@@ -60,6 +67,12 @@ abstract public class AbstractInMemCubeBuilder {
         this.flatDesc = flatDesc;
         this.cubeDesc = cubeDesc;
         this.dictionaryMap = dictionaryMap;
+        this.cuboidScheduler = new CuboidScheduler(cubeDesc);
+    }
+
+    /** The spanning tree to build cuboids by, e.g. the planned tree of a segment, default by the structural rule. */
+    public void setCuboidScheduler(CuboidScheduler cuboidScheduler) {
+        this.cuboidScheduler = cuboidScheduler;
     }
 
     public void setConcurrentThreads(int n) {
@@ -74,6 +87,28 @@ abstract public class AbstractInMemCubeBuilder {
         return this.reserveMemoryMB;
     }
 
+    /** Cuboids larger than this many rows are aggregated by key ranges in parallel, 0 to disable. */
+    public void setCuboidSplitRows(int rows) {
+        this.cuboidSplitRows = rows;
+    }
+
+    /** Keep cuboids in memory as far as the memory budget permits, otherwise they are written to disk directly. */
+    public void setCuboidMemStore(boolean cuboidMemStore) {
+        this.cuboidMemStore = cuboidMemStore;
+    }
+
+    public void setSpillCompress(boolean spillCompress) {
+        this.spillCompress = spillCompress;
+    }
+
+    public SpillStats getSpillStats() {
+        return spillStats;
+    }
+
+    void setSpillStats(SpillStats spillStats) {
+        this.spillStats = spillStats;
+    }
+
     public Runnable buildAsRunnable(final BlockingQueue<List<String>> input, final ICuboidWriter output) {
         return new Runnable() {
             @Override
@@ -87,7 +122,68 @@ abstract public class AbstractInMemCubeBuilder {
         };
     }
 
-    abstract public void build(BlockingQueue<List<String>> input, ICuboidWriter output) throws IOException;
+    public Runnable buildEncodedAsRunnable(final BlockingQueue<EncodedRowBatch> input, final ICuboidWriter output) {
+        return new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    buildEncoded(input, output);
+                } catch (IOException e) {
+                    throw new RuntimeException(e);
+                }
+            }
+        };
+    }
+
+    /**
+     * Build from rows as strings, an empty list marks the end of input. The rows are encoded by a thread ahead of
+     * the build, prefer buildEncoded() to encode in a stage of your own.
+     */
+    public void build(BlockingQueue<List<String>> input, ICuboidWriter output) throws IOException {
+        BlockingQueue<EncodedRowBatch> encoded = new ArrayBlockingQueue<EncodedRowBatch>(16);
+        Thread encoder = startEncoding(input, encoded);
+        try {
+            buildEncoded(encoded, output);
+        } finally {
+            encoder.interrupt();
+        }
+    }
+
+    /**
+     * Build from batches of encoded rows, see EncodedRowBatchWriter, an empty batch marks the end of input.
+     */
+    abstract public void buildEncoded(BlockingQueue<EncodedRowBatch> input, ICuboidWriter output) throws IOException;
+
+    protected Thread startEncoding(final BlockingQueue<List<String>> input, final BlockingQueue<EncodedRowBatch> output) {
+        final EncodedRowBatchWriter writer = new EncodedRowBatchWriter(cubeDesc, flatDesc, dictionaryMap, output);
+        Thread encoder = new Thread("InputEncoder") {
+            @Override
+            public void run() {
+                try {
+                    while (true) {
+                        List<String> row = input.take();
+                        if (row == null || row.isEmpty()) {
+                            writer.close();
+                            return;
+                        }
+                        writer.write(row);
+                    }
+                } catch (InterruptedException e) {
+                    // the build is over
+                } catch (Throwable e) {
+                    logger.error("Error encoding input", e);
+                    try {
+                        output.put(EncodedRowBatch.error(e));
+                    } catch (InterruptedException ie) {
+                        // the build is over
+                    }
+                }
+            }
+        };
+        encoder.setDaemon(true);
+        encoder.start();
+        return encoder;
+    }
 
     protected void outputCuboid(long cuboidId, GridTable gridTable, ICuboidWriter output) throws IOException {
         long startTime = System.currentTimeMillis();
@@ -0,0 +1,234 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+*/
+
+package org.apache.kylin.cube.inmemcubing;
+
+import static org.apache.kylin.common.util.MemoryBudgetController.ONE_MB;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.zip.Deflater;
+
+import org.apache.kylin.common.util.DaemonThreadFactory;
+import org.apache.kylin.common.util.MemoryBudgetController;
+import org.apache.kylin.common.util.MemoryBudgetController.MemoryConsumer;
+import org.apache.kylin.common.util.MemoryBudgetController.NotEnoughBudgetException;
+
+/**
+ * Double buffered writes to a file channel. The caller fills one block while the previous one is written (and
+ * optionally compressed) at the background, and only waits when the disk falls a whole block behind.
+ *
+ * A compressed block is prefixed by its raw length and compressed length, both int, see BLOCK_HEADER_SIZE.
+ *
+ * The two blocks and the compress buffer are reserved through the memory budget if given, and released on close().
+ * When the budget can't afford them, blocks of MIN_BLOCK_SIZE are used instead, small enough to come out of the
+ * memory kept aside of the budget.
+ */
+class AsyncSpillWriter implements Closeable, MemoryConsumer {
+
+    static final int BLOCK_HEADER_SIZE = 8;
+    static final int MIN_BLOCK_SIZE = 64 * 1024;
+
+    // I/O bound tasks, at most one in flight per writer
+    private static final ExecutorService ioPool = Executors.newCachedThreadPool(new DaemonThreadFactory());
+
+    private final FileChannel channel;
+    private final boolean compress;
+    private final SpillStats stats;
+    private final Deflater deflater;
+    private final MemoryBudgetController budgetCtrl; // null if nothing reserved
+
+    private byte[] active;
+    private int activeLen;
+    private byte[] writing;
+    private Future<?> inflight;
+    private int blockCount;
+
+    // below are only touched by the in-flight task, or by the caller after waiting for it
+    private long fileOffset;
+    private final List<Long> blockOffsets = new ArrayList<Long>();
+    private byte[] compressBuf;
+
+    AsyncSpillWriter(FileChannel channel, long startOffset, int blockSize, boolean compress, SpillStats stats) {
+        this(channel, startOffset, blockSize, compress, stats, null);
+    }
+
+    AsyncSpillWriter(FileChannel channel, long startOffset, int blockSize, boolean compress, SpillStats stats, MemoryBudgetController budgetCtrl) {
+        this.channel = channel;
+        this.fileOffset = startOffset;
+        this.compress = compress;
+        this.stats = stats;
+
+        boolean reserved = false;
+        if (budgetCtrl != null) {
+            try {
+                budgetCtrl.reserve(this, getBufferMB(blockSize, compress));
+                reserved = true;
+            } catch (NotEnoughBudgetException e) {
+                blockSize = Math.min(blockSize, MIN_BLOCK_SIZE);
+            }
+        }
+        this.budgetCtrl = reserved ? budgetCtrl : null;
+        this.deflater = compress ? new Deflater(Deflater.BEST_SPEED) : null;
+        this.active = new byte[blockSize];
+    }
+
+    /** MB held by a writer of the block size, the two blocks and the compress buffer if any. */
+    static int getBufferMB(int blockSize, boolean compress) {
+        long bytes = 2L * blockSize;
+        if (compress)
+            bytes += BLOCK_HEADER_SIZE + blockSize + blockSize / 100 + 64;
+        return (int) ((bytes + ONE_MB - 1) / ONE_MB);
+    }
+
+    int getBlockSize() {
+        return active.length;
+    }
+
+    @Override
+    public int freeUp(int mb) {
+        // the buffers are in use until close()
+        return 0;
+    }
+
+    public void write(byte[] bytes, int offset, int length) throws IOException {
+        while (length > 0) {
+            int n = Math.min(length, active.length - activeLen);
+            System.arraycopy(bytes, offset, active, activeLen, n);
+            activeLen += n;
+            offset += n;
+            length -= n;
+            if (activeLen == active.length)
+                endBlock();
+        }
+    }
+
+    /** Hands the current block to the background and returns the index of the next block, see getBlockOffset(). */
+    public int endBlock() throws IOException {
+        if (activeLen == 0)
+            return blockCount;
+
+        awaitInflight();
+
+        final byte[] block = active;
+        final int length = activeLen;
+        active = writing == null ? new byte[block.length] : writing;
+        activeLen = 0;
+        writing = block;
+        blockCount++;
+
+        inflight = ioPool.submit(new Callable<Void>() {
+            @Override
+            public Void call() throws Exception {
+                writeBlock(block, length);
+                return null;
+            }
+        });
+        return blockCount;
+    }
+
+    private void writeBlock(byte[] block, int length) throws IOException {
+        blockOffsets.add(fileOffset);
+
+        byte[] out = block;
+        int outLen = length;
+        if (compress) {
+            if (compressBuf == null)
+                compressBuf = new byte[BLOCK_HEADER_SIZE + block.length + block.length / 100 + 64];
+
+            deflater.reset();
+            deflater.setInput(block, 0, length);
+            deflater.finish();
+            int pos = BLOCK_HEADER_SIZE;
+            while (!deflater.finished()) {
+                if (pos == compressBuf.length)
+                    compressBuf = Arrays.copyOf(compressBuf, compressBuf.length * 2);
+                pos += deflater.deflate(compressBuf, pos, compressBuf.length - pos);
+            }
+            ByteBuffer.wrap(compressBuf).putInt(length).putInt(pos - BLOCK_HEADER_SIZE);
+            out = compressBuf;
+            outLen = pos;
+        }
+
+        ByteBuffer buf = ByteBuffer.wrap(out, 0, outLen);
+        while (buf.hasRemaining()) {
+            fileOffset += channel.write(buf, fileOffset);
+        }
+        stats.addSpill(length, outLen);
+    }
+
+    private void awaitInflight() throws IOException {
+        if (inflight == null)
+            return;
+
+        long start = System.nanoTime();
+        try {
+            inflight.get();
+        } catch (InterruptedException e) {
+            throw new IOException("Interrupted waiting for spill write", e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException)
+                throw (IOException) cause;
+            else
+                throw new IOException(cause);
+        } finally {
+            inflight = null;
+            stats.addStall(System.nanoTime() - start);
+        }
+    }
+
+    /** File offset where the block of the index starts, valid after close(). */
+    public long getBlockOffset(int blockIndex) {
+        return blockIndex < blockOffsets.size() ? blockOffsets.get(blockIndex) : fileOffset;
+    }
+
+    /** File offset after the last written block, valid after close(). */
+    public long getFileOffset() {
+        return fileOffset;
+    }
+
+    /** Writes the remaining block and waits for it, the channel is left open. */
+    @Override
+    public void close() throws IOException {
+        try {
+            endBlock();
+            awaitInflight();
+        } finally {
+            if (deflater != null)
+                deflater.end();
+            if (budgetCtrl != null)
+                budgetCtrl.reserve(this, 0);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "AsyncSpillWriter@" + Integer.toHexString(hashCode());
+    }
+}
@@ -19,22 +19,27 @@
 package org.apache.kylin.cube.inmemcubing;
 
 import java.io.BufferedInputStream;
-import java.io.BufferedOutputStream;
 import java.io.Closeable;
 import java.io.DataInputStream;
-import java.io.DataOutputStream;
+import java.io.EOFException;
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.OutputStream;
 import java.nio.ByteBuffer;
 import java.nio.channels.FileChannel;
 import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.List;
 import java.util.NoSuchElementException;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
 
 import org.apache.commons.io.IOUtils;
+import org.apache.kylin.common.util.ByteArray;
+import org.apache.kylin.common.util.MemoryBudgetController;
 import org.apache.kylin.gridtable.GTInfo;
 import org.apache.kylin.gridtable.GTRecord;
 import org.apache.kylin.gridtable.GTScanRequest;
@@ -46,6 +51,10 @@ import org.slf4j.LoggerFactory;
 
 /**
  * A disk store that allows concurrent read and exclusive write.
+ * 
+ * Optionally remembers split offsets while being written, so sorted content can be read by key ranges in parallel.
+ * 
+ * Writes go to disk asynchronously in blocks, see AsyncSpillWriter, and the blocks can optionally be compressed.
  */
 public class ConcurrentDiskStore implements IGTStore, Closeable {
 
@@ -53,6 +62,7 @@ public class ConcurrentDiskStore implements IGTStore, Closeable {
     private static final boolean debug = true;
 
     private static final int STREAM_BUFFER_SIZE = 8192;
+    private static final int SPILL_BLOCK_SIZE = 1024 * 1024;
 
     final private GTInfo info;
     final private Object lock;
@@ -65,6 +75,14 @@ public class ConcurrentDiskStore implements IGTStore, Closeable {
     private FileChannel writeChannel;
     private FileChannel readChannel; // sharable across multi-threads
 
+    private int splitRows = 0;
+    private List<Long> splitOffsets = Collections.emptyList();
+
+    private boolean compress = false;
+    private boolean fileCompressed = false; // how the current file content was written
+    private SpillStats spillStats = new SpillStats();
+    private MemoryBudgetController budgetCtrl; // reserves the write buffers, if set
+
     public ConcurrentDiskStore(GTInfo info) throws IOException {
         this(info, File.createTempFile("ConcurrentDiskStore", ""), true);
     }
@@ -107,7 +125,11 @@ public class ConcurrentDiskStore implements IGTStore, Closeable {
             if (activeWriter != null || !activeReaders.isEmpty())
                 throw new IllegalStateException();
 
+            if (startOffset > 0 && compress != fileCompressed)
+                throw new IllegalStateException("Cannot append with a different compression");
+
             openWriteChannel(startOffset);
+            fileCompressed = compress;
             activeWriter = new Writer(startOffset);
             return activeWriter;
         }
@@ -123,18 +145,56 @@ public class ConcurrentDiskStore implements IGTStore, Closeable {
         }
     }
 
+    /**
+     * Once set, the writer marks a split offset every so many rows where the first column changes. A sorted content
+     * can then be cut at these offsets into ranges of distinct first column values, see getSplitOffsets().
+     */
+    public void setSplitRows(int splitRows) {
+        this.splitRows = splitRows;
+    }
+
+    /** Whether blocks written from now on are compressed. */
+    public void setCompress(boolean compress) {
+        this.compress = compress;
+    }
+
+    public void setSpillStats(SpillStats spillStats) {
+        this.spillStats = spillStats;
+    }
+
+    /** The budget to reserve the buffers of writers from now on, see AsyncSpillWriter. */
+    public void setBudgetCtrl(MemoryBudgetController budgetCtrl) {
+        this.budgetCtrl = budgetCtrl;
+    }
+
+    /** Split offsets marked by the last writer, excluding the start and the end of the file. */
+    public List<Long> getSplitOffsets() {
+        synchronized (lock) {
+            return splitOffsets;
+        }
+    }
+
+    public long getLength() {
+        return diskFile.length();
+    }
+
     @Override
     public IGTScanner scan(GTScanRequest scanRequest) throws IOException {
-        return newReader();
+        return newReader(0, -1);
+    }
+
+    /** Scans records between two split offsets, an end offset of -1 means to the end of file. */
+    public IGTScanner scan(long startOffset, long endOffset) throws IOException {
+        return newReader(startOffset, endOffset);
     }
 
-    private IGTScanner newReader() throws IOException {
+    private IGTScanner newReader(long startOffset, long endOffset) throws IOException {
         synchronized (lock) {
             if (activeWriter != null)
                 throw new IllegalStateException();
 
             openReadChannel();
-            Reader r = new Reader(0);
+            Reader r = new Reader(startOffset, endOffset);
             activeReaders.add(r);
             return r;
         }
@@ -157,8 +217,8 @@ public class ConcurrentDiskStore implements IGTStore, Closeable {
         long readOffset;
         long count;
 
-        Reader(long startOffset) throws IOException {
-            this.fileLen = diskFile.length();
+        Reader(long startOffset, long endOffset) throws IOException {
+            this.fileLen = endOffset < 0 ? diskFile.length() : endOffset;
             this.readOffset = startOffset;
 
             if (debug)
@@ -196,9 +256,11 @@ public class ConcurrentDiskStore implements IGTStore, Closeable {
 
                 @Override
                 public int available() throws IOException {
-                    return (int) (fileLen - readOffset);
+                    return (int) Math.min(fileLen - readOffset, Integer.MAX_VALUE);
                 }
             };
+            if (fileCompressed)
+                in = new BlockInputStream(in);
             din = new DataInputStream(new BufferedInputStream(in, STREAM_BUFFER_SIZE));
         }
 
@@ -227,7 +289,7 @@ public class ConcurrentDiskStore implements IGTStore, Closeable {
                     try {
                         if (din.available() > 0) {
                             int len = din.readInt();
-                            din.read(buf.array(), buf.arrayOffset(), len);
+                            din.readFully(buf.array(), buf.arrayOffset(), len);
                             buf.clear();
                             buf.limit(len);
                             record.loadColumns(info.getAllColumns(), buf);
@@ -273,56 +335,143 @@ public class ConcurrentDiskStore implements IGTStore, Closeable {
     }
 
     private class Writer implements IGTWriter {
-        final DataOutputStream dout;
+        final AsyncSpillWriter spill;
         final ByteBuffer buf;
-        long writeOffset;
+
+        int rowsSinceSplit;
+        final List<Integer> splitBlocks = new ArrayList<Integer>();
+        final ByteArray lastFirstCol = new ByteArray();
 
         Writer(long startOffset) {
-            this.writeOffset = startOffset;
-            this.buf = ByteBuffer.allocate(info.getMaxRecordLength());
+            this.spill = new AsyncSpillWriter(writeChannel, startOffset, SPILL_BLOCK_SIZE, fileCompressed, spillStats, budgetCtrl);
+            this.buf = ByteBuffer.allocate(4 + info.getMaxRecordLength());
 
             if (debug)
-                logger.debug(ConcurrentDiskStore.this + " write start @ " + writeOffset);
-
-            OutputStream out = new OutputStream() {
-                byte[] tmp = new byte[1];
-
-                @Override
-                public void write(int b) throws IOException {
-                    tmp[0] = (byte) b;
-                    write(tmp, 0, 1);
-                }
-
-                @Override
-                public void write(byte[] bytes, int offset, int length) throws IOException {
-                    while (length > 0) {
-                        int n = writeChannel.write(ByteBuffer.wrap(bytes, offset, length), writeOffset);
-                        offset += n;
-                        length -= n;
-                        writeOffset += n;
-                    }
-                }
-            };
-            dout = new DataOutputStream(new BufferedOutputStream(out, STREAM_BUFFER_SIZE));
+                logger.debug(ConcurrentDiskStore.this + " write start @ " + startOffset);
         }
 
         @Override
         public void write(GTRecord rec) throws IOException {
+            if (splitRows > 0)
+                markSplit(rec.get(0));
+
+            // length prefix followed by the columns
             buf.clear();
+            buf.position(4);
             rec.exportColumns(info.getAllColumns(), buf);
 
-            int len = buf.position();
-            dout.writeInt(len);
-            dout.write(buf.array(), buf.arrayOffset(), len);
+            int len = buf.position() - 4;
+            buf.putInt(0, len);
+            spill.write(buf.array(), buf.arrayOffset(), 4 + len);
+        }
+
+        // a split always starts a new block, so a compressed range can be read from its own offset
+        private void markSplit(ByteArray firstCol) throws IOException {
+            if (rowsSinceSplit >= splitRows && !firstCol.equals(lastFirstCol)) {
+                splitBlocks.add(spill.endBlock());
+                rowsSinceSplit = 0;
+            }
+            rowsSinceSplit++;
+
+            if (lastFirstCol.array() == null || lastFirstCol.array().length < firstCol.length())
+                lastFirstCol.set(new byte[firstCol.length()], 0, 0);
+            lastFirstCol.copyFrom(firstCol);
         }
 
         @Override
         public void close() throws IOException {
-            dout.close();
-            closeWriter(this);
+            try {
+                spill.close();
+            } finally {
+                List<Long> splits = new ArrayList<Long>(splitBlocks.size());
+                for (Integer block : splitBlocks) {
+                    splits.add(spill.getBlockOffset(block));
+                }
+                synchronized (lock) {
+                    splitOffsets = Collections.unmodifiableList(splits);
+                }
+                closeWriter(this);
+            }
 
             if (debug)
-                logger.debug(ConcurrentDiskStore.this + " write end @ " + writeOffset);
+                logger.debug(ConcurrentDiskStore.this + " write end @ " + spill.getFileOffset());
+        }
+    }
+
+    /**
+     * Reads compressed blocks written by AsyncSpillWriter, out of an input stream positioned at a block start.
+     */
+    private static class BlockInputStream extends InputStream {
+        final DataInputStream in;
+        final Inflater inflater = new Inflater();
+        byte[] compressed = new byte[0];
+        byte[] block = new byte[0];
+        int blockLen;
+        int blockPos;
+
+        BlockInputStream(InputStream in) {
+            this.in = new DataInputStream(in);
+        }
+
+        @Override
+        public int read() throws IOException {
+            if (!ensureBlock())
+                return -1;
+            return block[blockPos++] & 0xff;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (!ensureBlock())
+                return -1;
+
+            int n = Math.min(len, blockLen - blockPos);
+            System.arraycopy(block, blockPos, b, off, n);
+            blockPos += n;
+            return n;
+        }
+
+        @Override
+        public int available() throws IOException {
+            // positive as long as there is more to read, the exact number is unknown before inflation
+            return (int) Math.min((long) blockLen - blockPos + in.available(), Integer.MAX_VALUE);
+        }
+
+        private boolean ensureBlock() throws IOException {
+            while (blockPos == blockLen) {
+                if (in.available() <= 0)
+                    return false;
+
+                int rawLen = in.readInt();
+                int compressedLen = in.readInt();
+                if (compressed.length < compressedLen)
+                    compressed = new byte[compressedLen];
+                if (block.length < rawLen)
+                    block = new byte[rawLen];
+                in.readFully(compressed, 0, compressedLen);
+
+                inflater.reset();
+                inflater.setInput(compressed, 0, compressedLen);
+                try {
+                    blockLen = 0;
+                    while (blockLen < rawLen) {
+                        int n = inflater.inflate(block, blockLen, rawLen - blockLen);
+                        if (n == 0 && (inflater.finished() || inflater.needsInput()))
+                            throw new EOFException("Truncated spill block");
+                        blockLen += n;
+                    }
+                } catch (DataFormatException e) {
+                    throw new IOException("Corrupted spill block", e);
+                }
+                blockPos = 0;
+            }
+            return true;
+        }
+
+        @Override
+        public void close() throws IOException {
+            inflater.end();
+            in.close();
         }
     }
 
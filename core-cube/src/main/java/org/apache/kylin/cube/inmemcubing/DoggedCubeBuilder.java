@@ -20,7 +20,6 @@ package org.apache.kylin.cube.inmemcubing;
 
 import java.io.IOException;
 import java.util.ArrayList;
-import java.util.Collections;
 import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
@@ -71,7 +70,7 @@ public class DoggedCubeBuilder extends AbstractInMemCubeBuilder {
     }
 
     @Override
-    public void build(BlockingQueue<List<String>> input, ICuboidWriter output) throws IOException {
+    public void buildEncoded(BlockingQueue<EncodedRowBatch> input, ICuboidWriter output) throws IOException {
         new BuildOnce().build(input, output);
     }
 
@@ -80,7 +79,7 @@ public class DoggedCubeBuilder extends AbstractInMemCubeBuilder {
         BuildOnce() {
         }
 
-        public void build(BlockingQueue<List<String>> input, ICuboidWriter output) throws IOException {
+        public void build(BlockingQueue<EncodedRowBatch> input, ICuboidWriter output) throws IOException {
             final List<SplitThread> splits = new ArrayList<SplitThread>();
             final Merger merger = new Merger();
 
@@ -201,20 +200,23 @@ public class DoggedCubeBuilder extends AbstractInMemCubeBuilder {
             }
         }
 
-        private boolean feedSomeInput(BlockingQueue<List<String>> input, SplitThread split, int n) {
+        private boolean feedSomeInput(BlockingQueue<EncodedRowBatch> input, SplitThread split, int n) {
             try {
                 int i = 0;
                 while (i < n) {
-                    List<String> record = input.take();
-                    i++;
+                    EncodedRowBatch batch = input.take();
+                    // the split may consume and recycle the batch once offered, read it before
+                    int rowCount = batch.getRowCount();
+                    boolean endOfInput = batch.isEmpty();
+                    i += Math.max(rowCount, 1);
 
-                    while (split.inputQueue.offer(record, 1, TimeUnit.SECONDS) == false) {
+                    while (split.inputQueue.offer(batch, 1, TimeUnit.SECONDS) == false) {
                         if (split.exception != null)
                             return true; // got some error
                     }
-                    split.inputRowCount++;
+                    split.inputRowCount += rowCount;
 
-                    if (record == null || record.isEmpty()) {
+                    if (endOfInput) {
                         return true;
                     }
                 }
@@ -229,7 +231,7 @@ public class DoggedCubeBuilder extends AbstractInMemCubeBuilder {
             try {
                 // signal the end of input
                 while (last.isAlive()) {
-                    if (last.inputQueue.offer(Collections.<String> emptyList())) {
+                    if (last.inputQueue.offer(EncodedRowBatch.endOfInput())) {
                         break;
                     }
                     Thread.sleep(1000);
@@ -265,7 +267,7 @@ public class DoggedCubeBuilder extends AbstractInMemCubeBuilder {
     }
 
     private class SplitThread extends Thread {
-        final BlockingQueue<List<String>> inputQueue = new ArrayBlockingQueue<List<String>>(16);
+        final BlockingQueue<EncodedRowBatch> inputQueue = new ArrayBlockingQueue<EncodedRowBatch>(16);
         final InMemCubeBuilder builder;
 
         ConcurrentNavigableMap<Long, CuboidResult> buildResult;
@@ -276,12 +278,17 @@ public class DoggedCubeBuilder extends AbstractInMemCubeBuilder {
             this.builder = new InMemCubeBuilder(cubeDesc, flatDesc, dictionaryMap);
             this.builder.setConcurrentThreads(taskThreadCount);
             this.builder.setReserveMemoryMB(reserveMemoryMB);
+            this.builder.setCuboidSplitRows(cuboidSplitRows);
+            this.builder.setCuboidMemStore(cuboidMemStore);
+            this.builder.setSpillCompress(spillCompress);
+            this.builder.setSpillStats(spillStats);
+            this.builder.setCuboidScheduler(cuboidScheduler);
         }
 
         @Override
         public void run() {
             try {
-                buildResult = builder.build(inputQueue);
+                buildResult = builder.buildEncoded(inputQueue);
             } catch (Exception e) {
                 if (e instanceof RuntimeException)
                     this.exception = (RuntimeException) e;
@@ -0,0 +1,100 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+*/
+package org.apache.kylin.cube.inmemcubing;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * A batch of flat table rows already encoded as base cuboid records, i.e. the dimension ids and measure bytes
+ * of each row one after another, as GTRecord.exportColumns() writes them. This is the input of the in-mem
+ * cube builders, so the encoding is done once in a stage ahead of them, see EncodedRowBatchWriter.
+ * 
+ * Once consumed, a batch is recycled to the pool it came from and its buffer is reused. An empty batch marks
+ * the end of input, an empty batch with an error aborts the build.
+ */
+public class EncodedRowBatch {
+
+    private final BlockingQueue<EncodedRowBatch> pool;
+    private ByteBuffer buf;
+    private int rowCount;
+    private Throwable error;
+
+    public static EncodedRowBatch endOfInput() {
+        return new EncodedRowBatch(0, null);
+    }
+
+    public static EncodedRowBatch error(Throwable error) {
+        EncodedRowBatch batch = endOfInput();
+        batch.error = error;
+        return batch;
+    }
+
+    public EncodedRowBatch(int capacity, BlockingQueue<EncodedRowBatch> pool) {
+        this.pool = pool;
+        this.buf = ByteBuffer.allocate(capacity);
+    }
+
+    public boolean isEmpty() {
+        return rowCount == 0;
+    }
+
+    public int getRowCount() {
+        return rowCount;
+    }
+
+    public int getByteSize() {
+        return buf.position();
+    }
+
+    public Throwable getError() {
+        return error;
+    }
+
+    /** returns the buffer to write the next row at its position, with at least the given bytes remaining */
+    public ByteBuffer bufferForRow(int maxRowLength) {
+        if (buf.remaining() < maxRowLength) {
+            ByteBuffer newBuf = ByteBuffer.allocate(Math.max(buf.capacity() * 2, buf.position() + maxRowLength));
+            buf.flip();
+            newBuf.put(buf);
+            buf = newBuf;
+        }
+        return buf;
+    }
+
+    /** to be called once a row is written to the buffer */
+    public void rowWritten() {
+        rowCount++;
+    }
+
+    /** returns a view of the written rows, from the first row */
+    public ByteBuffer bufferForRead() {
+        ByteBuffer view = buf.duplicate();
+        view.flip();
+        return view;
+    }
+
+    /** clears the batch and gives it back to its pool for reuse, the buffer must not be referred any more */
+    public void recycle() {
+        buf.clear();
+        rowCount = 0;
+        error = null;
+        if (pool != null)
+            pool.offer(this);
+    }
+}
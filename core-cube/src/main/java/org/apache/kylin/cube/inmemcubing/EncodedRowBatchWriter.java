@@ -0,0 +1,126 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+*/
+package org.apache.kylin.cube.inmemcubing;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.kylin.common.util.Dictionary;
+import org.apache.kylin.cube.cuboid.Cuboid;
+import org.apache.kylin.cube.gridtable.CubeGridTable;
+import org.apache.kylin.cube.model.CubeDesc;
+import org.apache.kylin.metadata.model.IJoinedFlatTableDesc;
+import org.apache.kylin.metadata.model.TblColRef;
+
+/**
+ * The encoding stage ahead of the in-mem cube builders. Encodes flat table rows into batches of base cuboid
+ * records and puts the full batches to the builder input queue, reusing the batches the builder has consumed.
+ * 
+ * Not thread safe, meant to be called by the one thread reading the flat table.
+ */
+public class EncodedRowBatchWriter {
+
+    public static final int DEFAULT_BATCH_ROWS = 256;
+    public static final int DEFAULT_BATCH_BYTES = 1024 * 1024;
+
+    private final BlockingQueue<EncodedRowBatch> output;
+    private final BlockingQueue<EncodedRowBatch> pool;
+    private final InMemCubeBuilderInputConverter converter;
+    private final int batchRows;
+    private final int initBatchBytes;
+
+    private EncodedRowBatch current;
+    private Future<?> consumer;
+    private long rowCount;
+
+    public EncodedRowBatchWriter(CubeDesc cubeDesc, IJoinedFlatTableDesc flatDesc, Map<TblColRef, Dictionary<String>> dictionaryMap, BlockingQueue<EncodedRowBatch> output) {
+        this(cubeDesc, flatDesc, dictionaryMap, output, DEFAULT_BATCH_ROWS);
+    }
+
+    public EncodedRowBatchWriter(CubeDesc cubeDesc, IJoinedFlatTableDesc flatDesc, Map<TblColRef, Dictionary<String>> dictionaryMap, BlockingQueue<EncodedRowBatch> output, int batchRows) {
+        this.output = output;
+        this.pool = new ArrayBlockingQueue<EncodedRowBatch>(64);
+        this.converter = new InMemCubeBuilderInputConverter(cubeDesc, flatDesc, dictionaryMap, CubeGridTable.newGTInfo(cubeDesc, Cuboid.getBaseCuboidId(cubeDesc), dictionaryMap));
+        this.batchRows = batchRows;
+        // memory hungry measures make big rows, let the buffer grow instead of reserving much at first
+        this.initBatchBytes = cubeDesc.hasMemoryHungryMeasures() ? 64 * 1024 : 16 * 1024;
+    }
+
+    /** stop waiting on a full output queue once the consumer is done, e.g. failed */
+    public void setConsumer(Future<?> consumer) {
+        this.consumer = consumer;
+    }
+
+    public void write(List<String> row) throws InterruptedException {
+        if (current == null) {
+            current = pool.poll();
+            if (current == null)
+                current = new EncodedRowBatch(initBatchBytes, pool);
+        }
+
+        converter.encode(row, current);
+        rowCount++;
+
+        if (current.getRowCount() >= batchRows || current.getByteSize() >= DEFAULT_BATCH_BYTES)
+            flush();
+    }
+
+    public void flush() throws InterruptedException {
+        if (current != null && !current.isEmpty()) {
+            put(current);
+            current = null;
+        }
+    }
+
+    /** flushes and signals the end of input */
+    public void close() throws InterruptedException {
+        flush();
+        put(EncodedRowBatch.endOfInput());
+    }
+
+    public long getRowCount() {
+        return rowCount;
+    }
+
+    private void put(EncodedRowBatch batch) throws InterruptedException {
+        while (!output.offer(batch, 1, TimeUnit.SECONDS)) {
+            if (consumer != null && consumer.isDone()) {
+                if (batch.isEmpty())
+                    return; // the end of input, the consumer reports how it ended
+                throw new IllegalStateException("Cube builder ended before taking " + batch.getRowCount() + " rows", getConsumerError());
+            }
+        }
+    }
+
+    private Throwable getConsumerError() throws InterruptedException {
+        try {
+            consumer.get();
+            return null;
+        } catch (ExecutionException e) {
+            return e.getCause();
+        } catch (CancellationException e) {
+            return e;
+        }
+    }
+}
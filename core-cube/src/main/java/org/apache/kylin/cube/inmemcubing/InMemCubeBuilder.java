@@ -19,15 +19,19 @@
 package org.apache.kylin.cube.inmemcubing;
 
 import java.io.IOException;
-import java.util.ArrayList;
+import java.nio.ByteBuffer;
 import java.util.Arrays;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
-import java.util.TreeSet;
+import java.util.concurrent.ArrayBlockingQueue;
 import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.ConcurrentNavigableMap;
 import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.RecursiveAction;
 import java.util.concurrent.atomic.AtomicInteger;
 
 import org.apache.kylin.common.util.Dictionary;
@@ -36,7 +40,6 @@ import org.apache.kylin.common.util.MemoryBudgetController;
 import org.apache.kylin.common.util.Pair;
 import org.apache.kylin.common.util.MemoryBudgetController.MemoryWaterLevel;
 import org.apache.kylin.cube.cuboid.Cuboid;
-import org.apache.kylin.cube.cuboid.CuboidScheduler;
 import org.apache.kylin.cube.gridtable.CubeGridTable;
 import org.apache.kylin.cube.model.CubeDesc;
 import org.apache.kylin.gridtable.GTAggregateScanner;
@@ -47,6 +50,7 @@ import org.apache.kylin.gridtable.GTScanRequest;
 import org.apache.kylin.gridtable.GTScanRequestBuilder;
 import org.apache.kylin.gridtable.GridTable;
 import org.apache.kylin.gridtable.IGTScanner;
+import org.apache.kylin.gridtable.IGTStore;
 import org.apache.kylin.measure.topn.Counter;
 import org.apache.kylin.measure.topn.TopNCounter;
 import org.apache.kylin.metadata.datatype.DoubleMutable;
@@ -61,6 +65,9 @@ import com.google.common.collect.Lists;
 /**
  * Build a cube (many cuboids) in memory. Calculating multiple cuboids at the same time as long as memory permits.
  * Assumes base cuboid fits in memory or otherwise OOM exception will occur.
+ * 
+ * Cuboids are calculated by fork-join tasks along the spanning tree, idle threads steal the pending ones. A large
+ * parent is scanned by key ranges in parallel when the child keeps its first dimension, see setCuboidSplitRows().
  */
 public class InMemCubeBuilder extends AbstractInMemCubeBuilder {
 
@@ -70,19 +77,17 @@ public class InMemCubeBuilder extends AbstractInMemCubeBuilder {
     private static final double DERIVE_AGGR_CACHE_CONSTANT_FACTOR = 0.1;
     private static final double DERIVE_AGGR_CACHE_VARIABLE_FACTOR = 0.9;
 
-    private final CuboidScheduler cuboidScheduler;
     private final long baseCuboidId;
     private final int totalCuboidCount;
     private final String[] metricsAggrFuncs;
     private final MeasureDesc[] measureDescs;
     private final int measureCount;
+    private final boolean allowHashAggregation;
 
     private MemoryBudgetController memBudget;
     private MemoryWaterLevel baseCuboidMemTracker;
 
-    private Thread[] taskThreads;
-    private Throwable[] taskThreadExceptions;
-    private TreeSet<CuboidTask> taskPending;
+    private volatile ForkJoinPool taskPool;
     private AtomicInteger taskCuboidCompleted = new AtomicInteger(0);
 
     private CuboidResult baseResult;
@@ -91,9 +96,8 @@ public class InMemCubeBuilder extends AbstractInMemCubeBuilder {
 
     public InMemCubeBuilder(CubeDesc cubeDesc, IJoinedFlatTableDesc flatDesc, Map<TblColRef, Dictionary<String>> dictionaryMap) {
         super(cubeDesc, flatDesc, dictionaryMap);
-        this.cuboidScheduler = new CuboidScheduler(cubeDesc);
         this.baseCuboidId = Cuboid.getBaseCuboidId(cubeDesc);
-        this.totalCuboidCount = cuboidScheduler.getCuboidCount();
+        this.totalCuboidCount = cuboidScheduler.getCuboidCount(); // same by any spanning tree
 
         this.measureCount = cubeDesc.getMeasures().size();
         this.measureDescs = cubeDesc.getMeasures().toArray(new MeasureDesc[measureCount]);
@@ -105,23 +109,41 @@ public class InMemCubeBuilder extends AbstractInMemCubeBuilder {
             metricsAggrFuncsList.add(measureDesc.getFunction().getExpression());
         }
         this.metricsAggrFuncs = metricsAggrFuncsList.toArray(new String[metricsAggrFuncsList.size()]);
+        this.allowHashAggregation = cubeDesc.getConfig().isQueryCoprocessorHashAggregationEnabled();
     }
 
     private GridTable newGridTableByCuboidID(long cuboidID) throws IOException {
         GTInfo info = CubeGridTable.newGTInfo(cubeDesc, cuboidID, dictionaryMap);
 
-        // Below several store implementation are very similar in performance. The ConcurrentDiskStore is the simplest.
-        // MemDiskStore store = new MemDiskStore(info, memBudget == null ? MemoryBudgetController.ZERO_BUDGET : memBudget);
-        // MemDiskStore store = new MemDiskStore(info, MemoryBudgetController.ZERO_BUDGET);
-        ConcurrentDiskStore store = new ConcurrentDiskStore(info);
+        // The base cuboid is built before the memory budget, it always goes to disk and can be split by key ranges.
+        // A MemDiskStore expects as many scans as the children of the cuboid, less scanned ones are spilled first.
+        IGTStore store;
+        if (cuboidMemStore && memBudget != null) {
+            MemDiskStore memDiskStore = new MemDiskStore(info, memBudget);
+            memDiskStore.setPendingReads(cuboidScheduler.getSpanningCuboid(cuboidID).size());
+            memDiskStore.setSpillStats(spillStats);
+            store = memDiskStore;
+        } else {
+            ConcurrentDiskStore diskStore = new ConcurrentDiskStore(info);
+            diskStore.setSplitRows(cuboidSplitRows);
+            diskStore.setCompress(spillCompress);
+            diskStore.setSpillStats(spillStats);
+            diskStore.setBudgetCtrl(memBudget);
+            store = diskStore;
+        }
 
         GridTable gridTable = new GridTable(info, store);
         return gridTable;
     }
 
+    private void markChildDone(CuboidResult parent) {
+        if (parent.table.getStore() instanceof MemDiskStore)
+            ((MemDiskStore) parent.table.getStore()).decPendingReads();
+    }
+
     @Override
-    public void build(BlockingQueue<List<String>> input, ICuboidWriter output) throws IOException {
-        ConcurrentNavigableMap<Long, CuboidResult> result = build(input);
+    public void buildEncoded(BlockingQueue<EncodedRowBatch> input, ICuboidWriter output) throws IOException {
+        ConcurrentNavigableMap<Long, CuboidResult> result = buildEncoded(input);
         try {
             for (CuboidResult cuboidResult : result.values()) {
                 outputCuboid(cuboidResult.cuboidId, cuboidResult.table, output);
@@ -133,6 +155,16 @@ public class InMemCubeBuilder extends AbstractInMemCubeBuilder {
     }
 
     public ConcurrentNavigableMap<Long, CuboidResult> build(BlockingQueue<List<String>> input) throws IOException {
+        BlockingQueue<EncodedRowBatch> encoded = new ArrayBlockingQueue<EncodedRowBatch>(16);
+        Thread encoder = startEncoding(input, encoded);
+        try {
+            return buildEncoded(encoded);
+        } finally {
+            encoder.interrupt();
+        }
+    }
+
+    public ConcurrentNavigableMap<Long, CuboidResult> buildEncoded(BlockingQueue<EncodedRowBatch> input) throws IOException {
         final ConcurrentNavigableMap<Long, CuboidResult> result = new ConcurrentSkipListMap<Long, CuboidResult>();
         build(input, new ICuboidCollector() {
             @Override
@@ -149,18 +181,14 @@ public class InMemCubeBuilder extends AbstractInMemCubeBuilder {
         void collect(CuboidResult result);
     }
 
-    private void build(BlockingQueue<List<String>> input, ICuboidCollector collector) throws IOException {
+    private void build(BlockingQueue<EncodedRowBatch> input, ICuboidCollector collector) throws IOException {
         long startTime = System.currentTimeMillis();
         logger.info("In Mem Cube Build start, " + cubeDesc.getName());
 
         baseCuboidMemTracker = new MemoryWaterLevel();
         baseCuboidMemTracker.markLow();
 
-        // multiple threads to compute cuboid in parallel
-        taskPending = new TreeSet<CuboidTask>();
         taskCuboidCompleted.set(0);
-        taskThreads = prepareTaskThreads();
-        taskThreadExceptions = new Throwable[taskThreadCount];
 
         // build base cuboid
         resultCollector = collector;
@@ -173,136 +201,61 @@ public class InMemCubeBuilder extends AbstractInMemCubeBuilder {
         baseCuboidMemTracker.markLow();
         makeMemoryBudget();
 
-        // kick off N-D cuboid tasks and output
-        addChildTasks(baseResult);
-        start(taskThreads);
-
-        // wait complete
-        join(taskThreads);
-
-        long endTime = System.currentTimeMillis();
-        logger.info("In Mem Cube Build end, " + cubeDesc.getName() + ", takes " + (endTime - startTime) + " ms");
-
-        throwExceptionIfAny();
-    }
-
-    public void abort() {
-        interrupt(taskThreads);
-    }
-
-    private void start(Thread... threads) {
-        for (Thread t : threads)
-            t.start();
-    }
-
-    private void interrupt(Thread... threads) {
-        for (Thread t : threads)
-            t.interrupt();
-    }
-
-    private void join(Thread... threads) throws IOException {
+        // compute N-D cuboids in parallel and wait complete
+        taskPool = new ForkJoinPool(taskThreadCount, new CuboidTaskThreadFactory(), null, false);
         try {
-            for (Thread t : threads)
-                t.join();
-        } catch (InterruptedException e) {
-            throw new IOException("interrupted while waiting task and output complete", e);
-        }
-    }
-
-    private void throwExceptionIfAny() throws IOException {
-        ArrayList<Throwable> errors = new ArrayList<Throwable>();
-        for (int i = 0; i < taskThreadCount; i++) {
-            Throwable t = taskThreadExceptions[i];
-            if (t != null)
-                errors.add(t);
-        }
-        if (errors.isEmpty()) {
-            return;
-        } else if (errors.size() == 1) {
-            Throwable t = errors.get(0);
-            if (t instanceof IOException)
-                throw (IOException) t;
+            taskPool.invoke(new RecursiveAction() {
+                @Override
+                protected void compute() {
+                    invokeChildTasks(baseResult);
+                }
+            });
+        } catch (RuntimeException ex) {
+            // tasks wrap IOException, and the pool may wrap again when rethrowing across threads
+            Throwable cause = ex;
+            while (cause.getCause() != null && !(cause instanceof IOException))
+                cause = cause.getCause();
+            if (cause instanceof IOException)
+                throw (IOException) cause;
             else
-                throw new IOException(t);
-        } else {
-            for (Throwable t : errors)
-                logger.error("Exception during in-mem cube build", t);
-            throw new IOException(errors.size() + " exceptions during in-mem cube build, cause set to the first, check log for more", errors.get(0));
+                throw new IOException("Exception during in-mem cube build", ex);
+        } finally {
+            taskPool.shutdownNow();
         }
+
+        long endTime = System.currentTimeMillis();
+        logger.info("In Mem Cube Build end, " + cubeDesc.getName() + ", takes " + (endTime - startTime) + " ms, " + spillStats);
     }
 
-    private Thread[] prepareTaskThreads() {
-        Thread[] result = new Thread[taskThreadCount];
-        for (int i = 0; i < taskThreadCount; i++) {
-            result[i] = new CuboidTaskThread(i);
-        }
-        return result;
+    public void abort() {
+        ForkJoinPool pool = taskPool;
+        if (pool != null)
+            pool.shutdownNow();
     }
 
     public boolean isAllCuboidDone() {
         return taskCuboidCompleted.get() == totalCuboidCount;
     }
 
-    private class CuboidTaskThread extends Thread {
-        private int id;
-
-        CuboidTaskThread(int id) {
-            super("CuboidTask-" + id);
-            this.id = id;
-        }
+    private static class CuboidTaskThreadFactory implements ForkJoinPool.ForkJoinWorkerThreadFactory {
+        private final AtomicInteger id = new AtomicInteger(0);
 
         @Override
-        public void run() {
-            try {
-                while (!isAllCuboidDone()) {
-                    CuboidTask task = null;
-                    synchronized (taskPending) {
-                        while (task == null && taskHasNoException()) {
-                            task = taskPending.pollFirst();
-                            if (task == null)
-                                taskPending.wait(60000);
-                        }
-                    }
-                    // if task error occurs
-                    if (task == null)
-                        break;
-
-                    CuboidResult newCuboid = buildCuboid(task.parent, task.childCuboidId);
-                    addChildTasks(newCuboid);
-
-                    if (isAllCuboidDone()) {
-                        for (Thread t : taskThreads) {
-                            if (t != Thread.currentThread())
-                                t.interrupt();
-                        }
-                    }
-                }
-            } catch (Throwable ex) {
-                if (!isAllCuboidDone()) {
-                    logger.error("task thread exception", ex);
-                    taskThreadExceptions[id] = ex;
-                }
-            }
+        public ForkJoinWorkerThread newThread(ForkJoinPool pool) {
+            ForkJoinWorkerThread t = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(pool);
+            t.setName("CuboidTask-" + id.getAndIncrement());
+            return t;
         }
     }
 
-    private boolean taskHasNoException() {
-        for (int i = 0; i < taskThreadExceptions.length; i++)
-            if (taskThreadExceptions[i] != null)
-                return false;
-        return true;
-    }
-
-    private void addChildTasks(CuboidResult parent) {
+    // runs the child tasks in current thread while idle threads steal them
+    private void invokeChildTasks(CuboidResult parent) {
         List<Long> children = cuboidScheduler.getSpanningCuboid(parent.cuboidId);
-        if (!children.isEmpty()) {
-            synchronized (taskPending) {
-                for (Long child : children) {
-                    taskPending.add(new CuboidTask(parent, child));
-                }
-                taskPending.notifyAll();
-            }
+        List<CuboidTask> tasks = Lists.newArrayListWithCapacity(children.size());
+        for (Long child : children) {
+            tasks.add(new CuboidTask(parent, child));
         }
+        ForkJoinTask.invokeAll(tasks);
     }
 
     private void makeMemoryBudget() {
@@ -324,7 +277,7 @@ public class InMemCubeBuilder extends AbstractInMemCubeBuilder {
         memBudget = new MemoryBudgetController(budget);
     }
 
-    private CuboidResult createBaseCuboid(BlockingQueue<List<String>> input) throws IOException {
+    private CuboidResult createBaseCuboid(BlockingQueue<EncodedRowBatch> input) throws IOException {
         long startTime = System.currentTimeMillis();
         logger.info("Calculating base cuboid " + baseCuboidId);
 
@@ -333,8 +286,9 @@ public class InMemCubeBuilder extends AbstractInMemCubeBuilder {
         IGTScanner baseInput = new InputConverter(baseCuboid.getInfo(), input);
 
         Pair<ImmutableBitSet, ImmutableBitSet> dimensionMetricsBitSet = InMemCubeBuilderUtils.getDimensionAndMetricColumnBitSet(baseCuboidId, measureCount);
-        GTScanRequest req = new GTScanRequestBuilder().setInfo(baseCuboid.getInfo()).setRanges(null).setDimensions(null).setAggrGroupBy(dimensionMetricsBitSet.getFirst()).setAggrMetrics(dimensionMetricsBitSet.getSecond()).setAggrMetricsFuncs(metricsAggrFuncs).setFilterPushDown(null).createGTScanRequest();
+        GTScanRequest req = new GTScanRequestBuilder().setInfo(baseCuboid.getInfo()).setRanges(null).setDimensions(null).setAggrGroupBy(dimensionMetricsBitSet.getFirst()).setAggrMetrics(dimensionMetricsBitSet.getSecond()).setAggrMetricsFuncs(metricsAggrFuncs).setFilterPushDown(null).setAllowHashAggregation(allowHashAggregation).createGTScanRequest();
         GTAggregateScanner aggregationScanner = new GTAggregateScanner(baseInput, req, Long.MAX_VALUE);
+        aggregationScanner.setSortedOutput(true); // cuboid results are merge sorted later
         aggregationScanner.trackMemoryLevel(baseCuboidMemTracker);
 
         int count = 0;
@@ -372,8 +326,23 @@ public class InMemCubeBuilder extends AbstractInMemCubeBuilder {
     }
 
     private CuboidResult buildCuboid(CuboidResult parent, long cuboidId) throws IOException {
-        final String consumerName = "AggrCache@Cuboid " + cuboidId;
-        MemoryBudgetController.MemoryConsumer consumer = new MemoryBudgetController.MemoryConsumer() {
+        final Pair<ImmutableBitSet, ImmutableBitSet> allNeededColumns = InMemCubeBuilderUtils.getDimensionAndMetricColumnBitSet(parent.cuboidId, cuboidId, measureCount);
+        List<long[]> ranges = splitRanges(parent, allNeededColumns.getFirst());
+        if (ranges.size() > 1)
+            return aggregateCuboidByRanges(parent, cuboidId, allNeededColumns.getFirst(), allNeededColumns.getSecond(), ranges);
+
+        // reserve memory for aggregation cache, can't be larger than the parent
+        MemoryBudgetController.MemoryConsumer consumer = newAggrCacheConsumer("AggrCache@Cuboid " + cuboidId);
+        memBudget.reserveInsist(consumer, parent.aggrCacheMB);
+        try {
+            return scanAndAggregateGridTable(parent.table, parent.cuboidId, cuboidId, allNeededColumns.getFirst(), allNeededColumns.getSecond());
+        } finally {
+            memBudget.reserve(consumer, 0);
+        }
+    }
+
+    private MemoryBudgetController.MemoryConsumer newAggrCacheConsumer(final String consumerName) {
+        return new MemoryBudgetController.MemoryConsumer() {
             @Override
             public int freeUp(int mb) {
                 return 0; // cannot free up on demand
@@ -384,25 +353,108 @@ public class InMemCubeBuilder extends AbstractInMemCubeBuilder {
                 return consumerName;
             }
         };
+    }
 
-        // reserve memory for aggregation cache, can't be larger than the parent
-        memBudget.reserveInsist(consumer, parent.aggrCacheMB);
+    /**
+     * The parent is sorted by its first column, so are the children that keep it. Cut at the split offsets of the
+     * parent, no child key spans two ranges and the aggregated ranges can simply be concatenated.
+     */
+    private List<long[]> splitRanges(CuboidResult parent, ImmutableBitSet aggregationColumns) {
+        List<long[]> ranges = Lists.newArrayList();
+        List<Long> splits = parent.table.getStore() instanceof ConcurrentDiskStore ? ((ConcurrentDiskStore) parent.table.getStore()).getSplitOffsets() : null;
+        if (splits == null || splits.isEmpty() || !aggregationColumns.get(0)) {
+            ranges.add(new long[] { 0, -1 });
+            return ranges;
+        }
+
+        long start = 0;
+        for (Long split : splits) {
+            ranges.add(new long[] { start, split });
+            start = split;
+        }
+        ranges.add(new long[] { start, -1 });
+        return ranges;
+    }
+
+    private CuboidResult aggregateCuboidByRanges(final CuboidResult parent, final long cuboidId, final ImmutableBitSet aggregationColumns, final ImmutableBitSet measureColumns, List<long[]> ranges) throws IOException {
+        long startTime = System.currentTimeMillis();
+        logger.info("Calculating cuboid " + cuboidId + " in " + ranges.size() + " key ranges");
+
+        final ConcurrentDiskStore parentStore = (ConcurrentDiskStore) parent.table.getStore();
+        final long parentLength = parentStore.getLength();
+        final GridTable[] parts = new GridTable[ranges.size()];
+        List<RecursiveAction> tasks = Lists.newArrayListWithCapacity(ranges.size());
+        for (int i = 0; i < ranges.size(); i++) {
+            final int partId = i;
+            final long rangeStart = ranges.get(i)[0];
+            final long rangeEnd = ranges.get(i)[1] < 0 ? parentLength : ranges.get(i)[1];
+            tasks.add(new RecursiveAction() {
+                @Override
+                protected void compute() {
+                    MemoryBudgetController.MemoryConsumer consumer = newAggrCacheConsumer("AggrCache@Cuboid " + cuboidId + " range " + partId);
+
+                    // the aggregation cache of a range is about its share of the parent's
+                    int mb = (int) Math.max(1, Math.ceil((double) parent.aggrCacheMB * (rangeEnd - rangeStart) / Math.max(1, parentLength)));
+                    try {
+                        memBudget.reserveInsist(consumer, mb);
+                        try {
+                            GTScanRequest req = newAggregationRequest(parent.table.getInfo(), aggregationColumns, measureColumns);
+                            GTAggregateScanner scanner = newAggregationScanner(req, parentStore.scan(rangeStart, rangeEnd), parent.cuboidId, cuboidId);
+                            parts[partId] = newGridTableByCuboidID(cuboidId);
+                            if (parts[partId].getStore() instanceof MemDiskStore)
+                                ((MemDiskStore) parts[partId].getStore()).setPendingReads(1);
+                            writeAggregated(scanner, aggregationColumns.or(measureColumns), parts[partId]);
+                        } finally {
+                            memBudget.reserve(consumer, 0);
+                        }
+                    } catch (IOException e) {
+                        throw new RuntimeException(e);
+                    }
+                }
+            });
+        }
+
+        GridTable newGridTable = newGridTableByCuboidID(cuboidId);
+        int count = 0;
         try {
-            return aggregateCuboid(parent, cuboidId);
+            ForkJoinTask.invokeAll(tasks);
+
+            GTBuilder builder = newGridTable.rebuild();
+            try {
+                for (GridTable part : parts) {
+                    IGTScanner scanner = part.scan(new GTScanRequestBuilder().setInfo(part.getInfo()).setRanges(null).setDimensions(null).setFilterPushDown(null).createGTScanRequest());
+                    try {
+                        for (GTRecord record : scanner) {
+                            builder.write(record);
+                            count++;
+                        }
+                    } finally {
+                        scanner.close();
+                    }
+                }
+            } finally {
+                builder.close();
+            }
         } finally {
-            memBudget.reserve(consumer, 0);
+            for (GridTable part : parts) {
+                if (part != null)
+                    part.close();
+            }
         }
+
+        long timeSpent = System.currentTimeMillis() - startTime;
+        logger.info("Cuboid " + cuboidId + " has " + count + " rows, build takes " + timeSpent + "ms");
+
+        return updateCuboidResult(cuboidId, newGridTable, count, timeSpent, 0);
     }
 
-    private CuboidResult aggregateCuboid(CuboidResult parent, long cuboidId) throws IOException {
-        final Pair<ImmutableBitSet, ImmutableBitSet> allNeededColumns = InMemCubeBuilderUtils.getDimensionAndMetricColumnBitSet(parent.cuboidId, cuboidId, measureCount);
-        return scanAndAggregateGridTable(parent.table, parent.cuboidId, cuboidId, allNeededColumns.getFirst(), allNeededColumns.getSecond());
+    private GTScanRequest newAggregationRequest(GTInfo info, ImmutableBitSet aggregationColumns, ImmutableBitSet measureColumns) {
+        return new GTScanRequestBuilder().setInfo(info).setRanges(null).setDimensions(null).setAggrGroupBy(aggregationColumns).setAggrMetrics(measureColumns).setAggrMetricsFuncs(metricsAggrFuncs).setFilterPushDown(null).setAllowHashAggregation(allowHashAggregation).createGTScanRequest();
     }
 
-    private GTAggregateScanner prepareGTAggregationScanner(GridTable gridTable, long parentId, long cuboidId, ImmutableBitSet aggregationColumns, ImmutableBitSet measureColumns) throws IOException {
-        GTInfo info = gridTable.getInfo();
-        GTScanRequest req = new GTScanRequestBuilder().setInfo(info).setRanges(null).setDimensions(null).setAggrGroupBy(aggregationColumns).setAggrMetrics(measureColumns).setAggrMetricsFuncs(metricsAggrFuncs).setFilterPushDown(null).createGTScanRequest();
-        GTAggregateScanner scanner = (GTAggregateScanner) gridTable.scan(req);
+    private GTAggregateScanner newAggregationScanner(GTScanRequest req, IGTScanner input, long parentId, long cuboidId) throws IOException {
+        GTAggregateScanner scanner = (GTAggregateScanner) req.decorateScanner(input);
+        scanner.setSortedOutput(true);
 
         // for child cuboid, some measures don't need aggregation.
         if (parentId != cuboidId) {
@@ -424,12 +476,23 @@ public class InMemCubeBuilder extends AbstractInMemCubeBuilder {
         long startTime = System.currentTimeMillis();
         logger.info("Calculating cuboid " + cuboidId);
 
-        GTAggregateScanner scanner = prepareGTAggregationScanner(gridTable, parentId, cuboidId, aggregationColumns, measureColumns);
+        GTScanRequest req = newAggregationRequest(gridTable.getInfo(), aggregationColumns, measureColumns);
+        GTAggregateScanner scanner = newAggregationScanner(req, gridTable.getStore().scan(req), parentId, cuboidId);
         GridTable newGridTable = newGridTableByCuboidID(cuboidId);
-        GTBuilder builder = newGridTable.rebuild();
+        int count = writeAggregated(scanner, aggregationColumns.or(measureColumns), newGridTable);
+
+        //long t = System.currentTimeMillis();
+        //sanityCheck(parentId, cuboidId, scanner.getTotalSumForSanityCheck());
+        //logger.info("sanity check for Cuboid " + cuboidId + " cost " + (System.currentTimeMillis() - t) + "ms");
+
+        long timeSpent = System.currentTimeMillis() - startTime;
+        logger.info("Cuboid " + cuboidId + " has " + count + " rows, build takes " + timeSpent + "ms");
 
-        ImmutableBitSet allNeededColumns = aggregationColumns.or(measureColumns);
+        return updateCuboidResult(cuboidId, newGridTable, count, timeSpent, 0);
+    }
 
+    private int writeAggregated(GTAggregateScanner scanner, ImmutableBitSet allNeededColumns, GridTable newGridTable) throws IOException {
+        GTBuilder builder = newGridTable.rebuild();
         GTRecord newRecord = new GTRecord(newGridTable.getInfo());
         int count = 0;
         try {
@@ -441,19 +504,11 @@ public class InMemCubeBuilder extends AbstractInMemCubeBuilder {
                 }
                 builder.write(newRecord);
             }
-
-            //long t = System.currentTimeMillis();
-            //sanityCheck(parentId, cuboidId, scanner.getTotalSumForSanityCheck());
-            //logger.info("sanity check for Cuboid " + cuboidId + " cost " + (System.currentTimeMillis() - t) + "ms");
         } finally {
             scanner.close();
             builder.close();
         }
-
-        long timeSpent = System.currentTimeMillis() - startTime;
-        logger.info("Cuboid " + cuboidId + " has " + count + " rows, build takes " + timeSpent + "ms");
-
-        return updateCuboidResult(cuboidId, newGridTable, count, timeSpent, 0);
+        return count;
     }
 
     @SuppressWarnings({ "unused", "rawtypes", "unchecked" })
@@ -489,7 +544,7 @@ public class InMemCubeBuilder extends AbstractInMemCubeBuilder {
 
     // ===========================================================================
 
-    private static class CuboidTask implements Comparable<CuboidTask> {
+    private class CuboidTask extends RecursiveAction {
         final CuboidResult parent;
         final long childCuboidId;
 
@@ -499,9 +554,15 @@ public class InMemCubeBuilder extends AbstractInMemCubeBuilder {
         }
 
         @Override
-        public int compareTo(CuboidTask o) {
-            long comp = this.childCuboidId - o.childCuboidId;
-            return comp < 0 ? -1 : (comp > 0 ? 1 : 0);
+        protected void compute() {
+            CuboidResult newCuboid;
+            try {
+                newCuboid = buildCuboid(parent, childCuboidId);
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+            markChildDone(parent);
+            invokeChildTasks(newCuboid);
         }
     }
 
@@ -510,38 +571,55 @@ public class InMemCubeBuilder extends AbstractInMemCubeBuilder {
     private class InputConverter implements IGTScanner {
         GTInfo info;
         GTRecord record;
-        BlockingQueue<List<String>> input;
-        final InMemCubeBuilderInputConverter inMemCubeBuilderInputConverter;
+        BlockingQueue<EncodedRowBatch> input;
 
-        public InputConverter(GTInfo info, BlockingQueue<List<String>> input) {
+        public InputConverter(GTInfo info, BlockingQueue<EncodedRowBatch> input) {
             this.info = info;
             this.input = input;
             this.record = new GTRecord(info);
-            this.inMemCubeBuilderInputConverter = new InMemCubeBuilderInputConverter(cubeDesc, flatDesc, dictionaryMap, info);
         }
 
         @Override
         public Iterator<GTRecord> iterator() {
             return new Iterator<GTRecord>() {
 
-                List<String> currentObject = null;
+                EncodedRowBatch currentBatch = null;
+                ByteBuffer currentBuf = null;
 
                 @Override
                 public boolean hasNext() {
+                    if (currentBuf != null && currentBuf.hasRemaining())
+                        return true;
+
+                    // the previous record refers the batch buffer, only recycle it now it's done
+                    if (currentBatch != null) {
+                        currentBatch.recycle();
+                        currentBatch = null;
+                        currentBuf = null;
+                    }
+
+                    EncodedRowBatch batch;
                     try {
-                        currentObject = input.take();
+                        batch = input.take();
                     } catch (InterruptedException e) {
                         throw new RuntimeException(e);
                     }
-                    return currentObject != null && currentObject.size() > 0;
+                    if (batch.getError() != null)
+                        throw new RuntimeException("Error encoding input", batch.getError());
+                    if (batch.isEmpty())
+                        return false;
+
+                    currentBatch = batch;
+                    currentBuf = batch.bufferForRead();
+                    return true;
                 }
 
                 @Override
                 public GTRecord next() {
-                    if (currentObject.size() == 0)
+                    if (currentBuf == null || !currentBuf.hasRemaining())
                         throw new IllegalStateException();
 
-                    inMemCubeBuilderInputConverter.convert(currentObject, record);
+                    record.loadColumns(info.getAllColumns(), currentBuf);
                     return record;
                 }
 
@@ -17,9 +17,11 @@
 */
 package org.apache.kylin.cube.inmemcubing;
 
+import java.nio.ByteBuffer;
 import java.util.List;
 import java.util.Map;
 
+import org.apache.kylin.common.util.ByteArray;
 import org.apache.kylin.common.util.Bytes;
 import org.apache.kylin.common.util.Dictionary;
 import org.apache.kylin.cube.model.CubeDesc;
@@ -49,6 +51,9 @@ public class InMemCubeBuilderInputConverter {
     private final GTInfo gtInfo;
     protected List<byte[]> nullBytes;
 
+    private GTRecord reuseRecord;
+    private ByteArray reuseSpace;
+
     public InMemCubeBuilderInputConverter(CubeDesc cubeDesc, IJoinedFlatTableDesc flatDesc, Map<TblColRef, Dictionary<String>> dictionaryMap, GTInfo gtInfo) {
         this.gtInfo = gtInfo;
         this.flatDesc = new CubeJoinedFlatTableEnrich(flatDesc, cubeDesc);
@@ -74,6 +79,25 @@ public class InMemCubeBuilderInputConverter {
         record.setValues(recordValues);
     }
 
+    /** encodes the row as a record of the given GTInfo and appends it to the batch */
+    public final void encode(List<String> row, EncodedRowBatch batch) {
+        if (reuseRecord == null) {
+            reuseRecord = new GTRecord(gtInfo);
+            reuseSpace = new ByteArray(gtInfo.getMaxRecordLength());
+        }
+
+        Object[] dimensions = buildKey(row);
+        Object[] metricsValues = buildValue(row);
+        Object[] recordValues = new Object[dimensions.length + metricsValues.length];
+        System.arraycopy(dimensions, 0, recordValues, 0, dimensions.length);
+        System.arraycopy(metricsValues, 0, recordValues, dimensions.length, metricsValues.length);
+        reuseRecord.setValues(gtInfo.getAllColumns(), reuseSpace, recordValues);
+
+        ByteBuffer buf = batch.bufferForRow(reuseRecord.sizeOf(gtInfo.getAllColumns()));
+        reuseRecord.exportColumns(gtInfo.getAllColumns(), buf);
+        batch.rowWritten();
+    }
+
     private Object[] buildKey(List<String> row) {
         int keySize = flatDesc.getRowKeyColumnIndexes().length;
         Object[] key = new Object[keySize];
@@ -34,10 +34,11 @@ import java.nio.channels.FileChannel;
 import java.nio.file.StandardOpenOption;
 import java.util.Iterator;
 import java.util.NoSuchElementException;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.apache.kylin.common.util.MemoryBudgetController;
-import org.apache.kylin.common.util.MemoryBudgetController.MemoryConsumer;
 import org.apache.kylin.common.util.MemoryBudgetController.NotEnoughBudgetException;
+import org.apache.kylin.common.util.MemoryBudgetController.SpillableConsumer;
 import org.apache.kylin.gridtable.GTInfo;
 import org.apache.kylin.gridtable.GTRecord;
 import org.apache.kylin.gridtable.GTScanRequest;
@@ -47,6 +48,11 @@ import org.apache.kylin.gridtable.IGTWriter;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+/**
+ * A store that keeps its content in memory as far as the budget permits, and on disk as well. Memory chunks are flushed
+ * to disk at the background, so they can be freed up whenever the budget runs short. Once the budget is out during a
+ * write, the rest goes to disk by an AsyncSpillWriter.
+ */
 public class MemDiskStore implements IGTStore, Closeable {
 
     private static final Logger logger = LoggerFactory.getLogger(MemDiskStore.class);
@@ -54,6 +60,7 @@ public class MemDiskStore implements IGTStore, Closeable {
 
     private static final int STREAM_BUFFER_SIZE = 8192;
     private static final int MEM_CHUNK_SIZE_MB = 5;
+    private static final int SPILL_BLOCK_SIZE = 1024 * 1024;
 
     private final GTInfo info;
     private final Object lock; // all public methods that read/write object states are synchronized on this lock
@@ -62,6 +69,8 @@ public class MemDiskStore implements IGTStore, Closeable {
     private final boolean delOnClose;
 
     private Writer ongoingWriter;
+    private SpillStats spillStats = new SpillStats();
+    private final AtomicInteger pendingReads = new AtomicInteger(0);
 
     public MemDiskStore(GTInfo info, MemoryBudgetController budgetCtrl) throws IOException {
         this(info, budgetCtrl, File.createTempFile("MemDiskStore", ""), true);
@@ -115,6 +124,22 @@ public class MemDiskStore implements IGTStore, Closeable {
         }
     }
 
+    public void setSpillStats(SpillStats spillStats) {
+        this.spillStats = spillStats;
+    }
+
+    /**
+     * Number of scans still expected on this store. When memory runs short, stores expecting fewer scans are freed up
+     * first, see MemoryBudgetController.SpillableConsumer.
+     */
+    public void setPendingReads(int n) {
+        pendingReads.set(n);
+    }
+
+    public void decPendingReads() {
+        pendingReads.decrementAndGet();
+    }
+
     @Override
     public void close() throws IOException {
         // synchronized inside the parts close()
@@ -294,6 +319,7 @@ public class MemDiskStore implements IGTStore, Closeable {
         long diskWrite = 0;
         int nWriteCalls;
         boolean closed = false;
+        AsyncSpillWriter diskSpill; // takes the writes once memory is out
 
         Writer(long startOffset) throws IOException {
             buf = ByteBuffer.allocate(info.getMaxRecordLength());
@@ -329,7 +355,10 @@ public class MemDiskStore implements IGTStore, Closeable {
                                 memPartActivated = false;
                             }
                         } else {
-                            n = diskPart.write(writeOffset, bytes, offset, length);
+                            if (diskSpill == null)
+                                diskSpill = diskPart.newSpillWriter(writeOffset);
+                            diskSpill.write(bytes, offset, length);
+                            n = length;
                             diskWrite += n;
                         }
                         offset += n;
@@ -357,6 +386,10 @@ public class MemDiskStore implements IGTStore, Closeable {
                 if (!closed) {
                     dout.close();
                     memPart.deactivateMemWrite();
+                    if (diskSpill != null) {
+                        diskSpill.close();
+                        diskPart.spillWritten(diskSpill.getFileOffset());
+                    }
                 }
 
                 if (memPart.asyncFlusher == null) {
@@ -396,7 +429,7 @@ public class MemDiskStore implements IGTStore, Closeable {
         }
     }
 
-    private class MemPart implements Closeable, MemoryConsumer {
+    private class MemPart implements Closeable, SpillableConsumer {
 
         final MemoryBudgetController budgetCtrl;
 
@@ -559,6 +592,7 @@ public class MemDiskStore implements IGTStore, Closeable {
                         break;
 
                     mbReleased += MEM_CHUNK_SIZE_MB;
+                    spillStats.addEvicted(firstChunk.length);
                     chunkCount--;
                     if (chunkCount == 0) {
                         firstChunk = lastChunk = null;
@@ -572,6 +606,11 @@ public class MemDiskStore implements IGTStore, Closeable {
             }
         }
 
+        @Override
+        public int getPendingReads() {
+            return pendingReads.get();
+        }
+
         public void activateMemWrite() {
             if (budgetCtrl.getTotalBudgetMB() > 0) {
                 writeActivated = true;
@@ -685,6 +724,17 @@ public class MemDiskStore implements IGTStore, Closeable {
             }
         }
 
+        public AsyncSpillWriter newSpillWriter(long diskOffset) {
+            return new AsyncSpillWriter(writeChannel, diskOffset, SPILL_BLOCK_SIZE, false, spillStats, memPart.budgetCtrl);
+        }
+
+        // the spill writer bypasses write(), catch up the tail once it's done
+        public void spillWritten(long tail) {
+            synchronized (lock) {
+                tailOffset = Math.max(tail, tailOffset);
+            }
+        }
+
         public void closeWrite() throws IOException {
             if (writeChannel != null) {
                 writeChannel.close();
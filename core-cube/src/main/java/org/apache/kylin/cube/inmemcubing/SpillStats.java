@@ -0,0 +1,70 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+*/
+
+package org.apache.kylin.cube.inmemcubing;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Spill numbers of the disk stores of a cube build, shared by all stores of the build and safe to update concurrently.
+ */
+public class SpillStats {
+
+    private final AtomicLong spilledBytes = new AtomicLong();
+    private final AtomicLong spilledDiskBytes = new AtomicLong();
+    private final AtomicLong stallNanos = new AtomicLong();
+    private final AtomicLong evictedBytes = new AtomicLong();
+
+    void addSpill(long rawBytes, long diskBytes) {
+        spilledBytes.addAndGet(rawBytes);
+        spilledDiskBytes.addAndGet(diskBytes);
+    }
+
+    void addStall(long nanos) {
+        stallNanos.addAndGet(nanos);
+    }
+
+    void addEvicted(long bytes) {
+        evictedBytes.addAndGet(bytes);
+    }
+
+    /** Bytes written to disk stores, before compression. */
+    public long getSpilledBytes() {
+        return spilledBytes.get();
+    }
+
+    /** Bytes written to disk stores, after compression. */
+    public long getSpilledDiskBytes() {
+        return spilledDiskBytes.get();
+    }
+
+    /** Time the cuboid writers waited for the previous block to reach disk. */
+    public long getStallMillis() {
+        return stallNanos.get() / 1000000;
+    }
+
+    /** Bytes of memory stores released to the memory budget, readers go to disk for them afterwards. */
+    public long getEvictedBytes() {
+        return evictedBytes.get();
+    }
+
+    @Override
+    public String toString() {
+        return "spilled " + getSpilledBytes() + " bytes (" + getSpilledDiskBytes() + " on disk), stalled " + getStallMillis() + " ms, evicted " + getEvictedBytes() + " bytes";
+    }
+}
@@ -43,7 +43,10 @@ import org.apache.kylin.common.util.MemoryBudgetController.MemoryWaterLevel;
 import org.apache.kylin.measure.BufferedMeasureCodec;
 import org.apache.kylin.measure.MeasureAggregator;
 import org.apache.kylin.measure.MeasureAggregators;
+import org.apache.kylin.measure.basic.PrimitiveMeasureAggregators;
 import org.apache.kylin.metadata.datatype.DataType;
+import org.apache.kylin.metadata.datatype.DoubleMutable;
+import org.apache.kylin.metadata.datatype.LongMutable;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -55,6 +58,8 @@ public class GTAggregateScanner implements IGTScanner {
 
     private static final Logger logger = LoggerFactory.getLogger(GTAggregateScanner.class);
 
+    private static final int HASH_AGGR_BATCH_SIZE = 1024;
+
     final GTInfo info;
     final ImmutableBitSet dimensions; // dimensions to return, can be more than group by
     final ImmutableBitSet groupBy;
@@ -65,10 +70,12 @@ public class GTAggregateScanner implements IGTScanner {
     final long spillThreshold;
     final int storagePushDownLimit;//default to be Int.MAX
     final long deadline;
+    final boolean allowHashAggregation;
 
     private int aggregatedRowCount = 0;
     private MemoryWaterLevel memTracker;
     private boolean[] aggrMask;
+    private boolean sortedOutput = false;
 
     public GTAggregateScanner(IGTScanner inputScanner, GTScanRequest req, long deadline) {
         if (!req.hasAggregation())
@@ -85,6 +92,7 @@ public class GTAggregateScanner implements IGTScanner {
         this.aggrMask = new boolean[metricsAggrFuncs.length];
         this.storagePushDownLimit = req.getStoragePushDownLimit();
         this.deadline = deadline;
+        this.allowHashAggregation = req.isAllowHashAggregation();
 
         Arrays.fill(aggrMask, true);
     }
@@ -113,6 +121,11 @@ public class GTAggregateScanner implements IGTScanner {
         return (bytes.length + 7) / 8 * 8 + 4 + (4 /* extra */);
     }
 
+    /** hash aggregation returns groups in no particular order unless asked to */
+    public void setSortedOutput(boolean sortedOutput) {
+        this.sortedOutput = sortedOutput;
+    }
+
     public void trackMemoryLevel(MemoryWaterLevel tracker) {
         this.memTracker = tracker;
     }
@@ -179,6 +192,7 @@ public class GTAggregateScanner implements IGTScanner {
         final int keyLength;
         final boolean[] compareMask;
         final BufferedMeasureCodec measureCodec;
+        final byte[] keyBuf;
 
         final Comparator<byte[]> bytesComparator = new Comparator<byte[]>() {
             @Override
@@ -204,12 +218,49 @@ public class GTAggregateScanner implements IGTScanner {
 
         SortedMap<byte[], MeasureAggregator[]> aggBufMap;
 
+        // non-null when all measures have fixed width states, then groups go to hashBuffer instead of aggBufMap
+        PrimitiveMeasureAggregators.Kind[] fixedWidthAggrs;
+        HashAggregationBuffer hashBuffer;
+        boolean modeDecided = false;
+
+        // values for existing groups are collected column by column and aggregated in batches
+        int[] batchGroups;
+        long[][] batchLongs;
+        double[][] batchDoubles;
+        int batchSize = 0;
+
         public AggregationCache() {
             compareMask = createCompareMask();
             keyLength = compareMask.length;
             dumps = Lists.newArrayList();
             aggBufMap = createBuffMap();
             measureCodec = createMeasureCodec();
+            keyBuf = new byte[keyLength];
+        }
+
+        // aggrMask may be set after construction, so decide on the first record
+        private void decideMode() {
+            modeDecided = true;
+            if (!allowHashAggregation)
+                return;
+            for (boolean m : aggrMask) {
+                if (!m)
+                    return;
+            }
+            fixedWidthAggrs = PrimitiveMeasureAggregators.kindsOf(newAggregators());
+            if (fixedWidthAggrs != null) {
+                hashBuffer = new HashAggregationBuffer(compareMask, fixedWidthAggrs);
+                batchGroups = new int[HASH_AGGR_BATCH_SIZE];
+                batchLongs = new long[fixedWidthAggrs.length][];
+                batchDoubles = new double[fixedWidthAggrs.length][];
+                for (int i = 0; i < fixedWidthAggrs.length; i++) {
+                    if (fixedWidthAggrs[i].isLong())
+                        batchLongs[i] = new long[HASH_AGGR_BATCH_SIZE];
+                    else
+                        batchDoubles[i] = new double[HASH_AGGR_BATCH_SIZE];
+                }
+                logger.info("AggregationCache uses hash aggregation");
+            }
         }
 
         private BufferedMeasureCodec createMeasureCodec() {
@@ -248,14 +299,15 @@ public class GTAggregateScanner implements IGTScanner {
             return Maps.newTreeMap(bytesComparator);
         }
 
-        private byte[] createKey(GTRecord record) {
-            byte[] result = new byte[keyLength];
+        private byte[] createKey(GTRecord record, byte[] result) {
             int offset = 0;
             for (int i = 0; i < dimensions.trueBitCount(); i++) {
                 int c = dimensions.trueBitAt(i);
                 final ByteArray byteArray = record.cols[c];
                 final int columnLength = info.codeSystem.maxCodeLength(c);
                 System.arraycopy(byteArray.array(), byteArray.offset(), result, offset, byteArray.length());
+                // result may be reused, clear the padding
+                Arrays.fill(result, offset + byteArray.length(), offset + columnLength, (byte) 0);
                 offset += columnLength;
             }
             assert offset == result.length;
@@ -275,7 +327,12 @@ public class GTAggregateScanner implements IGTScanner {
                 }
             }
 
-            final byte[] key = createKey(r);
+            if (!modeDecided)
+                decideMode();
+            if (hashBuffer != null)
+                return aggregateByHash(r, stopForLimit);
+
+            final byte[] key = createKey(r, new byte[keyLength]);
             MeasureAggregator[] aggrs = aggBufMap.get(key);
             if (aggrs == null) {
 
@@ -297,15 +354,64 @@ public class GTAggregateScanner implements IGTScanner {
             return true;
         }
 
+        private boolean aggregateByHash(GTRecord r, int stopForLimit) {
+            int newGroup = hashBuffer.size();
+            int g = hashBuffer.findOrInsert(createKey(r, keyBuf), stopForLimit);
+            if (g < 0) {
+                //for storage push down limit
+                return false;
+            }
+            if (g == newGroup) {
+                PrimitiveMeasureAggregators states = hashBuffer.states();
+                for (int i = 0; i < fixedWidthAggrs.length; i++) {
+                    int col = metrics.trueBitAt(i);
+                    states.init(g, i, info.codeSystem.decodeColumnValue(col, r.cols[col].asBuffer()));
+                }
+                return true;
+            }
+
+            batchGroups[batchSize] = g;
+            for (int i = 0; i < fixedWidthAggrs.length; i++) {
+                int col = metrics.trueBitAt(i);
+                Object metrics = info.codeSystem.decodeColumnValue(col, r.cols[col].asBuffer());
+                if (fixedWidthAggrs[i].isLong())
+                    batchLongs[i][batchSize] = ((LongMutable) metrics).get();
+                else
+                    batchDoubles[i][batchSize] = ((DoubleMutable) metrics).get();
+            }
+            if (++batchSize == HASH_AGGR_BATCH_SIZE)
+                flushBatch();
+            return true;
+        }
+
+        private void flushBatch() {
+            if (batchSize == 0)
+                return;
+
+            PrimitiveMeasureAggregators states = hashBuffer.states();
+            for (int i = 0; i < fixedWidthAggrs.length; i++) {
+                if (fixedWidthAggrs[i].isLong())
+                    states.aggregateLongs(i, batchGroups, batchLongs[i], batchSize);
+                else
+                    states.aggregateDoubles(i, batchGroups, batchDoubles[i], batchSize);
+            }
+            batchSize = 0;
+        }
+
         private void spillBuffMap() throws RuntimeException {
-            if (aggBufMap.isEmpty())
+            if (hashBuffer != null)
+                flushBatch();
+            if (aggBufMap.isEmpty() && (hashBuffer == null || hashBuffer.size() == 0))
                 return;
 
             try {
-                Dump dump = new Dump(aggBufMap);
+                Dump dump = hashBuffer != null ? new Dump(hashBuffer) : new Dump(aggBufMap);
                 dump.flush();
                 dumps.add(dump);
-                aggBufMap = createBuffMap();
+                if (hashBuffer != null)
+                    hashBuffer = new HashAggregationBuffer(compareMask, fixedWidthAggrs);
+                else
+                    aggBufMap = createBuffMap();
             } catch (Exception e) {
                 throw new RuntimeException("AggregationCache spill failed: " + e.getMessage());
             }
@@ -327,6 +433,8 @@ public class GTAggregateScanner implements IGTScanner {
         }
 
         public long estimatedMemSize() {
+            if (hashBuffer != null)
+                return hashBuffer.memoryBytes();
             if (aggBufMap.isEmpty())
                 return 0;
 
@@ -336,7 +444,37 @@ public class GTAggregateScanner implements IGTScanner {
         }
 
         public Iterator<GTRecord> iterator() {
-            if (dumps.isEmpty()) {
+            if (hashBuffer != null)
+                flushBatch();
+
+            if (dumps.isEmpty() && hashBuffer != null) {
+                // the all-in-mem hash case, sort only when a limit or the caller asks for key order
+
+                return new Iterator<GTRecord>() {
+                    final int[] order = storagePushDownLimit != Integer.MAX_VALUE || sortedOutput ? hashBuffer.sortedGroups() : null;
+                    final int size = hashBuffer.size();
+                    final ReturningRecord returningRecord = new ReturningRecord();
+                    int i = 0;
+
+                    @Override
+                    public boolean hasNext() {
+                        return i < size;
+                    }
+
+                    @Override
+                    public GTRecord next() {
+                        int g = order == null ? i : order[i];
+                        i++;
+                        returningRecord.load(hashBuffer, g);
+                        return returningRecord.record;
+                    }
+
+                    @Override
+                    public void remove() {
+                        throw new UnsupportedOperationException();
+                    }
+                };
+            } else if (dumps.isEmpty()) {
                 // the all-in-mem case
 
                 return new Iterator<GTRecord>() {
@@ -397,22 +535,33 @@ public class GTAggregateScanner implements IGTScanner {
             final Object[] tmpValues = new Object[metrics.trueBitCount()];
 
             void load(byte[] key, MeasureAggregator[] value) {
-                int offset = 0;
+                loadKey(key, 0);
+                for (int i = 0; i < value.length; i++) {
+                    tmpValues[i] = value[i].getState();
+                }
+                loadMeasures();
+            }
+
+            void load(HashAggregationBuffer buffer, int group) {
+                loadKey(buffer.keyArray(), buffer.keyOffset(group));
+                buffer.states().loadStates(group, tmpValues);
+                loadMeasures();
+            }
+
+            private void loadKey(byte[] key, int offset) {
                 for (int i = 0; i < dimensions.trueBitCount(); i++) {
                     int c = dimensions.trueBitAt(i);
                     final int columnLength = info.codeSystem.maxCodeLength(c);
                     record.cols[c].set(key, offset, columnLength);
                     offset += columnLength;
                 }
+            }
 
-                for (int i = 0; i < value.length; i++) {
-                    tmpValues[i] = value[i].getState();
-                }
-
+            private void loadMeasures() {
                 byte[] bytes = measureCodec.encode(tmpValues).array();
                 int[] sizes = measureCodec.getMeasureSizes();
-                offset = 0;
-                for (int i = 0; i < value.length; i++) {
+                int offset = 0;
+                for (int i = 0; i < tmpValues.length; i++) {
                     int col = metrics.trueBitAt(i);
                     record.cols[col].set(bytes, offset, sizes[i]);
                     offset += sizes[i];
@@ -424,11 +573,16 @@ public class GTAggregateScanner implements IGTScanner {
             File dumpedFile;
             DataInputStream dis;
             SortedMap<byte[], MeasureAggregator[]> buffMap;
+            HashAggregationBuffer hashBuffer;
 
             public Dump(SortedMap<byte[], MeasureAggregator[]> buffMap) throws IOException {
                 this.buffMap = buffMap;
             }
 
+            public Dump(HashAggregationBuffer hashBuffer) throws IOException {
+                this.hashBuffer = hashBuffer;
+            }
+
             @Override
             public Iterator<Pair<byte[], byte[]>> iterator() {
                 try {
@@ -496,11 +650,34 @@ public class GTAggregateScanner implements IGTScanner {
                         buffMap = null;
                         IOUtils.closeQuietly(dos);
                     }
+                } else if (hashBuffer != null) {
+                    DataOutputStream dos = null;
+                    Object[] aggrResult = new Object[metrics.trueBitCount()];
+                    try {
+                        dumpedFile = File.createTempFile("KYLIN_AGGR_", ".tmp");
+
+                        logger.info("AggregationCache will dump to file: " + dumpedFile.getAbsolutePath());
+                        dos = new DataOutputStream(new FileOutputStream(dumpedFile));
+                        dos.writeInt(hashBuffer.size());
+                        // dumps are merge sorted, so write groups in key order
+                        for (int g : hashBuffer.sortedGroups()) {
+                            hashBuffer.states().loadStates(g, aggrResult);
+                            ByteBuffer metricsBuf = measureCodec.encode(aggrResult);
+                            dos.writeInt(keyLength);
+                            dos.write(hashBuffer.keyArray(), hashBuffer.keyOffset(g), keyLength);
+                            dos.writeInt(metricsBuf.position());
+                            dos.write(metricsBuf.array(), 0, metricsBuf.position());
+                        }
+                    } finally {
+                        hashBuffer = null;
+                        IOUtils.closeQuietly(dos);
+                    }
                 }
             }
 
             public void terminate() throws IOException {
                 buffMap = null;
+                hashBuffer = null;
                 if (dis != null)
                     dis.close();
                 if (dumpedFile != null && dumpedFile.exists())
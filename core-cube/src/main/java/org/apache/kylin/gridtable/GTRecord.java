@@ -145,6 +145,23 @@ public class GTRecord implements Comparable<GTRecord>, Cloneable {
         return copy(info.colAll);
     }
 
+    /**
+     * Copies all columns into target, whose column bytes are kept in space from pos, which must have room
+     * for sizeOf(info.colAll). Returns the position in space after the copied bytes.
+     */
+    public int copyTo(GTRecord target, byte[] space, int pos) {
+        for (int c = 0; c < cols.length; c++) {
+            if (cols[c].array() == null) {
+                target.cols[c].set(null, 0, 0); // a column not loaded stays null in the copy
+                continue;
+            }
+            System.arraycopy(cols[c].array(), cols[c].offset(), space, pos, cols[c].length());
+            target.cols[c].set(space, pos, cols[c].length());
+            pos += cols[c].length();
+        }
+        return pos;
+    }
+
     public GTRecord copy(ImmutableBitSet selectedCols) {
         int len = sizeOf(selectedCols);
         byte[] space = new byte[len];
@@ -153,6 +170,8 @@ public class GTRecord implements Comparable<GTRecord>, Cloneable {
         int pos = 0;
         for (int i = 0; i < selectedCols.trueBitCount(); i++) {
             int c = selectedCols.trueBitAt(i);
+            if (cols[c].array() == null)
+                continue; // a column not loaded stays null in the copy
             System.arraycopy(cols[c].array(), cols[c].offset(), space, pos, cols[c].length());
             copy.cols[c].set(space, pos, cols[c].length());
             pos += cols[c].length();
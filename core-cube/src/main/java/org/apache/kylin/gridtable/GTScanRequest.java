@@ -68,13 +68,14 @@ public class GTScanRequest {
     private double aggCacheMemThreshold;
     private int storageScanRowNumThreshold;
     private int storagePushDownLimit;
+    private boolean allowHashAggregation;
 
     // runtime computed fields
     private transient boolean doingStorageAggregation = false;
 
     GTScanRequest(GTInfo info, List<GTScanRange> ranges, ImmutableBitSet dimensions, ImmutableBitSet aggrGroupBy, //
             ImmutableBitSet aggrMetrics, String[] aggrMetricsFuncs, TupleFilter filterPushDown, boolean allowStorageAggregation, //
-            double aggCacheMemThreshold, int storageScanRowNumThreshold, int storagePushDownLimit, String storageBehavior, long startTime, long timeout) {
+            double aggCacheMemThreshold, int storageScanRowNumThreshold, int storagePushDownLimit, String storageBehavior, long startTime, long timeout, boolean allowHashAggregation) {
         this.info = info;
         if (ranges == null) {
             this.ranges = Lists.newArrayList(new GTScanRange(new GTRecord(info), new GTRecord(info)));
@@ -95,6 +96,7 @@ public class GTScanRequest {
         this.aggCacheMemThreshold = aggCacheMemThreshold;
         this.storageScanRowNumThreshold = storageScanRowNumThreshold;
         this.storagePushDownLimit = storagePushDownLimit;
+        this.allowHashAggregation = allowHashAggregation;
 
         validate(info);
     }
@@ -292,6 +294,11 @@ public class GTScanRequest {
         return this.storagePushDownLimit;
     }
 
+    /** whether storage may aggregate fixed width measures in a hash table instead of a sorted map */
+    public boolean isAllowHashAggregation() {
+        return allowHashAggregation;
+    }
+
     public String getStorageBehavior() {
         return storageBehavior;
     }
@@ -347,6 +354,7 @@ public class GTScanRequest {
             BytesUtil.writeVLong(value.startTime, out);
             BytesUtil.writeVLong(value.timeout, out);
             BytesUtil.writeUTFString(value.storageBehavior, out);
+            BytesUtil.writeVInt(value.allowHashAggregation ? 1 : 0, out);
         }
 
         @Override
@@ -380,12 +388,14 @@ public class GTScanRequest {
             long startTime = BytesUtil.readVLong(in);
             long timeout = BytesUtil.readVLong(in);
             String storageBehavior = BytesUtil.readUTFString(in);
+            // absent in requests from older versions
+            boolean allowHashAggregation = in.hasRemaining() && BytesUtil.readVInt(in) == 1;
 
             return new GTScanRequestBuilder().setInfo(sInfo).setRanges(sRanges).setDimensions(sColumns).//
             setAggrGroupBy(sAggGroupBy).setAggrMetrics(sAggrMetrics).setAggrMetricsFuncs(sAggrMetricFuncs).//
             setFilterPushDown(sGTFilter).setAllowStorageAggregation(sAllowPreAggr).setAggCacheMemThreshold(sAggrCacheGB).//
             setStorageScanRowNumThreshold(storageScanRowNumThreshold).setStoragePushDownLimit(storagePushDownLimit).//
-            setStartTime(startTime).setTimeout(timeout).setStorageBehavior(storageBehavior).createGTScanRequest();
+            setStartTime(startTime).setTimeout(timeout).setStorageBehavior(storageBehavior).setAllowHashAggregation(allowHashAggregation).createGTScanRequest();
         }
 
         private void serializeGTRecord(GTRecord gtRecord, ByteBuffer out) {
@@ -0,0 +1,214 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.kylin.gridtable;
+
+import java.util.Arrays;
+
+import org.apache.kylin.measure.basic.PrimitiveMeasureAggregators;
+
+/**
+ * An open addressing hash table that aggregates fixed width measures (SUM/MIN/MAX on long and double).
+ * 
+ * Group keys and measure states are kept in flat primitive arrays instead of one byte[] plus one
+ * MeasureAggregator[] per group, so there is no per group object overhead and the memory footprint
+ * is exact rather than estimated. Only the key bytes selected by the compare mask take part in
+ * hashing, equality and ordering, same as the TreeMap based AggregationCache.
+ */
+class HashAggregationBuffer {
+
+    private static final int INIT_GROUP_CAPACITY = 1024;
+
+    private final int keyLength;
+    private final int[] comparePositions; // positions of key bytes that identify a group
+
+    private byte[] keys; // key of group g at [g * keyLength, (g + 1) * keyLength)
+    private final PrimitiveMeasureAggregators states;
+    private int[] hashes; // hash of group g
+    private int[] slots; // group index + 1, or 0 for an empty slot
+    private int size;
+
+    HashAggregationBuffer(boolean[] compareMask, PrimitiveMeasureAggregators.Kind[] kinds) {
+        this.keyLength = compareMask.length;
+        this.states = new PrimitiveMeasureAggregators(kinds, INIT_GROUP_CAPACITY);
+
+        int n = 0;
+        for (boolean m : compareMask) {
+            if (m)
+                n++;
+        }
+        this.comparePositions = new int[n];
+        n = 0;
+        for (int i = 0; i < compareMask.length; i++) {
+            if (compareMask[i])
+                comparePositions[n++] = i;
+        }
+
+        allocate(INIT_GROUP_CAPACITY);
+    }
+
+    private void allocate(int groupCapacity) {
+        keys = keys == null ? new byte[groupCapacity * keyLength] : Arrays.copyOf(keys, groupCapacity * keyLength);
+        states.ensureCapacity(groupCapacity);
+        hashes = hashes == null ? new int[groupCapacity] : Arrays.copyOf(hashes, groupCapacity);
+
+        // keep load factor no more than 0.5
+        slots = new int[groupCapacity * 2];
+        int mask = slots.length - 1;
+        for (int g = 0; g < size; g++) {
+            int pos = hashes[g] & mask;
+            while (slots[pos] != 0) {
+                pos = (pos + 1) & mask;
+            }
+            slots[pos] = g + 1;
+        }
+    }
+
+    int size() {
+        return size;
+    }
+
+    /** exact heap bytes held by the primitive arrays */
+    long memoryBytes() {
+        return keys.length + states.memoryBytes() + hashes.length * 4L + slots.length * 4L;
+    }
+
+    /**
+     * Return the index of the group that the key belongs to, a new group gets index equal to
+     * the previous size(). Return -1 if the key is new and there are already maxGroups groups.
+     */
+    int findOrInsert(byte[] key, int maxGroups) {
+        int h = hash(key);
+        int mask = slots.length - 1;
+        int pos = h & mask;
+        while (true) {
+            int g = slots[pos] - 1;
+            if (g < 0)
+                break;
+            if (hashes[g] == h && keyEquals(g, key))
+                return g;
+            pos = (pos + 1) & mask;
+        }
+
+        if (size >= maxGroups)
+            return -1;
+
+        int g = size++;
+        System.arraycopy(key, 0, keys, g * keyLength, keyLength);
+        hashes[g] = h;
+        slots[pos] = g + 1;
+        if (size == hashes.length)
+            allocate(hashes.length * 2);
+        return g;
+    }
+
+    /** measure states, indexed by the group indexes of this buffer */
+    PrimitiveMeasureAggregators states() {
+        return states;
+    }
+
+    /** array that holds the key of a group, starting from keyOffset(group) */
+    byte[] keyArray() {
+        return keys;
+    }
+
+    int keyOffset(int group) {
+        return group * keyLength;
+    }
+
+    /** group indexes in the order of their masked keys, same order as the TreeMap based cache */
+    int[] sortedGroups() {
+        int[] order = new int[size];
+        for (int g = 0; g < size; g++) {
+            order[g] = g;
+        }
+        sort(order, 0, size - 1);
+        return order;
+    }
+
+    private void sort(int[] a, int lo, int hi) {
+        while (lo < hi) {
+            if (hi - lo < 16) {
+                for (int i = lo + 1; i <= hi; i++) {
+                    int t = a[i];
+                    int j = i - 1;
+                    while (j >= lo && compareGroups(a[j], t) > 0) {
+                        a[j + 1] = a[j];
+                        j--;
+                    }
+                    a[j + 1] = t;
+                }
+                return;
+            }
+
+            int pivot = a[(lo + hi) >>> 1];
+            int i = lo, j = hi;
+            while (i <= j) {
+                while (compareGroups(a[i], pivot) < 0)
+                    i++;
+                while (compareGroups(a[j], pivot) > 0)
+                    j--;
+                if (i <= j) {
+                    int t = a[i];
+                    a[i] = a[j];
+                    a[j] = t;
+                    i++;
+                    j--;
+                }
+            }
+            // recurse into the smaller half to bound the stack depth
+            if (j - lo < hi - i) {
+                sort(a, lo, j);
+                lo = i;
+            } else {
+                sort(a, i, hi);
+                hi = j;
+            }
+        }
+    }
+
+    private int compareGroups(int g1, int g2) {
+        int o1 = g1 * keyLength;
+        int o2 = g2 * keyLength;
+        for (int p : comparePositions) {
+            int r = (keys[o1 + p] & 0xff) - (keys[o2 + p] & 0xff);
+            if (r != 0)
+                return r;
+        }
+        return 0;
+    }
+
+    private boolean keyEquals(int group, byte[] key) {
+        int offset = group * keyLength;
+        for (int p : comparePositions) {
+            if (keys[offset + p] != key[p])
+                return false;
+        }
+        return true;
+    }
+
+    private int hash(byte[] key) {
+        int h = 1;
+        for (int p : comparePositions) {
+            h = 31 * h + key[p];
+        }
+        // spread the high bits since slots are addressed by the low bits
+        h *= 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+}
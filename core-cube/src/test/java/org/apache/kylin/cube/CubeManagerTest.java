@@ -25,6 +25,7 @@ import static org.junit.Assert.assertTrue;
 import java.util.List;
 import java.util.Map;
 import java.util.NavigableSet;
+import java.util.concurrent.Future;
 
 import org.apache.kylin.common.KylinConfig;
 import org.apache.kylin.common.persistence.ResourceStore;
@@ -68,6 +69,19 @@ public class CubeManagerTest extends LocalFileMetadataTestCase {
         assertTrue(signature.equals(desc.calculateSignature()));
     }
 
+    @Test
+    public void testPrefetchSegment() throws Exception {
+        CubeManager cubeMgr = CubeManager.getInstance(getTestConfig());
+        CubeSegment segment = cubeMgr.getCube("test_kylin_cube_without_slr_ready").getSegments(SegmentStatusEnum.READY).get(0);
+
+        List<Future<?>> futures = cubeMgr.prefetchSegment(segment);
+        assertEquals(segment.getDictionaryPaths().size() + segment.getSnapshotPaths().size(), futures.size());
+        assertTrue(futures.size() > 0);
+        for (Future<?> f : futures) {
+            f.get();
+        }
+    }
+
     @Test
     public void testCreateAndDrop() throws Exception {
 
@@ -0,0 +1,102 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+*/
+
+package org.apache.kylin.cube.cuboid;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.HashSet;
+import java.util.LinkedList;
+import java.util.Map;
+import java.util.Random;
+
+import org.apache.kylin.common.util.LocalFileMetadataTestCase;
+import org.apache.kylin.cube.CubeDescManager;
+import org.apache.kylin.cube.model.CubeDesc;
+import org.apache.kylin.metadata.MetadataManager;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.google.common.collect.Maps;
+
+public class CostBasedCuboidPlannerTest extends LocalFileMetadataTestCase {
+
+    @Before
+    public void setUp() throws Exception {
+        this.createTestMetadata();
+        MetadataManager.clearCache();
+    }
+
+    @After
+    public void after() throws Exception {
+        this.cleanupTestMetadata();
+    }
+
+    @Test
+    public void testPlanKeepsCuboidsAndDepths() {
+        for (String name : new String[] { "test_kylin_cube_with_slr_desc", "test_kylin_cube_without_slr_desc", "ssb" }) {
+            CubeDesc cube = CubeDescManager.getInstance(getTestConfig()).getCubeDesc(name);
+            CuboidScheduler defaultScheduler = new CuboidScheduler(cube);
+
+            // rows shrink by a random factor per dimension removed
+            Random rand = new Random(name.hashCode());
+            Map<Long, Long> rows = Maps.newHashMap();
+            for (Long cuboid : defaultScheduler.getAllCuboidIds()) {
+                rows.put(cuboid, (long) (1000000 * Math.pow(0.5 + rand.nextDouble() / 2, Long.bitCount(~cuboid & Cuboid.getBaseCuboidId(cube)))));
+            }
+
+            CostBasedCuboidPlanner planner = new CostBasedCuboidPlanner(cube, rows);
+            Map<Long, Long> parents = planner.plan();
+            CuboidScheduler planned = new CuboidScheduler(cube, parents);
+            System.out.println(name + ": " + planner.getReport(parents));
+
+            assertEquals(new HashSet<Long>(defaultScheduler.getAllCuboidIds()), new HashSet<Long>(planned.getAllCuboidIds()));
+            assertEquals(getDepths(defaultScheduler, cube), getDepths(planned, cube));
+            assertTrue(planner.getPlannedRowsProcessed() <= planner.getDefaultRowsProcessed());
+            assertEquals(parents.isEmpty(), planner.getPlannedRowsProcessed() == planner.getDefaultRowsProcessed());
+            for (Map.Entry<Long, Long> entry : parents.entrySet()) {
+                assertTrue(rows.get(entry.getValue()) < rows.get(defaultScheduler.getParent(entry.getKey())));
+            }
+        }
+    }
+
+    @Test
+    public void testNoStatsKeepsDefault() {
+        CubeDesc cube = CubeDescManager.getInstance(getTestConfig()).getCubeDesc("test_kylin_cube_with_slr_desc");
+        CostBasedCuboidPlanner planner = new CostBasedCuboidPlanner(cube, Maps.<Long, Long> newHashMap());
+        assertTrue(planner.plan().isEmpty());
+        assertEquals(0, planner.getPlannedRowsProcessed());
+    }
+
+    private Map<Long, Integer> getDepths(CuboidScheduler scheduler, CubeDesc cube) {
+        Map<Long, Integer> depths = Maps.newHashMap();
+        LinkedList<Long> queue = new LinkedList<Long>();
+        queue.add(Cuboid.getBaseCuboidId(cube));
+        depths.put(Cuboid.getBaseCuboidId(cube), 0);
+        while (!queue.isEmpty()) {
+            long cuboid = queue.removeFirst();
+            for (Long child : scheduler.getSpanningCuboid(cuboid)) {
+                depths.put(child, depths.get(cuboid) + 1);
+                queue.add(child);
+            }
+        }
+        return depths;
+    }
+}
@@ -18,6 +18,7 @@
 package org.apache.kylin.cube.inmemcubing;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
 
 import java.io.IOException;
 import java.util.List;
@@ -65,6 +66,61 @@ public class ConcurrentDiskStoreTest extends LocalFileMetadataTestCase {
         System.out.println("Cost " + (end - start) + " millis");
     }
 
+    @Test
+    public void testSplitRangeRead() throws IOException {
+        verifySplitRangeRead(false);
+    }
+
+    @Test
+    public void testCompressedSplitRangeRead() throws IOException {
+        verifySplitRangeRead(true);
+    }
+
+    @Test
+    public void testCompressedMultiThreadRead() throws IOException, InterruptedException {
+        ConcurrentDiskStore store = new ConcurrentDiskStore(info);
+        store.setCompress(true);
+        SpillStats stats = new SpillStats();
+        store.setSpillStats(stats);
+        verifyWriteAndRead(new GridTable(info, store), 5);
+
+        assertTrue(stats.getSpilledBytes() > 0);
+        assertTrue(stats.getSpilledDiskBytes() < stats.getSpilledBytes());
+    }
+
+    private void verifySplitRangeRead(boolean compress) throws IOException {
+        ConcurrentDiskStore store = new ConcurrentDiskStore(info);
+        store.setSplitRows(10000);
+        store.setCompress(compress);
+        GridTable table = new GridTable(info, store);
+        GTBuilder builder = table.rebuild();
+        for (GTRecord r : data) {
+            builder.write(r);
+        }
+        builder.close();
+
+        List<Long> splits = store.getSplitOffsets();
+        assertTrue(splits.size() > 1);
+
+        int i = 0;
+        long start = 0;
+        for (int s = 0; s <= splits.size(); s++) {
+            long end = s < splits.size() ? splits.get(s) : -1;
+            IGTScanner scanner = store.scan(start, end);
+            int n = 0;
+            for (GTRecord r : scanner) {
+                assertEquals(data.get(i++), r);
+                n++;
+            }
+            scanner.close();
+            assertTrue(n >= 10000 || end < 0);
+            start = end;
+        }
+        assertEquals(data.size(), i);
+
+        store.close();
+    }
+
     private void verifyOneTableWriteAndRead(int readThreads) throws IOException, InterruptedException {
         ConcurrentDiskStore store = new ConcurrentDiskStore(info);
         GridTable table = new GridTable(info, store);
@@ -18,6 +18,7 @@
 package org.apache.kylin.cube.inmemcubing;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
 
 import java.io.IOException;
 import java.util.List;
@@ -85,6 +86,32 @@ public class MemDiskStoreTest extends LocalFileMetadataTestCase {
         System.out.println("Cost " + (end - start) + " millis");
     }
 
+    @Test
+    public void testAsyncSpillWhenBudgetOut() throws IOException {
+        // the budget runs out part way, the rest of the write goes to disk by the async spill writer
+        MemoryBudgetController budget = new MemoryBudgetController(20);
+        SpillStats stats = new SpillStats();
+        MemDiskStore store = new MemDiskStore(info, budget);
+        store.setSpillStats(stats);
+        verifyWriteAndRead(new GridTable(info, store));
+
+        assertTrue(stats.getSpilledBytes() > 0);
+        store.close();
+        assertEquals(0, budget.getTotalReservedMB());
+    }
+
+    @Test
+    public void testAsyncSpillWithoutBudget() throws IOException {
+        // no budget for the spill buffers either, they fall back to small blocks
+        SpillStats stats = new SpillStats();
+        MemDiskStore store = new MemDiskStore(info, MemoryBudgetController.ZERO_BUDGET);
+        store.setSpillStats(stats);
+        verifyWriteAndRead(new GridTable(info, store));
+
+        assertEquals(store.length(), stats.getSpilledBytes());
+        store.close();
+    }
+
     private void verifyOneTableWriteAndRead() throws IOException {
         MemDiskStore store = new MemDiskStore(info, budgetCtrl);
         GridTable table = new GridTable(info, store);
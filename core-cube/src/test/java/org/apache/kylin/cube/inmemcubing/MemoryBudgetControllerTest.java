@@ -74,6 +74,58 @@ public class MemoryBudgetControllerTest {
         }
     }
 
+    @Test
+    public void testSpillOrder() {
+        MemoryBudgetController mbc = new MemoryBudgetController(10);
+        Consumer plain = new Consumer();
+        mbc.reserve(plain, 2);
+        plain.data = new byte[0];
+        SpillableConsumer busy = new SpillableConsumer(mbc, 2, 3);
+        SpillableConsumer idleSmall = new SpillableConsumer(mbc, 2, 0);
+        SpillableConsumer idleBig = new SpillableConsumer(mbc, 4, 0);
+
+        // fewer pending reads first, the bigger first among equals
+        mbc.reserve(new Consumer(), 3);
+        assertEquals(null, idleBig.data);
+        assertTrue(idleSmall.data != null);
+        assertTrue(busy.data != null);
+        assertTrue(plain.data != null);
+
+        mbc.reserve(new Consumer(), 2);
+        assertEquals(null, idleSmall.data);
+        assertTrue(busy.data != null);
+        assertTrue(plain.data != null);
+    }
+
+    class SpillableConsumer implements MemoryBudgetController.SpillableConsumer {
+
+        byte[] data;
+        int mb;
+        int pendingReads;
+
+        SpillableConsumer(MemoryBudgetController mbc, int mb, int pendingReads) {
+            mbc.reserve(this, mb);
+            this.data = new byte[0];
+            this.mb = mb;
+            this.pendingReads = pendingReads;
+        }
+
+        @Override
+        public int freeUp(int mb) {
+            if (data != null) {
+                data = null;
+                return this.mb;
+            } else {
+                return 0;
+            }
+        }
+
+        @Override
+        public int getPendingReads() {
+            return pendingReads;
+        }
+    }
+
     class Consumer implements MemoryBudgetController.MemoryConsumer {
 
         byte[] data;
@@ -0,0 +1,187 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.kylin.gridtable;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+
+import org.apache.kylin.common.util.ImmutableBitSet;
+import org.apache.kylin.common.util.LocalFileMetadataTestCase;
+import org.apache.kylin.measure.basic.PrimitiveMeasureAggregators;
+import org.apache.kylin.metadata.datatype.DataType;
+import org.apache.kylin.metadata.datatype.DoubleMutable;
+import org.apache.kylin.metadata.datatype.LongMutable;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import com.google.common.collect.Lists;
+
+public class HashAggregationTest extends LocalFileMetadataTestCase {
+
+    static GTInfo INFO;
+    static List<GTRecord> DATA;
+
+    @BeforeClass
+    public static void beforeClass() {
+        staticCreateTestMetadata();
+
+        GTInfo.Builder builder = GTInfo.builder();
+        builder.setCodeSystem(new GTSampleCodeSystem());
+        builder.setColumns(//
+                DataType.getType("varchar(10)"), //
+                DataType.getType("varchar(10)"), //
+                DataType.getType("bigint"), //
+                DataType.getType("bigint"), //
+                DataType.getType("bigint"), //
+                DataType.getType("double"), //
+                DataType.getType("double"), //
+                DataType.getType("double") //
+        );
+        builder.setPrimaryKey(new ImmutableBitSet(0, 2));
+        builder.setColumnPreferIndex(new ImmutableBitSet(0, 2));
+        INFO = builder.build();
+
+        Random rand = new Random(1);
+        DATA = Lists.newArrayList();
+        for (int i = 0; i < 250000; i++) {
+            long l = rand.nextInt(2000) - 1000;
+            double d = rand.nextInt(2000) / 8.0 - 100;
+            DATA.add(new GTRecord(INFO).setValues("A" + rand.nextInt(300), "B" + rand.nextInt(20), //
+                    new LongMutable(l), new LongMutable(l), new LongMutable(l), //
+                    new DoubleMutable(d), new DoubleMutable(d), new DoubleMutable(d)));
+        }
+    }
+
+    @AfterClass
+    public static void afterClass() throws Exception {
+        cleanAfterClass();
+    }
+
+    @Test
+    public void testBasics() {
+        boolean[] mask = new boolean[] { true, false, true };
+        PrimitiveMeasureAggregators.Kind[] aggrs = new PrimitiveMeasureAggregators.Kind[] { PrimitiveMeasureAggregators.Kind.LONG_SUM };
+        HashAggregationBuffer buffer = new HashAggregationBuffer(mask, aggrs);
+
+        // the unmasked byte does not take part in grouping
+        assertEquals(0, buffer.findOrInsert(new byte[] { 1, 5, 1 }, 10));
+        assertEquals(0, buffer.findOrInsert(new byte[] { 1, 6, 1 }, 10));
+        assertEquals(1, buffer.findOrInsert(new byte[] { 0, 6, 2 }, 10));
+        assertEquals(-1, buffer.findOrInsert(new byte[] { 2, 6, 2 }, 2));
+
+        // grow well beyond the initial capacity
+        for (int i = 0; i < 5000; i++) {
+            int g = buffer.findOrInsert(new byte[] { (byte) (i >> 8), 0, (byte) i }, Integer.MAX_VALUE);
+            buffer.states().aggregateLong(g, 0, i);
+        }
+        assertEquals(5000, buffer.size());
+        // capacity doubled to 8192 groups: 3 key bytes, 1 state, 1 hash and 2 slots each
+        assertEquals(8192 * (3 + 8 + 4 + 2 * 4), buffer.memoryBytes());
+
+        int[] sorted = buffer.sortedGroups();
+        byte[] keys = buffer.keyArray();
+        for (int i = 1; i < sorted.length; i++) {
+            int a = buffer.keyOffset(sorted[i - 1]);
+            int b = buffer.keyOffset(sorted[i]);
+            int c = (keys[a] & 0xff) - (keys[b] & 0xff);
+            assertTrue(c < 0 || c == 0 && (keys[a + 2] & 0xff) < (keys[b + 2] & 0xff));
+        }
+    }
+
+    @Test
+    public void testInMem() throws IOException {
+        verifySameAsSortedMap(0, Integer.MAX_VALUE, false);
+    }
+
+    @Test
+    public void testSpill() throws IOException {
+        // a tiny threshold forces a spill every 100000 rows
+        verifySameAsSortedMap(0.0000001, Integer.MAX_VALUE, true);
+    }
+
+    @Test
+    public void testLimit() throws IOException {
+        verifySameAsSortedMap(0, 100, false);
+    }
+
+    @Test
+    public void testSortedOutput() throws IOException {
+        List<String> expected = aggregate(false, 0, Integer.MAX_VALUE, false, false);
+        List<String> actual = aggregate(true, 0, Integer.MAX_VALUE, false, true);
+        assertEquals(expected, actual);
+    }
+
+    private void verifySameAsSortedMap(double memThresholdGB, int limit, boolean expectSpill) throws IOException {
+        List<String> expected = aggregate(false, memThresholdGB, limit, expectSpill, false);
+        List<String> actual = aggregate(true, memThresholdGB, limit, expectSpill, false);
+
+        if (limit == Integer.MAX_VALUE) {
+            // hash output is not ordered unless spilled or limited
+            Collections.sort(expected);
+            Collections.sort(actual);
+        }
+        assertEquals(expected, actual);
+    }
+
+    private List<String> aggregate(boolean hash, double memThresholdGB, int limit, boolean expectSpill, boolean sortedOutput) throws IOException {
+        GTScanRequest req = new GTScanRequestBuilder().setInfo(INFO).setRanges(null).setDimensions(new ImmutableBitSet(0, 2)).//
+                setAggrGroupBy(new ImmutableBitSet(0, 2)).setAggrMetrics(new ImmutableBitSet(2, 8)).//
+                setAggrMetricsFuncs(new String[] { "SUM", "MIN", "MAX", "SUM", "MIN", "MAX" }).setFilterPushDown(null).//
+                setAggCacheMemThreshold(memThresholdGB).setStoragePushDownLimit(limit).setAllowHashAggregation(hash).createGTScanRequest();
+
+        GTAggregateScanner scanner = new GTAggregateScanner(new ListScanner(), req, Long.MAX_VALUE);
+        scanner.setSortedOutput(sortedOutput);
+        List<String> result = Lists.newArrayList();
+        for (GTRecord r : scanner) {
+            result.add(r.toString());
+        }
+        assertEquals(hash, scanner.aggrCache.hashBuffer != null);
+        assertEquals(expectSpill, scanner.getNumOfSpills() > 0);
+        scanner.close();
+        return result;
+    }
+
+    private static class ListScanner implements IGTScanner {
+        @Override
+        public GTInfo getInfo() {
+            return INFO;
+        }
+
+        @Override
+        public long getScannedRowCount() {
+            return DATA.size();
+        }
+
+        @Override
+        public void close() throws IOException {
+        }
+
+        @Override
+        public Iterator<GTRecord> iterator() {
+            return DATA.iterator();
+        }
+    }
+}
@@ -28,6 +28,7 @@ import java.io.IOException;
 import java.io.PrintStream;
 import java.io.UnsupportedEncodingException;
 import java.lang.ref.SoftReference;
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashMap;
@@ -35,6 +36,11 @@ import java.util.IdentityHashMap;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.fs.FSDataInputStream;
@@ -52,6 +58,9 @@ import org.apache.kylin.common.util.Dictionary;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.google.common.cache.CacheStats;
+import com.google.common.cache.Weigher;
+
 /**
  * A dictionary based on Trie data structure that maps enumerations of byte[] to
  * int IDs, used for global dictionary.
@@ -107,11 +116,31 @@ public class AppendTrieDictionary<T> extends Dictionary<T> {
         this.nValues = nValues;
         this.bytesConverter = bytesConverter;
 
-        int cacheSize = KylinConfig.getInstanceFromEnv().getAppendDictCacheSize();
-        dictSliceMap = CachedTreeMap.CachedTreeMapBuilder.newBuilder().maxSize(cacheSize).baseDir(baseDir).persistent(true).immutable(true).keyClazz(DictSliceKey.class).valueClazz(DictSlice.class).build();
+        KylinConfig config = KylinConfig.getInstanceFromEnv();
+        // slices read from files are kept in direct buffers if the config says so
+        Class<?> sliceClazz = config.isAppendDictCacheOffHeap() ? OffHeapDictSlice.class : DictSlice.class;
+        CachedTreeMap.CachedTreeMapBuilder builder = CachedTreeMap.CachedTreeMapBuilder.newBuilder().maxSize(config.getAppendDictCacheSize()).baseDir(baseDir).persistent(true).immutable(true).keyClazz(DictSliceKey.class).valueClazz(sliceClazz);
+        int cacheMaxMB = config.getAppendDictCacheMaxMB();
+        if (cacheMaxMB > 0) {
+            // weigh slices in KB, so a few GB still fits the int weight of a single entry
+            builder.maxWeight(cacheMaxMB * 1024L, new Weigher<DictSliceKey, DictSlice>() {
+                @Override
+                public int weigh(DictSliceKey key, DictSlice slice) {
+                    return slice.getByteSize() / 1024 + 1;
+                }
+            });
+        }
+        dictSliceMap = builder.build();
         ((CachedTreeMap)dictSliceMap).loadEntry(dictMap);
     }
 
+    /**
+     * Stats of the loaded slices, the eviction count tells whether the slice cache is big enough for the lookups
+     */
+    public CacheStats getSliceCacheStats() {
+        return ((CachedTreeMap) dictSliceMap).getCacheStats();
+    }
+
     public byte[] writeDictMap() throws IOException {
         ByteArrayOutputStream buf = new ByteArrayOutputStream();
         DataOutputStream out = new DataOutputStream(buf);
@@ -169,10 +198,10 @@ public class AppendTrieDictionary<T> extends Dictionary<T> {
         }
 
         public DictSlice(byte[] trieBytes) {
-            init(trieBytes);
+            init(ByteBuffer.wrap(trieBytes));
         }
 
-        private byte[] trieBytes;
+        private ByteBuffer trieBuf; // position 0 is the start of HEAD_MAGIC, only absolute reads
 
         // non-persistent part
         transient private int headSize;
@@ -184,13 +213,15 @@ public class AppendTrieDictionary<T> extends Dictionary<T> {
         transient private int childOffsetMask;
         transient private int firstByteOffset;
 
-        private void init(byte[] trieBytes) {
-            this.trieBytes = trieBytes;
-            if (BytesUtil.compareBytes(HEAD_MAGIC, 0, trieBytes, 0, HEAD_MAGIC.length) != 0)
+        private void init(ByteBuffer trieBuf) {
+            this.trieBuf = trieBuf;
+            byte[] head = new byte[HEAD_SIZE_I + 2 + 4 + 4 + 1 + 1];
+            copyBytes(0, head, 0, head.length);
+            if (BytesUtil.compareBytes(HEAD_MAGIC, 0, head, 0, HEAD_MAGIC.length) != 0)
                 throw new IllegalArgumentException("Wrong file type (magic does not match)");
 
             try {
-                DataInputStream headIn = new DataInputStream(new ByteArrayInputStream(trieBytes, HEAD_SIZE_I, trieBytes.length - HEAD_SIZE_I));
+                DataInputStream headIn = new DataInputStream(new ByteArrayInputStream(head, HEAD_SIZE_I, head.length - HEAD_SIZE_I));
                 this.headSize = headIn.readShort();
                 this.bodyLen = headIn.readInt();
                 this.nValues = headIn.readInt();
@@ -211,12 +242,14 @@ public class AppendTrieDictionary<T> extends Dictionary<T> {
             int nodeOffset = headSize;
             ByteArrayOutputStream bytes = new ByteArrayOutputStream();
             while (true) {
-                int valueLen = BytesUtil.readUnsigned(trieBytes, nodeOffset + firstByteOffset - 1, 1);
-                bytes.write(trieBytes, nodeOffset + firstByteOffset, valueLen);
+                int valueLen = BytesUtil.readUnsigned(trieBuf, nodeOffset + firstByteOffset - 1, 1);
+                byte[] part = new byte[valueLen];
+                copyBytes(nodeOffset + firstByteOffset, part, 0, valueLen);
+                bytes.write(part, 0, valueLen);
                 if (checkFlag(nodeOffset, BIT_IS_END_OF_VALUE)) {
                     break;
                 }
-                nodeOffset = headSize + (BytesUtil.readUnsigned(trieBytes, nodeOffset, sizeChildOffset) & childOffsetMask);
+                nodeOffset = headSize + (BytesUtil.readUnsigned(trieBuf, nodeOffset, sizeChildOffset) & childOffsetMask);
                 if (nodeOffset == headSize) {
                     break;
                 }
@@ -244,9 +277,9 @@ public class AppendTrieDictionary<T> extends Dictionary<T> {
             while (true) {
                 // match the current node
                 int p = n + firstByteOffset; // start of node's value
-                int end = p + BytesUtil.readUnsigned(trieBytes, p - 1, 1); // end of node's value
+                int end = p + BytesUtil.readUnsigned(trieBuf, p - 1, 1); // end of node's value
                 for (; p < end && o < inpEnd; p++, o++) { // note matching start from [0]
-                    if (trieBytes[p] != inp[o]) {
+                    if (trieBuf.get(p) != inp[o]) {
                         return -1; // mismatch
                     }
                 }
@@ -254,25 +287,25 @@ public class AppendTrieDictionary<T> extends Dictionary<T> {
                 // node completely matched, is input all consumed?
                 boolean isEndOfValue = checkFlag(n, BIT_IS_END_OF_VALUE);
                 if (o == inpEnd) {
-                    return p == end && isEndOfValue ? BytesUtil.readUnsigned(trieBytes, end, sizeOfId) : -1;
+                    return p == end && isEndOfValue ? BytesUtil.readUnsigned(trieBuf, end, sizeOfId) : -1;
                 }
 
                 // find a child to continue
-                int c = headSize + (BytesUtil.readUnsigned(trieBytes, n, sizeChildOffset) & childOffsetMask);
+                int c = headSize + (BytesUtil.readUnsigned(trieBuf, n, sizeChildOffset) & childOffsetMask);
                 if (c == headSize) // has no children
                     return -1;
                 byte inpByte = inp[o];
                 int comp;
                 while (true) {
                     p = c + firstByteOffset;
-                    comp = BytesUtil.compareByteUnsigned(trieBytes[p], inpByte);
+                    comp = BytesUtil.compareByteUnsigned(trieBuf.get(p), inpByte);
                     if (comp == 0) { // continue in the matching child, reset n and loop again
                         n = c;
                         break;
                     } else if (comp < 0) { // try next child
                         if (checkFlag(c, BIT_IS_LAST_CHILD))
                             return -1;
-                        c = p + BytesUtil.readUnsigned(trieBytes, p - 1, 1) + (checkFlag(c, BIT_IS_END_OF_VALUE) ? sizeOfId : 0);
+                        c = p + BytesUtil.readUnsigned(trieBuf, p - 1, 1) + (checkFlag(c, BIT_IS_END_OF_VALUE) ? sizeOfId : 0);
                     } else { // children are ordered by their first value byte
                         return -1;
                     }
@@ -281,7 +314,24 @@ public class AppendTrieDictionary<T> extends Dictionary<T> {
         }
 
         private boolean checkFlag(int offset, int bit) {
-            return (trieBytes[offset] & bit) > 0;
+            return (trieBuf.get(offset) & bit) > 0;
+        }
+
+        private void copyBytes(int p, byte[] dst, int offset, int len) {
+            if (trieBuf.hasArray()) {
+                System.arraycopy(trieBuf.array(), trieBuf.arrayOffset() + p, dst, offset, len);
+            } else {
+                for (int i = 0; i < len; i++) {
+                    dst[offset + i] = trieBuf.get(p + i);
+                }
+            }
+        }
+
+        /**
+         * Returns the number of bytes the slice occupies, on heap or off heap
+         */
+        public int getByteSize() {
+            return trieBuf.capacity();
         }
 
         public int getIdFromValueBytesImpl(byte[] value, int offset, int len, int roundingFlag) {
@@ -297,16 +347,16 @@ public class AppendTrieDictionary<T> extends Dictionary<T> {
             DictNode root = null;
             while (true) {
                 int p = n + firstByteOffset;
-                int childOffset = BytesUtil.readUnsigned(trieBytes, n, sizeChildOffset) & childOffsetMask;
-                int parLen = BytesUtil.readUnsigned(trieBytes, p - 1, 1);
+                int childOffset = BytesUtil.readUnsigned(trieBuf, n, sizeChildOffset) & childOffsetMask;
+                int parLen = BytesUtil.readUnsigned(trieBuf, p - 1, 1);
                 boolean isEndOfValue = checkFlag(n, BIT_IS_END_OF_VALUE);
 
                 byte[] value = new byte[parLen];
-                System.arraycopy(trieBytes, p, value, 0, parLen);
+                copyBytes(p, value, 0, parLen);
 
                 DictNode node = new DictNode(value, isEndOfValue);
                 if (isEndOfValue) {
-                    int id = BytesUtil.readUnsigned(trieBytes, p + parLen, sizeOfId);
+                    int id = BytesUtil.readUnsigned(trieBuf, p + parLen, sizeOfId);
                     node.id = id;
                 }
 
@@ -330,7 +380,16 @@ public class AppendTrieDictionary<T> extends Dictionary<T> {
         }
 
         public void write(DataOutput out) throws IOException {
-            out.write(trieBytes);
+            if (trieBuf.hasArray()) {
+                out.write(trieBuf.array(), trieBuf.arrayOffset(), trieBuf.capacity());
+            } else {
+                byte[] buf = new byte[Math.min(trieBuf.capacity(), 64 * 1024)];
+                for (int p = 0; p < trieBuf.capacity(); p += buf.length) {
+                    int len = Math.min(buf.length, trieBuf.capacity() - p);
+                    copyBytes(p, buf, 0, len);
+                    out.write(buf, 0, len);
+                }
+            }
         }
 
         public void readFields(DataInput in) throws IOException {
@@ -350,7 +409,11 @@ public class AppendTrieDictionary<T> extends Dictionary<T> {
             System.arraycopy(headPartial, 0, all, 0, headPartial.length);
             in.readFully(all, headPartial.length, all.length - headPartial.length);
 
-            init(all);
+            init(toBuffer(all));
+        }
+
+        protected ByteBuffer toBuffer(byte[] all) {
+            return ByteBuffer.wrap(all);
         }
 
         public static DictNode rebuildNodeByDeserialize(DataInput in) throws IOException {
@@ -366,7 +429,7 @@ public class AppendTrieDictionary<T> extends Dictionary<T> {
 
         @Override
         public int hashCode() {
-            return Arrays.hashCode(trieBytes);
+            return trieBuf.hashCode();
         }
 
         @Override
@@ -376,7 +439,23 @@ public class AppendTrieDictionary<T> extends Dictionary<T> {
                 return false;
             }
             DictSlice that = (DictSlice) o;
-            return Arrays.equals(this.trieBytes, that.trieBytes);
+            return this.trieBuf.equals(that.trieBuf);
+        }
+    }
+
+    /**
+     * A slice read into a direct buffer, out of the java heap
+     */
+    public static class OffHeapDictSlice<T> extends DictSlice<T> {
+        public OffHeapDictSlice() {
+        }
+
+        @Override
+        protected ByteBuffer toBuffer(byte[] all) {
+            ByteBuffer direct = ByteBuffer.allocateDirect(all.length);
+            direct.put(all);
+            direct.clear();
+            return direct;
         }
     }
 
@@ -761,9 +840,9 @@ public class AppendTrieDictionary<T> extends Dictionary<T> {
 
     public static class Builder<T> {
         private String baseDir;
-        private int maxId;
+        private AtomicInteger maxId; // shared by the threads of addValues()
         private int maxValueLength;
-        private int nValues;
+        private AtomicInteger nValues;
         private BytesConverter<T> bytesConverter;
 
         private AppendTrieDictionary dict;
@@ -786,9 +865,9 @@ public class AppendTrieDictionary<T> extends Dictionary<T> {
         private Builder(AppendTrieDictionary dict, String baseDir, int maxId, int maxValueLength, int nValues, BytesConverter<T> bytesConverter, byte[] dictMapBytes) throws IOException {
             this.dict = dict;
             this.baseDir = baseDir;
-            this.maxId = maxId;
+            this.maxId = new AtomicInteger(maxId);
             this.maxValueLength = maxValueLength;
-            this.nValues = nValues;
+            this.nValues = new AtomicInteger(nValues);
             this.bytesConverter = bytesConverter;
 
             MAX_ENTRY_IN_SLICE = KylinConfig.getInstanceFromEnv().getAppendDictEntrySize();
@@ -830,6 +909,117 @@ public class AppendTrieDictionary<T> extends Dictionary<T> {
             }
         }
 
+        /**
+         * Adds a batch of values using the threads of executor. Values are partitioned
+         * by the slice they fall in, each slice is appended by one thread, then the
+         * resulting slices are committed to the slice map by the calling thread. New IDs
+         * come from a shared counter, so IDs stay unique and existing ones never change,
+         * but the order new values get their IDs in varies from run to run.
+         */
+        public void addValues(List<byte[]> values, ExecutorService executor) throws IOException {
+            long startTime = System.currentTimeMillis();
+            if (mutableDictSliceMap.isEmpty()) {
+                DictNode root = new DictNode(new byte[0], false);
+                mutableDictSliceMap.put(DictSliceKey.wrap(new byte[0]), root);
+            }
+
+            TreeMap<DictSliceKey, List<byte[]>> slices = new TreeMap<>();
+            for (byte[] value : values) {
+                maxValueLength = Math.max(maxValueLength, value.length);
+                DictSliceKey sliceKey = mutableDictSliceMap.floorKey(DictSliceKey.wrap(value));
+                if (sliceKey == null) {
+                    sliceKey = mutableDictSliceMap.firstKey();
+                }
+                List<byte[]> sliceValues = slices.get(sliceKey);
+                if (sliceValues == null) {
+                    sliceValues = new ArrayList<>();
+                    slices.put(sliceKey, sliceValues);
+                }
+                sliceValues.add(value);
+            }
+
+            // no more slices in a wave than the map caches
+            int waveSize = Math.max(1, KylinConfig.getInstanceFromEnv().getAppendDictCacheSize());
+            List<DictSliceKey> sliceKeys = new ArrayList<>(slices.keySet());
+            long maxSliceTime = 0;
+            DictSliceKey maxSliceKey = null;
+            for (int from = 0; from < sliceKeys.size(); from += waveSize) {
+                List<DictSliceKey> wave = sliceKeys.subList(from, Math.min(sliceKeys.size(), from + waveSize));
+
+                // load the slices here, CachedTreeMap is not thread-safe, and take them out of the map meanwhile,
+                // or loading the next slices or committing split ones may evict and write a slice being appended
+                List<Future<List<DictNode>>> futures = new ArrayList<>(wave.size());
+                final long[] sliceTimes = new long[wave.size()];
+                for (int i = 0; i < wave.size(); i++) {
+                    final int index = i;
+                    final DictNode root = mutableDictSliceMap.get(wave.get(i));
+                    mutableDictSliceMap.remove(wave.get(i));
+                    final List<byte[]> sliceValues = slices.get(wave.get(i));
+                    futures.add(executor.submit(new Callable<List<DictNode>>() {
+                        @Override
+                        public List<DictNode> call() throws Exception {
+                            long t0 = System.currentTimeMillis();
+                            for (byte[] value : sliceValues) {
+                                addValueR(root, value, 0);
+                            }
+                            List<DictNode> result = splitSlice(root);
+                            sliceTimes[index] = System.currentTimeMillis() - t0;
+                            return result;
+                        }
+                    }));
+                }
+
+                // wait for the whole wave before putting any slice back
+                List<List<DictNode>> waveRoots = new ArrayList<>(wave.size());
+                IOException failure = null;
+                for (int i = 0; i < wave.size(); i++) {
+                    try {
+                        waveRoots.add(futures.get(i).get());
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        throw new IOException("Interrupted while appending slice " + wave.get(i), e);
+                    } catch (ExecutionException e) {
+                        if (failure == null)
+                            failure = new IOException("Failed to append slice " + wave.get(i), e.getCause());
+                        waveRoots.add(null);
+                    }
+                }
+                if (failure != null)
+                    throw failure;
+
+                // commit the slices of the wave together
+                for (int i = 0; i < wave.size(); i++) {
+                    List<DictNode> roots = waveRoots.get(i);
+                    mutableDictSliceMap.put(wave.get(i), roots.get(0));
+                    for (DictNode root : roots.subList(1, roots.size())) {
+                        mutableDictSliceMap.put(DictSliceKey.wrap(root.firstValue()), root);
+                    }
+                    logger.debug("Appended " + slices.get(wave.get(i)).size() + " values to slice " + wave.get(i) + " in " + sliceTimes[i] + " ms, split into " + roots.size());
+                    if (sliceTimes[i] >= maxSliceTime) {
+                        maxSliceTime = sliceTimes[i];
+                        maxSliceKey = wave.get(i);
+                    }
+                }
+            }
+
+            processedCount += values.size();
+            logger.info("Added " + values.size() + " values to " + slices.size() + " slices in " + (System.currentTimeMillis() - startTime) + " ms, slowest slice " + maxSliceKey + " took " + maxSliceTime + " ms; " //
+                    + processedCount + " values processed, " + nValues.get() + " in dict, " + mutableDictSliceMap.size() + " slices");
+        }
+
+        // splits a slice that grows too big during addValues() into as many as needed
+        private List<DictNode> splitSlice(DictNode root) {
+            LinkedList<DictNode> result = new LinkedList<>();
+            while (root.childrenCount > MAX_ENTRY_IN_SLICE * MAX_ENTRY_OVERHEAD_FACTOR) {
+                DictNode newRoot = splitNodeTree(root);
+                DictNode.mergeSingleByteNode(root, 1);
+                DictNode.mergeSingleByteNode(newRoot, 0);
+                result.addFirst(newRoot);
+            }
+            result.addFirst(root);
+            return result;
+        }
+
         private DictNode splitNodeTree(DictNode root) {
             DictNode parent = root;
             DictNode splitNode;
@@ -858,11 +1048,11 @@ public class AppendTrieDictionary<T> extends Dictionary<T> {
         }
 
         private int createNextId() {
-            int id = ++maxId;
-            if (maxId < 0) {
+            int id = maxId.incrementAndGet();
+            if (id < 0) {
                 throw new IllegalArgumentException("AppendTrieDictionary Id overflow Integer.MAX_VALUE");
             }
-            nValues++;
+            nValues.incrementAndGet();
             return id;
         }
 
@@ -950,7 +1140,7 @@ public class AppendTrieDictionary<T> extends Dictionary<T> {
             if (dict == null) {
                 dict = new AppendTrieDictionary<T>();
             }
-            dict.update(baseDir, baseId, maxId, maxValueLength, nValues, bytesConverter, (CachedTreeMap)mutableDictSliceMap);
+            dict.update(baseDir, baseId, maxId.get(), maxValueLength, nValues.get(), bytesConverter, (CachedTreeMap)mutableDictSliceMap);
             dict.flushIndex((CachedTreeMap) mutableDictSliceMap);
 
             return dict;
@@ -1031,6 +1221,16 @@ public class AppendTrieDictionary<T> extends Dictionary<T> {
         throw new UnsupportedOperationException("AppendTrieDictionary can't retrive value from id");
     }
 
+    @Override
+    public void getValuesFromIds(int[] ids, int n, T[] result) {
+        throw new UnsupportedOperationException("AppendTrieDictionary can't retrive value from id");
+    }
+
+    @Override
+    public void getValueBytesFromIds(int[] ids, int n, byte[][] result) {
+        throw new UnsupportedOperationException("AppendTrieDictionary can't retrive value from id");
+    }
+
     public void flushIndex(CachedTreeMap dictSliceMap) throws IOException {
         Path filePath = new Path(dictSliceMap.getCurrentDir() + "/.index");
         Configuration conf = new Configuration();
@@ -41,9 +41,11 @@ import org.slf4j.LoggerFactory;
 
 import com.google.common.cache.CacheBuilder;
 import com.google.common.cache.CacheLoader;
+import com.google.common.cache.CacheStats;
 import com.google.common.cache.LoadingCache;
 import com.google.common.cache.RemovalListener;
 import com.google.common.cache.RemovalNotification;
+import com.google.common.cache.Weigher;
 
 /**
  * Created by sunyerui on 16/5/2.
@@ -72,6 +74,9 @@ public class CachedTreeMap<K extends WritableComparable, V extends Writable> ext
         private Class<K> keyClazz;
         private Class<V> valueClazz;
         private int maxCount = 8;
+        private long maxWeight = 0;
+        private int concurrencyLevel = 4;
+        private Weigher<K, V> weigher;
         private String baseDir;
         private boolean persistent;
         private boolean immutable;
@@ -98,6 +103,25 @@ public class CachedTreeMap<K extends WritableComparable, V extends Writable> ext
             return this;
         }
 
+        /**
+         * Bounds an immutable map by the total weight of loaded values instead of soft references,
+         * the least recently used values are evicted first.
+         */
+        public CachedTreeMapBuilder<K, V> maxWeight(long maxWeight, Weigher<K, V> weigher) {
+            this.maxWeight = maxWeight;
+            this.weigher = weigher;
+            return this;
+        }
+
+        /**
+         * Number of independently locked cache segments, a weight bound is split evenly among them,
+         * so each share should hold a few values.
+         */
+        public CachedTreeMapBuilder<K, V> concurrencyLevel(int concurrencyLevel) {
+            this.concurrencyLevel = concurrencyLevel;
+            return this;
+        }
+
         public CachedTreeMapBuilder<K, V> baseDir(String baseDir) {
             this.baseDir = baseDir;
             return this;
@@ -120,12 +144,15 @@ public class CachedTreeMap<K extends WritableComparable, V extends Writable> ext
             if (keyClazz == null || valueClazz == null) {
                 throw new RuntimeException("CachedTreeMap need key and value clazz to serialize data");
             }
-            CachedTreeMap map = new CachedTreeMap(maxCount, keyClazz, valueClazz, baseDir, persistent, immutable);
+            if (weigher != null && !immutable) {
+                throw new RuntimeException("CachedTreeMap only supports weight bound for immutable values");
+            }
+            CachedTreeMap map = new CachedTreeMap(maxCount, maxWeight, weigher, concurrencyLevel, keyClazz, valueClazz, baseDir, persistent, immutable);
             return map;
         }
     }
 
-    private CachedTreeMap(int maxCount, Class<K> keyClazz, Class<V> valueClazz, String baseDir, boolean persistent, boolean immutable) throws IOException {
+    private CachedTreeMap(int maxCount, long maxWeight, Weigher<K, V> weigher, int concurrencyLevel, Class<K> keyClazz, Class<V> valueClazz, String baseDir, boolean persistent, boolean immutable) throws IOException {
         super();
         this.keyClazz = keyClazz;
         this.valueClazz = valueClazz;
@@ -140,10 +167,10 @@ public class CachedTreeMap<K extends WritableComparable, V extends Writable> ext
         this.fs = FileSystem.get(new Path(baseDir).toUri(), conf);
         this.persistent = persistent;
         this.immutable = immutable;
-        CacheBuilder builder = CacheBuilder.newBuilder().removalListener(new RemovalListener<K, V>() {
+        CacheBuilder builder = CacheBuilder.newBuilder().recordStats().removalListener(new RemovalListener<K, V>() {
             @Override
             public void onRemoval(RemovalNotification<K, V> notification) {
-                logger.info(String.format("Evict cache key %s(%d) with value %s caused by %s, size %d/%d ", notification.getKey(), notification.getKey().hashCode(), notification.getValue(), notification.getCause(), size(), valueCache.size()));
+                logger.info(String.format("Evict cache key %s(%d) with value %s caused by %s, size %d/%d, %s", notification.getKey(), notification.getKey().hashCode(), notification.getValue(), notification.getCause(), size(), valueCache.size(), statsString()));
                 switch (notification.getCause()) {
                 case SIZE:
                     writeValue(notification.getKey(), notification.getValue());
@@ -157,7 +184,10 @@ public class CachedTreeMap<K extends WritableComparable, V extends Writable> ext
             }
         });
         // For immutable values, load all values as much as possible, and evict by soft reference to free memory when gc
-        if (this.immutable) {
+        // unless a weight bound is given, then the least recently used values are evicted beyond it
+        if (this.immutable && weigher != null) {
+            builder.concurrencyLevel(concurrencyLevel).maximumWeight(maxWeight).weigher(weigher);
+        } else if (this.immutable) {
             builder.softValues();
         } else {
             builder.maximumSize(maxCount);
@@ -175,12 +205,25 @@ public class CachedTreeMap<K extends WritableComparable, V extends Writable> ext
             @Override
             public V load(K key) throws Exception {
                 V value = readValue(key);
-                logger.info(String.format("Load cache by key %s(%d) with value %s", key, key.hashCode(), value));
+                logger.info(String.format("Load cache by key %s(%d) with value %s, %s", key, key.hashCode(), value, statsString()));
                 return value;
             }
         });
     }
 
+    /**
+     * Hit, load and eviction counts of the value cache, a load after the first one of a key is a reload
+     */
+    public CacheStats getCacheStats() {
+        return valueCache.stats();
+    }
+
+    // so the eviction and reload rates show in the log along with each eviction and load
+    private String statsString() {
+        CacheStats stats = valueCache.stats();
+        return String.format("hit rate %.3f, loads %d, evictions %d", stats.hitRate(), stats.loadCount(), stats.evictionCount());
+    }
+
     private String generateFileName(K key) {
         String file = (immutable ? baseDir : tmpDir) + "/cached_" + key.toString();
         return file;
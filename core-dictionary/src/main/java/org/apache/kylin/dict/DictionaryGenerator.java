@@ -25,6 +25,7 @@ import java.util.ArrayList;
 import java.util.List;
 
 import org.apache.commons.lang.StringUtils;
+import org.apache.kylin.common.KylinConfig;
 import org.apache.kylin.common.util.Bytes;
 import org.apache.kylin.common.util.Dictionary;
 import org.apache.kylin.metadata.datatype.DataType;
@@ -155,7 +156,9 @@ public class DictionaryGenerator {
     private static class NumberDictBuilder implements IDictionaryBuilder {
         @Override
         public Dictionary<String> build(DictionaryInfo dictInfo, IDictionaryValueEnumerator valueEnumerator, int baseId, int nSamples, ArrayList<String> returnSamples) throws IOException {
-            NumberDictionaryBuilder builder = new NumberDictionaryBuilder(new StringBytesConverter());
+            // try the primitive dictionary first, switch to the trie based one on the first value it cannot take
+            PrimitiveNumberDictionaryBuilder primitiveBuilder = KylinConfig.getInstanceFromEnv().isDictNumberPrimitiveEnabled() ? new PrimitiveNumberDictionaryBuilder() : null;
+            NumberDictionaryBuilder builder = primitiveBuilder == null ? new NumberDictionaryBuilder(new StringBytesConverter()) : null;
             byte[] value;
             while (valueEnumerator.moveNext()) {
                 value = valueEnumerator.current();
@@ -165,11 +168,19 @@ public class DictionaryGenerator {
                 if (StringUtils.isBlank(v)) // empty string is null for numbers
                     continue;
 
-                builder.addValue(v);
+                if (primitiveBuilder != null && primitiveBuilder.addValue(value, 0, value.length) == false) {
+                    logger.info("Value '" + v + "' does not fit a primitive number dictionary, build a trie one instead");
+                    builder = new NumberDictionaryBuilder(new StringBytesConverter());
+                    for (String replay : primitiveBuilder.getValues())
+                        builder.addValue(replay);
+                    primitiveBuilder = null;
+                }
+                if (primitiveBuilder == null)
+                    builder.addValue(v);
                 if (returnSamples.size() < nSamples && returnSamples.contains(v) == false)
                     returnSamples.add(v);
             }
-            return builder.build(baseId);
+            return primitiveBuilder != null ? primitiveBuilder.build(baseId) : builder.build(baseId);
         }
     }
 }
@@ -20,8 +20,14 @@ package org.apache.kylin.dict;
 
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
 import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
 import java.util.List;
 import java.util.NavigableSet;
 import java.util.concurrent.ConcurrentHashMap;
@@ -29,6 +35,8 @@ import java.util.concurrent.ExecutionException;
 import java.util.concurrent.TimeUnit;
 
 import org.apache.kylin.common.KylinConfig;
+import org.apache.commons.io.IOUtils;
+import org.apache.kylin.common.persistence.RawResource;
 import org.apache.kylin.common.persistence.ResourceStore;
 import org.apache.kylin.common.util.ClassUtil;
 import org.apache.kylin.common.util.Dictionary;
@@ -46,9 +54,11 @@ import org.slf4j.LoggerFactory;
 
 import com.google.common.cache.CacheBuilder;
 import com.google.common.cache.CacheLoader;
+import com.google.common.cache.CacheStats;
 import com.google.common.cache.LoadingCache;
 import com.google.common.cache.RemovalListener;
 import com.google.common.cache.RemovalNotification;
+import com.google.common.cache.Weigher;
 import com.google.common.collect.Lists;
 
 public class DictionaryManager {
@@ -85,25 +95,45 @@ public class DictionaryManager {
 
     private KylinConfig config;
     private LoadingCache<String, DictionaryInfo> dictCache; // resource
+    private CacheStats removedDictCacheStats = new CacheStats(0, 0, 0, 0, 0, 0); // value cache stats of dictionaries no longer cached
 
     // path ==>
     // DictionaryInfo
 
     private DictionaryManager(KylinConfig config) {
         this.config = config;
-        this.dictCache = CacheBuilder.newBuilder().removalListener(new RemovalListener<String, DictionaryInfo>() {
+        CacheBuilder<String, DictionaryInfo> cacheBuilder = CacheBuilder.newBuilder().removalListener(new RemovalListener<String, DictionaryInfo>() {
             @Override
             public void onRemoval(RemovalNotification<String, DictionaryInfo> notification) {
                 DictionaryManager.logger.info("Dict with resource path " + notification.getKey() + " is removed due to " + notification.getCause());
+                if (notification.getValue() != null) {
+                    CacheStats stats = getValueCacheStats(notification.getValue());
+                    synchronized (DictionaryManager.this) {
+                        removedDictCacheStats = removedDictCacheStats.plus(stats);
+                    }
+                }
             }
-        }).maximumSize(config.getCachedDictMaxEntrySize())//
-                .expireAfterWrite(1, TimeUnit.DAYS).build(new CacheLoader<String, DictionaryInfo>() {
+        });
+        if (config.isDictMmapEnabled()) {
+            // mapped dictionaries cost little heap, bound them by the bytes they map
+            cacheBuilder.maximumWeight(config.getCachedDictMaxMB() * 1024).weigher(new Weigher<String, DictionaryInfo>() {
+                @Override
+                public int weigh(String key, DictionaryInfo value) {
+                    return (int) Math.min(Integer.MAX_VALUE, Math.max(1, getDictionaryBytes(value) / 1024));
+                }
+            });
+        } else {
+            cacheBuilder.maximumSize(config.getCachedDictMaxEntrySize());
+        }
+        this.dictCache = cacheBuilder.expireAfterWrite(1, TimeUnit.DAYS).build(new CacheLoader<String, DictionaryInfo>() {
                     @Override
                     public DictionaryInfo load(String key) throws Exception {
                         DictionaryInfo dictInfo = DictionaryManager.this.load(key, true);
                         if (dictInfo == null) {
                             return NONE_INDICATOR;
                         } else {
+                            if (dictInfo.getDictionaryObject() instanceof ICachedDictionary)
+                                ((ICachedDictionary) dictInfo.getDictionaryObject()).setValueCacheMaxEntries(DictionaryManager.this.config.getDictValueCacheMaxEntries());
                             return dictInfo;
                         }
                     }
@@ -115,6 +145,10 @@ public class DictionaryManager {
         return dictInfo == null ? null : dictInfo.getDictionaryObject();
     }
 
+    /**
+     * Returns the dictionary info along with the dictionary object, loading it if not cached. Concurrent callers
+     * missing the cache wait for the same in-flight load, instead of each reading and deserializing the resource.
+     */
     public DictionaryInfo getDictionaryInfo(final String resourcePath) throws IOException {
         try {
             DictionaryInfo result = dictCache.get(resourcePath);
@@ -415,6 +449,9 @@ public class DictionaryManager {
     }
 
     DictionaryInfo load(String resourcePath, boolean loadDictObj) throws IOException {
+        if (loadDictObj && config.isDictMmapEnabled())
+            return loadMapped(resourcePath);
+
         ResourceStore store = MetadataManager.getInstance(config).getStore();
 
         logger.info("DictionaryManager(" + System.identityHashCode(this) + ") loading DictionaryInfo(loadDictObj:" + loadDictObj + ") at " + resourcePath);
@@ -426,4 +463,130 @@ public class DictionaryManager {
         return info;
     }
 
+    /**
+     * Load from a memory-mapped local copy of the resource. Dictionaries implementing IMappableDictionary work
+     * on the mapped bytes directly, others are read to heap as usual. The local copy is kept across restarts
+     * and reused as long as the resource timestamp does not change.
+     */
+    DictionaryInfo loadMapped(String resourcePath) throws IOException {
+        ResourceStore store = MetadataManager.getInstance(config).getStore();
+        long timestamp = store.getResourceTimestamp(resourcePath);
+        if (timestamp == 0)
+            return null;
+
+        File file = getLocalCopy(resourcePath, timestamp);
+        if (file.exists() == false) {
+            RawResource res = store.getResource(resourcePath);
+            if (res == null)
+                return null;
+            timestamp = res.timestamp;
+            file = copyToLocal(resourcePath, res);
+        }
+
+        logger.info("DictionaryManager(" + System.identityHashCode(this) + ") mapping DictionaryInfo at " + resourcePath + " from " + file);
+        MappedByteBuffer buf;
+        RandomAccessFile raf = new RandomAccessFile(file, "r");
+        try {
+            buf = raf.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, raf.length()); // remains valid after close
+        } finally {
+            raf.close();
+        }
+
+        // the json head as written by DictionaryInfoSerializer
+        byte[] head = new byte[2 + (buf.getShort(0) & 0xffff)];
+        buf.get(head);
+        DictionaryInfo info = DictionaryInfoSerializer.INFO_SERIALIZER.deserialize(new DataInputStream(new ByteArrayInputStream(head)));
+        info.setLastModified(timestamp);
+
+        Dictionary<?> dict;
+        try {
+            dict = (Dictionary<?>) ClassUtil.forName(info.getDictionaryClass(), Dictionary.class).newInstance();
+        } catch (Exception e) {
+            throw new RuntimeException(e);
+        }
+        if (dict instanceof IMappableDictionary) {
+            ((IMappableDictionary) dict).readFields(buf);
+        } else {
+            byte[] body = new byte[buf.remaining()];
+            buf.get(body);
+            dict.readFields(new DataInputStream(new ByteArrayInputStream(body)));
+        }
+        info.setDictionaryObject(dict);
+        return info;
+    }
+
+    private File getLocalCopy(String resourcePath, long timestamp) {
+        return new File(config.getDictMmapDir(), localCopyPrefix(resourcePath) + timestamp);
+    }
+
+    private String localCopyPrefix(String resourcePath) {
+        return resourcePath.replaceAll("[^A-Za-z0-9_.-]", "_") + "@";
+    }
+
+    private File copyToLocal(String resourcePath, RawResource res) throws IOException {
+        File dir = new File(config.getDictMmapDir());
+        if (dir.exists() == false && dir.mkdirs() == false && dir.exists() == false)
+            throw new IOException("Failed to create " + dir);
+
+        // write to a temp file then rename, so a half written copy is never mapped
+        File file = getLocalCopy(resourcePath, res.timestamp);
+        File tmp = File.createTempFile(file.getName(), ".tmp", dir);
+        FileOutputStream out = new FileOutputStream(tmp);
+        try {
+            IOUtils.copyLarge(res.inputStream, out);
+        } finally {
+            IOUtils.closeQuietly(out);
+            IOUtils.closeQuietly(res.inputStream);
+        }
+        if (tmp.renameTo(file) == false && file.exists() == false) {
+            tmp.delete();
+            throw new IOException("Failed to rename " + tmp + " to " + file);
+        }
+        tmp.delete();
+
+        // remove stale copies of older versions
+        String prefix = localCopyPrefix(resourcePath);
+        File[] files = dir.listFiles();
+        if (files != null) {
+            for (File f : files) {
+                if (f.getName().startsWith(prefix) && f.equals(file) == false && f.getName().endsWith(".tmp") == false)
+                    f.delete();
+            }
+        }
+        return file;
+    }
+
+    /**
+     * Returns the value cache stats summed over all dictionaries this manager ever cached, including removed ones.
+     * Walks every cached dictionary, meant for periodic metrics polling rather than per query.
+     */
+    public CacheStats getDictionaryCacheStats() {
+        CacheStats result;
+        synchronized (this) {
+            result = removedDictCacheStats;
+        }
+        for (DictionaryInfo info : dictCache.asMap().values()) {
+            result = result.plus(getValueCacheStats(info));
+        }
+        return result;
+    }
+
+    private static CacheStats getValueCacheStats(DictionaryInfo info) {
+        Dictionary<?> dict = info.getDictionaryObject();
+        if (dict instanceof ICachedDictionary)
+            return ((ICachedDictionary) dict).getCacheStats();
+        else
+            return new CacheStats(0, 0, 0, 0, 0, 0);
+    }
+
+    static long getDictionaryBytes(DictionaryInfo info) {
+        Dictionary<?> dict = info.getDictionaryObject();
+        if (dict instanceof IMappableDictionary)
+            return ((IMappableDictionary) dict).getByteSize();
+        else if (dict != null)
+            return (long) dict.getSize() * Math.max(1, dict.getSizeOfValue());
+        else
+            return 0;
+    }
+
 }
@@ -20,10 +20,14 @@ package org.apache.kylin.dict;
 
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.List;
 import java.util.NavigableSet;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 import org.apache.kylin.common.KylinConfig;
 import org.apache.kylin.common.util.Bytes;
+import org.apache.kylin.common.util.DaemonThreadFactory;
 import org.apache.kylin.common.util.Dictionary;
 import org.apache.kylin.metadata.MetadataManager;
 import org.slf4j.Logger;
@@ -68,17 +72,55 @@ public class GlobalDictionaryBuilder implements IDictionaryBuilder {
             throw new IllegalStateException(String.format("GlobalDict %s should have 0 or 1 append dict but %d", dictInfo.getResourceDir(), appendDicts.size()));
         }
 
-        byte[] value;
-        while (valueEnumerator.moveNext()) {
-            value = valueEnumerator.current();
-            if (value == null) {
-                continue;
+        int threads = KylinConfig.getInstanceFromEnv().getAppendDictBuildThreads();
+        if (threads > 1) {
+            addValuesParallel(builder, valueEnumerator, threads, nSamples, returnSamples);
+        } else {
+            byte[] value;
+            while (valueEnumerator.moveNext()) {
+                value = valueEnumerator.current();
+                if (value == null) {
+                    continue;
+                }
+                String v = Bytes.toString(value);
+                builder.addValue(v);
+                if (returnSamples.size() < nSamples && returnSamples.contains(v) == false)
+                    returnSamples.add(v);
             }
-            String v = Bytes.toString(value);
-            builder.addValue(v);
-            if (returnSamples.size() < nSamples && returnSamples.contains(v) == false)
-                returnSamples.add(v);
         }
         return builder.build(baseId);
     }
+
+    private void addValuesParallel(AppendTrieDictionary.Builder<String> builder, IDictionaryValueEnumerator valueEnumerator, int threads, int nSamples, ArrayList<String> returnSamples) throws IOException {
+        int batchSize = KylinConfig.getInstanceFromEnv().getAppendDictBuildBatchSize();
+        logger.info("Build GlobalDict with {} threads, {} values a batch", threads, batchSize);
+
+        ExecutorService executor = Executors.newFixedThreadPool(threads, new DaemonThreadFactory());
+        try {
+            StringBytesConverter converter = new StringBytesConverter();
+            List<byte[]> batch = new ArrayList<>(batchSize);
+            byte[] value;
+            while (valueEnumerator.moveNext()) {
+                value = valueEnumerator.current();
+                if (value == null) {
+                    continue;
+                }
+                // normalize the same way as addValue(String)
+                String v = Bytes.toString(value);
+                batch.add(converter.convertToBytes(v));
+                if (returnSamples.size() < nSamples && returnSamples.contains(v) == false)
+                    returnSamples.add(v);
+
+                if (batch.size() >= batchSize) {
+                    builder.addValues(batch, executor);
+                    batch = new ArrayList<>(batchSize);
+                }
+            }
+            if (!batch.isEmpty()) {
+                builder.addValues(batch, executor);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
 }
@@ -0,0 +1,36 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.kylin.dict;
+
+import com.google.common.cache.CacheStats;
+
+/**
+ * A dictionary that caches decoded values on top of its encoded form.
+ */
+public interface ICachedDictionary {
+
+    /**
+     * Max number of values cached in either direction, drops what is cached so far.
+     * Call before the dictionary is shared among threads.
+     */
+    void setValueCacheMaxEntries(int maxEntries);
+
+    /** hit/miss/eviction counts of the value cache */
+    CacheStats getCacheStats();
+}
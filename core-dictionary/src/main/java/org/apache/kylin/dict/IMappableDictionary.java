@@ -0,0 +1,38 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.kylin.dict;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * A dictionary that can work directly on its serialized form, as written by Dictionary.write(),
+ * e.g. on a memory-mapped file, without copying it to heap.
+ */
+public interface IMappableDictionary {
+
+    /**
+     * Init from the serialized form starting at the buffer's position, and move the position past it.
+     * The dictionary keeps referring to the buffer content, which must not change afterwards.
+     */
+    void readFields(ByteBuffer in) throws IOException;
+
+    /** size of the serialized form this dictionary works on */
+    long getByteSize();
+}
@@ -25,6 +25,9 @@ import java.io.DataInput;
 import java.io.DataOutput;
 import java.io.IOException;
 import java.io.PrintStream;
+import java.nio.ByteBuffer;
+
+import com.google.common.cache.CacheStats;
 
 /**
  * Created by xiefan on 16-11-1.
@@ -32,7 +35,7 @@ import java.io.PrintStream;
  * notice:number dictionary forest currently could not handle
  * very big or very small double and float value such as 4.9E-324
  */
-public class NumberDictionaryForest<T> extends Dictionary<T> {
+public class NumberDictionaryForest<T> extends Dictionary<T> implements IMappableDictionary, ICachedDictionary {
 
     public static final int MAX_DIGITS_BEFORE_DECIMAL_POINT = 19;
 
@@ -210,6 +213,16 @@ public class NumberDictionaryForest<T> extends Dictionary<T> {
         return dict.contains(another);
     }
 
+    @Override
+    public void setValueCacheMaxEntries(int maxEntries) {
+        dict.setValueCacheMaxEntries(maxEntries);
+    }
+
+    @Override
+    public CacheStats getCacheStats() {
+        return dict.getCacheStats();
+    }
+
     @Override
     protected int getIdFromValueImpl(T value, int roundingFlag) {
         if (value == null) return -1;
@@ -272,6 +285,18 @@ public class NumberDictionaryForest<T> extends Dictionary<T> {
         this.converter = this.dict.getBytesConvert();
     }
 
+    @Override
+    public void readFields(ByteBuffer in) throws IOException {
+        this.dict = new TrieDictionaryForest<>();
+        dict.readFields(in);
+        this.converter = this.dict.getBytesConvert();
+    }
+
+    @Override
+    public long getByteSize() {
+        return dict.getByteSize();
+    }
+
     public BytesConverter<T> getConverter() {
         return converter;
     }
@@ -0,0 +1,346 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+*/
+package org.apache.kylin.dict;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.Arrays;
+
+import org.apache.kylin.common.util.Bytes;
+import org.apache.kylin.common.util.BytesUtil;
+import org.apache.kylin.common.util.Dictionary;
+
+/**
+ * A number dictionary on a sorted primitive array, the id of a value is its index in the array plus base id.
+ * 
+ * Values are kept as longs scaled by 10^scale, e.g. with scale 2, "-1.50" is kept as -150. Encoding parses
+ * the value bytes right into a long and binary searches it, no string normalization and no trie walk like
+ * NumberDictionary. All values in a dictionary have the same number of fraction digits and at most 18
+ * digits in total, the dictionary returns them exactly as they were given to the builder.
+ * 
+ * @see PrimitiveNumberDictionaryBuilder
+ */
+@SuppressWarnings("serial")
+public class PrimitiveNumberDictionary extends Dictionary<String> {
+
+    public static final int MAX_DIGITS = 18;
+
+    private static final long[] POWERS_OF_TEN = new long[MAX_DIGITS + 1];
+    static {
+        POWERS_OF_TEN[0] = 1;
+        for (int i = 1; i < POWERS_OF_TEN.length; i++)
+            POWERS_OF_TEN[i] = POWERS_OF_TEN[i - 1] * 10;
+    }
+
+    private long[] values; // sorted, unique
+    private int scale;
+    private int baseId;
+
+    private transient int sizeOfId;
+    private transient int sizeOfValue;
+
+    public PrimitiveNumberDictionary() { // default constructor for Writable interface
+    }
+
+    public PrimitiveNumberDictionary(long[] sortedValues, int scale, int baseId) {
+        init(sortedValues, scale, baseId);
+    }
+
+    private void init(long[] sortedValues, int scale, int baseId) {
+        if (scale < 0 || scale > MAX_DIGITS)
+            throw new IllegalArgumentException("Scale " + scale + " is out of range [0," + MAX_DIGITS + "]");
+
+        this.values = sortedValues;
+        this.scale = scale;
+        this.baseId = baseId;
+        this.sizeOfId = BytesUtil.sizeForValue(baseId + values.length + 1L); // note baseId + nValues is reserved for NULL
+        this.sizeOfValue = values.length == 0 ? 0 : Math.max(formatLength(values[0]), formatLength(values[values.length - 1]));
+    }
+
+    public int getScale() {
+        return scale;
+    }
+
+    @Override
+    public int getMinId() {
+        return baseId;
+    }
+
+    @Override
+    public int getMaxId() {
+        return baseId + values.length - 1;
+    }
+
+    @Override
+    public int getSizeOfId() {
+        return sizeOfId;
+    }
+
+    @Override
+    public int getSizeOfValue() {
+        return sizeOfValue;
+    }
+
+    @Override
+    protected boolean isNullObjectForm(String value) {
+        return value == null || value.length() == 0;
+    }
+
+    @Override
+    protected boolean isNullByteForm(byte[] value, int offset, int len) {
+        return value == null || len == 0;
+    }
+
+    @Override
+    protected int getIdFromValueImpl(String value, int roundingFlag) {
+        byte[] bytes = Bytes.toBytes(value);
+        return getIdFromValueBytes(bytes, 0, bytes.length, roundingFlag);
+    }
+
+    @Override
+    protected int getIdFromValueBytesImpl(byte[] value, int offset, int len, int roundingFlag) {
+        // parse into floor(value * 10^scale) and whether anything was dropped, i.e. value is between floor and floor + 1
+        long floor;
+        boolean between;
+
+        int i = offset;
+        int end = offset + len;
+        boolean negative = false;
+        if (value[i] == '-' || value[i] == '+') {
+            negative = value[i] == '-';
+            i++;
+        }
+        boolean anyDigit = false;
+        while (i < end && value[i] == '0') { // leading zeros don't count
+            anyDigit = true;
+            i++;
+        }
+
+        long m = 0;
+        int nDigits = 0;
+        int nFraction = -1;
+        boolean dropped = false;
+        boolean slow = false;
+        for (; i < end; i++) {
+            int c = value[i];
+            if (c == '.' && nFraction < 0) {
+                nFraction = 0;
+            } else if (c >= '0' && c <= '9') {
+                anyDigit = true;
+                if (nFraction >= scale) {
+                    dropped |= c != '0';
+                    continue;
+                }
+                if (nFraction >= 0)
+                    nFraction++;
+                if (m == 0 && c == '0')
+                    continue;
+                if (++nDigits > MAX_DIGITS) {
+                    slow = true;
+                    break;
+                }
+                m = m * 10 + (c - '0');
+            } else {
+                slow = true; // exponent or garbage
+                break;
+            }
+        }
+        int nPadding = scale - Math.max(nFraction, 0);
+        if (!anyDigit || nDigits + nPadding > MAX_DIGITS)
+            slow = true;
+
+        if (slow) {
+            BigDecimal scaled;
+            try {
+                scaled = new BigDecimal(Bytes.toString(value, offset, len)).movePointRight(scale);
+            } catch (NumberFormatException e) {
+                return -1;
+            }
+            BigDecimal floorDecimal = scaled.setScale(0, RoundingMode.FLOOR);
+            between = scaled.compareTo(floorDecimal) != 0;
+            if (floorDecimal.compareTo(BigDecimal.valueOf(Long.MAX_VALUE - 1)) > 0) {
+                return roundingFlag < 0 && values.length > 0 ? getMaxId() : -1;
+            } else if (floorDecimal.compareTo(BigDecimal.valueOf(Long.MIN_VALUE)) < 0) {
+                return roundingFlag > 0 && values.length > 0 ? getMinId() : -1;
+            }
+            floor = floorDecimal.longValue();
+        } else {
+            m *= POWERS_OF_TEN[nPadding];
+            between = dropped;
+            floor = negative ? (dropped ? -m - 1 : -m) : m;
+        }
+
+        int idx = Arrays.binarySearch(values, floor);
+        if (idx >= 0 && !between)
+            return baseId + idx;
+        if (roundingFlag == 0)
+            return -1;
+
+        int lower, higher;
+        if (idx >= 0) {
+            lower = idx;
+            higher = idx + 1;
+        } else {
+            lower = -(idx + 1) - 1;
+            higher = -(idx + 1);
+        }
+        if (roundingFlag < 0)
+            return lower >= 0 ? baseId + lower : -1;
+        else
+            return higher < values.length ? baseId + higher : -1;
+    }
+
+    @Override
+    protected String getValueFromIdImpl(int id) {
+        byte[] buf = new byte[sizeOfValue];
+        int len = getValueBytesFromIdImpl(id, buf, 0);
+        return Bytes.toString(buf, 0, len);
+    }
+
+    @Override
+    protected byte[] getValueBytesFromIdImpl(int id) {
+        byte[] buf = new byte[sizeOfValue];
+        int len = getValueBytesFromIdImpl(id, buf, 0);
+        return len == buf.length ? buf : Arrays.copyOf(buf, len);
+    }
+
+    @Override
+    protected int getValueBytesFromIdImpl(int id, byte[] returnValue, int offset) {
+        if (id < baseId || id > getMaxId())
+            throw new IllegalArgumentException("ID '" + id + "' is out of range [" + baseId + "," + getMaxId() + "]");
+        return format(values[id - baseId], scale, returnValue, offset);
+    }
+
+    private int formatLength(long v) {
+        long m = Math.abs(v);
+        int nDigits = 1;
+        while (nDigits < MAX_DIGITS && m >= POWERS_OF_TEN[nDigits])
+            nDigits++;
+        return (v < 0 ? 1 : 0) + Math.max(nDigits, scale + 1) + (scale > 0 ? 1 : 0);
+    }
+
+    /** writes v / 10^scale in plain decimal notation, with exactly scale fraction digits */
+    static int format(long v, int scale, byte[] out, int offset) {
+        int len = 0;
+        if (v < 0) {
+            out[offset + len++] = '-';
+            v = -v;
+        }
+        long intPart = v / POWERS_OF_TEN[scale];
+        long fraction = v % POWERS_OF_TEN[scale];
+
+        int nDigits = 1;
+        while (nDigits < MAX_DIGITS && intPart >= POWERS_OF_TEN[nDigits])
+            nDigits++;
+        for (int i = nDigits - 1; i >= 0; i--) {
+            out[offset + len + i] = (byte) ('0' + intPart % 10);
+            intPart /= 10;
+        }
+        len += nDigits;
+
+        if (scale > 0) {
+            out[offset + len++] = '.';
+            for (int i = scale - 1; i >= 0; i--) {
+                out[offset + len + i] = (byte) ('0' + fraction % 10);
+                fraction /= 10;
+            }
+            len += scale;
+        }
+        return len;
+    }
+
+    @Override
+    public boolean contains(Dictionary<?> other) {
+        if (other.getSize() > this.getSize()) {
+            return false;
+        }
+
+        if (other instanceof PrimitiveNumberDictionary && ((PrimitiveNumberDictionary) other).scale == scale) {
+            for (long v : ((PrimitiveNumberDictionary) other).values) {
+                if (Arrays.binarySearch(values, v) < 0)
+                    return false;
+            }
+            return true;
+        }
+
+        byte[] buf = new byte[Math.max(other.getSizeOfValue(), 1)];
+        for (int i = other.getMinId(); i <= other.getMaxId(); ++i) {
+            int len = other.getValueBytesFromId(i, buf, 0);
+            if (len <= 0 || getIdFromValueBytesImpl(buf, 0, len, 0) < 0)
+                return false;
+        }
+        return true;
+    }
+
+    @Override
+    public void write(DataOutput out) throws IOException {
+        out.writeInt(baseId);
+        out.writeInt(scale);
+        out.writeInt(values.length);
+        for (long v : values) {
+            out.writeLong(v);
+        }
+    }
+
+    @Override
+    public void readFields(DataInput in) throws IOException {
+        int baseId = in.readInt();
+        int scale = in.readInt();
+        long[] values = new long[in.readInt()];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = in.readLong();
+        }
+        init(values, scale, baseId);
+    }
+
+    private void readObject(java.io.ObjectInputStream in) throws IOException, ClassNotFoundException {
+        in.defaultReadObject();
+        init(values, scale, baseId);
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * (31 * baseId + scale) + Arrays.hashCode(values);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if ((o instanceof PrimitiveNumberDictionary) == false)
+            return false;
+        PrimitiveNumberDictionary that = (PrimitiveNumberDictionary) o;
+        return this.baseId == that.baseId && this.scale == that.scale && Arrays.equals(this.values, that.values);
+    }
+
+    @Override
+    public void dump(PrintStream out) {
+        out.println(this.toString());
+        for (int id = getMinId(); id <= getMaxId(); id++) {
+            out.println(id + "\t" + getValueFromId(id));
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "PrimitiveNumberDictionary [size=" + values.length + ", scale=" + scale + ", baseId=" + baseId + "]";
+    }
+
+}
@@ -0,0 +1,112 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+*/
+package org.apache.kylin.dict;
+
+import java.util.Arrays;
+
+import org.apache.kylin.common.util.Bytes;
+
+/**
+ * Builds a PrimitiveNumberDictionary, accepting only values it can give back exactly: plain decimals without
+ * leading zeros or '+' sign, not negative zero, with the same number of fraction digits as the first value
+ * and at most 18 digits in total. addValue() returns false for any other value, the caller is then expected
+ * to build a NumberDictionary instead, e.g. by replaying getValues().
+ */
+public class PrimitiveNumberDictionaryBuilder {
+
+    private long[] values = new long[1024];
+    private int size = 0;
+    private int scale = -1;
+
+    /**
+     * @return false if the value is not accepted, in which case the builder is unchanged
+     */
+    public boolean addValue(byte[] value, int offset, int len) {
+        int i = offset;
+        int end = offset + len;
+        boolean negative = i < end && value[i] == '-';
+        if (negative)
+            i++;
+
+        // integer part, "0" or no leading zero
+        int intStart = i;
+        long m = 0;
+        for (; i < end && value[i] >= '0' && value[i] <= '9'; i++) {
+            m = m * 10 + (value[i] - '0');
+            if (i - intStart >= PrimitiveNumberDictionary.MAX_DIGITS)
+                return false;
+        }
+        int nInt = i - intStart;
+        if (nInt == 0 || (nInt > 1 && value[intStart] == '0'))
+            return false;
+
+        // fraction part, at least one digit after '.'
+        int nFraction = 0;
+        if (i < end) {
+            if (value[i] != '.')
+                return false;
+            int fracStart = ++i;
+            for (; i < end && value[i] >= '0' && value[i] <= '9'; i++) {
+                m = m * 10 + (value[i] - '0');
+                if (nInt + i - fracStart >= PrimitiveNumberDictionary.MAX_DIGITS)
+                    return false;
+            }
+            nFraction = i - fracStart;
+            if (nFraction == 0 || i < end)
+                return false;
+        }
+
+        if (negative && m == 0)
+            return false;
+        if (scale < 0)
+            scale = nFraction;
+        else if (scale != nFraction)
+            return false;
+
+        if (size == values.length)
+            values = Arrays.copyOf(values, size * 2);
+        values[size++] = negative ? -m : m;
+        return true;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /** the accepted values, in the same form as they were added */
+    public String[] getValues() {
+        String[] result = new String[size];
+        byte[] buf = new byte[PrimitiveNumberDictionary.MAX_DIGITS + 3];
+        for (int i = 0; i < size; i++) {
+            int len = PrimitiveNumberDictionary.format(values[i], Math.max(scale, 0), buf, 0);
+            result[i] = Bytes.toString(buf, 0, len);
+        }
+        return result;
+    }
+
+    public PrimitiveNumberDictionary build(int baseId) {
+        long[] sorted = Arrays.copyOf(values, size);
+        Arrays.sort(sorted);
+        int n = 0;
+        for (int i = 0; i < sorted.length; i++) {
+            if (n == 0 || sorted[i] != sorted[n - 1])
+                sorted[n++] = sorted[i];
+        }
+        return new PrimitiveNumberDictionary(n == sorted.length ? sorted : Arrays.copyOf(sorted, n), Math.max(scale, 0), baseId);
+    }
+}
@@ -27,10 +27,8 @@ import java.io.IOException;
 import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
 import java.io.PrintStream;
-import java.lang.ref.SoftReference;
+import java.nio.ByteBuffer;
 import java.util.Arrays;
-import java.util.Map;
-import java.util.concurrent.ConcurrentHashMap;
 
 import org.apache.kylin.common.util.Bytes;
 import org.apache.kylin.common.util.BytesUtil;
@@ -40,6 +38,9 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import com.google.common.base.Preconditions;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
 
 /**
  * A dictionary based on Trie data structure that maps enumerations of byte[] to
@@ -47,15 +48,20 @@ import com.google.common.base.Preconditions;
  * 
  * With Trie the memory footprint of the mapping is kinda minimized at the cost
  * CPU, if compared to HashMap of ID Arrays. Performance test shows Trie is
- * roughly 10 times slower, so there's a cache layer overlays on top of Trie and
- * gracefully fall back to Trie using a weak reference.
+ * roughly 10 times slower, so there's a size-bounded cache layer overlays on top
+ * of Trie. A dictionary small enough caches id to value in a plain array indexed
+ * by seq no, a larger one evicts least recently used values. Its hit/miss/eviction
+ * counts are in getCacheStats().
+ * 
+ * The trie is read from a ByteBuffer, either wrapping a heap array or memory-mapped
+ * from a local file (see readFields(ByteBuffer)), in which case no heap copy is made.
  * 
  * The implementation is thread-safe.
  * 
  * @author yangli9
  */
 @SuppressWarnings({ "rawtypes", "unchecked" })
-public class TrieDictionary<T> extends Dictionary<T> {
+public class TrieDictionary<T> extends Dictionary<T> implements IMappableDictionary, ICachedDictionary {
     private static final long serialVersionUID = 1L;
 
     public static final byte[] MAGIC = new byte[] { 0x54, 0x72, 0x69, 0x65, 0x44, 0x69, 0x63, 0x74 }; // "TrieDict"
@@ -66,7 +72,10 @@ public class TrieDictionary<T> extends Dictionary<T> {
 
     private static final Logger logger = LoggerFactory.getLogger(TrieDictionary.class);
 
-    private byte[] trieBytes;
+    private ByteBuffer trieBuf; // position 0 is the start of MAGIC, only absolute reads
+
+    // the heap array behind trieBuf, null for a mapped dictionary, lookups index it directly
+    transient private byte[] trieBytes;
 
     // non-persistent part
     transient private int headSize;
@@ -83,9 +92,14 @@ public class TrieDictionary<T> extends Dictionary<T> {
     transient private long childOffsetMask;
     transient private int firstByteOffset;
 
+    public static final int DEFAULT_VALUE_CACHE_MAX_ENTRIES = 100000;
+
+    transient private int valueCacheMaxEntries = DEFAULT_VALUE_CACHE_MAX_ENTRIES;
     transient private boolean enableValueCache = true;
-    transient private SoftReference<Map> valueToIdCache;
-    transient private SoftReference<Object[]> idToValueCache;
+    transient private Cache<T, Integer> valueToIdCache;
+    transient private Object[] idToValueArray; // when all values fit in the cache, no boxing nor eviction
+    transient private long idToValueArrayHits, idToValueArrayMisses; // not synchronized, may miss a few counts
+    transient private Cache<Integer, T> idToValueCache; // otherwise
 
     transient private boolean enableIdToValueBytesCache = false;
     transient private byte[][] idToValueBytesCache;
@@ -94,17 +108,26 @@ public class TrieDictionary<T> extends Dictionary<T> {
     }
 
     public TrieDictionary(byte[] trieBytes) {
-        init(trieBytes);
+        init(ByteBuffer.wrap(trieBytes));
     }
 
-    private void init(byte[] trieBytes) {
-        this.trieBytes = trieBytes;
-        if (BytesUtil.compareBytes(MAGIC, 0, trieBytes, 0, MAGIC.length) != 0)
+    private void init(ByteBuffer trieBuf) {
+        this.trieBuf = trieBuf;
+        this.trieBytes = trieBuf.hasArray() && trieBuf.arrayOffset() == 0 ? trieBuf.array() : null;
+        if (trieBuf.capacity() < MAGIC_SIZE_I + 2)
+            throw new IllegalArgumentException("Wrong file type (too short)");
+
+        // the head is small, parse it from a heap copy
+        byte[] head = new byte[Math.min(trieBuf.capacity(), MAGIC_SIZE_I + 2 + (trieBuf.getShort(MAGIC_SIZE_I) & 0xffff))];
+        ByteBuffer dup = trieBuf.duplicate();
+        dup.clear();
+        dup.get(head);
+        if (BytesUtil.compareBytes(MAGIC, 0, head, 0, MAGIC.length) != 0)
             throw new IllegalArgumentException("Wrong file type (magic does not match)");
 
         try {
             DataInputStream headIn = new DataInputStream(//
-                    new ByteArrayInputStream(trieBytes, MAGIC_SIZE_I, trieBytes.length - MAGIC_SIZE_I));
+                    new ByteArrayInputStream(head, MAGIC_SIZE_I, head.length - MAGIC_SIZE_I));
             this.headSize = headIn.readShort();
             this.bodyLen = headIn.readInt();
             this.sizeChildOffset = headIn.read();
@@ -116,7 +139,7 @@ public class TrieDictionary<T> extends Dictionary<T> {
             if (converterName.isEmpty() == false)
                 this.bytesConvert = ClassUtil.forName(converterName, BytesConverter.class).newInstance();
 
-            this.nValues = BytesUtil.readUnsigned(trieBytes, headSize + sizeChildOffset, sizeNoValuesBeneath);
+            this.nValues = readUnsigned(headSize + sizeChildOffset, sizeNoValuesBeneath);
             this.sizeOfId = BytesUtil.sizeForValue(baseId + nValues + 1); // note baseId could raise 1 byte in ID space, +1 to reserve all 0xFF for NULL case
             this.childOffsetMask = ~((long) (BIT_IS_LAST_CHILD | BIT_IS_END_OF_VALUE) << ((sizeChildOffset - 1) * 8));
             this.firstByteOffset = sizeChildOffset + sizeNoValuesBeneath + 1; // the offset from begin of node to its first value byte
@@ -127,12 +150,65 @@ public class TrieDictionary<T> extends Dictionary<T> {
                 throw new RuntimeException(e);
         }
 
+        initValueCache();
+    }
+
+    private void initValueCache() {
+        valueToIdCache = null;
+        idToValueArray = null;
+        idToValueCache = null;
         if (enableValueCache) {
-            valueToIdCache = new SoftReference<Map>(new ConcurrentHashMap());
-            idToValueCache = new SoftReference<Object[]>(new Object[nValues]);
+            int cacheSize = Math.min(nValues, valueCacheMaxEntries);
+            valueToIdCache = CacheBuilder.newBuilder().maximumSize(cacheSize).recordStats().build();
+            if (nValues <= valueCacheMaxEntries)
+                idToValueArray = new Object[nValues];
+            else
+                idToValueCache = CacheBuilder.newBuilder().maximumSize(cacheSize).recordStats().build();
         }
     }
 
+    /**
+     * Max number of values cached in either direction, drops what is cached so far.
+     * Call before the dictionary is shared among threads.
+     */
+    @Override
+    public void setValueCacheMaxEntries(int maxEntries) {
+        if (maxEntries == valueCacheMaxEntries)
+            return;
+        valueCacheMaxEntries = maxEntries;
+        initValueCache();
+    }
+
+    /**
+     * Returns the combined stats of the value to id and id to value caches.
+     */
+    @Override
+    public CacheStats getCacheStats() {
+        if (!enableValueCache)
+            return new CacheStats(0, 0, 0, 0, 0, 0);
+        CacheStats idToValueStats = idToValueArray != null ? new CacheStats(idToValueArrayHits, idToValueArrayMisses, 0, 0, 0, 0) : idToValueCache.stats();
+        return valueToIdCache.stats().plus(idToValueStats);
+    }
+
+    private T getCachedValue(int id) {
+        if (idToValueArray != null) {
+            T result = (T) idToValueArray[calcSeqNoFromId(id)];
+            if (result != null)
+                idToValueArrayHits++;
+            else
+                idToValueArrayMisses++;
+            return result;
+        }
+        return idToValueCache.getIfPresent(id);
+    }
+
+    private void putCachedValue(int id, T value) {
+        if (idToValueArray != null)
+            idToValueArray[calcSeqNoFromId(id)] = value;
+        else
+            idToValueCache.put(id, value);
+    }
+
     @Override
     public int getMinId() {
         return baseId;
@@ -156,19 +232,15 @@ public class TrieDictionary<T> extends Dictionary<T> {
     @Override
     final protected int getIdFromValueImpl(T value, int roundingFlag) {
         if (enableValueCache && roundingFlag == 0) {
-            Map cache = valueToIdCache.get(); // SoftReference to skip cache gracefully when short of memory
-            if (cache != null) {
-                Integer id = null;
-                id = (Integer) cache.get(value);
-                if (id != null)
-                    return id.intValue();
-
-                byte[] valueBytes = bytesConvert.convertToBytes(value);
-                id = getIdFromValueBytes(valueBytes, 0, valueBytes.length, roundingFlag);
-
-                cache.put(value, id);
-                return id;
-            }
+            Integer id = valueToIdCache.getIfPresent(value);
+            if (id != null)
+                return id.intValue();
+
+            byte[] valueBytes = bytesConvert.convertToBytes(value);
+            id = getIdFromValueBytes(valueBytes, 0, valueBytes.length, roundingFlag);
+
+            valueToIdCache.put(value, id);
+            return id;
         }
         byte[] valueBytes = bytesConvert.convertToBytes(value);
         return getIdFromValueBytes(valueBytes, 0, valueBytes.length, roundingFlag);
@@ -209,12 +281,13 @@ public class TrieDictionary<T> extends Dictionary<T> {
             // match the current node, note [0] of node's value has been matched
             // when this node is selected by its parent
             int p = n + firstByteOffset; // start of node's value
-            int end = p + BytesUtil.readUnsigned(trieBytes, p - 1, 1); // end of node's value
+            int end = p + readUnsigned(p - 1, 1); // end of node's value
             for (p++; p < end && o < inpEnd; p++, o++) { // note matching start from [1]
-                if (trieBytes[p] != inp[o]) {
-                    int comp = BytesUtil.compareByteUnsigned(trieBytes[p], inp[o]);
+                byte b = byteAt(p);
+                if (b != inp[o]) {
+                    int comp = BytesUtil.compareByteUnsigned(b, inp[o]);
                     if (comp < 0) {
-                        seq += BytesUtil.readUnsigned(trieBytes, n + sizeChildOffset, sizeNoValuesBeneath);
+                        seq += readUnsigned(n + sizeChildOffset, sizeNoValuesBeneath);
                     }
                     return roundSeqNo(roundingFlag, seq - 1, -1, seq); // mismatch
                 }
@@ -236,16 +309,16 @@ public class TrieDictionary<T> extends Dictionary<T> {
             int comp;
             while (true) {
                 p = c + firstByteOffset;
-                comp = BytesUtil.compareByteUnsigned(trieBytes[p], inpByte);
+                comp = BytesUtil.compareByteUnsigned(byteAt(p), inpByte);
                 if (comp == 0) { // continue in the matching child, reset n and loop again
                     n = c;
                     o++;
                     break;
                 } else if (comp < 0) { // try next child
-                    seq += BytesUtil.readUnsigned(trieBytes, c + sizeChildOffset, sizeNoValuesBeneath);
+                    seq += readUnsigned(c + sizeChildOffset, sizeNoValuesBeneath);
                     if (checkFlag(c, BIT_IS_LAST_CHILD))
                         return roundSeqNo(roundingFlag, seq - 1, -1, seq); // no child can match the next byte of input
-                    c = p + BytesUtil.readUnsigned(trieBytes, p - 1, 1);
+                    c = p + readUnsigned(p - 1, 1);
                 } else { // children are ordered by their first value byte
                     return roundSeqNo(roundingFlag, seq - 1, -1, seq); // no child can match the next byte of input
                 }
@@ -254,8 +327,8 @@ public class TrieDictionary<T> extends Dictionary<T> {
     }
 
     private int getChildOffset(int n) {
-        long offset = headSize + (BytesUtil.readLong(trieBytes, n, sizeChildOffset) & childOffsetMask);
-        assert offset < trieBytes.length;
+        long offset = headSize + (readLong(n, sizeChildOffset) & childOffsetMask);
+        assert offset < trieBuf.capacity();
         return (int) offset;
     }
 
@@ -271,19 +344,17 @@ public class TrieDictionary<T> extends Dictionary<T> {
     @Override
     final protected T getValueFromIdImpl(int id) {
         if (enableValueCache) {
-            Object[] cache = idToValueCache.get(); // SoftReference to skip cache gracefully when short of memory
-            if (cache != null) {
-                int seq = calcSeqNoFromId(id);
-                if (cache[seq] != null)
-                    return (T) cache[seq];
+            T result = getCachedValue(id);
+            if (result != null)
+                return result;
 
-                byte[] value = new byte[getSizeOfValue()];
-                int length = getValueBytesFromId(id, value, 0);
-                T result = bytesConvert.convertFromBytes(value, 0, length);
+            byte[] value = new byte[getSizeOfValue()];
+            int length = getValueBytesFromId(id, value, 0);
+            result = bytesConvert.convertFromBytes(value, 0, length);
 
-                cache[seq] = result;
-                return result;
-            }
+            if (result != null)
+                putCachedValue(id, result);
+            return result;
         }
         byte[] value = new byte[getSizeOfValue()];
         int length = getValueBytesFromId(id, value, 0);
@@ -331,8 +402,8 @@ public class TrieDictionary<T> extends Dictionary<T> {
         while (true) {
             // write current node value
             int p = n + firstByteOffset;
-            int len = BytesUtil.readUnsigned(trieBytes, p - 1, 1);
-            System.arraycopy(trieBytes, p, returnValue, o, len);
+            int len = readUnsigned(p - 1, 1);
+            copyBytes(p, returnValue, o, len);
             o += len;
 
             // if the value is ended
@@ -349,7 +420,7 @@ public class TrieDictionary<T> extends Dictionary<T> {
                 return -1; // no child? corrupted dictionary!
             int nValuesBeneath;
             while (true) {
-                nValuesBeneath = BytesUtil.readUnsigned(trieBytes, c + sizeChildOffset, sizeNoValuesBeneath);
+                nValuesBeneath = readUnsigned(c + sizeChildOffset, sizeNoValuesBeneath);
                 if (seq - nValuesBeneath < 0) { // value is under this child, reset n and loop again
                     n = c;
                     break;
@@ -358,12 +429,130 @@ public class TrieDictionary<T> extends Dictionary<T> {
                     if (checkFlag(c, BIT_IS_LAST_CHILD))
                         return -1; // no more child? corrupted dictionary!
                     p = c + firstByteOffset;
-                    c = p + BytesUtil.readUnsigned(trieBytes, p - 1, 1);
+                    c = p + readUnsigned(p - 1, 1);
                 }
             }
         }
     }
 
+    @Override
+    public void getValuesFromIds(int[] ids, int n, T[] result) {
+        // serve from cache first, then decode the misses in one batch
+        int[] missIds = new int[n];
+        int[] missIndex = new int[n];
+        int nMiss = 0;
+        for (int i = 0; i < n; i++) {
+            int id = ids[i];
+            T value = null;
+            if (isNullId(id)) {
+                result[i] = null;
+                continue;
+            } else if (enableValueCache) {
+                value = getCachedValue(id);
+            }
+            if (value != null) {
+                result[i] = value;
+            } else {
+                missIds[nMiss] = id;
+                missIndex[nMiss] = i;
+                nMiss++;
+            }
+        }
+        if (nMiss == 0)
+            return;
+
+        byte[][] missBytes = new byte[nMiss][];
+        getValueBytesFromIds(missIds, nMiss, missBytes);
+        for (int j = 0; j < nMiss; j++) {
+            T value = bytesConvert.convertFromBytes(missBytes[j], 0, missBytes[j].length);
+            if (enableValueCache && value != null)
+                putCachedValue(missIds[j], value);
+            result[missIndex[j]] = value;
+        }
+    }
+
+    @Override
+    public void getValueBytesFromIds(int[] ids, int n, byte[][] result) {
+        if (enableIdToValueBytesCache) {
+            super.getValueBytesFromIds(ids, n, result);
+            return;
+        }
+
+        // sort by seq (high 32 bits) keeping the position in result (low 32 bits)
+        long[] seqs = new long[n];
+        int m = 0;
+        for (int i = 0; i < n; i++) {
+            if (isNullId(ids[i]))
+                result[i] = BytesUtil.EMPTY_BYTE_ARRAY;
+            else
+                seqs[m++] = ((long) calcSeqNoFromId(ids[i]) << 32) | i;
+        }
+        Arrays.sort(seqs, 0, m);
+        if (m > 0)
+            lookupValuesFromSeqNos(headSize, 0, new byte[maxValueLength], 0, seqs, 0, m, result);
+    }
+
+    /**
+     * The batch form of lookupValueFromSeqNo(), walks the trie once visiting
+     * only the nodes leading to the sorted seqs[from, to)
+     * 
+     * @param n
+     *            -- the offset of current node
+     * @param seqBase
+     *            -- the code point of the first value at or beneath current node
+     * @param buf
+     *            -- holds the value bytes of the parent nodes in [0, len)
+     */
+    private void lookupValuesFromSeqNos(int n, int seqBase, byte[] buf, int len, long[] seqs, int from, int to, byte[][] result) {
+        // write current node value
+        int p = n + firstByteOffset;
+        int nodeLen = readUnsigned(p - 1, 1);
+        copyBytes(p, buf, len, nodeLen);
+        len += nodeLen;
+
+        // if the value is ended
+        if (checkFlag(n, BIT_IS_END_OF_VALUE)) {
+            while (from < to && (int) (seqs[from] >>> 32) == seqBase) {
+                result[(int) seqs[from]] = Arrays.copyOf(buf, len);
+                from++;
+            }
+            seqBase++;
+        }
+
+        // go down the children having any seq beneath
+        int c = getChildOffset(n);
+        while (from < to) {
+            if (c == headSize)
+                throw new IllegalStateException("No child, corrupted dictionary!");
+            int nValuesBeneath = readUnsigned(c + sizeChildOffset, sizeNoValuesBeneath);
+            int end = from;
+            while (end < to && (int) (seqs[end] >>> 32) < seqBase + nValuesBeneath)
+                end++;
+            if (end > from) {
+                lookupValuesFromSeqNos(c, seqBase, buf, len, seqs, from, end, result);
+                from = end;
+            }
+            seqBase += nValuesBeneath;
+
+            if (from < to) {
+                if (checkFlag(c, BIT_IS_LAST_CHILD))
+                    throw new IllegalStateException("No more child, corrupted dictionary!");
+                p = c + firstByteOffset;
+                c = p + readUnsigned(p - 1, 1);
+            }
+        }
+    }
+
+    private void copyBytes(int p, byte[] dst, int offset, int len) {
+        if (trieBytes != null) {
+            System.arraycopy(trieBytes, p, dst, offset, len);
+        } else {
+            for (int i = 0; i < len; i++) {
+                dst[offset + i] = trieBuf.get(p + i);
+            }
+        }
+    }
+
     public void enableIdToValueBytesCache() {
         enableIdToValueBytesCache(new EnableIdToValueBytesCacheVisitor() {
             @Override
@@ -395,8 +584,8 @@ public class TrieDictionary<T> extends Dictionary<T> {
     private void enableIdToValueBytesCache_recursion(int n, int seq, byte[] buf, int tail, EnableIdToValueBytesCacheVisitor visitor) {
         // write current node value
         int p = n + firstByteOffset;
-        int len = BytesUtil.readUnsigned(trieBytes, p - 1, 1);
-        System.arraycopy(trieBytes, p, buf, tail, len);
+        int len = readUnsigned(p - 1, 1);
+        copyBytes(p, buf, tail, len);
         tail += len;
 
         // if the value is ended
@@ -415,19 +604,31 @@ public class TrieDictionary<T> extends Dictionary<T> {
         while (true) {
             enableIdToValueBytesCache_recursion(c, seq, buf, tail, visitor);
 
-            int nValuesBeneath = BytesUtil.readUnsigned(trieBytes, c + sizeChildOffset, sizeNoValuesBeneath);
+            int nValuesBeneath = readUnsigned(c + sizeChildOffset, sizeNoValuesBeneath);
             seq += nValuesBeneath;
 
             // go next child
             if (checkFlag(c, BIT_IS_LAST_CHILD))
                 break; // no more child? we are done
             p = c + firstByteOffset;
-            c = p + BytesUtil.readUnsigned(trieBytes, p - 1, 1);
+            c = p + readUnsigned(p - 1, 1);
         }
     }
 
     private boolean checkFlag(int offset, int bit) {
-        return (trieBytes[offset] & bit) > 0;
+        return (byteAt(offset) & bit) > 0;
+    }
+
+    private byte byteAt(int offset) {
+        return trieBytes != null ? trieBytes[offset] : trieBuf.get(offset);
+    }
+
+    private int readUnsigned(int offset, int size) {
+        return trieBytes != null ? BytesUtil.readUnsigned(trieBytes, offset, size) : BytesUtil.readUnsigned(trieBuf, offset, size);
+    }
+
+    private long readLong(int offset, int size) {
+        return trieBytes != null ? BytesUtil.readLong(trieBytes, offset, size) : BytesUtil.readLong(trieBuf, offset, size);
     }
 
     private int calcIdFromSeqNo(int seq) {
@@ -447,7 +648,18 @@ public class TrieDictionary<T> extends Dictionary<T> {
 
     @Override
     public void write(DataOutput out) throws IOException {
-        out.write(trieBytes);
+        out.write(toBytes());
+    }
+
+    private byte[] toBytes() {
+        if (trieBuf.hasArray() && trieBuf.arrayOffset() == 0 && trieBuf.array().length == trieBuf.capacity())
+            return trieBuf.array();
+
+        byte[] bytes = new byte[trieBuf.capacity()];
+        ByteBuffer dup = trieBuf.duplicate();
+        dup.clear();
+        dup.get(bytes);
+        return bytes;
     }
 
     @Override
@@ -468,10 +680,31 @@ public class TrieDictionary<T> extends Dictionary<T> {
         System.arraycopy(headPartial, 0, all, 0, headPartial.length);
         in.readFully(all, headPartial.length, all.length - headPartial.length);
 
-        init(all);
+        init(ByteBuffer.wrap(all));
+    }
+
+    @Override
+    public void readFields(ByteBuffer in) throws IOException {
+        int start = in.position();
+        if (in.remaining() < MAGIC_SIZE_I + 6)
+            throw new IllegalArgumentException("Wrong file type (too short)");
+
+        int headSize = in.getShort(start + MAGIC_SIZE_I);
+        int bodyLen = in.getInt(start + MAGIC_SIZE_I + 2);
+
+        ByteBuffer slice = in.duplicate();
+        slice.limit(start + headSize + bodyLen);
+        init(slice.slice());
+        in.position(start + headSize + bodyLen);
+    }
+
+    @Override
+    public long getByteSize() {
+        return trieBuf.capacity();
     }
 
     private void writeObject(java.io.ObjectOutputStream stream) throws IOException {
+        byte[] trieBytes = toBytes();
         stream.writeInt(trieBytes.length);
         stream.write(trieBytes);
     }
@@ -484,7 +717,7 @@ public class TrieDictionary<T> extends Dictionary<T> {
         while ((currentCount = stream.read(trieBytes, idx, length - idx)) > 0) {
             idx += currentCount;
         }
-        init(trieBytes);
+        init(ByteBuffer.wrap(trieBytes));
     }
 
     @Override
@@ -499,7 +732,7 @@ public class TrieDictionary<T> extends Dictionary<T> {
 
     @Override
     public int hashCode() {
-        return Arrays.hashCode(trieBytes);
+        return trieBuf.hashCode();
     }
 
     @Override
@@ -509,7 +742,7 @@ public class TrieDictionary<T> extends Dictionary<T> {
             return false;
         }
         TrieDictionary that = (TrieDictionary) o;
-        return Arrays.equals(this.trieBytes, that.trieBytes);
+        return this.trieBuf.equals(that.trieBuf);
     }
 
     @Override
@@ -25,12 +25,17 @@ import org.apache.kylin.common.util.Dictionary;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.google.common.cache.CacheStats;
+
+import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.DataInput;
+import java.io.DataInputStream;
 import java.io.DataOutput;
 import java.io.DataOutputStream;
 import java.io.IOException;
 import java.io.PrintStream;
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
@@ -45,7 +50,7 @@ import java.util.List;
  * <p>
  * Created by xiefan on 16-10-26.
  */
-public class TrieDictionaryForest<T> extends Dictionary<T> {
+public class TrieDictionaryForest<T> extends Dictionary<T> implements IMappableDictionary, ICachedDictionary {
 
     private static final Logger logger = LoggerFactory.getLogger(TrieDictionaryForest.class);
 
@@ -192,6 +197,54 @@ public class TrieDictionaryForest<T> extends Dictionary<T> {
     }
 
 
+    @Override
+    public void getValuesFromIds(int[] ids, int n, T[] result) {
+        byte[][] bytes = new byte[n][];
+        getValueBytesFromIds(ids, n, bytes);
+        for (int i = 0; i < n; i++) {
+            result[i] = isNullId(ids[i]) ? null : bytesConvert.convertFromBytes(bytes[i], 0, bytes[i].length);
+        }
+    }
+
+    @Override
+    public void getValueBytesFromIds(int[] ids, int n, byte[][] result) {
+        // group the ids by tree, then decode each group in one batch
+        int[] treeIndex = new int[n];
+        int[] treeCount = new int[trees.size()];
+        for (int i = 0; i < n; i++) {
+            if (isNullId(ids[i])) {
+                result[i] = BytesUtil.EMPTY_BYTE_ARRAY;
+                treeIndex[i] = -1;
+            } else {
+                int index = findIndexById(ids[i]);
+                if (index < 0)
+                    throw new IllegalArgumentException("Tree Not Found. index < 0");
+                treeIndex[i] = index;
+                treeCount[index]++;
+            }
+        }
+
+        int[] innerIds = new int[n];
+        int[] positions = new int[n];
+        byte[][] innerResult = new byte[n][];
+        for (int t = 0; t < trees.size(); t++) {
+            if (treeCount[t] == 0)
+                continue;
+            int m = 0;
+            for (int i = 0; i < n; i++) {
+                if (treeIndex[i] == t) {
+                    innerIds[m] = getTreeInnerOffset(ids[i], t);
+                    positions[m] = i;
+                    m++;
+                }
+            }
+            trees.get(t).getValueBytesFromIds(innerIds, m, innerResult);
+            for (int j = 0; j < m; j++) {
+                result[positions[j]] = innerResult[j];
+            }
+        }
+    }
+
     private int getTreeInnerOffset(int id, int index) {
         id -= baseId;
         id = id - accuOffset.get(index);
@@ -248,8 +301,47 @@ public class TrieDictionaryForest<T> extends Dictionary<T> {
 
     @Override
     public void readFields(DataInput in) throws IOException {
+        in.readInt(); // head size
+        readHead(in);
+        int treeSize = in.readInt();
+        this.trees = new ArrayList<>();
+        for (int i = 0; i < treeSize; i++) {
+            TrieDictionary<T> dict = new TrieDictionary<>();
+            dict.readFields(in);
+            trees.add(dict);
+        }
+    }
+
+    /** the head is parsed to heap, the trees keep working on the buffer */
+    @Override
+    public void readFields(ByteBuffer in) throws IOException {
+        int headSize = in.getInt();
+        byte[] head = new byte[headSize];
+        in.get(head);
+        DataInputStream headIn = new DataInputStream(new ByteArrayInputStream(head));
+        readHead(headIn);
+        int treeSize = headIn.readInt();
+        headIn.close();
+
+        this.trees = new ArrayList<>();
+        for (int i = 0; i < treeSize; i++) {
+            TrieDictionary<T> dict = new TrieDictionary<>();
+            dict.readFields(in);
+            trees.add(dict);
+        }
+    }
+
+    @Override
+    public long getByteSize() {
+        long size = 0;
+        for (TrieDictionary<T> tree : trees) {
+            size += tree.getByteSize();
+        }
+        return size;
+    }
+
+    private void readHead(DataInput in) throws IOException {
         try {
-            int headSize = in.readInt();
             this.baseId = in.readInt();
             String converterName = in.readUTF();
             if (converterName.isEmpty() == false)
@@ -269,13 +361,6 @@ public class TrieDictionaryForest<T> extends Dictionary<T> {
                 in.readFully(buffer);
                 valueDivide.add(new ByteArray(buffer, 0, buffer.length));
             }
-            int treeSize = in.readInt();
-            this.trees = new ArrayList<>();
-            for (int i = 0; i < treeSize; i++) {
-                TrieDictionary<T> dict = new TrieDictionary<>();
-                dict.readFields(in);
-                trees.add(dict);
-            }
         } catch (Exception e) {
             if (e instanceof RuntimeException)
                 throw (RuntimeException) e;
@@ -300,6 +385,22 @@ public class TrieDictionaryForest<T> extends Dictionary<T> {
         return true;
     }
 
+    @Override
+    public void setValueCacheMaxEntries(int maxEntries) {
+        for (TrieDictionary<T> tree : trees) {
+            tree.setValueCacheMaxEntries(maxEntries);
+        }
+    }
+
+    @Override
+    public CacheStats getCacheStats() {
+        CacheStats result = new CacheStats(0, 0, 0, 0, 0, 0);
+        for (TrieDictionary<T> tree : trees) {
+            result = result.plus(tree.getCacheStats());
+        }
+        return result;
+    }
+
     public List<TrieDictionary<T>> getTrees() {
         return Collections.unmodifiableList(this.trees);
     }
@@ -0,0 +1,226 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+*/
+
+package org.apache.kylin.dict.lookup;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.apache.kylin.common.util.BytesUtil;
+import org.apache.kylin.common.util.Dictionary;
+import org.apache.kylin.dict.TrieDictionary;
+
+/**
+ * The dictionary of a snapshot column appended by deltas. It chains the dictionary of
+ * the base snapshot and one dictionary of the new values per delta, the ids of a part
+ * follow the ids of the previous part, so the ids of the base stay valid.
+ *
+ * Ids are not in value order across parts, only exact lookups are supported.
+ */
+@SuppressWarnings("serial")
+class ChainedDictionary extends Dictionary<String> {
+
+    private List<Dictionary<String>> parts;
+    private int[] offsets; // the first id of each part
+    private int maxId;
+    private int sizeOfId;
+    private int sizeOfValue;
+
+    // default constructor for readFields()
+    public ChainedDictionary() {
+    }
+
+    ChainedDictionary(List<Dictionary<String>> parts) {
+        init(parts);
+    }
+
+    /**
+     * Returns the dictionary of base followed by the appended values, the parts of a chained base are reused.
+     */
+    static ChainedDictionary append(Dictionary<String> base, Dictionary<String> appended) {
+        List<Dictionary<String>> parts = new ArrayList<Dictionary<String>>(getParts(base));
+        parts.add(appended);
+        return new ChainedDictionary(parts);
+    }
+
+    static List<Dictionary<String>> getParts(Dictionary<String> dict) {
+        if (dict instanceof ChainedDictionary)
+            return ((ChainedDictionary) dict).parts;
+        else
+            return Collections.singletonList(dict);
+    }
+
+    private void init(List<Dictionary<String>> parts) {
+        this.parts = Collections.unmodifiableList(new ArrayList<Dictionary<String>>(parts));
+        this.offsets = new int[parts.size()];
+        int next = 0;
+        int valueSize = 0;
+        for (int i = 0; i < offsets.length; i++) {
+            Dictionary<String> part = parts.get(i);
+            offsets[i] = next;
+            next += part.getSize();
+            valueSize = Math.max(valueSize, part.getSizeOfValue());
+        }
+        this.maxId = next - 1;
+        this.sizeOfId = BytesUtil.sizeForValue(next + 1L); // +1 to reserve all 0xFF for NULL case
+        this.sizeOfValue = valueSize;
+    }
+
+    private int findPart(int id) {
+        if (id < 0 || id > maxId)
+            throw new IllegalArgumentException("Not a valid ID: " + id);
+        int i = offsets.length - 1;
+        while (offsets[i] > id)
+            i--;
+        return i;
+    }
+
+    private int toPartId(int i, int id) {
+        return id - offsets[i] + parts.get(i).getMinId();
+    }
+
+    private int fromPartId(int i, int partId) {
+        return partId - parts.get(i).getMinId() + offsets[i];
+    }
+
+    @Override
+    public int getMinId() {
+        return 0;
+    }
+
+    @Override
+    public int getMaxId() {
+        return maxId;
+    }
+
+    @Override
+    public int getSizeOfId() {
+        return sizeOfId;
+    }
+
+    @Override
+    public int getSizeOfValue() {
+        return sizeOfValue;
+    }
+
+    /**
+     * Returns the bytes held by all parts
+     */
+    public long getByteSize() {
+        long size = 0;
+        for (Dictionary<String> part : parts) {
+            if (part instanceof TrieDictionary)
+                size += ((TrieDictionary<String>) part).getByteSize();
+        }
+        return size;
+    }
+
+    @Override
+    public boolean contains(Dictionary<?> another) {
+        return this.equals(another);
+    }
+
+    @Override
+    protected int getIdFromValueImpl(String value, int roundingFlag) {
+        if (roundingFlag != 0)
+            throw new UnsupportedOperationException("Ids of a chained dictionary are not in value order");
+        for (int i = 0; i < offsets.length; i++) {
+            Dictionary<String> part = parts.get(i);
+            if (part.containsValue(value))
+                return fromPartId(i, part.getIdFromValue(value));
+        }
+        throw new IllegalArgumentException("Value not exists!");
+    }
+
+    @Override
+    protected String getValueFromIdImpl(int id) {
+        int i = findPart(id);
+        return parts.get(i).getValueFromId(toPartId(i, id));
+    }
+
+    @Override
+    protected int getIdFromValueBytesImpl(byte[] value, int offset, int len, int roundingFlag) {
+        if (roundingFlag != 0)
+            throw new UnsupportedOperationException("Ids of a chained dictionary are not in value order");
+        for (int i = 0; i < offsets.length; i++) {
+            try {
+                return fromPartId(i, parts.get(i).getIdFromValueBytes(value, offset, len));
+            } catch (IllegalArgumentException e) {
+                // not in this part
+            }
+        }
+        throw new IllegalArgumentException("Value not exists!");
+    }
+
+    @Override
+    protected byte[] getValueBytesFromIdImpl(int id) {
+        int i = findPart(id);
+        return parts.get(i).getValueBytesFromId(toPartId(i, id));
+    }
+
+    @Override
+    protected int getValueBytesFromIdImpl(int id, byte[] returnValue, int offset) {
+        int i = findPart(id);
+        return parts.get(i).getValueBytesFromId(toPartId(i, id), returnValue, offset);
+    }
+
+    @Override
+    public void dump(PrintStream out) {
+        out.println("Chained of " + parts.size() + " dictionaries");
+        for (Dictionary<String> part : parts) {
+            part.dump(out);
+        }
+    }
+
+    @Override
+    public void write(DataOutput out) throws IOException {
+        out.writeInt(parts.size());
+        for (Dictionary<String> part : parts) {
+            part.write(out);
+        }
+    }
+
+    @Override
+    public void readFields(DataInput in) throws IOException {
+        int n = in.readInt();
+        List<Dictionary<String>> list = new ArrayList<Dictionary<String>>(n);
+        for (int i = 0; i < n; i++) {
+            TrieDictionary<String> part = new TrieDictionary<String>();
+            part.readFields(in);
+            list.add(part);
+        }
+        init(list);
+    }
+
+    @Override
+    public int hashCode() {
+        return parts.hashCode();
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if ((o instanceof ChainedDictionary) == false)
+            return false;
+        return this.parts.equals(((ChainedDictionary) o).parts);
+    }
+}
@@ -22,6 +22,7 @@ import java.io.IOException;
 import java.util.Comparator;
 
 import org.apache.kylin.common.util.DateFormat;
+import org.apache.kylin.common.util.Dictionary;
 import org.apache.kylin.metadata.datatype.DataType;
 import org.apache.kylin.metadata.model.ColumnDesc;
 import org.apache.kylin.metadata.model.TableDesc;
@@ -61,6 +62,11 @@ public class LookupStringTable extends LookupTable<String> {
     boolean[] colIsDateTime;
     boolean[] colIsNumber;
 
+    // cells are read from the snapshot columns when the table is a snapshot, instead of materialized rows
+    private SnapshotTable snapshot;
+    // column index ==> converted date time values by value id
+    private String[][] convertedById;
+
     public LookupStringTable(TableDesc tableDesc, String[] keyColumns, ReadableTable table) throws IOException {
         super(tableDesc, keyColumns, table);
     }
@@ -76,7 +82,39 @@ public class LookupStringTable extends LookupTable<String> {
             colIsNumber[i] = t.isNumberFamily();
         }
 
-        super.init();
+        if (table instanceof SnapshotTable) {
+            snapshot = (SnapshotTable) table;
+            convertedById = new String[cols.length][];
+            initKeys(snapshot.getRowCount());
+        } else {
+            super.init();
+        }
+    }
+
+    @Override
+    protected String getCell(int row, int col) {
+        if (snapshot == null)
+            return super.getCell(row, col);
+        if (col >= snapshot.getColumnCount())
+            return null;
+        if (!colIsDateTime[col])
+            return snapshot.getValue(row, col);
+
+        Dictionary<String> dict = snapshot.getColumnDictionary(col);
+        int id = snapshot.getValueId(row, col);
+        if (dict.isNullId(id))
+            return null;
+        String[] converted = convertedById[col];
+        if (converted == null) {
+            converted = new String[dict.getMaxId() + 1];
+            convertedById[col] = converted;
+        }
+        String v = converted[id];
+        if (v == null) {
+            v = String.valueOf(DateFormat.stringToMillis(dict.getValueFromId(id)));
+            converted[id] = v;
+        }
+        return v;
     }
 
     @Override
@@ -100,6 +138,17 @@ public class LookupStringTable extends LookupTable<String> {
             return defaultStrComparator;
     }
 
+    @Override
+    public boolean hasNaturalOrder(String col) {
+        int idx = tableDesc.findColumnByName(col).getZeroBasedIndex();
+        return !colIsDateTime[idx] && !colIsNumber[idx];
+    }
+
+    @Override
+    protected long estimateCellBytes(String cell) {
+        return cell == null ? 0 : 40 + 2 * cell.length();
+    }
+
     @Override
     protected String toString(String cell) {
         return cell;
@@ -19,12 +19,22 @@
 package org.apache.kylin.dict.lookup;
 
 import java.io.IOException;
+import java.util.AbstractList;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
 import java.util.Set;
+import java.util.TreeMap;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
 
 import org.apache.commons.io.IOUtils;
 import org.apache.kylin.common.util.Array;
@@ -37,94 +47,242 @@ import com.google.common.collect.Sets;
 
 /**
  * An in-memory lookup table, in which each cell is an object of type T. The
- * table is indexed by specified PK for fast lookup.
+ * table is indexed by specified PK for fast lookup. Hash and sorted indexes of
+ * other columns are built lazily, the first time a column is searched.
  *
  * @author yangli9
  */
 abstract public class LookupTable<T> {
 
+    // rough JVM object sizes for getByteSize()
+    private static final int OBJECT_BYTES = 16;
+    private static final int REF_BYTES = 8;
+    private static final int MAP_ENTRY_BYTES = 48;
+
     protected TableDesc tableDesc;
     protected String[] keyColumns;
     protected ReadableTable table;
-    protected ConcurrentHashMap<Array<T>, T[]> data;
+
+    // PK ==> row number
+    private ConcurrentHashMap<Array<T>, Integer> keyIndex;
+    // materialized rows, unless cells are read from columns by subclass
+    private List<T[]> rows;
+    // rows decoded from the cells on first access, when cells are read from columns by subclass
+    private AtomicReferenceArray<T[]> decodedRows;
+    private int rowCount;
+
+    // column index ==> row numbers by column value, built on first use and read only afterwards
+    private final ConcurrentHashMap<Integer, Map<T, int[]>> hashIndexes = new ConcurrentHashMap<Integer, Map<T, int[]>>();
+    private final ConcurrentHashMap<Integer, NavigableMap<T, int[]>> sortedIndexes = new ConcurrentHashMap<Integer, NavigableMap<T, int[]>>();
+
+    // estimated bytes of the rows and PK index, and of the column indexes and decoded rows built so far
+    private long rowBytes;
+    private final AtomicLong indexBytes = new AtomicLong();
+    private final AtomicBoolean indexAdded = new AtomicBoolean();
 
     public LookupTable(TableDesc tableDesc, String[] keyColumns, ReadableTable table) throws IOException {
         this.tableDesc = tableDesc;
         this.keyColumns = keyColumns;
         this.table = table;
-        this.data = new ConcurrentHashMap<Array<T>, T[]>();
+        this.keyIndex = new ConcurrentHashMap<Array<T>, Integer>();
         init();
     }
 
     protected void init() throws IOException {
-        int[] keyIndex = new int[keyColumns.length];
-        for (int i = 0; i < keyColumns.length; i++) {
-            keyIndex[i] = tableDesc.findColumnByName(keyColumns[i]).getZeroBasedIndex();
-        }
-
+        List<T[]> allRows = new ArrayList<T[]>();
+        long bytes = 0;
         TableReader reader = table.getReader();
         try {
             while (reader.next()) {
-                initRow(reader.getRow(), keyIndex);
+                T[] row = convertRow(reader.getRow());
+                allRows.add(row);
+                bytes += OBJECT_BYTES + REF_BYTES * (row.length + 1);
+                for (T cell : row) {
+                    bytes += estimateCellBytes(cell);
+                }
             }
         } finally {
             IOUtils.closeQuietly(reader);
         }
+        this.rows = allRows;
+        this.rowBytes = bytes;
+        initKeys(allRows.size());
     }
 
+    /**
+     * Indexes rows by PK, subclass that overrides {@link #getCell(int, int)} calls this instead of {@link #init()}
+     */
     @SuppressWarnings("unchecked")
-    private void initRow(String[] cols, int[] keyIndex) {
-        T[] value = convertRow(cols);
-        T[] keyCols = (T[]) java.lang.reflect.Array.newInstance(getType(), keyIndex.length);
-        for (int i = 0; i < keyCols.length; i++)
-            keyCols[i] = value[keyIndex[i]];
+    protected void initKeys(int rowCount) {
+        this.rowCount = rowCount;
+        if (rows == null) {
+            this.decodedRows = new AtomicReferenceArray<T[]>(rowCount);
+            rowBytes += OBJECT_BYTES + REF_BYTES * rowCount;
+        }
 
-        Array<T> key = new Array<T>(keyCols);
+        int[] keyIdx = new int[keyColumns.length];
+        for (int i = 0; i < keyColumns.length; i++) {
+            keyIdx[i] = tableDesc.findColumnByName(keyColumns[i]).getZeroBasedIndex();
+        }
+
+        for (int r = 0; r < rowCount; r++) {
+            T[] keyCols = (T[]) java.lang.reflect.Array.newInstance(getType(), keyIdx.length);
+            for (int i = 0; i < keyCols.length; i++)
+                keyCols[i] = getCell(r, keyIdx[i]);
+
+            Array<T> key = new Array<T>(keyCols);
+            Integer existing = keyIndex.put(key, r);
+            if (existing != null)
+                throw new IllegalStateException("Dup key found, key=" + toString(keyCols) + ", value1=" + toString(getRowAt(existing)) + ", value2=" + toString(getRowAt(r)));
+            // the cells are counted with the rows, or read from columns outside this table
+            rowBytes += MAP_ENTRY_BYTES + 3 * OBJECT_BYTES + REF_BYTES * keyCols.length;
+        }
+    }
 
-        if (data.containsKey(key))
-            throw new IllegalStateException("Dup key found, key=" + toString(keyCols) + ", value1=" + toString(data.get(key)) + ", value2=" + toString(value));
+    /**
+     * Estimated heap bytes of the table, its PK index and the column indexes built so far,
+     * not counting a snapshot the cells are read from
+     */
+    public long getByteSize() {
+        return rowBytes + indexBytes.get();
+    }
 
-        data.put(key, value);
+    /**
+     * Whether a column index has been built or rows decoded since the last call, so the size has grown
+     */
+    public boolean checkIndexAdded() {
+        return indexAdded.compareAndSet(true, false);
+    }
+
+    /**
+     * Estimated heap bytes of a cell held by the table
+     */
+    protected long estimateCellBytes(T cell) {
+        return cell == null ? 0 : OBJECT_BYTES;
     }
 
     abstract protected T[] convertRow(String[] cols);
 
+    protected T getCell(int row, int col) {
+        return rows.get(row)[col];
+    }
+
+    @SuppressWarnings("unchecked")
+    protected T[] getRowAt(int row) {
+        if (rows != null)
+            return rows.get(row);
+
+        T[] result = decodedRows.get(row);
+        if (result != null)
+            return result;
+
+        result = (T[]) java.lang.reflect.Array.newInstance(getType(), tableDesc.getColumnCount());
+        for (int c = 0; c < result.length; c++) {
+            result[c] = getCell(row, c);
+        }
+        if (decodedRows.compareAndSet(row, null, result)) {
+            // the cells are mostly held by the dictionary value caches, count the row array only
+            indexBytes.addAndGet(OBJECT_BYTES + REF_BYTES * (result.length + 1));
+            indexAdded.set(true);
+            return result;
+        }
+        return decodedRows.get(row);
+    }
+
     public T[] getRow(Array<T> key) {
-        return data.get(key);
+        Integer r = keyIndex.get(key);
+        return r == null ? null : getRowAt(r);
     }
 
     public Collection<T[]> getAllRows() {
-        return data.values();
+        if (rows != null)
+            return rows;
+
+        return new AbstractList<T[]>() {
+            @Override
+            public T[] get(int index) {
+                return getRowAt(index);
+            }
+
+            @Override
+            public int size() {
+                return rowCount;
+            }
+        };
+    }
+
+    /**
+     * Returns rows whose column equals any of the values, a null value matches the rows with null in the column
+     */
+    public Collection<T[]> getRowsByValues(String col, Collection<T> values) {
+        Map<T, int[]> index = getHashIndex(columnIndex(col));
+        List<T[]> result = new ArrayList<T[]>();
+        for (T v : values instanceof Set ? values : new HashSet<T>(values)) {
+            int[] rowNums = index.get(v);
+            if (rowNums != null)
+                collectRows(rowNums, result);
+        }
+        return result;
+    }
+
+    /**
+     * Returns rows whose column is in the range by the column comparator, a null bound means unbounded
+     */
+    public Collection<T[]> getRowsInRange(String col, T beginValue, boolean beginInclusive, T endValue, boolean endInclusive) {
+        int colIdx = columnIndex(col);
+        NavigableMap<T, int[]> range = getSortedIndex(colIdx);
+        if (beginValue != null && endValue != null) {
+            int comp = getComparator(colIdx).compare(beginValue, endValue);
+            if (comp > 0 || (comp == 0 && !(beginInclusive && endInclusive)))
+                return Collections.emptyList();
+        }
+        if (beginValue != null)
+            range = range.tailMap(beginValue, beginInclusive);
+        if (endValue != null)
+            range = range.headMap(endValue, endInclusive);
+
+        List<T[]> result = new ArrayList<T[]>();
+        for (int[] rowNums : range.values()) {
+            collectRows(rowNums, result);
+        }
+        return result;
+    }
+
+    private void collectRows(int[] rowNums, List<T[]> result) {
+        for (int r : rowNums) {
+            result.add(getRowAt(r));
+        }
+    }
+
+    /**
+     * Whether the column comparator is the natural order of T, so a sorted index of the column serves plain compares
+     */
+    public boolean hasNaturalOrder(String col) {
+        return false;
     }
 
     public List<T> scan(String col, List<T> values, String returnCol) {
         ArrayList<T> result = new ArrayList<T>();
-        int colIdx = tableDesc.findColumnByName(col).getZeroBasedIndex();
-        int returnIdx = tableDesc.findColumnByName(returnCol).getZeroBasedIndex();
-        for (T[] row : data.values()) {
-            if (values.contains(row[colIdx]))
-                result.add(row[returnIdx]);
+        int returnIdx = columnIndex(returnCol);
+        for (T[] row : getRowsByValues(col, values)) {
+            result.add(row[returnIdx]);
         }
         return result;
     }
 
     public Pair<T, T> mapRange(String col, T beginValue, T endValue, String returnCol) {
-        int colIdx = tableDesc.findColumnByName(col).getZeroBasedIndex();
-        int returnIdx = tableDesc.findColumnByName(returnCol).getZeroBasedIndex();
-        Comparator<T> colComp = getComparator(colIdx);
+        int returnIdx = columnIndex(returnCol);
         Comparator<T> returnComp = getComparator(returnIdx);
 
         T returnBegin = null;
         T returnEnd = null;
-        for (T[] row : data.values()) {
-            if (between(beginValue, row[colIdx], endValue, colComp)) {
-                T returnValue = row[returnIdx];
-                if (returnBegin == null || returnComp.compare(returnValue, returnBegin) < 0) {
-                    returnBegin = returnValue;
-                }
-                if (returnEnd == null || returnComp.compare(returnValue, returnEnd) > 0) {
-                    returnEnd = returnValue;
-                }
+        for (T[] row : getRowsInRange(col, beginValue, true, endValue, true)) {
+            T returnValue = row[returnIdx];
+            if (returnBegin == null || returnComp.compare(returnValue, returnBegin) < 0) {
+                returnBegin = returnValue;
+            }
+            if (returnEnd == null || returnComp.compare(returnValue, returnEnd) > 0) {
+                returnEnd = returnValue;
             }
         }
         if (returnBegin == null && returnEnd == null)
@@ -134,19 +292,83 @@ abstract public class LookupTable<T> {
     }
 
     public Set<T> mapValues(String col, Set<T> values, String returnCol) {
-        int colIdx = tableDesc.findColumnByName(col).getZeroBasedIndex();
-        int returnIdx = tableDesc.findColumnByName(returnCol).getZeroBasedIndex();
+        int returnIdx = columnIndex(returnCol);
         Set<T> result = Sets.newHashSetWithExpectedSize(values.size());
-        for (T[] row : data.values()) {
-            if (values.contains(row[colIdx])) {
-                result.add(row[returnIdx]);
-            }
+        for (T[] row : getRowsByValues(col, values)) {
+            result.add(row[returnIdx]);
         }
         return result;
     }
 
-    private boolean between(T beginValue, T v, T endValue, Comparator<T> comp) {
-        return (beginValue == null || comp.compare(beginValue, v) <= 0) && (endValue == null || comp.compare(v, endValue) <= 0);
+    private int columnIndex(String col) {
+        return tableDesc.findColumnByName(col).getZeroBasedIndex();
+    }
+
+    private Map<T, int[]> getHashIndex(int colIdx) {
+        Map<T, int[]> index = hashIndexes.get(colIdx);
+        if (index == null) {
+            index = new HashMap<T, int[]>();
+            buildIndex(colIdx, new HashMap<T, int[]>(), index, true);
+            Map<T, int[]> existing = hashIndexes.putIfAbsent(colIdx, index);
+            if (existing != null)
+                index = existing;
+            else
+                addIndexBytes(index);
+        }
+        return index;
+    }
+
+    private NavigableMap<T, int[]> getSortedIndex(int colIdx) {
+        NavigableMap<T, int[]> index = sortedIndexes.get(colIdx);
+        if (index == null) {
+            // values equal by the comparator, like "1" and "1.0" of a number column, share one entry
+            index = new TreeMap<T, int[]>(getComparator(colIdx));
+            buildIndex(colIdx, new TreeMap<T, int[]>(getComparator(colIdx)), index, false);
+            NavigableMap<T, int[]> existing = sortedIndexes.putIfAbsent(colIdx, index);
+            if (existing != null)
+                index = existing;
+            else
+                addIndexBytes(index);
+        }
+        return index;
+    }
+
+    private void addIndexBytes(Map<T, int[]> index) {
+        long bytes = MAP_ENTRY_BYTES;
+        for (int[] rowNums : index.values()) {
+            bytes += MAP_ENTRY_BYTES + OBJECT_BYTES + 4 * rowNums.length;
+        }
+        indexBytes.addAndGet(bytes);
+        indexAdded.set(true);
+    }
+
+    /**
+     * Counts rows per value first, then fills the row numbers in place. The counts map must be empty and
+     * match values the same way as the index.
+     */
+    private void buildIndex(int colIdx, Map<T, int[]> counts, Map<T, int[]> index, boolean withNulls) {
+        for (int r = 0; r < rowCount; r++) {
+            T v = getCell(r, colIdx);
+            if (v == null && !withNulls)
+                continue;
+            int[] count = counts.get(v);
+            if (count == null) {
+                count = new int[1];
+                counts.put(v, count);
+            }
+            count[0]++;
+        }
+        for (Map.Entry<T, int[]> e : counts.entrySet()) {
+            index.put(e.getKey(), new int[e.getValue()[0]]);
+            e.getValue()[0] = 0;
+        }
+        for (int r = 0; r < rowCount; r++) {
+            T v = getCell(r, colIdx);
+            if (v == null && !withNulls)
+                continue;
+            int[] count = counts.get(v);
+            index.get(v)[count[0]++] = r;
+        }
     }
 
     abstract protected Comparator<T> getComparator(int colIdx);
@@ -172,8 +394,8 @@ abstract public class LookupTable<T> {
     abstract public Class<?> getType();
 
     public void dump() {
-        for (Array<T> key : data.keySet()) {
-            System.out.println(toString(key.data) + " => " + toString(data.get(key)));
+        for (Array<T> key : keyIndex.keySet()) {
+            System.out.println(toString(key.data) + " => " + toString(getRow(key)));
         }
     }
 
@@ -19,7 +19,11 @@
 package org.apache.kylin.dict.lookup;
 
 import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collection;
 import java.util.NavigableSet;
+import java.util.Set;
+import java.util.concurrent.Callable;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.TimeUnit;
@@ -28,16 +32,21 @@ import org.apache.kylin.common.KylinConfig;
 import org.apache.kylin.common.persistence.ResourceStore;
 import org.apache.kylin.metadata.MetadataManager;
 import org.apache.kylin.metadata.model.TableDesc;
+import org.apache.kylin.source.IDeltaReadableTable;
 import org.apache.kylin.source.ReadableTable;
+import org.apache.kylin.source.ReadableTable.TableReader;
 import org.apache.kylin.source.ReadableTable.TableSignature;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.google.common.cache.Cache;
 import com.google.common.cache.CacheBuilder;
 import com.google.common.cache.CacheLoader;
 import com.google.common.cache.LoadingCache;
 import com.google.common.cache.RemovalListener;
 import com.google.common.cache.RemovalNotification;
+import com.google.common.cache.Weigher;
+import com.google.common.collect.Sets;
 
 /**
  * @author yangli9
@@ -70,39 +79,89 @@ public class SnapshotManager {
 
     private KylinConfig config;
     private LoadingCache<String, SnapshotTable> snapshotCache; // resource
+    private Cache<String, LookupStringTable> lookupCache; // resource + key columns, along with their column indexes
 
     // path ==>
     // SnapshotTable
 
     private SnapshotManager(KylinConfig config) {
         this.config = config;
-        this.snapshotCache = CacheBuilder.newBuilder().removalListener(new RemovalListener<String, SnapshotTable>() {
+        CacheBuilder<String, SnapshotTable> cacheBuilder = CacheBuilder.newBuilder().removalListener(new RemovalListener<String, SnapshotTable>() {
             @Override
             public void onRemoval(RemovalNotification<String, SnapshotTable> notification) {
                 SnapshotManager.logger.info("Snapshot with resource path " + notification.getKey() + " is removed due to " + notification.getCause());
             }
-        }).maximumSize(config.getCachedSnapshotMaxEntrySize())//
-                .expireAfterWrite(1, TimeUnit.DAYS).build(new CacheLoader<String, SnapshotTable>() {
-                    @Override
-                    public SnapshotTable load(String key) throws Exception {
-                        SnapshotTable snapshotTable = SnapshotManager.this.load(key, true);
-                        return snapshotTable;
-                    }
-                });
+        });
+        if (config.getCachedSnapshotMaxMB() > 0) {
+            cacheBuilder.maximumWeight(config.getCachedSnapshotMaxMB() * 1024).weigher(new Weigher<String, SnapshotTable>() {
+                @Override
+                public int weigh(String key, SnapshotTable value) {
+                    return (int) Math.min(Integer.MAX_VALUE, Math.max(1, value.getByteSize() / 1024));
+                }
+            });
+        } else {
+            cacheBuilder.maximumSize(config.getCachedSnapshotMaxEntrySize());
+        }
+        this.snapshotCache = cacheBuilder.expireAfterWrite(1, TimeUnit.DAYS).build(new CacheLoader<String, SnapshotTable>() {
+            @Override
+            public SnapshotTable load(String key) throws Exception {
+                SnapshotTable snapshotTable = SnapshotManager.this.load(key, true);
+                return snapshotTable;
+            }
+        });
+        // bounded by the estimated heap bytes of the tables and their column indexes, in KB
+        this.lookupCache = CacheBuilder.newBuilder().maximumWeight(config.getCachedLookupTableMaxMB() * 1024).weigher(new Weigher<String, LookupStringTable>() {
+            @Override
+            public int weigh(String key, LookupStringTable value) {
+                return (int) Math.min(Integer.MAX_VALUE, Math.max(1, value.getByteSize() / 1024));
+            }
+        }).expireAfterWrite(1, TimeUnit.DAYS).build();
     }
 
     public void wipeoutCache() {
         snapshotCache.invalidateAll();
+        lookupCache.invalidateAll();
+    }
+
+    /**
+     * Returns the lookup table of a snapshot, cached so the column indexes built by queries are kept as long as the snapshot.
+     * Concurrent callers missing the cache share one load of the snapshot and one build of the lookup table.
+     */
+    public LookupStringTable getLookupTable(String resourcePath, final TableDesc tableDesc, final String[] keyColumns) throws IOException {
+        final SnapshotTable snapshot = getSnapshotTable(resourcePath);
+        String key = resourcePath + Arrays.toString(keyColumns);
+        LookupStringTable lookup = lookupCache.getIfPresent(key);
+        // rebuild once the snapshot or the table is reloaded
+        if (lookup != null && (lookup.table != snapshot || lookup.tableDesc != tableDesc)) {
+            lookupCache.asMap().remove(key, lookup);
+        } else if (lookup != null && lookup.checkIndexAdded()) {
+            // put it again to weigh the column indexes built since
+            lookupCache.asMap().replace(key, lookup, lookup);
+        }
+        try {
+            lookup = lookupCache.get(key, new Callable<LookupStringTable>() {
+                @Override
+                public LookupStringTable call() throws Exception {
+                    return new LookupStringTable(tableDesc, keyColumns, snapshot);
+                }
+            });
+        } catch (ExecutionException e) {
+            throw new RuntimeException(e.getCause());
+        }
+        // lost a race with a caller holding another version, don't cache this one
+        if (lookup.table != snapshot || lookup.tableDesc != tableDesc) {
+            lookup = new LookupStringTable(tableDesc, keyColumns, snapshot);
+        }
+        return lookup;
     }
 
+    /**
+     * Returns the snapshot, loading it if not cached. Concurrent callers missing the cache wait for
+     * the same in-flight load, instead of each reading and deserializing the resource.
+     */
     public SnapshotTable getSnapshotTable(String resourcePath) throws IOException {
         try {
-            SnapshotTable r = snapshotCache.get(resourcePath);
-            if (r == null) {
-                r = load(resourcePath, true);
-                snapshotCache.put(resourcePath, r);
-            }
-            return r;
+            return snapshotCache.get(resourcePath);
         } catch (ExecutionException e) {
             throw new RuntimeException(e.getCause());
         }
@@ -112,10 +171,11 @@ public class SnapshotManager {
         ResourceStore store = MetadataManager.getInstance(this.config).getStore();
         store.deleteResource(resourcePath);
         snapshotCache.invalidate(resourcePath);
+        lookupCache.invalidateAll();
     }
 
     public SnapshotTable buildSnapshot(ReadableTable table, TableDesc tableDesc) throws IOException {
-        SnapshotTable snapshot = new SnapshotTable(table, tableDesc.getIdentity());
+        SnapshotTable snapshot = new SnapshotTable(table, tableDesc.getIdentity(), config.isSnapshotColumnarEnabled());
         snapshot.updateRandomUuid();
 
         String dup = checkDupByInfo(snapshot);
@@ -129,13 +189,64 @@ public class SnapshotManager {
                     + " MB, but " + tableDesc + " size is " + snapshot.getSignature().getSize());
         }
 
+        if (table instanceof IDeltaReadableTable && config.isSnapshotIncrementalEnabled()) {
+            SnapshotTable base = findDeltaBase(snapshot, tableDesc);
+            TableReader delta = base == null ? null : ((IDeltaReadableTable) table).getDeltaReader(base.getSignature());
+            if (delta != null) {
+                int appended = snapshot.takeDeltaSnapshot(base, delta, table.getSignature(), tableDesc);
+                if (appended == 0) {
+                    logger.info("No row appended to " + table + " since " + base.getResourcePath() + ", reuse it");
+                    return base;
+                }
+                logger.info("Appended " + appended + " rows of " + table + " to snapshot " + base.getResourcePath() + (snapshot.getBaseSnapshot() == null ? ", stored in full" : ", stored as a delta"));
+                // the content differs from the base, no need to check duplicate by content
+                save(snapshot);
+                snapshotCache.put(snapshot.getResourcePath(), snapshot);
+                return snapshot;
+            }
+        }
+
         snapshot.takeSnapshot(table, tableDesc);
 
         return trySaveNewSnapshot(snapshot);
     }
 
+    // the latest earlier snapshot of the same table location, to append the delta on
+    private SnapshotTable findDeltaBase(SnapshotTable snapshot, TableDesc tableDesc) throws IOException {
+        ResourceStore store = MetadataManager.getInstance(this.config).getStore();
+        NavigableSet<String> existings = store.listResources(snapshot.getResourceDir());
+        if (existings == null)
+            return null;
+
+        TableSignature sig = snapshot.getSignature();
+        String latest = null;
+        long latestModified = -1;
+        for (String existing : existings) {
+            SnapshotTable existingTable = load(existing, false);
+            if (existingTable == null || existingTable.getSignature() == null)
+                continue;
+            TableSignature existingSig = existingTable.getSignature();
+            if (sig.getPath().equals(existingSig.getPath()) && existingSig.getLastModifiedTime() <= sig.getLastModifiedTime() && existingSig.getLastModifiedTime() > latestModified) {
+                latest = existing;
+                latestModified = existingSig.getLastModifiedTime();
+            }
+        }
+        if (latest == null)
+            return null;
+
+        SnapshotTable base;
+        try {
+            base = getSnapshotTable(latest);
+        } catch (RuntimeException e) {
+            // e.g. a delta whose base was rebuilt since, take a full snapshot instead
+            logger.warn("Cannot load snapshot " + latest + " to append to", e);
+            return null;
+        }
+        return base.getColumnCount() == tableDesc.getColumnCount() ? base : null;
+    }
+
     public SnapshotTable rebuildSnapshot(ReadableTable table, TableDesc tableDesc, String overwriteUUID) throws IOException {
-        SnapshotTable snapshot = new SnapshotTable(table, tableDesc.getIdentity());
+        SnapshotTable snapshot = new SnapshotTable(table, tableDesc.getIdentity(), config.isSnapshotColumnarEnabled());
         snapshot.setUuid(overwriteUUID);
 
         snapshot.takeSnapshot(table, tableDesc);
@@ -150,6 +261,8 @@ public class SnapshotManager {
     }
 
     public SnapshotTable trySaveNewSnapshot(SnapshotTable snapshotTable) throws IOException {
+        // may be saved to another store than its base, e.g. by cube migration
+        snapshotTable.detachBase();
 
         String dupTable = checkDupByContent(snapshotTable);
         if (dupTable != null) {
@@ -189,7 +302,13 @@ public class SnapshotManager {
             return null;
 
         for (String existing : existings) {
-            SnapshotTable existingTable = load(existing, true); // skip cache, direct load from store
+            SnapshotTable existingTable;
+            try {
+                existingTable = load(existing, true); // skip cache, direct load from store
+            } catch (RuntimeException e) {
+                logger.warn("Cannot load snapshot " + existing + " to compare with", e);
+                continue;
+            }
             if (existingTable != null && existingTable.equals(snapshot))
                 return existing;
         }
@@ -209,10 +328,30 @@ public class SnapshotManager {
 
         SnapshotTable table = store.getResource(resourcePath, SnapshotTable.class, loadData ? SnapshotTableSerializer.FULL_SERIALIZER : SnapshotTableSerializer.INFO_SERIALIZER);
 
+        if (loadData && table != null && table.getBaseSnapshot() != null) {
+            logger.debug("Snapshot at " + resourcePath + " is a delta on " + table.getBaseSnapshot());
+            table.resolveBase(getSnapshotTable(table.getBaseSnapshot()));
+        }
+
         if (loadData)
             logger.debug("Loaded snapshot at " + resourcePath);
 
         return table;
     }
 
+    /**
+     * Returns the snapshots along with the base snapshots they are stored as deltas on, all of which must be kept
+     */
+    public Set<String> getSnapshotPathsWithBases(Collection<String> resourcePaths) throws IOException {
+        Set<String> result = Sets.newLinkedHashSet();
+        for (String path : resourcePaths) {
+            String p = path;
+            while (p != null && result.add(p)) {
+                SnapshotTable info = load(p, false);
+                p = info == null ? null : info.getBaseSnapshot();
+            }
+        }
+        return result;
+    }
+
 }
@@ -18,20 +18,28 @@
 
 package org.apache.kylin.dict.lookup;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.DataInput;
+import java.io.DataInputStream;
 import java.io.DataOutput;
+import java.io.DataOutputStream;
 import java.io.File;
 import java.io.IOException;
 import java.io.UnsupportedEncodingException;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.IdentityHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 import com.google.common.base.Strings;
 import org.apache.commons.io.IOUtils;
-import org.apache.commons.lang.ArrayUtils;
+import org.apache.commons.lang.ObjectUtils;
 import org.apache.kylin.common.persistence.ResourceStore;
 import org.apache.kylin.common.persistence.RootPersistentEntity;
+import org.apache.kylin.common.util.BytesUtil;
 import org.apache.kylin.common.util.Dictionary;
 import org.apache.kylin.dict.StringBytesConverter;
 import org.apache.kylin.dict.TrieDictionary;
@@ -43,41 +51,89 @@ import org.apache.kylin.source.ReadableTable;
 import com.fasterxml.jackson.annotation.JsonAutoDetect;
 import com.fasterxml.jackson.annotation.JsonAutoDetect.Visibility;
 import com.fasterxml.jackson.annotation.JsonProperty;
+import com.google.common.collect.Sets;
 
 /**
+ * A snapshot of a lookup table. Data is kept by column, each column has its own
+ * dictionary and an array of value ids packed in dictionary id size. Dictionaries
+ * are written once however many columns share them, and parsed on their first access.
+ *
+ * Snapshots taken before the columnar format share one dictionary among all
+ * columns and are stored row by row, they are converted to columns when loaded.
+ * New snapshots are still written in that format when columnar is disabled.
+ *
+ * A snapshot refreshed by the rows appended to its table can be stored as a delta,
+ * which keeps only the ids of the appended rows and the dictionaries of their new
+ * values, and refers to the base snapshot for the rest. The base is resolved when
+ * the delta is loaded, see SnapshotManager.
+ *
  * @author yangli9
  */
 @SuppressWarnings("serial")
 @JsonAutoDetect(fieldVisibility = Visibility.NONE, getterVisibility = Visibility.NONE, isGetterVisibility = Visibility.NONE, setterVisibility = Visibility.NONE)
 public class SnapshotTable extends RootPersistentEntity implements ReadableTable {
 
+    // deltas chained on a column dictionary before it is merged into one
+    private static final int MAX_DICTIONARY_PARTS = 16;
+    // deltas stored on top of each other before a snapshot is stored in full again
+    private static final int MAX_DELTA_DEPTH = 16;
+
     @JsonProperty("tableName")
     private String tableName;
     @JsonProperty("signature")
     private TableSignature signature;
     @JsonProperty("useDictionary")
     private boolean useDictionary;
-
-    private ArrayList<int[]> rowIndices;
-    private Dictionary<String> dict;
+    @JsonProperty("columnar")
+    private boolean columnar;
+    @JsonProperty("baseSnapshot")
+    private String baseSnapshot;
+    @JsonProperty("baseLastModified")
+    private long baseLastModified;
+    @JsonProperty("deltaDepth")
+    private int deltaDepth;
+
+    private int rowCount;
+    private Column[] columns;
+    // the dictionaries of a loaded columnar snapshot, each parsed on first use
+    private byte[][] dictBlocks;
+    private Dictionary<String>[] dicts;
+
+    // the rows and the column dictionary parts a delta takes from its base
+    private int baseRowCount;
+    private int[] baseDictParts;
+    // the appended rows of a loaded delta until its base is resolved
+    private Column[] appendedColumns;
 
     // default constructor for JSON serialization
     public SnapshotTable() {
     }
 
     SnapshotTable(ReadableTable table, String tableName) throws IOException {
+        this(table, tableName, true);
+    }
+
+    SnapshotTable(ReadableTable table, String tableName, boolean columnar) throws IOException {
         this.tableName = tableName;
         this.signature = table.getSignature();
         this.useDictionary = true;
+        this.columnar = columnar;
     }
 
     public void takeSnapshot(ReadableTable table, TableDesc tableDesc) throws IOException {
         this.signature = table.getSignature();
 
         int maxIndex = tableDesc.getMaxColumnIndex();
+        int columnCount = tableDesc.getColumnCount();
 
-        TrieDictionaryBuilder<String> b = new TrieDictionaryBuilder<String>(new StringBytesConverter());
+        // the legacy format has one dictionary for all columns
+        List<TrieDictionaryBuilder<String>> builders = new ArrayList<TrieDictionaryBuilder<String>>(columnCount);
+        TrieDictionaryBuilder<String> sharedBuilder = columnar ? null : new TrieDictionaryBuilder<String>(new StringBytesConverter());
+        for (int c = 0; c < columnCount; c++) {
+            builders.add(columnar ? new TrieDictionaryBuilder<String>(new StringBytesConverter()) : sharedBuilder);
+        }
 
+        int nRows = 0;
         TableReader reader = table.getReader();
         try {
             while (reader.next()) {
@@ -88,31 +144,193 @@ public class SnapshotTable extends RootPersistentEntity implements ReadableTable
                 for (ColumnDesc column : tableDesc.getColumns()) {
                     String cell = row[column.getZeroBasedIndex()];
                     if (cell != null)
-                        b.addValue(cell);
+                        builders.get(column.getZeroBasedIndex()).addValue(cell);
                 }
+                nRows++;
             }
         } finally {
             IOUtils.closeQuietly(reader);
         }
 
-        this.dict = b.build(0);
+        Column[] allColumns = new Column[columnCount];
+        Dictionary<String> sharedDict = columnar ? null : sharedBuilder.build(0);
+        for (int c = 0; c < columnCount; c++) {
+            allColumns[c] = new Column(columnar ? builders.get(c).build(0) : sharedDict, nRows);
+        }
+        builders = null;
+        sharedBuilder = null;
 
-        ArrayList<int[]> allRowIndices = new ArrayList<int[]>();
         reader = table.getReader();
         try {
-            while (reader.next()) {
+            int r = 0;
+            while (reader.next() && r < nRows) {
                 String[] row = reader.getRow();
-                int[] rowIndex = new int[tableDesc.getColumnCount()];
                 for (ColumnDesc column : tableDesc.getColumns()) {
-                    rowIndex[column.getZeroBasedIndex()] = dict.getIdFromValue(row[column.getZeroBasedIndex()]);
+                    int c = column.getZeroBasedIndex();
+                    allColumns[c].setId(r, allColumns[c].dict.getIdFromValue(row[c]));
                 }
-                allRowIndices.add(rowIndex);
+                r++;
             }
         } finally {
             IOUtils.closeQuietly(reader);
         }
 
-        this.rowIndices = allRowIndices;
+        this.rowCount = nRows;
+        this.columns = allColumns;
+    }
+
+    /**
+     * Takes the snapshot as the base snapshot plus the rows appended since it. A column
+     * keeps the dictionary of the base, chained with a dictionary of its new values if any,
+     * so the base value ids stay and the table is not read again.
+     *
+     * @return the number of appended rows
+     */
+    int takeDeltaSnapshot(SnapshotTable base, TableReader delta, TableSignature signature, TableDesc tableDesc) throws IOException {
+        this.signature = signature;
+
+        int maxIndex = tableDesc.getMaxColumnIndex();
+        int columnCount = tableDesc.getColumnCount();
+        if (base.getColumnCount() != columnCount)
+            throw new IllegalArgumentException("Base snapshot " + base.getResourcePath() + " has " + base.getColumnCount() + " columns, but " + tableDesc + " has " + columnCount);
+
+        List<String[]> deltaRows = new ArrayList<String[]>();
+        try {
+            while (delta.next()) {
+                String[] row = delta.getRow();
+                if (row.length <= maxIndex) {
+                    throw new IllegalStateException("Bad hive table row, " + tableDesc + " expect " + (maxIndex + 1) + " columns, but got " + Arrays.toString(row));
+                }
+                deltaRows.add(row);
+            }
+        } finally {
+            IOUtils.closeQuietly(delta);
+        }
+
+        int baseRows = base.getRowCount();
+        int nRows = baseRows + deltaRows.size();
+        boolean merged = false;
+        Column[] allColumns = new Column[columnCount];
+        for (int c = 0; c < columnCount; c++) {
+            Column baseCol = base.columns[c].parse();
+            Dictionary<String> baseDict = baseCol.dict;
+
+            TrieDictionaryBuilder<String> b = null;
+            for (String[] row : deltaRows) {
+                String cell = row[c];
+                if (cell != null && !baseDict.containsValue(cell)) {
+                    if (b == null)
+                        b = new TrieDictionaryBuilder<String>(new StringBytesConverter());
+                    b.addValue(cell);
+                }
+            }
+
+            Column column;
+            if (b == null) {
+                column = newAppendedColumn(baseCol, null, baseRows, nRows);
+            } else if (ChainedDictionary.getParts(baseDict).size() < MAX_DICTIONARY_PARTS) {
+                column = newAppendedColumn(baseCol, b.build(0), baseRows, nRows);
+            } else {
+                // too many deltas chained, merge into one dictionary
+                for (int id = baseDict.getMinId(); id <= baseDict.getMaxId(); id++) {
+                    b.addValue(baseDict.getValueFromId(id));
+                }
+                column = new Column(b.build(0), nRows);
+                for (int r = 0; r < baseRows; r++) {
+                    column.setId(r, column.dict.getIdFromValue(baseCol.dict.getValueFromId(baseCol.getId(r))));
+                }
+                merged = true;
+            }
+            for (int r = 0; r < deltaRows.size(); r++) {
+                column.setId(baseRows + r, column.dict.getIdFromValue(deltaRows.get(r)[c]));
+            }
+            allColumns[c] = column;
+        }
+
+        this.rowCount = nRows;
+        this.columns = allColumns;
+
+        // stored as a delta on the base, unless the base ids were rewritten or the deltas are stacked too deep
+        if (columnar && !merged && base.deltaDepth < MAX_DELTA_DEPTH) {
+            this.baseRowCount = baseRows;
+            this.baseDictParts = getDictionaryPartCounts(base);
+            this.baseSnapshot = base.getResourcePath();
+            this.baseLastModified = base.getLastModified();
+            this.deltaDepth = base.deltaDepth + 1;
+        } else {
+            detachBase();
+        }
+        return deltaRows.size();
+    }
+
+    // a column of the base rows followed by room for the appended rows, the base dictionary is chained with the appended one if any
+    private Column newAppendedColumn(Column baseCol, Dictionary<String> appendedDict, int baseRows, int nRows) {
+        Dictionary<String> baseDict = baseCol.dict;
+        if (appendedDict == null) {
+            Column column = new Column(baseDict, nRows);
+            System.arraycopy(baseCol.ids, 0, column.ids, 0, baseRows * baseCol.idSize);
+            return column;
+        }
+
+        Column column = new Column(ChainedDictionary.append(baseDict, appendedDict), nRows);
+        for (int r = 0; r < baseRows; r++) {
+            int id = baseCol.getId(r);
+            column.setId(r, baseDict.isNullId(id) ? column.dict.nullId() : id - baseDict.getMinId());
+        }
+        return column;
+    }
+
+    /**
+     * The resource path of the snapshot this one is stored as a delta on, or null if stored in full
+     */
+    public String getBaseSnapshot() {
+        return baseSnapshot;
+    }
+
+    /**
+     * Stores the snapshot in full from now on, e.g. when saved to a store without its base
+     */
+    void detachBase() {
+        this.baseRowCount = 0;
+        this.baseDictParts = null;
+        this.baseSnapshot = null;
+        this.baseLastModified = 0;
+        this.deltaDepth = 0;
+    }
+
+    /**
+     * Completes a loaded delta with the rows of its base snapshot
+     */
+    void resolveBase(SnapshotTable base) {
+        if (base.getLastModified() != baseLastModified)
+            throw new IllegalStateException("Base snapshot " + baseSnapshot + " was saved again after the delta " + getResourcePath() + " was taken on it");
+        if (base.getRowCount() != baseRowCount || base.getColumnCount() != appendedColumns.length)
+            throw new IllegalStateException("Base snapshot " + baseSnapshot + " has " + base.getRowCount() + " rows and " + base.getColumnCount() + " columns, but the delta " + getResourcePath() + " expects " + baseRowCount + " rows and " + appendedColumns.length + " columns");
+
+        Column[] allColumns = new Column[appendedColumns.length];
+        for (int c = 0; c < allColumns.length; c++) {
+            Column appended = appendedColumns[c];
+            int[] refs = appended.dictRefs;
+            Dictionary<String> appendedDict = refs.length == 0 ? null : getDictionary(refs[0]);
+            Column column = newAppendedColumn(base.columns[c].parse(), appendedDict, baseRowCount, rowCount);
+            int offset = baseRowCount * column.idSize;
+            if (offset + appended.ids.length != column.ids.length)
+                throw new IllegalStateException("Bad delta snapshot " + getResourcePath() + ", column " + c + " does not match its base " + baseSnapshot);
+            System.arraycopy(appended.ids, 0, column.ids, offset, appended.ids.length);
+            allColumns[c] = column;
+        }
+
+        this.baseDictParts = getDictionaryPartCounts(base);
+        this.columns = allColumns;
+        this.appendedColumns = null;
+    }
+
+    private static int[] getDictionaryPartCounts(SnapshotTable table) {
+        int[] result = new int[table.getColumnCount()];
+        for (int c = 0; c < result.length; c++) {
+            result[c] = ChainedDictionary.getParts(table.getColumnDictionary(c)).size();
+        }
+        return result;
     }
 
     public String getResourcePath() {
@@ -131,6 +349,70 @@ public class SnapshotTable extends RootPersistentEntity implements ReadableTable
         return ResourceStore.SNAPSHOT_RESOURCE_ROOT + "/" + new File(signature.getPath()).getName();
     }
 
+    public int getRowCount() {
+        return rowCount;
+    }
+
+    public int getColumnCount() {
+        return columns.length;
+    }
+
+    public String getValue(int row, int col) {
+        Column column = columns[col].parse();
+        return column.dict.getValueFromId(column.getId(row));
+    }
+
+    public int getValueId(int row, int col) {
+        return columns[col].parse().getId(row);
+    }
+
+    public Dictionary<String> getColumnDictionary(int col) {
+        return columns[col].parse().dict;
+    }
+
+    /**
+     * Returns the bytes held by all columns and dictionaries, parsed or not
+     */
+    public long getByteSize() {
+        long size = 0;
+        Set<Object> counted = Sets.newIdentityHashSet();
+        for (Column column : columns) {
+            size += column.getByteSize(counted);
+        }
+        return size;
+    }
+
+    private static long getByteSize(Dictionary<String> dict) {
+        if (dict instanceof TrieDictionary)
+            return ((TrieDictionary<String>) dict).getByteSize();
+        else if (dict instanceof ChainedDictionary)
+            return ((ChainedDictionary) dict).getByteSize();
+        else
+            return 0;
+    }
+
+    // bytes of a dictionary of the loaded snapshot, parsed or not, unless counted already
+    private synchronized long getDictionaryByteSize(int idx, Set<Object> counted) {
+        if (dicts[idx] != null)
+            return counted.add(dicts[idx]) ? getByteSize(dicts[idx]) : 0;
+        else
+            return counted.add(dictBlocks[idx]) ? dictBlocks[idx].length : 0;
+    }
+
+    private synchronized Dictionary<String> getDictionary(int idx) {
+        if (dicts[idx] == null) {
+            try {
+                TrieDictionary<String> d = new TrieDictionary<String>();
+                d.readFields(new DataInputStream(new ByteArrayInputStream(dictBlocks[idx])));
+                dicts[idx] = d;
+                dictBlocks[idx] = null;
+            } catch (IOException e) {
+                throw new IllegalStateException("Failed to parse snapshot dictionary", e);
+            }
+        }
+        return dicts[idx];
+    }
+
     @Override
     public TableReader getReader() throws IOException {
         return new TableReader() {
@@ -140,15 +422,14 @@ public class SnapshotTable extends RootPersistentEntity implements ReadableTable
             @Override
             public boolean next() throws IOException {
                 i++;
-                return i < rowIndices.size();
+                return i < rowCount;
             }
 
             @Override
             public String[] getRow() {
-                int[] rowIndex = rowIndices.get(i);
-                String[] row = new String[rowIndex.length];
+                String[] row = new String[columns.length];
                 for (int x = 0; x < row.length; x++) {
-                    row[x] = dict.getValueFromId(rowIndex[x]);
+                    row[x] = getValue(i, x);
                 }
                 return row;
             }
@@ -171,10 +452,7 @@ public class SnapshotTable extends RootPersistentEntity implements ReadableTable
      */
     @Override
     public int hashCode() {
-        int[] parts = new int[this.rowIndices.size()];
-        for (int i = 0; i < parts.length; ++i)
-            parts[i] = Arrays.hashCode(this.rowIndices.get(i));
-        return Arrays.hashCode(parts);
+        return 31 * rowCount + columns.length;
     }
 
     @Override
@@ -183,15 +461,22 @@ public class SnapshotTable extends RootPersistentEntity implements ReadableTable
             return false;
         SnapshotTable that = (SnapshotTable) o;
 
-        if (this.dict.equals(that.dict) == false)
+        if (this.rowCount != that.rowCount || this.columns.length != that.columns.length)
             return false;
 
-        //compare row by row
-        if (this.rowIndices.size() != that.rowIndices.size())
-            return false;
-        for (int i = 0; i < this.rowIndices.size(); ++i) {
-            if (!ArrayUtils.isEquals(this.rowIndices.get(i), that.rowIndices.get(i)))
-                return false;
+        //compare column by column, by values unless the dictionaries are identical
+        for (int c = 0; c < columns.length; c++) {
+            Column thisCol = this.columns[c].parse();
+            Column thatCol = that.columns[c].parse();
+            if (thisCol.dict.equals(thatCol.dict)) {
+                if (!Arrays.equals(thisCol.ids, thatCol.ids))
+                    return false;
+            } else {
+                for (int r = 0; r < rowCount; r++) {
+                    if (!ObjectUtils.equals(this.getValue(r, c), that.getValue(r, c)))
+                        return false;
+                }
+            }
         }
 
         return true;
@@ -208,48 +493,186 @@ public class SnapshotTable extends RootPersistentEntity implements ReadableTable
     }
 
     void writeData(DataOutput out) throws IOException {
-        out.writeInt(rowIndices.size());
-        if (rowIndices.size() > 0) {
-            int n = rowIndices.get(0).length;
+        if (columnar && baseSnapshot != null) {
+            writeDelta(out);
+            return;
+        }
+
+        if (columnar) {
+            out.writeInt(rowCount);
+            out.writeInt(columns.length);
+
+            // each dictionary once, columns refer to theirs by index
+            Map<Dictionary<String>, Integer> dictIndex = new IdentityHashMap<Dictionary<String>, Integer>();
+            List<Dictionary<String>> dictList = new ArrayList<Dictionary<String>>();
+            int[][] refs = new int[columns.length][];
+            for (int c = 0; c < columns.length; c++) {
+                List<Dictionary<String>> parts = ChainedDictionary.getParts(getColumnDictionary(c));
+                refs[c] = new int[parts.size()];
+                for (int p = 0; p < refs[c].length; p++) {
+                    Integer idx = dictIndex.get(parts.get(p));
+                    if (idx == null) {
+                        idx = dictList.size();
+                        dictIndex.put(parts.get(p), idx);
+                        dictList.add(parts.get(p));
+                    }
+                    refs[c][p] = idx;
+                }
+            }
+
+            writeDictionaries(out, dictList);
+            for (int c = 0; c < columns.length; c++) {
+                out.writeInt(refs[c].length);
+                for (int idx : refs[c]) {
+                    out.writeInt(idx);
+                }
+                byte[] ids = columns[c].ids;
+                out.writeInt(ids.length);
+                out.write(ids);
+            }
+            return;
+        }
+
+        // the row by row format of snapshots taken before columnar, all columns share one dictionary
+        out.writeInt(rowCount);
+        if (rowCount > 0) {
+            int n = columns.length;
             out.writeInt(n);
 
             if (this.useDictionary == true) {
+                Dictionary<String> dict = getSharedDictionary();
                 dict.write(out);
-                for (int i = 0; i < rowIndices.size(); i++) {
-                    int[] row = rowIndices.get(i);
+                for (int i = 0; i < rowCount; i++) {
                     for (int j = 0; j < n; j++) {
-                        out.writeInt(row[j]);
+                        out.writeInt(getColumnDictionary(j) == dict ? getValueId(i, j) : dict.getIdFromValue(getValue(i, j)));
                     }
                 }
 
             } else {
-                for (int i = 0; i < rowIndices.size(); i++) {
-                    int[] row = rowIndices.get(i);
+                for (int i = 0; i < rowCount; i++) {
                     for (int j = 0; j < n; j++) {
                         // NULL_STR is tricky, but we don't want to break the current snapshots
-                        out.writeUTF(dict.getValueFromId(row[j]) == null ? NULL_STR : dict.getValueFromId(row[j]));
+                        String value = getValue(i, j);
+                        out.writeUTF(value == null ? NULL_STR : value);
                     }
                 }
             }
         }
     }
 
+    // the ids of the appended rows, and the dictionaries appended to the base column dictionaries
+    private void writeDelta(DataOutput out) throws IOException {
+        out.writeInt(rowCount);
+        out.writeInt(columns.length);
+        out.writeInt(baseRowCount);
+
+        List<Dictionary<String>> dictList = new ArrayList<Dictionary<String>>();
+        int[][] refs = new int[columns.length][];
+        for (int c = 0; c < columns.length; c++) {
+            List<Dictionary<String>> parts = ChainedDictionary.getParts(getColumnDictionary(c));
+            if (parts.size() > baseDictParts[c]) {
+                refs[c] = new int[] { dictList.size() };
+                dictList.add(parts.get(parts.size() - 1));
+            } else {
+                refs[c] = new int[0];
+            }
+        }
+
+        writeDictionaries(out, dictList);
+        for (int c = 0; c < columns.length; c++) {
+            out.writeInt(refs[c].length);
+            for (int idx : refs[c]) {
+                out.writeInt(idx);
+            }
+            byte[] ids = columns[c].ids;
+            int offset = baseRowCount * columns[c].idSize;
+            out.writeInt(ids.length - offset);
+            out.write(ids, offset, ids.length - offset);
+        }
+    }
+
+    private static void writeDictionaries(DataOutput out, List<Dictionary<String>> dictList) throws IOException {
+        out.writeInt(dictList.size());
+        for (Dictionary<String> dict : dictList) {
+            ByteArrayOutputStream buf = new ByteArrayOutputStream();
+            DataOutputStream dictOut = new DataOutputStream(buf);
+            dict.write(dictOut);
+            dictOut.close();
+            out.writeInt(buf.size());
+            out.write(buf.toByteArray());
+        }
+    }
+
+    // the dictionary shared by all columns, or one of all column values when columns have their own, like after a delta
+    private Dictionary<String> getSharedDictionary() {
+        Dictionary<String> first = getColumnDictionary(0);
+        boolean shared = true;
+        for (int c = 1; c < columns.length; c++) {
+            if (getColumnDictionary(c) != first)
+                shared = false;
+        }
+        if (shared)
+            return first;
+
+        TrieDictionaryBuilder<String> b = new TrieDictionaryBuilder<String>(new StringBytesConverter());
+        for (int c = 0; c < columns.length; c++) {
+            Dictionary<String> dict = getColumnDictionary(c);
+            for (int id = dict.getMinId(); id <= dict.getMaxId(); id++) {
+                b.addValue(dict.getValueFromId(id));
+            }
+        }
+        return b.build(0);
+    }
+
+    @SuppressWarnings("unchecked")
     void readData(DataInput in) throws IOException {
+        if (columnar) {
+            this.rowCount = in.readInt();
+            Column[] cols = new Column[in.readInt()];
+            // the columns of a delta hold the appended rows only, until the base is resolved
+            int nRows = rowCount;
+            if (baseSnapshot != null) {
+                this.baseRowCount = in.readInt();
+                nRows = rowCount - baseRowCount;
+            }
+
+            int nDicts = in.readInt();
+            this.dictBlocks = new byte[nDicts][];
+            this.dicts = new Dictionary[nDicts];
+            for (int i = 0; i < nDicts; i++) {
+                dictBlocks[i] = new byte[in.readInt()];
+                in.readFully(dictBlocks[i]);
+            }
+            for (int c = 0; c < cols.length; c++) {
+                int[] refs = new int[in.readInt()];
+                for (int p = 0; p < refs.length; p++) {
+                    refs[p] = in.readInt();
+                }
+                byte[] ids = new byte[in.readInt()];
+                in.readFully(ids);
+                cols[c] = new Column(refs, ids, nRows);
+            }
+
+            if (baseSnapshot != null)
+                this.appendedColumns = cols;
+            else
+                this.columns = cols;
+            return;
+        }
+
         int rowNum = in.readInt();
+        this.rowCount = rowNum;
         if (rowNum > 0) {
             int n = in.readInt();
-            rowIndices = new ArrayList<int[]>(rowNum);
+            Dictionary<String> dict;
+            int[] ids = new int[rowNum * n];
 
             if (this.useDictionary == true) {
-                this.dict = new TrieDictionary<String>();
+                dict = new TrieDictionary<String>();
                 dict.readFields(in);
 
-                for (int i = 0; i < rowNum; i++) {
-                    int[] row = new int[n];
-                    this.rowIndices.add(row);
-                    for (int j = 0; j < n; j++) {
-                        row[j] = in.readInt();
-                    }
+                for (int i = 0; i < ids.length; i++) {
+                    ids[i] = in.readInt();
                 }
             } else {
                 List<String[]> rows = new ArrayList<String[]>(rowNum);
@@ -267,18 +690,88 @@ public class SnapshotTable extends RootPersistentEntity implements ReadableTable
                         b.addValue(row[j]);
                     }
                 }
-                this.dict = b.build(0);
-                for (String[] row : rows) {
-                    int[] rowIndex = new int[n];
-                    for (int i = 0; i < n; i++) {
-                        rowIndex[i] = dict.getIdFromValue(row[i]);
+                dict = b.build(0);
+                for (int i = 0; i < rowNum; i++) {
+                    String[] row = rows.get(i);
+                    for (int j = 0; j < n; j++) {
+                        ids[i * n + j] = dict.getIdFromValue(row[j]);
                     }
-                    this.rowIndices.add(rowIndex);
+                }
+            }
+
+            // convert to columns sharing the dictionary
+            this.columns = new Column[n];
+            for (int j = 0; j < n; j++) {
+                columns[j] = new Column(dict, rowNum);
+                for (int i = 0; i < rowNum; i++) {
+                    columns[j].setId(i, ids[i * n + j]);
                 }
             }
         } else {
-            rowIndices = new ArrayList<int[]>();
-            dict = new TrieDictionary<String>();
+            this.columns = new Column[0];
+        }
+    }
+
+    /**
+     * A column of value ids, packed in the size of its dictionary ids. A loaded
+     * column resolves its dictionary on first access.
+     */
+    private class Column {
+        private volatile int[] dictRefs;
+        private Dictionary<String> dict;
+        private byte[] ids;
+        private int idSize;
+
+        Column(Dictionary<String> dict, int rowCount) {
+            this.dict = dict;
+            this.idSize = dict.getSizeOfId();
+            this.ids = new byte[rowCount * idSize];
+        }
+
+        Column(int[] dictRefs, byte[] ids, int rowCount) {
+            this.dictRefs = dictRefs;
+            this.ids = ids;
+            this.idSize = rowCount == 0 ? 0 : ids.length / rowCount;
+        }
+
+        Column parse() {
+            if (dictRefs != null) {
+                synchronized (this) {
+                    if (dictRefs != null) {
+                        List<Dictionary<String>> parts = new ArrayList<Dictionary<String>>(dictRefs.length);
+                        for (int idx : dictRefs) {
+                            parts.add(getDictionary(idx));
+                        }
+                        this.dict = parts.size() == 1 ? parts.get(0) : new ChainedDictionary(parts);
+                        dictRefs = null;
+                    }
+                }
+            }
+            return this;
+        }
+
+        int getId(int row) {
+            return BytesUtil.readUnsigned(ids, row * idSize, idSize);
+        }
+
+        void setId(int row, int id) {
+            BytesUtil.writeUnsigned(id, ids, row * idSize, idSize);
+        }
+
+        long getByteSize(Set<Object> counted) {
+            long size = ids.length;
+            int[] refs = dictRefs;
+            if (refs != null) {
+                for (int idx : refs) {
+                    size += getDictionaryByteSize(idx, counted);
+                }
+            } else {
+                for (Dictionary<String> part : ChainedDictionary.getParts(dict)) {
+                    if (counted.add(part))
+                        size += SnapshotTable.getByteSize(part);
+                }
+            }
+            return size;
         }
     }
 
@@ -20,6 +20,7 @@ package org.apache.kylin.dict;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
 
 import java.io.BufferedReader;
 import java.io.ByteArrayInputStream;
@@ -33,8 +34,12 @@ import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.List;
 import java.util.Random;
 import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.fs.FileSystem;
@@ -153,6 +158,98 @@ public class AppendTrieDictionaryTest {
         dict.dump(System.out);
     }
 
+    @Test
+    public void testParallelAppend() throws Exception {
+        BytesConverter converter = new StringBytesConverter();
+        Random rnd = new Random(0);
+        ArrayList<String> strList = new ArrayList<>();
+        for (int i = 0; i < 200000; i++) {
+            strList.add(Long.toString(rnd.nextLong() & Long.MAX_VALUE, 36));
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            // first half in parallel, then reopen and append all in parallel, overlapping the first half
+            AppendTrieDictionary.Builder<String> b = AppendTrieDictionary.Builder.create(BASE_DIR + "/parallel");
+            appendInBatches(b, strList.subList(0, strList.size() / 2), executor, converter);
+            AppendTrieDictionary<String> dict = b.build(0);
+
+            TreeMap<String, Integer> firstIds = new TreeMap<>();
+            for (String str : strList.subList(0, strList.size() / 2)) {
+                byte[] bytes = converter.convertToBytes(str);
+                firstIds.put(str, dict.getIdFromValueBytesImpl(bytes, 0, bytes.length, 0));
+            }
+
+            b = AppendTrieDictionary.Builder.create(dict);
+            appendInBatches(b, strList, executor, converter);
+            dict = b.build(0);
+
+            TreeMap<Integer, String> checkMap = new TreeMap<>();
+            for (String str : strList) {
+                byte[] bytes = converter.convertToBytes(str);
+                int id = dict.getIdFromValueBytesImpl(bytes, 0, bytes.length, 0);
+                assertTrue("Id for " + str + " not found", id > 0);
+                if (firstIds.containsKey(str))
+                    assertEquals(firstIds.get(str).intValue(), id);
+                assertFalse(String.format("Id %d for %s should be empty, but is %s", id, str, checkMap.get(id)), checkMap.containsKey(id) && !str.equals(checkMap.get(id)));
+                checkMap.put(id, str);
+            }
+            assertEquals(checkMap.size(), dict.getMaxId());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testSliceCacheByBytes() throws Exception {
+        KylinConfig config = KylinConfig.getInstanceFromEnv();
+        config.setProperty("kylin.dict.append.cache.max.mb", "1");
+        config.setProperty("kylin.dict.append.cache.offheap", "true");
+        try {
+            BytesConverter converter = new StringBytesConverter();
+            Random rnd = new Random(0);
+            ArrayList<String> strList = new ArrayList<>();
+            for (int i = 0; i < 100000; i++) {
+                strList.add(Long.toString(rnd.nextLong() & Long.MAX_VALUE, 36));
+            }
+            TreeSet<String> sorted = new TreeSet<>(strList);
+            AppendTrieDictionary.Builder<String> b = AppendTrieDictionary.Builder.create(BASE_DIR + "/bytes");
+            for (String str : sorted) {
+                b.addValue(str);
+            }
+            AppendTrieDictionary<String> dict = b.build(0);
+
+            // each round walks all slices in order, so the 1 MB bound keeps evicting and reloading them
+            TreeMap<Integer, String> checkMap = new TreeMap<>();
+            for (int round = 0; round < 2; round++) {
+                for (String str : sorted) {
+                    byte[] bytes = converter.convertToBytes(str);
+                    int id = dict.getIdFromValueBytesImpl(bytes, 0, bytes.length, 0);
+                    assertTrue("Id for " + str + " not found", id > 0);
+                    assertFalse(checkMap.containsKey(id) && !str.equals(checkMap.get(id)));
+                    checkMap.put(id, str);
+                }
+            }
+            assertEquals(sorted.size(), checkMap.size());
+            assertTrue(dict.getSliceCacheStats().evictionCount() > 0);
+        } finally {
+            config.setProperty("kylin.dict.append.cache.max.mb", "0");
+            config.setProperty("kylin.dict.append.cache.offheap", "false");
+        }
+    }
+
+    private static void appendInBatches(AppendTrieDictionary.Builder<String> b, List<String> values, ExecutorService executor, BytesConverter converter) throws IOException {
+        List<byte[]> batch = new ArrayList<>();
+        for (String str : values) {
+            batch.add(converter.convertToBytes(str));
+            if (batch.size() == 30000) {
+                b.addValues(batch, executor);
+                batch = new ArrayList<>();
+            }
+        }
+        b.addValues(batch, executor);
+    }
+
     private static void testStringDictAppend(ArrayList<String> list, ArrayList<String> notfound, boolean shuffleList) throws IOException {
         Random rnd = new Random(System.currentTimeMillis());
         ArrayList<String> strList = new ArrayList<String>();
@@ -0,0 +1,108 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.kylin.dict;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.NavigableSet;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.kylin.common.KylinConfig;
+import org.apache.kylin.common.persistence.ResourceStore;
+import org.apache.kylin.common.util.Dictionary;
+import org.apache.kylin.common.util.LocalFileMetadataTestCase;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class DictionaryManagerTest extends LocalFileMetadataTestCase {
+
+    private File mmapDir;
+
+    @Before
+    public void setUp() throws Exception {
+        this.createTestMetadata();
+        mmapDir = new File(FileUtils.getTempDirectory(), "kylin_dict_mmap_test_" + System.nanoTime());
+        getTestConfig().setProperty("kylin.dict.mmap.dir", mmapDir.getAbsolutePath());
+        DictionaryManager.clearCache();
+    }
+
+    @After
+    public void after() throws Exception {
+        FileUtils.deleteQuietly(mmapDir);
+        DictionaryManager.clearCache();
+        this.cleanupTestMetadata();
+    }
+
+    @Test
+    public void testLoadMapped() throws IOException {
+        KylinConfig config = getTestConfig();
+        DictionaryManager mgr = DictionaryManager.getInstance(config);
+        ResourceStore store = ResourceStore.getStore(config);
+
+        int count = 0;
+        for (String dir : store.listResources("/dict/TEST_KYLIN_FACT")) {
+            NavigableSet<String> paths = store.listResources(dir);
+            if (paths == null)
+                continue;
+            for (String path : paths) {
+                DictionaryInfo expected = mgr.load(path, true);
+                DictionaryInfo actual = mgr.loadMapped(path);
+                assertEquals(expected.getDictionaryClass(), actual.getDictionaryClass());
+                assertEquals(expected.getLastModified(), actual.getLastModified());
+                assertDictEquals(expected.getDictionaryObject(), actual.getDictionaryObject());
+                if (actual.getDictionaryObject() instanceof IMappableDictionary)
+                    assertTrue(DictionaryManager.getDictionaryBytes(actual) > 0);
+                count++;
+            }
+        }
+        assertTrue(count > 0);
+
+        // local copies are reused as long as the resource does not change
+        File[] copies = mmapDir.listFiles();
+        assertEquals(count, copies.length);
+        long lastModified = copies[0].lastModified();
+        copies[0].setLastModified(lastModified - 100000);
+        for (String dir : store.listResources("/dict/TEST_KYLIN_FACT")) {
+            NavigableSet<String> paths = store.listResources(dir);
+            if (paths == null)
+                continue;
+            for (String path : paths) {
+                mgr.loadMapped(path);
+            }
+        }
+        assertEquals(count, mmapDir.listFiles().length);
+        assertEquals(lastModified - 100000, copies[0].lastModified());
+    }
+
+    @SuppressWarnings({ "rawtypes", "unchecked" })
+    private void assertDictEquals(Dictionary expected, Dictionary actual) {
+        assertEquals(expected.getMinId(), actual.getMinId());
+        assertEquals(expected.getMaxId(), actual.getMaxId());
+        assertEquals(expected.getSizeOfId(), actual.getSizeOfId());
+        for (int id = expected.getMinId(); id <= expected.getMaxId(); id++) {
+            Object value = expected.getValueFromId(id);
+            assertEquals(value, actual.getValueFromId(id));
+            assertEquals(expected.getIdFromValue(value), actual.getIdFromValue(value));
+        }
+    }
+}
@@ -83,7 +83,7 @@ public class NumberDictionaryTest extends LocalFileMetadataTestCase {
         Dictionary<?> dict = DictionaryGenerator.buildDictionary(DataType.getType("integer"), new IterableDictionaryValueEnumerator(intBytes));
         assertEquals(4, dict.getSize());
 
-        final int id = ((NumberDictionary<String>) dict).getIdFromValue("");
+        final int id = ((Dictionary<String>) dict).getIdFromValue("");
         assertEquals(id, dict.nullId());
     }
 
@@ -0,0 +1,233 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+*/
+package org.apache.kylin.dict;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import org.apache.kylin.common.util.Bytes;
+import org.apache.kylin.common.util.Dictionary;
+import org.apache.kylin.common.util.LocalFileMetadataTestCase;
+import org.apache.kylin.metadata.datatype.DataType;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
+
+public class PrimitiveNumberDictionaryTest extends LocalFileMetadataTestCase {
+
+    Random rand = new Random();
+
+    @Before
+    public void setup() throws Exception {
+        createTestMetadata();
+    }
+
+    @After
+    public void tearDown() {
+        cleanupTestMetadata();
+    }
+
+    @Test
+    public void testMinMax() {
+        PrimitiveNumberDictionary dict = build("999999999999999999", "-999999999999999999", "0");
+        assertEquals(0, dict.getIdFromValue("-999999999999999999"));
+        assertEquals(1, dict.getIdFromValue("0"));
+        assertEquals(2, dict.getIdFromValue("999999999999999999"));
+        assertEquals("-999999999999999999", dict.getValueFromId(0));
+        assertEquals(19, dict.getSizeOfValue());
+
+        // beyond long range, slow path
+        assertEquals(2, dict.getIdFromValue("99999999999999999999999", -1));
+        assertEquals(0, dict.getIdFromValue("-99999999999999999999999", 1));
+        assertEquals(2, dict.getIdFromValue("1E100", -1));
+        assertFalse(dict.containsValue("1E100"));
+        assertFalse(dict.containsValue("abc"));
+    }
+
+    @Test
+    public void testNull() {
+        PrimitiveNumberDictionary dict = build("1", "2");
+        assertEquals(dict.nullId(), dict.getIdFromValue(""));
+        assertEquals(dict.nullId(), dict.getIdFromValue(null));
+        assertEquals(dict.nullId(), dict.getIdFromValueBytes(new byte[0], 0, 0));
+        assertEquals(-1, dict.getValueBytesFromId(dict.nullId(), new byte[10], 0));
+    }
+
+    @Test
+    public void testDecimal() {
+        PrimitiveNumberDictionary dict = build("1.50", "-0.05", "0.00", "-12.30", "100.01");
+        assertEquals(2, dict.getScale());
+        assertEquals("-12.30", dict.getValueFromId(0));
+        assertEquals("-0.05", dict.getValueFromId(1));
+        assertEquals("0.00", dict.getValueFromId(2));
+        assertEquals("1.50", dict.getValueFromId(3));
+        assertEquals("100.01", dict.getValueFromId(4));
+
+        // other forms of the same numbers
+        assertEquals(3, dict.getIdFromValue("1.5"));
+        assertEquals(3, dict.getIdFromValue("+01.5000"));
+        assertEquals(2, dict.getIdFromValue("0"));
+        assertEquals(2, dict.getIdFromValue("-0"));
+        assertEquals(0, dict.getIdFromValue("-12.3"));
+        assertEquals(4, dict.getIdFromValue("1.0001E2"));
+
+        // rounding on dropped digits
+        assertEquals(1, dict.getIdFromValue("-0.051", 1));
+        assertEquals(0, dict.getIdFromValue("-0.051", -1));
+        assertEquals(3, dict.getIdFromValue("1.501", -1));
+        assertEquals(4, dict.getIdFromValue("1.501", 1));
+        assertFalse(dict.containsValue("1.501"));
+        try {
+            dict.getIdFromValue("100.011", 1);
+            fail("IllegalArgumentException expected");
+        } catch (IllegalArgumentException e) {
+            // good
+        }
+    }
+
+    @Test
+    public void testBuilderRejects() {
+        PrimitiveNumberDictionaryBuilder builder = new PrimitiveNumberDictionaryBuilder();
+        assertTrue(add(builder, "12"));
+        assertFalse(add(builder, "1.5")); // different scale
+        assertFalse(add(builder, "012"));
+        assertFalse(add(builder, "+12"));
+        assertFalse(add(builder, "-0"));
+        assertFalse(add(builder, "1e3"));
+        assertFalse(add(builder, "1234567890123456789"));
+        assertFalse(add(builder, "-"));
+        assertTrue(add(builder, "-123456789012345678"));
+        assertTrue(add(builder, "0"));
+        assertEquals(3, builder.size());
+    }
+
+    @Test
+    public void testGenerator() throws IOException {
+        Dictionary<String> dict = DictionaryGenerator.buildDictionary(DataType.getType("bigint"), enumerator("3", "", "1", "2", "1"));
+        assertTrue(dict instanceof PrimitiveNumberDictionary);
+        assertEquals(3, dict.getSize());
+
+        // mixed scales fall back to the trie, keeping all values as given
+        dict = DictionaryGenerator.buildDictionary(DataType.getType("decimal"), enumerator("3.0", "1.00", "2.0"));
+        assertTrue(dict instanceof NumberDictionary);
+        assertEquals("1.00", dict.getValueFromId(0));
+        assertEquals("2.0", dict.getValueFromId(1));
+        assertEquals("3.0", dict.getValueFromId(2));
+    }
+
+    @Test
+    public void testDictionary() throws IOException {
+        int n = 1000;
+        for (int scale = 0; scale < 4; scale++) {
+            Set<BigDecimal> set = Sets.newHashSet();
+            PrimitiveNumberDictionaryBuilder builder = new PrimitiveNumberDictionaryBuilder();
+            for (int i = 0; i < n; i++) {
+                BigDecimal num = randNumber(scale);
+                set.add(num);
+                assertTrue(add(builder, num.toPlainString()));
+            }
+            List<BigDecimal> sorted = Lists.newArrayList(set);
+            Collections.sort(sorted);
+            PrimitiveNumberDictionary dict = builder.build(0);
+
+            // exact match, in both directions
+            assertEquals(sorted.size(), dict.getSize());
+            byte[] buf = new byte[dict.getSizeOfValue()];
+            for (int i = 0; i < sorted.size(); i++) {
+                String num = sorted.get(i).toPlainString();
+                assertEquals(num, dict.getValueFromId(i));
+                assertEquals(i, dict.getIdFromValue(num));
+                assertEquals(num, Bytes.toString(buf, 0, dict.getValueBytesFromId(i, buf, 0)));
+            }
+
+            // rounding, including numbers with more fraction digits than the dictionary
+            for (int i = 0; i < n * 10; i++) {
+                BigDecimal num = randNumber(rand.nextInt(6));
+                int binarySearch = Collections.binarySearch(sorted, num);
+                int lower = binarySearch >= 0 ? binarySearch : -(binarySearch + 1) - 1;
+                int higher = binarySearch >= 0 ? binarySearch : -(binarySearch + 1);
+                checkRounding(dict, num.toPlainString(), -1, lower < 0 ? -1 : lower);
+                checkRounding(dict, num.toPlainString(), 1, higher >= sorted.size() ? -1 : higher);
+            }
+
+            // serialize round trip
+            ByteArrayOutputStream bout = new ByteArrayOutputStream();
+            dict.write(new DataOutputStream(bout));
+            PrimitiveNumberDictionary dict2 = new PrimitiveNumberDictionary();
+            dict2.readFields(new DataInputStream(new ByteArrayInputStream(bout.toByteArray())));
+            assertEquals(dict, dict2);
+            assertEquals(dict.getSizeOfValue(), dict2.getSizeOfValue());
+            assertTrue(dict2.contains(dict));
+        }
+    }
+
+    private void checkRounding(PrimitiveNumberDictionary dict, String num, int roundingFlag, int expectedId) {
+        if (expectedId < 0) {
+            try {
+                dict.getIdFromValue(num, roundingFlag);
+                fail("IllegalArgumentException expected for " + num);
+            } catch (IllegalArgumentException e) {
+                // good
+            }
+        } else {
+            assertEquals(num, expectedId, dict.getIdFromValue(num, roundingFlag));
+        }
+    }
+
+    private BigDecimal randNumber(int scale) {
+        long unscaled = (long) (rand.nextGaussian() * Math.pow(10, rand.nextInt(10)));
+        return BigDecimal.valueOf(unscaled, scale);
+    }
+
+    private PrimitiveNumberDictionary build(String... values) {
+        PrimitiveNumberDictionaryBuilder builder = new PrimitiveNumberDictionaryBuilder();
+        for (String v : values) {
+            assertTrue(v, add(builder, v));
+        }
+        return builder.build(0);
+    }
+
+    private boolean add(PrimitiveNumberDictionaryBuilder builder, String v) {
+        byte[] bytes = Bytes.toBytes(v);
+        return builder.addValue(bytes, 0, bytes.length);
+    }
+
+    private IDictionaryValueEnumerator enumerator(String... values) {
+        List<byte[]> list = Lists.newArrayList();
+        for (String v : values) {
+            list.add(Bytes.toBytes(v));
+        }
+        return new IterableDictionaryValueEnumerator(list);
+    }
+}
@@ -25,6 +25,7 @@ import org.junit.Ignore;
 import org.junit.Test;
 
 import java.io.*;
+import java.nio.ByteBuffer;
 import java.util.*;
 
 import static org.junit.Assert.*;
@@ -245,6 +246,55 @@ public class TrieDictionaryForestTest {
     }
 
 
+    @Test
+    public void mappedBufferTest() throws IOException {
+        ArrayList<String> testData = getTestData(10000);
+        TrieDictionaryForest<String> dict = newDictBuilder(testData, 0, 10000).build();
+        assertTrue(dict.getTrees().size() > 1);
+
+        ByteArrayOutputStream bout = new ByteArrayOutputStream();
+        DataOutputStream dataout = new DataOutputStream(bout);
+        dict.write(dataout);
+        dataout.close();
+        byte[] bytes = bout.toByteArray();
+
+        ByteBuffer buf = ByteBuffer.allocateDirect(bytes.length);
+        buf.put(bytes);
+        buf.flip();
+        TrieDictionaryForest<String> mapped = new TrieDictionaryForest<>();
+        mapped.readFields(buf);
+        assertEquals(0, buf.remaining());
+        assertEquals(dict.getTrees().size(), mapped.getTrees().size());
+        for (String str : testData) {
+            int id = dict.getIdFromValue(str);
+            assertEquals(id, mapped.getIdFromValue(str));
+            assertEquals(str, mapped.getValueFromId(id));
+        }
+    }
+
+    @Test
+    public void batchDecodeTest() {
+        ArrayList<String> testData = getTestData(10000);
+        TrieDictionaryForest<String> dict = newDictBuilder(testData, 0, 10000).build();
+        assertTrue(dict.getTrees().size() > 1);
+
+        // random ids across the trees, with duplicates and nulls
+        Random rand = new Random(0);
+        int n = 5000;
+        int[] ids = new int[n];
+        for (int i = 0; i < n; i++) {
+            ids[i] = i % 100 == 0 ? dict.nullId() : dict.getMinId() + rand.nextInt(dict.getSize());
+        }
+        String[] values = new String[n];
+        byte[][] bytes = new byte[n][];
+        dict.getValuesFromIds(ids, n, values);
+        dict.getValueBytesFromIds(ids, n, bytes);
+        for (int i = 0; i < n; i++) {
+            assertEquals(dict.getValueFromId(ids[i]), values[i]);
+            assertArrayEquals(dict.getValueBytesFromId(ids[i]), bytes[i]);
+        }
+    }
+
     private static TrieDictionaryForest<String> testSerialize(TrieDictionaryForest<String> dict) {
         try {
             ByteArrayOutputStream bout = new ByteArrayOutputStream();
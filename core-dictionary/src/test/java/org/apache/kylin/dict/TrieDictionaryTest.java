@@ -18,6 +18,7 @@
 
 package org.apache.kylin.dict;
 
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
@@ -32,6 +33,7 @@ import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.Iterator;
@@ -41,6 +43,8 @@ import java.util.TreeSet;
 
 import org.junit.Test;
 
+import com.google.common.cache.CacheStats;
+
 public class TrieDictionaryTest {
 
     public static void main(String[] args) throws Exception {
@@ -355,6 +359,113 @@ public class TrieDictionaryTest {
         assertEquals(nullId, nullId2);
     }
 
+    @Test
+    public void testMappedBuffer() throws IOException {
+        ArrayList<String> str = new ArrayList<String>();
+        for (int i = 0; i < 10000; i++) {
+            str.add("value_" + i);
+        }
+        TrieDictionary<String> dict = newDictBuilder(str).build(5);
+
+        ByteArrayOutputStream bout = new ByteArrayOutputStream();
+        DataOutputStream dataout = new DataOutputStream(bout);
+        dict.write(dataout);
+        dataout.close();
+        byte[] bytes = bout.toByteArray();
+
+        // a direct buffer stands for a mapped file, with other content before and after the dictionary
+        ByteBuffer buf = ByteBuffer.allocateDirect(bytes.length + 20);
+        buf.position(10);
+        buf.put(bytes);
+        buf.position(10);
+
+        TrieDictionary<String> mapped = new TrieDictionary<String>();
+        mapped.readFields(buf);
+        assertEquals(10 + bytes.length, buf.position());
+        assertEquals(bytes.length, mapped.getByteSize());
+        assertEquals(dict, mapped);
+        assertEquals(dict.hashCode(), mapped.hashCode());
+        for (String s : str) {
+            int id = dict.getIdFromValue(s);
+            assertEquals(id, mapped.getIdFromValue(s));
+            assertEquals(s, mapped.getValueFromId(id));
+        }
+        assertEquals(dict, testSerialize(mapped));
+    }
+
+    @Test
+    public void testBoundedValueCache() {
+        ArrayList<String> str = new ArrayList<String>();
+        for (int i = 0; i < 1000; i++) {
+            str.add("value_" + i);
+        }
+
+        TrieDictionary<String> dict = newDictBuilder(str).build(0);
+        dict.setValueCacheMaxEntries(100);
+        for (int round = 0; round < 2; round++) {
+            for (String s : str) {
+                int id = dict.getIdFromValue(s);
+                assertEquals(s, dict.getValueFromId(id));
+            }
+        }
+        // the most recent value is still cached, the earliest ones have been evicted
+        int id = dict.getIdFromValue("value_999");
+        assertEquals("value_999", dict.getValueFromId(id));
+
+        CacheStats stats = dict.getCacheStats();
+        assertEquals(2 * 2 * str.size() + 2, stats.requestCount());
+        assertTrue(stats.hitCount() >= 2);
+        assertTrue(stats.evictionCount() >= 2 * (str.size() - 100));
+
+        // all values fit, decoding is cached in an array and nothing is evicted
+        dict.setValueCacheMaxEntries(str.size());
+        for (int round = 0; round < 2; round++) {
+            for (String s : str) {
+                assertEquals(s, dict.getValueFromId(dict.getIdFromValue(s)));
+            }
+        }
+        stats = dict.getCacheStats();
+        assertEquals(2 * 2 * str.size(), stats.requestCount());
+        assertEquals(2 * str.size(), stats.missCount());
+        assertEquals(0, stats.evictionCount());
+    }
+
+    @Test
+    public void testBatchDecode() {
+        ArrayList<String> str = new ArrayList<String>();
+        for (int i = 0; i < 10000; i++) {
+            str.add("value_" + i);
+        }
+        str.add("");
+        str.add("value");
+        TrieDictionary<String> dict = newDictBuilder(str).build(0);
+
+        // random ids with duplicates and nulls, some of them cached
+        Random rand = new Random(0);
+        int n = 3000;
+        int[] ids = new int[n];
+        for (int i = 0; i < n; i++) {
+            ids[i] = i % 100 == 0 ? dict.nullId() : dict.getMinId() + rand.nextInt(dict.getSize());
+            if (i % 7 == 0)
+                dict.getValueFromId(ids[i]);
+        }
+        String[] values = new String[n];
+        byte[][] bytes = new byte[n][];
+        dict.getValuesFromIds(ids, n, values);
+        dict.getValueBytesFromIds(ids, n, bytes);
+        for (int i = 0; i < n; i++) {
+            assertEquals(dict.getValueFromId(ids[i]), values[i]);
+            assertArrayEquals(dict.getValueBytesFromId(ids[i]), bytes[i]);
+        }
+
+        try {
+            dict.getValuesFromIds(new int[] { dict.getMaxId() + 1 }, 1, new String[1]);
+            fail("IllegalArgumentException expected");
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+    }
+
     private static TrieDictionary<String> testSerialize(TrieDictionary<String> dict) {
         try {
             ByteArrayOutputStream bout = new ByteArrayOutputStream();
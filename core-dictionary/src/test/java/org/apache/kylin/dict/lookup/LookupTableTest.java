@@ -18,17 +18,27 @@
 
 package org.apache.kylin.dict.lookup;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashSet;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Set;
 
 import org.apache.kylin.common.KylinConfig;
+import org.apache.kylin.common.util.Array;
 import org.apache.kylin.common.util.DateFormat;
 import org.apache.kylin.common.util.LocalFileMetadataTestCase;
 import org.apache.kylin.common.util.Pair;
 import org.apache.kylin.metadata.MetadataManager;
 import org.apache.kylin.metadata.model.TableDesc;
+import org.apache.kylin.source.ReadableTable;
+import org.apache.kylin.source.ReadableTable.TableReader;
 import org.junit.After;
 import org.junit.Assert;
 import org.junit.Before;
@@ -38,6 +48,8 @@ import org.junit.Test;
  */
 public class LookupTableTest extends LocalFileMetadataTestCase {
 
+    private static final String SNAPSHOT_PATH = "/table_snapshot/TEST_CAL_DT.csv/4af48c94-86de-4e22-a4fd-c49b06cbaa4f.snapshot";
+
     private KylinConfig config = null;
 
     private LookupTable<String> lookupTable;
@@ -107,6 +119,180 @@ public class LookupTableTest extends LocalFileMetadataTestCase {
         }
     }
 
+    @Test
+    public void testRowsInRange() throws Exception {
+        String begin = millis("2012-01-24");
+        String end = millis("2012-12-30");
+        int expected = 0;
+        for (String[] row : lookupTable.getAllRows()) {
+            long v = Long.parseLong(row[0]);
+            if (v > Long.parseLong(begin) && v <= Long.parseLong(end))
+                expected++;
+        }
+
+        Assert.assertEquals(expected, lookupTable.getRowsInRange("CAL_DT", begin, false, end, true).size());
+        Assert.assertEquals(0, lookupTable.getRowsInRange("CAL_DT", end, true, begin, true).size());
+        Assert.assertEquals(lookupTable.getAllRows().size(), lookupTable.getRowsInRange("CAL_DT", null, false, null, false).size());
+    }
+
+    @Test
+    public void testCachedLookupTable() throws Exception {
+        TableDesc tableDesc = MetadataManager.getInstance(config).getTableDesc("EDW.TEST_CAL_DT");
+        String[] pkCols = new String[] { "CAL_DT" };
+        LookupStringTable lt = getSnapshotManager().getLookupTable(SNAPSHOT_PATH, tableDesc, pkCols);
+        Assert.assertSame(lt, getSnapshotManager().getLookupTable(SNAPSHOT_PATH, tableDesc, pkCols));
+
+        getSnapshotManager().wipeoutCache();
+        Assert.assertNotSame(lt, getSnapshotManager().getLookupTable(SNAPSHOT_PATH, tableDesc, pkCols));
+    }
+
+    @Test
+    public void testColumnarSnapshot() throws Exception {
+        TableDesc tableDesc = MetadataManager.getInstance(config).getTableDesc("EDW.TEST_CAL_DT");
+        final SnapshotTable legacy = getSnapshotManager().getSnapshotTable(SNAPSHOT_PATH);
+        final int nullCol = tableDesc.getColumnCount() - 1;
+
+        // a copy of the legacy snapshot, with the last column all null
+        ReadableTable source = new ReadableTable() {
+            @Override
+            public TableReader getReader() throws IOException {
+                final TableReader reader = legacy.getReader();
+                return new TableReader() {
+                    @Override
+                    public boolean next() throws IOException {
+                        return reader.next();
+                    }
+
+                    @Override
+                    public String[] getRow() {
+                        String[] row = reader.getRow();
+                        row[nullCol] = null;
+                        return row;
+                    }
+
+                    @Override
+                    public void close() throws IOException {
+                        reader.close();
+                    }
+                };
+            }
+
+            @Override
+            public TableSignature getSignature() throws IOException {
+                return legacy.getSignature();
+            }
+        };
+
+        SnapshotTable snapshot = new SnapshotTable(source, tableDesc.getIdentity());
+        snapshot.takeSnapshot(source, tableDesc);
+        ByteArrayOutputStream buf = new ByteArrayOutputStream();
+        SnapshotTableSerializer.FULL_SERIALIZER.serialize(snapshot, new DataOutputStream(buf));
+        SnapshotTable loaded = SnapshotTableSerializer.FULL_SERIALIZER.deserialize(new DataInputStream(new ByteArrayInputStream(buf.toByteArray())));
+        Assert.assertEquals(snapshot, loaded);
+        Assert.assertEquals(legacy.getRowCount(), loaded.getRowCount());
+        Assert.assertTrue(loaded.getByteSize() < buf.size());
+
+        LookupStringTable columnar = new LookupStringTable(tableDesc, new String[] { "CAL_DT" }, loaded);
+        Assert.assertEquals(lookupTable.getAllRows().size(), columnar.getAllRows().size());
+        for (String[] row : lookupTable.getAllRows()) {
+            String[] other = columnar.getRow(new Array<String>(new String[] { row[0] }));
+            for (int c = 0; c < row.length; c++) {
+                Assert.assertEquals(c == nullCol ? null : row[c], other[c]);
+            }
+        }
+        Assert.assertEquals(lookupTable.mapRange("WEEK_BEG_DT", millis("2013-05-01"), millis("2013-08-01"), "CAL_DT"), //
+                columnar.mapRange("WEEK_BEG_DT", millis("2013-05-01"), millis("2013-08-01"), "CAL_DT"));
+
+        // rows are decoded once per table
+        Array<String> key = new Array<String>(new String[] { millis("2013-05-05") });
+        Assert.assertSame(columnar.getRow(key), columnar.getRow(key));
+        Assert.assertSame(columnar.getRow(key), columnar.getRowsByValues("CAL_DT", Arrays.asList(key.data)).iterator().next());
+    }
+
+    @Test
+    public void testLegacySnapshotFormat() throws Exception {
+        TableDesc tableDesc = MetadataManager.getInstance(config).getTableDesc("EDW.TEST_CAL_DT");
+        SnapshotTable source = getSnapshotManager().getSnapshotTable(SNAPSHOT_PATH);
+
+        SnapshotTable snapshot = new SnapshotTable(source, tableDesc.getIdentity(), false);
+        snapshot.takeSnapshot(source, tableDesc);
+        ByteArrayOutputStream buf = new ByteArrayOutputStream();
+        SnapshotTableSerializer.FULL_SERIALIZER.serialize(snapshot, new DataOutputStream(buf));
+        SnapshotTable loaded = SnapshotTableSerializer.FULL_SERIALIZER.deserialize(new DataInputStream(new ByteArrayInputStream(buf.toByteArray())));
+        Assert.assertEquals(source, loaded);
+
+        // one dictionary for all columns, as servers before the columnar format read it
+        for (int c = 1; c < loaded.getColumnCount(); c++) {
+            Assert.assertSame(loaded.getColumnDictionary(0), loaded.getColumnDictionary(c));
+        }
+    }
+
+    @Test
+    public void testNumberValuesEqualByComparator() throws Exception {
+        TableDesc tableDesc = MetadataManager.getInstance(config).getTableDesc("EDW.TEST_CAL_DT");
+        final SnapshotTable legacy = getSnapshotManager().getSnapshotTable(SNAPSHOT_PATH);
+        final int numCol = 5; // AGE_FOR_YEAR_ID smallint
+
+        // "1" and "1.0" are different strings of the same number, and one row has null
+        final List<String[]> rows = new ArrayList<String[]>();
+        TableReader reader = legacy.getReader();
+        try {
+            while (reader.next()) {
+                String[] row = reader.getRow().clone();
+                if (rows.size() < 3)
+                    row[numCol] = new String[] { "1", "1.0", null }[rows.size()];
+                rows.add(row);
+            }
+        } finally {
+            reader.close();
+        }
+        ReadableTable source = new ReadableTable() {
+            @Override
+            public TableReader getReader() throws IOException {
+                final Iterator<String[]> it = rows.iterator();
+                return new TableReader() {
+                    String[] row;
+
+                    @Override
+                    public boolean next() throws IOException {
+                        row = it.hasNext() ? it.next() : null;
+                        return row != null;
+                    }
+
+                    @Override
+                    public String[] getRow() {
+                        return row;
+                    }
+
+                    @Override
+                    public void close() throws IOException {
+                    }
+                };
+            }
+
+            @Override
+            public TableSignature getSignature() throws IOException {
+                return legacy.getSignature();
+            }
+        };
+
+        LookupStringTable lt = new LookupStringTable(tableDesc, new String[] { "CAL_DT" }, source);
+        String colName = tableDesc.getColumns()[numCol].getName();
+        int expected = 0;
+        for (String[] row : rows) {
+            if (row[numCol] != null && Double.parseDouble(row[numCol]) == 1)
+                expected++;
+        }
+        Assert.assertTrue(expected >= 2);
+        Assert.assertEquals(expected, lt.getRowsInRange(colName, "1", true, "1", true).size());
+        Assert.assertEquals(expected, lt.getRowsInRange(colName, "0.5", false, "1.5", false).size());
+        Assert.assertEquals(rows.size() - 1, lt.getRowsInRange(colName, null, false, null, false).size());
+
+        // exact lookups still tell the strings apart, and null matches the null cell
+        Assert.assertEquals(1, lt.getRowsByValues(colName, Arrays.asList("1.0")).size());
+        Assert.assertEquals(Arrays.asList(lt.getRowAt(2)[0]), lt.scan(colName, Arrays.asList((String) null), "CAL_DT"));
+    }
+
     private String millis(String dateStr) {
         return String.valueOf(DateFormat.stringToMillis(dateStr));
     }
@@ -117,8 +303,7 @@ public class LookupTableTest extends LocalFileMetadataTestCase {
 
         String tableName = "EDW.TEST_CAL_DT";
         String[] pkCols = new String[] { "CAL_DT" };
-        String snapshotResPath = "/table_snapshot/TEST_CAL_DT.csv/4af48c94-86de-4e22-a4fd-c49b06cbaa4f.snapshot";
-        SnapshotTable snapshot = getSnapshotManager().getSnapshotTable(snapshotResPath);
+        SnapshotTable snapshot = getSnapshotManager().getSnapshotTable(SNAPSHOT_PATH);
         TableDesc tableDesc = metaMgr.getTableDesc(tableName);
         LookupTable<String> lt = new LookupStringTable(tableDesc, pkCols, snapshot);
 
@@ -0,0 +1,246 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+*/
+
+package org.apache.kylin.dict.lookup;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.apache.commons.io.IOUtils;
+import org.apache.kylin.common.persistence.RawResource;
+import org.apache.kylin.common.persistence.ResourceStore;
+import org.apache.kylin.common.util.Dictionary;
+import org.apache.kylin.common.util.LocalFileMetadataTestCase;
+import org.apache.kylin.dict.TrieDictionary;
+import org.apache.kylin.metadata.MetadataManager;
+import org.apache.kylin.metadata.model.TableDesc;
+import org.apache.kylin.source.IDeltaReadableTable;
+import org.apache.kylin.source.ReadableTable.TableReader;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.google.common.collect.Sets;
+
+public class SnapshotManagerTest extends LocalFileMetadataTestCase {
+
+    private static final String SNAPSHOT_PATH = "/table_snapshot/TEST_CAL_DT.csv/4af48c94-86de-4e22-a4fd-c49b06cbaa4f.snapshot";
+
+    @Before
+    public void setup() throws Exception {
+        createTestMetadata();
+    }
+
+    @After
+    public void tearDown() {
+        cleanupTestMetadata();
+    }
+
+    @Test
+    public void testDeltaSnapshot() throws Exception {
+        SnapshotManager snapshotMgr = SnapshotManager.getInstance(getTestConfig());
+        TableDesc tableDesc = MetadataManager.getInstance(getTestConfig()).getTableDesc("EDW.TEST_CAL_DT");
+
+        List<String[]> rows = new ArrayList<String[]>();
+        TableReader reader = snapshotMgr.getSnapshotTable(SNAPSHOT_PATH).getReader();
+        while (reader.next()) {
+            rows.add(reader.getRow());
+        }
+        reader.close();
+
+        MockDeltaTable table = new MockDeltaTable(rows.subList(0, rows.size() - 10), 1);
+        SnapshotTable base = snapshotMgr.buildSnapshot(table, tableDesc);
+        Assert.assertEquals(rows.size() - 10, base.getRowCount());
+        Assert.assertSame(base, snapshotMgr.buildSnapshot(table, tableDesc));
+
+        // append the last 10 rows, and a row that only has a new value for the first column
+        String[] newRow = Arrays.copyOf(rows.get(0), rows.get(0).length);
+        newRow[0] = "2099-01-01";
+        List<String[]> allRows = new ArrayList<String[]>(rows);
+        allRows.add(newRow);
+        table = new MockDeltaTable(allRows, 2);
+        table.deltaFrom = rows.size() - 10;
+        SnapshotTable delta = snapshotMgr.buildSnapshot(table, tableDesc);
+
+        Assert.assertEquals(allRows.size(), delta.getRowCount());
+        for (int r = 0; r < allRows.size(); r++) {
+            for (int c = 0; c < tableDesc.getColumnCount(); c++) {
+                Assert.assertEquals(allRows.get(r)[c], delta.getValue(r, c));
+            }
+        }
+
+        // the delta references the base dictionaries
+        for (int c = 0; c < tableDesc.getColumnCount(); c++) {
+            Assert.assertSame(base.getColumnDictionary(c), ChainedDictionary.getParts(delta.getColumnDictionary(c)).get(0));
+        }
+        Assert.assertTrue(delta.getColumnDictionary(0) instanceof ChainedDictionary);
+
+        SnapshotTable full = new SnapshotTable(table, tableDesc.getIdentity());
+        full.takeSnapshot(table, tableDesc);
+        Assert.assertEquals(full, delta);
+        Assert.assertEquals(full, snapshotMgr.getSnapshotTable(delta.getResourcePath()));
+
+        // stored as the appended rows on the base, and read back complete
+        Assert.assertEquals(base.getResourcePath(), delta.getBaseSnapshot());
+        Assert.assertTrue(getStoredSize(delta.getResourcePath()) < getStoredSize(base.getResourcePath()));
+        snapshotMgr.wipeoutCache();
+        Assert.assertEquals(full, snapshotMgr.getSnapshotTable(delta.getResourcePath()));
+        Assert.assertEquals(Sets.newHashSet(delta.getResourcePath(), base.getResourcePath()), snapshotMgr.getSnapshotPathsWithBases(Arrays.asList(delta.getResourcePath())));
+
+        // not an append, read in full
+        table = new MockDeltaTable(allRows.subList(1, allRows.size()), 3);
+        table.appendOnly = false;
+        Assert.assertEquals(allRows.size() - 1, snapshotMgr.buildSnapshot(table, tableDesc).getRowCount());
+    }
+
+    @Test
+    public void testDeltaOnLegacySnapshot() throws Exception {
+        SnapshotManager snapshotMgr = SnapshotManager.getInstance(getTestConfig());
+        TableDesc tableDesc = MetadataManager.getInstance(getTestConfig()).getTableDesc("EDW.TEST_CAL_DT");
+        SnapshotTable legacy = snapshotMgr.getSnapshotTable(SNAPSHOT_PATH);
+
+        List<String[]> rows = new ArrayList<String[]>();
+        TableReader reader = legacy.getReader();
+        while (reader.next()) {
+            rows.add(reader.getRow());
+        }
+        reader.close();
+        String[] newRow = Arrays.copyOf(rows.get(0), rows.get(0).length);
+        newRow[0] = "2099-01-01";
+        rows.add(newRow);
+
+        MockDeltaTable table = new MockDeltaTable(rows, 2);
+        table.deltaFrom = rows.size() - 1;
+        SnapshotTable delta = new SnapshotTable(table, tableDesc.getIdentity());
+        Assert.assertEquals(1, delta.takeDeltaSnapshot(legacy, table.getDeltaReader(legacy.getSignature()), table.getSignature(), tableDesc));
+
+        // all columns share the dictionary of the legacy base, it is written once instead of once per column
+        Dictionary<String> shared = legacy.getColumnDictionary(0);
+        for (int c = 0; c < tableDesc.getColumnCount(); c++) {
+            Assert.assertSame(shared, ChainedDictionary.getParts(delta.getColumnDictionary(c)).get(0));
+        }
+        ByteArrayOutputStream buf = new ByteArrayOutputStream();
+        SnapshotTableSerializer.FULL_SERIALIZER.serialize(delta, new DataOutputStream(buf));
+        long sharedBytes = ((TrieDictionary<String>) shared).getByteSize();
+        Assert.assertEquals(SNAPSHOT_PATH, delta.getBaseSnapshot());
+        Assert.assertTrue(buf.size() < sharedBytes);
+
+        SnapshotTable loaded = SnapshotTableSerializer.FULL_SERIALIZER.deserialize(new DataInputStream(new ByteArrayInputStream(buf.toByteArray())));
+        loaded.resolveBase(legacy);
+        Assert.assertEquals(delta, loaded);
+        Assert.assertEquals("2099-01-01", loaded.getValue(rows.size() - 1, 0));
+        Assert.assertEquals(rows.get(0)[1], loaded.getValue(rows.size() - 1, 1));
+    }
+
+    @Test
+    public void testConcurrentLoad() throws Exception {
+        final SnapshotManager snapshotMgr = SnapshotManager.getInstance(getTestConfig());
+        final TableDesc tableDesc = MetadataManager.getInstance(getTestConfig()).getTableDesc("EDW.TEST_CAL_DT");
+        snapshotMgr.wipeoutCache();
+
+        // all callers missing the cache at once get the one loaded instance
+        int nThreads = 8;
+        final CountDownLatch start = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(nThreads);
+        List<Future<LookupStringTable>> futures = new ArrayList<Future<LookupStringTable>>();
+        for (int i = 0; i < nThreads; i++) {
+            futures.add(executor.submit(new Callable<LookupStringTable>() {
+                @Override
+                public LookupStringTable call() throws Exception {
+                    start.await();
+                    return snapshotMgr.getLookupTable(SNAPSHOT_PATH, tableDesc, new String[] { "CAL_DT" });
+                }
+            }));
+        }
+        start.countDown();
+        LookupStringTable first = futures.get(0).get();
+        for (Future<LookupStringTable> f : futures) {
+            Assert.assertSame(first, f.get());
+        }
+        Assert.assertSame(first.table, snapshotMgr.getSnapshotTable(SNAPSHOT_PATH));
+        executor.shutdown();
+    }
+
+    private int getStoredSize(String resourcePath) throws IOException {
+        RawResource res = ResourceStore.getStore(getTestConfig()).getResource(resourcePath);
+        try {
+            return IOUtils.toByteArray(res.inputStream).length;
+        } finally {
+            IOUtils.closeQuietly(res.inputStream);
+        }
+    }
+
+    private static class MockDeltaTable implements IDeltaReadableTable {
+        final List<String[]> rows;
+        final long lastModified;
+        int deltaFrom;
+        boolean appendOnly = true;
+
+        MockDeltaTable(List<String[]> rows, long lastModified) {
+            this.rows = rows;
+            this.lastModified = lastModified;
+        }
+
+        @Override
+        public TableReader getReader() throws IOException {
+            return reader(0);
+        }
+
+        @Override
+        public TableReader getDeltaReader(TableSignature since) throws IOException {
+            return appendOnly ? reader(deltaFrom) : null;
+        }
+
+        @Override
+        public TableSignature getSignature() throws IOException {
+            return new TableSignature("/mock/test_cal_dt", rows.size(), lastModified);
+        }
+
+        private TableReader reader(final int from) {
+            return new TableReader() {
+                int i = from - 1;
+
+                @Override
+                public boolean next() throws IOException {
+                    return ++i < rows.size();
+                }
+
+                @Override
+                public String[] getRow() {
+                    return Arrays.copyOf(rows.get(i), rows.get(i).length);
+                }
+
+                @Override
+                public void close() throws IOException {
+                }
+            };
+        }
+    }
+}
@@ -0,0 +1,316 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.kylin.measure.basic;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Collection;
+
+import org.apache.kylin.common.util.BytesUtil;
+import org.apache.kylin.measure.MeasureAggregator;
+import org.apache.kylin.metadata.datatype.DataType;
+import org.apache.kylin.metadata.datatype.DataTypeSerializer;
+import org.apache.kylin.metadata.datatype.DoubleMutable;
+import org.apache.kylin.metadata.datatype.DoubleSerializer;
+import org.apache.kylin.metadata.datatype.LongMutable;
+import org.apache.kylin.metadata.datatype.LongSerializer;
+import org.apache.kylin.metadata.model.MeasureDesc;
+
+/**
+ * Aggregation states of fixed width measures (SUM/MIN/MAX on long and double, COUNT being a long SUM)
+ * for many groups, kept in one primitive array instead of a MeasureAggregator object per measure per group.
+ * 
+ * The state of measure m of group g is at [g * width + m], doubles as raw long bits. A group starts with
+ * init(), which is the same as aggregating the first value into a reset aggregator, then takes aggregate()
+ * for each further value. The column-wise aggregateLongs() / aggregateDoubles() update many groups in
+ * a tight loop and give the same result as calling aggregate() row by row.
+ */
+public class PrimitiveMeasureAggregators {
+
+    public enum Kind {
+        LONG_SUM, LONG_MIN, LONG_MAX, DOUBLE_SUM, DOUBLE_MIN, DOUBLE_MAX;
+
+        public boolean isLong() {
+            return this == LONG_SUM || this == LONG_MIN || this == LONG_MAX;
+        }
+
+        /** return null if the aggregator does not have a fixed width primitive state */
+        public static Kind of(MeasureAggregator<?> aggr) {
+            if (aggr instanceof LongSumAggregator)
+                return LONG_SUM;
+            if (aggr instanceof LongMinAggregator)
+                return LONG_MIN;
+            if (aggr instanceof LongMaxAggregator)
+                return LONG_MAX;
+            if (aggr instanceof DoubleSumAggregator)
+                return DOUBLE_SUM;
+            if (aggr instanceof DoubleMinAggregator)
+                return DOUBLE_MIN;
+            if (aggr instanceof DoubleMaxAggregator)
+                return DOUBLE_MAX;
+            return null;
+        }
+    }
+
+    /** return null if any of the aggregators does not have a fixed width primitive state */
+    public static Kind[] kindsOf(MeasureAggregator<?>[] aggrs) {
+        Kind[] result = new Kind[aggrs.length];
+        for (int i = 0; i < aggrs.length; i++) {
+            result[i] = Kind.of(aggrs[i]);
+            if (result[i] == null)
+                return null;
+        }
+        return result;
+    }
+
+    /**
+     * Like kindsOf(), and also require the measures to be serialized by LongSerializer / DoubleSerializer,
+     * so states can be read from and written to MeasureCodec bytes directly. Return null if not so.
+     */
+    public static Kind[] kindsForCodec(Collection<MeasureDesc> measureDescs) {
+        Kind[] result = new Kind[measureDescs.size()];
+        int i = 0;
+        for (MeasureDesc measure : measureDescs) {
+            Kind kind = Kind.of(measure.getFunction().getMeasureType().newAggregator());
+            if (kind == null)
+                return null;
+
+            DataTypeSerializer<?> serializer = DataTypeSerializer.create(DataType.getType(measure.getFunction().getReturnType()));
+            if (kind.isLong() ? serializer.getClass() != LongSerializer.class : serializer.getClass() != DoubleSerializer.class)
+                return null;
+
+            result[i++] = kind;
+        }
+        return result;
+    }
+
+    private final Kind[] kinds;
+    private final int width;
+    private long[] states;
+
+    public PrimitiveMeasureAggregators(Kind[] kinds, int groupCapacity) {
+        this.kinds = kinds;
+        this.width = kinds.length;
+        this.states = new long[Math.max(1, groupCapacity) * width];
+    }
+
+    public Kind[] getKinds() {
+        return kinds;
+    }
+
+    public int getGroupCapacity() {
+        return width == 0 ? Integer.MAX_VALUE : states.length / width;
+    }
+
+    public void ensureCapacity(int groups) {
+        if (groups * width > states.length) {
+            states = Arrays.copyOf(states, Math.max(groups, getGroupCapacity() * 2) * width);
+        }
+    }
+
+    /** exact heap bytes held by the states */
+    public long memoryBytes() {
+        return states.length * 8L;
+    }
+
+    public void initLong(int group, int m, long v) {
+        states[group * width + m] = v;
+    }
+
+    public void initDouble(int group, int m, double v) {
+        states[group * width + m] = Double.doubleToRawLongBits(v);
+    }
+
+    /** init with a LongMutable or DoubleMutable, according to the kind of the measure */
+    public void init(int group, int m, Object value) {
+        if (kinds[m].isLong())
+            initLong(group, m, ((LongMutable) value).get());
+        else
+            initDouble(group, m, ((DoubleMutable) value).get());
+    }
+
+    /** aggregate a LongMutable or DoubleMutable, according to the kind of the measure */
+    public void aggregate(int group, int m, Object value) {
+        if (kinds[m].isLong())
+            aggregateLong(group, m, ((LongMutable) value).get());
+        else
+            aggregateDouble(group, m, ((DoubleMutable) value).get());
+    }
+
+    public void aggregateLong(int group, int m, long v) {
+        int i = group * width + m;
+        switch (kinds[m]) {
+        case LONG_SUM:
+            states[i] += v;
+            break;
+        case LONG_MIN:
+            if (states[i] > v)
+                states[i] = v;
+            break;
+        case LONG_MAX:
+            if (states[i] < v)
+                states[i] = v;
+            break;
+        default:
+            throw new IllegalStateException("Not a long measure: " + kinds[m]);
+        }
+    }
+
+    public void aggregateDouble(int group, int m, double v) {
+        int i = group * width + m;
+        switch (kinds[m]) {
+        case DOUBLE_SUM:
+            states[i] = Double.doubleToRawLongBits(Double.longBitsToDouble(states[i]) + v);
+            break;
+        case DOUBLE_MIN:
+            if (Double.longBitsToDouble(states[i]) > v)
+                states[i] = Double.doubleToRawLongBits(v);
+            break;
+        case DOUBLE_MAX:
+            if (Double.longBitsToDouble(states[i]) < v)
+                states[i] = Double.doubleToRawLongBits(v);
+            break;
+        default:
+            throw new IllegalStateException("Not a double measure: " + kinds[m]);
+        }
+    }
+
+    /** aggregate values[j] into measure m of groups[j], for j in [0, n) */
+    public void aggregateLongs(int m, int[] groups, long[] values, int n) {
+        final long[] s = states;
+        final int w = width;
+        switch (kinds[m]) {
+        case LONG_SUM:
+            for (int j = 0; j < n; j++) {
+                s[groups[j] * w + m] += values[j];
+            }
+            break;
+        case LONG_MIN:
+            for (int j = 0; j < n; j++) {
+                int i = groups[j] * w + m;
+                if (s[i] > values[j])
+                    s[i] = values[j];
+            }
+            break;
+        case LONG_MAX:
+            for (int j = 0; j < n; j++) {
+                int i = groups[j] * w + m;
+                if (s[i] < values[j])
+                    s[i] = values[j];
+            }
+            break;
+        default:
+            throw new IllegalStateException("Not a long measure: " + kinds[m]);
+        }
+    }
+
+    /** aggregate values[j] into measure m of groups[j], for j in [0, n) */
+    public void aggregateDoubles(int m, int[] groups, double[] values, int n) {
+        final long[] s = states;
+        final int w = width;
+        switch (kinds[m]) {
+        case DOUBLE_SUM:
+            for (int j = 0; j < n; j++) {
+                int i = groups[j] * w + m;
+                s[i] = Double.doubleToRawLongBits(Double.longBitsToDouble(s[i]) + values[j]);
+            }
+            break;
+        case DOUBLE_MIN:
+            for (int j = 0; j < n; j++) {
+                int i = groups[j] * w + m;
+                if (Double.longBitsToDouble(s[i]) > values[j])
+                    s[i] = Double.doubleToRawLongBits(values[j]);
+            }
+            break;
+        case DOUBLE_MAX:
+            for (int j = 0; j < n; j++) {
+                int i = groups[j] * w + m;
+                if (Double.longBitsToDouble(s[i]) < values[j])
+                    s[i] = Double.doubleToRawLongBits(values[j]);
+            }
+            break;
+        default:
+            throw new IllegalStateException("Not a double measure: " + kinds[m]);
+        }
+    }
+
+    /**
+     * Read all measures of a row in MeasureCodec format (see kindsForCodec()), and init the group with them
+     * or aggregate them into the group.
+     */
+    public void decode(int group, ByteBuffer in, boolean init) {
+        for (int m = 0; m < width; m++) {
+            if (kinds[m].isLong()) {
+                long v = BytesUtil.readVLong(in);
+                if (init)
+                    initLong(group, m, v);
+                else
+                    aggregateLong(group, m, v);
+            } else {
+                double v = in.getDouble();
+                if (init)
+                    initDouble(group, m, v);
+                else
+                    aggregateDouble(group, m, v);
+            }
+        }
+    }
+
+    /** write all measure states of the group in MeasureCodec format (see kindsForCodec()) */
+    public void encode(int group, ByteBuffer out) {
+        int base = group * width;
+        for (int m = 0; m < width; m++) {
+            if (kinds[m].isLong())
+                BytesUtil.writeVLong(states[base + m], out);
+            else
+                out.putDouble(Double.longBitsToDouble(states[base + m]));
+        }
+    }
+
+    /** max bytes encode() writes for one group */
+    public int maxEncodedLength() {
+        return width * 9;
+    }
+
+    public long getLong(int group, int m) {
+        return states[group * width + m];
+    }
+
+    public double getDouble(int group, int m) {
+        return Double.longBitsToDouble(states[group * width + m]);
+    }
+
+    /** fill the group's measure states into LongMutable/DoubleMutable holders, reusing those in result */
+    public void loadStates(int group, Object[] result) {
+        int base = group * width;
+        for (int m = 0; m < width; m++) {
+            if (kinds[m].isLong()) {
+                if (result[m] instanceof LongMutable)
+                    ((LongMutable) result[m]).set(states[base + m]);
+                else
+                    result[m] = new LongMutable(states[base + m]);
+            } else {
+                if (result[m] instanceof DoubleMutable)
+                    ((DoubleMutable) result[m]).set(Double.longBitsToDouble(states[base + m]));
+                else
+                    result[m] = new DoubleMutable(Double.longBitsToDouble(states[base + m]));
+            }
+        }
+    }
+}
@@ -0,0 +1,37 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+*/
+
+package org.apache.kylin.source;
+
+import java.io.IOException;
+
+import org.apache.kylin.source.ReadableTable.TableSignature;
+
+/**
+ * A table that can read only the rows appended since an earlier signature of it,
+ * so a snapshot of the table is refreshed by the change instead of a full read.
+ */
+public interface IDeltaReadableTable extends ReadableTable {
+
+    /**
+     * Returns a reader of the rows appended since the given signature, or null if
+     * the table changed in another way than appending and has to be read in full.
+     */
+    public TableReader getDeltaReader(TableSignature since) throws IOException;
+
+}
@@ -0,0 +1,147 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.kylin.measure.basic;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.nio.ByteBuffer;
+import java.util.Random;
+
+import org.apache.kylin.measure.MeasureAggregator;
+import org.apache.kylin.measure.basic.PrimitiveMeasureAggregators.Kind;
+import org.apache.kylin.metadata.datatype.DoubleMutable;
+import org.apache.kylin.metadata.datatype.LongMutable;
+import org.junit.Test;
+
+public class PrimitiveMeasureAggregatorsTest {
+
+    private static final int GROUPS = 7;
+    private static final int ROWS = 5000;
+
+    private MeasureAggregator<?>[] newAggregators() {
+        return new MeasureAggregator<?>[] { new LongSumAggregator(), new LongMinAggregator(), new LongMaxAggregator(), //
+                new DoubleSumAggregator(), new DoubleMinAggregator(), new DoubleMaxAggregator() };
+    }
+
+    @Test
+    public void testKindsOf() {
+        assertArrayEquals(Kind.values(), PrimitiveMeasureAggregators.kindsOf(newAggregators()));
+        assertNull(PrimitiveMeasureAggregators.kindsOf(new MeasureAggregator<?>[] { new LongSumAggregator(), new BigDecimalSumAggregator() }));
+    }
+
+    @Test
+    public void testSameAsObjectAggregators() {
+        Kind[] kinds = PrimitiveMeasureAggregators.kindsOf(newAggregators());
+        PrimitiveMeasureAggregators scalar = new PrimitiveMeasureAggregators(kinds, 1);
+        PrimitiveMeasureAggregators batched = new PrimitiveMeasureAggregators(kinds, 1);
+        scalar.ensureCapacity(GROUPS);
+        batched.ensureCapacity(GROUPS);
+
+        MeasureAggregator<?>[][] expected = new MeasureAggregator<?>[GROUPS][];
+        for (int g = 0; g < GROUPS; g++) {
+            expected[g] = newAggregators();
+        }
+
+        Random rand = new Random(0);
+        int[] groups = new int[ROWS];
+        long[] longs = new long[ROWS];
+        double[] doubles = new double[ROWS];
+        boolean[] seen = new boolean[GROUPS];
+        int n = 0;
+        for (int r = 0; r < ROWS; r++) {
+            int g = rand.nextInt(GROUPS);
+            long l = rand.nextInt(2000) - 1000;
+            double d = rand.nextGaussian() * 100;
+            for (int m = 0; m < kinds.length; m++) {
+                Object v = kinds[m].isLong() ? new LongMutable(l) : new DoubleMutable(d);
+                aggregate(expected[g][m], v);
+                if (seen[g])
+                    scalar.aggregate(g, m, v);
+                else
+                    scalar.init(g, m, v);
+            }
+            if (seen[g]) {
+                groups[n] = g;
+                longs[n] = l;
+                doubles[n] = d;
+                n++;
+            } else {
+                for (int m = 0; m < kinds.length; m++) {
+                    if (kinds[m].isLong())
+                        batched.initLong(g, m, l);
+                    else
+                        batched.initDouble(g, m, d);
+                }
+                seen[g] = true;
+            }
+        }
+        for (int m = 0; m < kinds.length; m++) {
+            if (kinds[m].isLong())
+                batched.aggregateLongs(m, groups, longs, n);
+            else
+                batched.aggregateDoubles(m, groups, doubles, n);
+        }
+
+        for (int g = 0; g < GROUPS; g++) {
+            Object[] scalarStates = new Object[kinds.length];
+            Object[] batchedStates = new Object[kinds.length];
+            scalar.loadStates(g, scalarStates);
+            batched.loadStates(g, batchedStates);
+            for (int m = 0; m < kinds.length; m++) {
+                Object state = expected[g][m].getState();
+                if (kinds[m].isLong()) {
+                    assertEquals(((LongMutable) state).get(), ((LongMutable) scalarStates[m]).get());
+                    assertEquals(((LongMutable) state).get(), ((LongMutable) batchedStates[m]).get());
+                } else {
+                    // summing in a different order may differ in the last bits
+                    assertEquals(((DoubleMutable) state).get(), ((DoubleMutable) scalarStates[m]).get(), 0);
+                    assertEquals(((DoubleMutable) state).get(), ((DoubleMutable) batchedStates[m]).get(), 1e-6);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testCodec() {
+        Kind[] kinds = new Kind[] { Kind.LONG_SUM, Kind.DOUBLE_MAX, Kind.LONG_MIN };
+        PrimitiveMeasureAggregators aggrs = new PrimitiveMeasureAggregators(kinds, 2);
+
+        ByteBuffer buf = ByteBuffer.allocate(aggrs.maxEncodedLength());
+        aggrs.initLong(0, 0, 100);
+        aggrs.initDouble(0, 1, -2.5);
+        aggrs.initLong(0, 2, Long.MIN_VALUE);
+        aggrs.encode(0, buf);
+        buf.flip();
+        aggrs.decode(1, buf, true);
+        assertEquals(0, buf.remaining());
+
+        buf.flip();
+        aggrs.decode(1, buf, false);
+        assertEquals(200, aggrs.getLong(1, 0));
+        assertEquals(-2.5, aggrs.getDouble(1, 1), 0);
+        assertEquals(Long.MIN_VALUE, aggrs.getLong(1, 2));
+    }
+
+    @SuppressWarnings({ "unchecked", "rawtypes" })
+    private static void aggregate(MeasureAggregator aggr, Object value) {
+        aggr.aggregate(value);
+    }
+}
@@ -0,0 +1,284 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.kylin.storage.cache;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.apache.kylin.common.KylinConfig;
+import org.apache.kylin.common.debug.BackdoorToggles;
+import org.apache.kylin.common.util.ImmutableBitSet;
+import org.apache.kylin.cube.CubeSegment;
+import org.apache.kylin.cube.cuboid.Cuboid;
+import org.apache.kylin.gridtable.GTRecord;
+import org.apache.kylin.gridtable.GTScanRequest;
+import org.apache.kylin.gridtable.GTScanRequestBuilder;
+import org.apache.kylin.gridtable.IGTScanner;
+import org.apache.kylin.metadata.cachesync.Broadcaster;
+import org.apache.kylin.metadata.cachesync.Broadcaster.Event;
+import org.apache.kylin.metadata.model.SegmentStatusEnum;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.Weigher;
+import com.google.common.collect.Lists;
+
+/**
+ * Caches the records a segment returns for a GTScanRequest, i.e. storage side results after
+ * filtering and pre-aggregation, keyed by segment, cuboid and the request in canonical form.
+ * 
+ * Unlike the query cache which is keyed by the whole SQL, a query that shifts its time window
+ * only misses on the segments that newly come into the window. Entries of a cube are
+ * invalidated when the cube changes, and the key also carries the segment's last build time
+ * so a refreshed segment never hits stale results.
+ */
+public class SegmentScanResultCache {
+
+    private static final Logger logger = LoggerFactory.getLogger(SegmentScanResultCache.class);
+
+    // rough per record overhead of GTRecord and its ByteArray columns
+    private static final int RECORD_OVERHEAD_BYTES = 64;
+
+    // static cached instances
+    private static final ConcurrentHashMap<KylinConfig, SegmentScanResultCache> CACHE = new ConcurrentHashMap<KylinConfig, SegmentScanResultCache>();
+
+    public static SegmentScanResultCache getInstance(KylinConfig config) {
+        SegmentScanResultCache r = CACHE.get(config);
+        if (r == null) {
+            synchronized (SegmentScanResultCache.class) {
+                r = CACHE.get(config);
+                if (r == null) {
+                    r = new SegmentScanResultCache(config);
+                    CACHE.put(config, r);
+                    if (CACHE.size() > 1) {
+                        logger.warn("More than one singleton exist");
+                    }
+                }
+            }
+        }
+        return r;
+    }
+
+    public static void clearCache() {
+        CACHE.clear();
+    }
+
+    // ============================================================================
+
+    private final KylinConfig config;
+    private final long maxEntryBytes;
+    private final Cache<ScanKey, CachedResult> resultCache;
+
+    private SegmentScanResultCache(KylinConfig config) {
+        this.config = config;
+        this.maxEntryBytes = config.getQuerySegmentCacheMaxEntryMB() * 1024L * 1024L;
+        this.resultCache = CacheBuilder.newBuilder().maximumWeight(config.getQuerySegmentCacheMaxMB() * 1024L * 1024L).weigher(new Weigher<ScanKey, CachedResult>() {
+            @Override
+            public int weigh(ScanKey key, CachedResult value) {
+                return (int) Math.min(Integer.MAX_VALUE, key.request.length + value.bytes);
+            }
+        }).build();
+
+        Broadcaster.getInstance(config).registerListener(new SegmentCacheSyncListener(), "cube");
+    }
+
+    private class SegmentCacheSyncListener extends Broadcaster.Listener {
+        @Override
+        public void onClearAll(Broadcaster broadcaster) throws IOException {
+            resultCache.invalidateAll();
+        }
+
+        @Override
+        public void onEntityChange(Broadcaster broadcaster, String entity, Event event, String cacheKey) throws IOException {
+            invalidateCube(cacheKey);
+        }
+    }
+
+    public boolean isEnabled() {
+        return config.isQuerySegmentCacheEnabled() && !BackdoorToggles.getDisableCache();
+    }
+
+    /**
+     * Return null if the segment's results are not cacheable, e.g. the segment is still building.
+     */
+    public ScanKey createKey(CubeSegment segment, Cuboid cuboid, GTScanRequest scanRequest) {
+        if (scanRequest == null || segment.getStatus() != SegmentStatusEnum.READY)
+            return null;
+
+        return new ScanKey(segment.getCubeInstance().getName(), segment.getUuid(), segment.getLastBuildTime(), cuboid.getId(), canonicalize(scanRequest));
+    }
+
+    public CachedResult get(ScanKey key) {
+        CachedResult result = resultCache.getIfPresent(key);
+        if (result == null)
+            return null;
+
+        logger.info("Segment scan cache hit for segment {} cuboid {}, {} records", key.segmentUuid, key.cuboidId, result.records.size());
+        return result;
+    }
+
+    /**
+     * Wrap the storage results, they go into the cache once the iteration completes within the entry size limit.
+     */
+    public Iterator<GTRecord> cacheOnComplete(final ScanKey key, final ImmutableBitSet columns, final IGTScanner scanner) {
+        final Iterator<GTRecord> input = scanner.iterator();
+        return new Iterator<GTRecord>() {
+            List<GTRecord> copies = Lists.newArrayList();
+            long bytes = 0;
+
+            @Override
+            public boolean hasNext() {
+                boolean hasNext = input.hasNext();
+                if (!hasNext && copies != null) {
+                    resultCache.put(key, new CachedResult(copies, columns, bytes, scanner.getScannedRowCount()));
+                    logger.info("Segment scan cache put for segment {} cuboid {}, {} records, {} bytes", key.segmentUuid, key.cuboidId, copies.size(), bytes);
+                    copies = null;
+                }
+                return hasNext;
+            }
+
+            @Override
+            public GTRecord next() {
+                GTRecord record = input.next();
+                if (copies != null) {
+                    copies.add(record.copy(columns));
+                    bytes += record.sizeOf(columns) + RECORD_OVERHEAD_BYTES;
+                    if (bytes > maxEntryBytes) {
+                        // too big to be worth caching
+                        copies = null;
+                    }
+                }
+                return record;
+            }
+
+            @Override
+            public void remove() {
+                throw new UnsupportedOperationException();
+            }
+        };
+    }
+
+    public void invalidateCube(String cubeName) {
+        for (ScanKey key : resultCache.asMap().keySet()) {
+            if (key.cubeName.equalsIgnoreCase(cubeName))
+                resultCache.invalidate(key);
+        }
+    }
+
+    public long size() {
+        return resultCache.size();
+    }
+
+    // startTime and timeout vary by query but don't affect the results
+    private byte[] canonicalize(GTScanRequest req) {
+        GTScanRequest canonical = new GTScanRequestBuilder().setInfo(req.getInfo()).setRanges(req.getGTScanRanges()).setDimensions(req.getColumns()).//
+                setAggrGroupBy(req.getAggrGroupBy()).setAggrMetrics(req.getAggrMetrics()).setAggrMetricsFuncs(req.getAggrMetricsFuncs()).//
+                setFilterPushDown(req.getFilterPushDown()).setAllowStorageAggregation(req.isAllowStorageAggregation()).//
+                setAggCacheMemThreshold(req.getAggCacheMemThreshold()).setStorageScanRowNumThreshold(req.getStorageScanRowNumThreshold()).//
+                setStoragePushDownLimit(req.getStoragePushDownLimit()).setStorageBehavior(req.getStorageBehavior()).//
+                setAllowHashAggregation(req.isAllowHashAggregation()).setStartTime(0).setTimeout(0).createGTScanRequest();
+        return canonical.toByteArray();
+    }
+
+    public static class ScanKey {
+        final String cubeName;
+        final String segmentUuid;
+        final long lastBuildTime;
+        final long cuboidId;
+        final byte[] request;
+        final int hashCode;
+
+        ScanKey(String cubeName, String segmentUuid, long lastBuildTime, long cuboidId, byte[] request) {
+            this.cubeName = cubeName;
+            this.segmentUuid = segmentUuid;
+            this.lastBuildTime = lastBuildTime;
+            this.cuboidId = cuboidId;
+            this.request = request;
+
+            int h = segmentUuid.hashCode();
+            h = 31 * h + (int) (lastBuildTime ^ (lastBuildTime >>> 32));
+            h = 31 * h + (int) (cuboidId ^ (cuboidId >>> 32));
+            h = 31 * h + Arrays.hashCode(request);
+            this.hashCode = h;
+        }
+
+        @Override
+        public int hashCode() {
+            return hashCode;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj)
+                return true;
+            if (!(obj instanceof ScanKey))
+                return false;
+            ScanKey other = (ScanKey) obj;
+            return hashCode == other.hashCode && lastBuildTime == other.lastBuildTime && cuboidId == other.cuboidId //
+                    && segmentUuid.equals(other.segmentUuid) && Arrays.equals(request, other.request);
+        }
+    }
+
+    /**
+     * Cached records are shared by concurrent queries, so they are never handed out directly but copied as iterated.
+     */
+    public static class CachedResult {
+        final List<GTRecord> records;
+        final ImmutableBitSet columns;
+        final long bytes;
+        final long scannedRowCount;
+
+        CachedResult(List<GTRecord> records, ImmutableBitSet columns, long bytes, long scannedRowCount) {
+            this.records = records;
+            this.columns = columns;
+            this.bytes = bytes;
+            this.scannedRowCount = scannedRowCount;
+        }
+
+        public Iterator<GTRecord> iterator() {
+            final Iterator<GTRecord> it = records.iterator();
+            return new Iterator<GTRecord>() {
+                @Override
+                public boolean hasNext() {
+                    return it.hasNext();
+                }
+
+                @Override
+                public GTRecord next() {
+                    return it.next().copy(columns);
+                }
+
+                @Override
+                public void remove() {
+                    throw new UnsupportedOperationException();
+                }
+            };
+        }
+
+        /** Rows the storage scanned to produce the cached records. */
+        public long getScannedRowCount() {
+            return scannedRowCount;
+        }
+    }
+}
@@ -46,6 +46,8 @@ import org.apache.kylin.gridtable.GTScanRequest;
 import org.apache.kylin.gridtable.GTScanRequestBuilder;
 import org.apache.kylin.gridtable.GTUtil;
 import org.apache.kylin.gridtable.IGTComparator;
+import org.apache.kylin.metadata.filter.CompareTupleFilter;
+import org.apache.kylin.metadata.filter.LogicalTupleFilter;
 import org.apache.kylin.metadata.filter.TupleFilter;
 import org.apache.kylin.metadata.model.FunctionDesc;
 import org.apache.kylin.metadata.model.TblColRef;
@@ -114,6 +116,10 @@ public class CubeScanRangePlanner extends ScanRangePlannerBase {
             }
         }
 
+        // make the request independent of how far the query's time window goes beyond the segment
+        if (cubeSegment.getConfig().isQuerySegmentCacheEnabled()) {
+            this.gtFilter = removeSegmentCoveredConditions(gtFilter);
+        }
     }
 
     /**
@@ -150,7 +156,7 @@ public class CubeScanRangePlanner extends ScanRangePlannerBase {
             GTScanRequestBuilder builder = new GTScanRequestBuilder().setInfo(gtInfo).setRanges(scanRanges).setDimensions(gtDimensions).//
                     setAggrGroupBy(gtAggrGroups).setAggrMetrics(gtAggrMetrics).setAggrMetricsFuncs(gtAggrFuncs).setFilterPushDown(gtFilter).//
                     setAllowStorageAggregation(context.isNeedStorageAggregation()).setAggCacheMemThreshold(cubeSegment.getCubeInstance().getConfig().getQueryCoprocessorMemGB()).//
-                    setStorageScanRowNumThreshold(context.getThreshold());
+                    setStorageScanRowNumThreshold(context.getThreshold()).setAllowHashAggregation(cubeSegment.getCubeInstance().getConfig().isQueryCoprocessorHashAggregationEnabled());
 
             if (context.getFinalPushDownLimit() != Integer.MAX_VALUE)
                 builder.setStoragePushDownLimit(context.getFinalPushDownLimit());
@@ -184,6 +190,65 @@ public class CubeScanRangePlanner extends ScanRangePlannerBase {
         return mergedRanges;
     }
 
+    /**
+     * Drop the top level AND conditions on partition column that hold for every row of the segment,
+     * e.g. "dt >= '2016-01-01'" on segment [2016-02-01, 2016-03-01). Then queries that shift their
+     * time window send the same request to segments they fully cover.
+     */
+    protected TupleFilter removeSegmentCoveredConditions(TupleFilter filter) {
+        if (filter == null || gtPartitionCol == null)
+            return filter;
+
+        List<TupleFilter> conditions;
+        if (filter.getOperator() == TupleFilter.FilterOperatorEnum.AND)
+            conditions = Lists.newArrayList(filter.getChildren());
+        else
+            conditions = Lists.newArrayList(filter);
+
+        List<TupleFilter> remaining = Lists.newArrayList();
+        for (TupleFilter condition : conditions) {
+            if (!(condition instanceof CompareTupleFilter && isCoveredBySegment((CompareTupleFilter) condition)))
+                remaining.add(condition);
+        }
+
+        if (remaining.size() == conditions.size())
+            return filter;
+
+        logger.debug("{} partition column conditions are removed as the segment {} is fully covered", conditions.size() - remaining.size(), cubeSegment);
+        if (remaining.isEmpty())
+            return null;
+        if (remaining.size() == 1)
+            return remaining.get(0);
+
+        LogicalTupleFilter and = new LogicalTupleFilter(TupleFilter.FilterOperatorEnum.AND);
+        and.addChildren(remaining);
+        return and;
+    }
+
+    private boolean isCoveredBySegment(CompareTupleFilter comp) {
+        if (!gtPartitionCol.equals(comp.getColumn()) || comp.getValues() == null || comp.getValues().size() != 1 || !(comp.getFirstValue() instanceof ByteArray))
+            return false;
+
+        // segment range is [start, end), start is rounded up and end is rounded down when encoding
+        ByteArray value = (ByteArray) comp.getFirstValue();
+        ByteArray start = gtStartAndEnd.getFirst();
+        ByteArray end = gtStartAndEnd.getSecond();
+        IGTComparator comparator = gtInfo.getCodeSystem().getComparator();
+        switch (comp.getOperator()) {
+        case GT:
+            return start.array() != null && comparator.compare(start, value) > 0;
+        case GTE:
+            return start.array() != null && comparator.compare(start, value) >= 0;
+        case LT:
+            // for datetime encoding the end is exact and exclusive
+            return end.array() != null && (isPartitionColUsingDatetimeEncoding ? comparator.compare(end, value) <= 0 : comparator.compare(end, value) < 0);
+        case LTE:
+            return end.array() != null && comparator.compare(end, value) <= 0;
+        default:
+            return false;
+        }
+    }
+
     private Set<TblColRef> replaceDerivedColumns(Set<TblColRef> input, CubeDesc cubeDesc) {
         Set<TblColRef> ret = Sets.newHashSet();
         for (TblColRef col : input) {
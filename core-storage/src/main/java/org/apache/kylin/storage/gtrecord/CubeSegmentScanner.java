@@ -38,6 +38,7 @@ import org.apache.kylin.metadata.filter.TupleFilterSerializer;
 import org.apache.kylin.metadata.model.FunctionDesc;
 import org.apache.kylin.metadata.model.TblColRef;
 import org.apache.kylin.storage.StorageContext;
+import org.apache.kylin.storage.cache.SegmentScanResultCache;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -51,6 +52,10 @@ public class CubeSegmentScanner implements IGTScanner {
 
     final GTScanRequest scanRequest;
 
+    final SegmentScanResultCache resultCache;
+    final SegmentScanResultCache.ScanKey cacheKey;
+    final SegmentScanResultCache.CachedResult cachedResult;
+
     public CubeSegmentScanner(CubeSegment cubeSeg, Cuboid cuboid, Set<TblColRef> dimensions, Set<TblColRef> groups, //
             Collection<FunctionDesc> metrics, TupleFilter originalfilter, StorageContext context, String gtStorage) {
         
@@ -78,17 +83,26 @@ public class CubeSegmentScanner implements IGTScanner {
             throw new RuntimeException(e);
         }
         scanRequest = scanRangePlanner.planScanRequest();
-        scanner = new ScannerWorker(cubeSeg, cuboid, scanRequest, gtStorage);
+
+        resultCache = SegmentScanResultCache.getInstance(cubeSeg.getConfig());
+        cacheKey = resultCache.isEnabled() ? resultCache.createKey(cubeSeg, cuboid, scanRequest) : null;
+        cachedResult = cacheKey == null ? null : resultCache.get(cacheKey);
+        scanner = cachedResult != null ? null : new ScannerWorker(cubeSeg, cuboid, scanRequest, gtStorage);
     }
 
     @Override
     public Iterator<GTRecord> iterator() {
+        if (cachedResult != null)
+            return cachedResult.iterator();
+        if (cacheKey != null)
+            return resultCache.cacheOnComplete(cacheKey, scanRequest.getColumns(), scanner);
         return scanner.iterator();
     }
 
     @Override
     public void close() throws IOException {
-        scanner.close();
+        if (scanner != null)
+            scanner.close();
     }
 
     @Override
@@ -98,7 +112,7 @@ public class CubeSegmentScanner implements IGTScanner {
 
     @Override
     public long getScannedRowCount() {
-        return scanner.getScannedRowCount();
+        return scanner == null ? cachedResult.getScannedRowCount() : scanner.getScannedRowCount();
     }
 
     public CubeSegment getSegment() {
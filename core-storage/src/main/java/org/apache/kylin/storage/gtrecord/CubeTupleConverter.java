@@ -25,14 +25,18 @@ import java.util.Set;
 import java.util.Map.Entry;
 
 import org.apache.kylin.common.util.Array;
+import org.apache.kylin.common.util.ByteArray;
+import org.apache.kylin.common.util.BytesUtil;
 import org.apache.kylin.common.util.Dictionary;
 import org.apache.kylin.cube.CubeManager;
 import org.apache.kylin.cube.CubeSegment;
 import org.apache.kylin.cube.cuboid.Cuboid;
 import org.apache.kylin.cube.gridtable.CuboidToGridTableMapping;
 import org.apache.kylin.cube.model.CubeDesc.DeriveInfo;
+import org.apache.kylin.cube.model.RowKeyColDesc;
 import org.apache.kylin.dict.lookup.LookupStringTable;
 import org.apache.kylin.gridtable.GTRecord;
+import org.apache.kylin.gridtable.IGTCodeSystem;
 import org.apache.kylin.measure.MeasureType;
 import org.apache.kylin.measure.MeasureType.IAdvMeasureFiller;
 import org.apache.kylin.metadata.model.FunctionDesc;
@@ -40,6 +44,8 @@ import org.apache.kylin.metadata.model.TblColRef;
 import org.apache.kylin.metadata.tuple.ITuple;
 import org.apache.kylin.metadata.tuple.Tuple;
 import org.apache.kylin.metadata.tuple.TupleInfo;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import com.google.common.base.Preconditions;
 import com.google.common.collect.Lists;
@@ -50,6 +56,8 @@ import com.google.common.collect.Maps;
  */
 public class CubeTupleConverter {
 
+    private static final Logger logger = LoggerFactory.getLogger(CubeTupleConverter.class);
+
     final CubeSegment cubeSeg;
     final Cuboid cuboid;
     final TupleInfo tupleInfo;
@@ -67,6 +75,13 @@ public class CubeTupleConverter {
 
     private final int[] dimensionIndexOnTuple;
 
+    // dictionaries of the dictionary encoded dimensions, to decode blocks of records in batch
+    private final Dictionary<String>[] dimDicts;
+    private final boolean hasDimDicts;
+    private int[] blockIds = new int[0];
+    private final String[][] blockValues;
+
+    @SuppressWarnings("unchecked")
     public CubeTupleConverter(CubeSegment cubeSeg, Cuboid cuboid, //
                               Set<TblColRef> selectedDimensions, Set<FunctionDesc> selectedMetrics, TupleInfo returnTupleInfo) {
         this.cubeSeg = cubeSeg;
@@ -88,6 +103,9 @@ public class CubeTupleConverter {
         advMeasureFillers = Lists.newArrayListWithCapacity(1);
         advMeasureIndexInGTValues = Lists.newArrayListWithCapacity(1);
 
+        dimDicts = new Dictionary[nSelectedDims];
+        blockValues = new String[nSelectedDims][];
+
         // dimensionIndexOnTuple is for SQL with limit
         List<Integer> temp = Lists.newArrayList();
         for (TblColRef dim : cuboid.getColumns()) {
@@ -110,6 +128,11 @@ public class CubeTupleConverter {
             gtColIdx[i] = dimIndex;
             tupleIdx[i] = tupleInfo.hasColumn(dim) ? tupleInfo.getColumnIndex(dim) : -1;
 
+            RowKeyColDesc colDesc = cuboid.getCubeDesc().getRowkey().getColDesc(dim);
+            if (colDesc != null && colDesc.isUsingDictionary()) {
+                dimDicts[i] = cubeSeg.getDictionary(dim);
+            }
+
             //            if (tupleIdx[iii] == -1) {
             //                throw new IllegalStateException("dim not used in tuple:" + dim);
             //            }
@@ -142,6 +165,12 @@ public class CubeTupleConverter {
             i++;
         }
 
+        boolean anyDict = false;
+        for (Dictionary<String> dict : dimDicts) {
+            anyDict = anyDict || dict != null;
+        }
+        hasDimDicts = anyDict;
+
         // prepare derived columns and filler
         Map<Array<TblColRef>, List<DeriveInfo>> hostToDerivedInfo = cuboid.getCubeDesc().getHostToDerivedInfo(cuboidDims, null);
         for (Entry<Array<TblColRef>, List<DeriveInfo>> entry : hostToDerivedInfo.entrySet()) {
@@ -202,10 +231,76 @@ public class CubeTupleConverter {
         return result;
     }
 
-    public List<IAdvMeasureFiller> translateResult(GTRecord record, Tuple tuple) {
+    /**
+     * Whether there are dictionary encoded dimensions to benefit from decodeBlock()
+     */
+    public boolean hasDictionaryDimensions() {
+        return hasDimDicts;
+    }
+
+    /**
+     * Decodes the dictionary encoded dimensions of records[0, n) in batch, one
+     * dictionary call per dimension, for the following translateResult(record, row, tuple)
+     */
+    public void decodeBlock(GTRecord[] records, int n) {
+        if (blockIds.length < n)
+            blockIds = new int[n];
+
+        for (int i = 0; i < nSelectedDims; i++) {
+            Dictionary<String> dict = dimDicts[i];
+            if (dict == null)
+                continue;
+
+            int c = gtColIdx[i];
+            for (int r = 0; r < n; r++) {
+                ByteArray bytes = records[r].get(c);
+                blockIds[r] = bytes.array() == null ? dict.nullId() : BytesUtil.readUnsigned(bytes.array(), bytes.offset(), bytes.length());
+            }
+            if (blockValues[i] == null || blockValues[i].length < n)
+                blockValues[i] = new String[n];
+            try {
+                dict.getValuesFromIds(blockIds, n, blockValues[i]);
+            } catch (IllegalArgumentException e) {
+                // some id is not in the dictionary, decode one by one and leave it empty, like DictionaryDimEnc.decode()
+                for (int r = 0; r < n; r++) {
+                    blockValues[i][r] = decodeTolerantly(dict, blockIds[r]);
+                }
+            }
+        }
+    }
+
+    private static String decodeTolerantly(Dictionary<String> dict, int id) {
+        try {
+            return dict.getValueFromId(id);
+        } catch (IllegalArgumentException e) {
+            logger.error("Can't get dictionary value from " + dict + " (id = " + id + ")");
+            return "";
+        }
+    }
+
+    /**
+     * Same as translateResult(record, tuple), taking the dictionary encoded dimensions from the last decodeBlock()
+     */
+    public List<IAdvMeasureFiller> translateResult(GTRecord record, int row, Tuple tuple) {
+        IGTCodeSystem codeSystem = record.getInfo().getCodeSystem();
+        for (int i = 0; i < gtColIdx.length; i++) {
+            if (i < nSelectedDims && dimDicts[i] != null) {
+                gtValues[i] = blockValues[i][row];
+            } else {
+                int c = gtColIdx[i];
+                ByteArray bytes = record.get(c);
+                gtValues[i] = bytes.array() == null ? null : codeSystem.decodeColumnValue(c, bytes.asBuffer());
+            }
+        }
+        return fillTuple(tuple);
+    }
 
+    public List<IAdvMeasureFiller> translateResult(GTRecord record, Tuple tuple) {
         record.getValues(gtColIdx, gtValues);
+        return fillTuple(tuple);
+    }
 
+    private List<IAdvMeasureFiller> fillTuple(Tuple tuple) {
         // dimensions
         for (int i = 0; i < nSelectedDims; i++) {
             int ti = tupleIdx[i];
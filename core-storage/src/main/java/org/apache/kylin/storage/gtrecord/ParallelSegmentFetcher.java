@@ -0,0 +1,375 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.kylin.storage.gtrecord;
+
+import java.io.Closeable;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Queue;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.kylin.common.KylinConfig;
+import org.apache.kylin.common.debug.BackdoorToggles;
+import org.apache.kylin.common.util.DaemonThreadFactory;
+import org.apache.kylin.gridtable.GTRecord;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.collect.Lists;
+
+/**
+ * Drains the records of multiple segments concurrently, with at most "parallelism" threads for
+ * one query, so the storage visits of segments overlap instead of adding up.
+ * 
+ * Records are copied and handed over either through one bounded queue in arrival order, or through
+ * a bounded queue per segment when the segments have to be merge sorted (e.g. for storage limit push down).
+ * 
+ * Workers never block on a full queue. They leave a full segment for one that has room, and quit when
+ * no segment has; the query thread brings them back as it takes records. So a merge waiting for the head
+ * of any segment always gets it, and threads of the shared pool are never parked by a slow consumer.
+ */
+public class ParallelSegmentFetcher implements Closeable {
+
+    private static final Logger logger = LoggerFactory.getLogger(ParallelSegmentFetcher.class);
+
+    private static volatile ExecutorService executorService = null;
+
+    private static ExecutorService getExecutorService(KylinConfig config) {
+        if (executorService != null) {
+            return executorService;
+        }
+
+        synchronized (ParallelSegmentFetcher.class) {
+            if (executorService != null) {
+                return executorService;
+            }
+
+            int nThreads = config.getQuerySegmentScanThreads();
+            ThreadPoolExecutor tpe = new ThreadPoolExecutor(nThreads, nThreads, 60, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(), new DaemonThreadFactory());
+            tpe.allowCoreThreadTimeOut(true);
+            logger.info("Creating segment scan thread pool of {} threads", nThreads);
+
+            executorService = tpe;
+            return executorService;
+        }
+    }
+
+    static class Item {
+        final int segment;
+        final GTRecord record; // null means the end of the segment
+        final Throwable error;
+
+        Item(int segment, GTRecord record, Throwable error) {
+            this.segment = segment;
+            this.record = record;
+            this.error = error;
+        }
+    }
+
+    // fetch state of a segment, only touched by the worker that claimed it
+    private class SegmentFetch {
+        final int index;
+        final CubeSegmentScanner scanner;
+        final BlockingQueue<Item> queue;
+        final AtomicBoolean claimed = new AtomicBoolean();
+        volatile boolean done = false;
+
+        Iterator<GTRecord> iterator; // null until started
+        Item pending; // the item that did not fit into the queue
+        long startTime;
+        int count;
+
+        SegmentFetch(int index, CubeSegmentScanner scanner, BlockingQueue<Item> queue) {
+            this.index = index;
+            this.scanner = scanner;
+            this.queue = queue;
+        }
+
+        boolean isRunnable() {
+            return !done && !claimed.get() && queue.remainingCapacity() > 0;
+        }
+    }
+
+    private class Worker implements Runnable {
+        final AtomicBoolean entered = new AtomicBoolean();
+
+        @Override
+        public void run() {
+            // a worker cancelled by close() before it started has been accounted for there
+            if (!entered.compareAndSet(false, true))
+                return;
+            pendingWorkers.remove(this);
+
+            BackdoorToggles.setToggles(toggles);
+            try {
+                do {
+                    SegmentFetch fetch;
+                    while (!closed && (fetch = claimRunnable()) != null) {
+                        try {
+                            pump(fetch);
+                        } finally {
+                            fetch.claimed.set(false);
+                        }
+                    }
+                } while (!retire());
+            } finally {
+                BackdoorToggles.cleanToggles();
+            }
+        }
+    }
+
+    private final List<CubeSegmentScanner> scanners;
+    private final boolean keepSegmentOrder;
+    private final BlockingQueue<Item> arrivalQueue;
+    private final List<BlockingQueue<Item>> segmentQueues;
+    private final List<SegmentFetch> fetches;
+    private final int nThreads;
+    private final AtomicInteger activeWorkers = new AtomicInteger();
+    private final Queue<Worker> pendingWorkers = new ConcurrentLinkedQueue<Worker>();
+    private final ExecutorService executor;
+    private final Map<String, String> toggles;
+    private final String queryThread;
+    private volatile boolean closed = false;
+
+    public ParallelSegmentFetcher(List<CubeSegmentScanner> scanners, int parallelism, boolean keepSegmentOrder) {
+        this.scanners = scanners;
+        this.keepSegmentOrder = keepSegmentOrder;
+        this.toggles = BackdoorToggles.getToggles();
+        this.queryThread = Thread.currentThread().getName();
+
+        KylinConfig config = scanners.get(0).getSegment().getConfig();
+        int queueSize = config.getQuerySegmentScanQueueSize();
+        this.executor = getExecutorService(config);
+
+        fetches = Lists.newArrayListWithCapacity(scanners.size());
+        if (keepSegmentOrder) {
+            arrivalQueue = null;
+            segmentQueues = Lists.newArrayListWithCapacity(scanners.size());
+            for (int i = 0; i < scanners.size(); i++) {
+                segmentQueues.add(new ArrayBlockingQueue<Item>(queueSize));
+                fetches.add(new SegmentFetch(i, scanners.get(i), segmentQueues.get(i)));
+            }
+        } else {
+            arrivalQueue = new ArrayBlockingQueue<Item>(queueSize);
+            segmentQueues = null;
+            for (int i = 0; i < scanners.size(); i++) {
+                fetches.add(new SegmentFetch(i, scanners.get(i), arrivalQueue));
+            }
+        }
+
+        nThreads = Math.min(parallelism, scanners.size());
+        logger.info("Fetching {} segments with {} threads for query thread {}", scanners.size(), nThreads, queryThread);
+        for (int i = 0; i < nThreads; i++) {
+            activeWorkers.incrementAndGet();
+            submitWorker();
+        }
+    }
+
+    private void submitWorker() {
+        Worker worker = new Worker();
+        pendingWorkers.add(worker);
+        executor.submit(worker);
+    }
+
+    // segments are taken in order, so the one a sequential consumer waits for is always in progress
+    private SegmentFetch claimRunnable() {
+        for (SegmentFetch fetch : fetches) {
+            if (fetch.isRunnable() && fetch.claimed.compareAndSet(false, true)) {
+                if (!fetch.done)
+                    return fetch;
+                fetch.claimed.set(false);
+            }
+        }
+        return null;
+    }
+
+    private boolean hasRunnable() {
+        for (SegmentFetch fetch : fetches) {
+            if (fetch.isRunnable())
+                return true;
+        }
+        return false;
+    }
+
+    /**
+     * Moves records of the segment into its queue until the queue is full or the segment ends.
+     */
+    private void pump(SegmentFetch fetch) {
+        try {
+            if (fetch.iterator == null && fetch.pending == null) {
+                fetch.startTime = System.currentTimeMillis();
+                fetch.iterator = fetch.scanner.iterator();
+            }
+            while (!closed) {
+                if (fetch.pending == null) {
+                    GTRecord record = fetch.iterator.hasNext() ? fetch.iterator.next().copy(fetch.scanner.scanRequest.getColumns()) : null;
+                    fetch.pending = new Item(fetch.index, record, null);
+                }
+                if (!offer(fetch))
+                    return;
+            }
+        } catch (Throwable e) {
+            logger.error("Error fetching segment " + fetch.scanner.getSegment(), e);
+            fetch.pending = new Item(fetch.index, null, e);
+            offer(fetch);
+        }
+    }
+
+    private boolean offer(SegmentFetch fetch) {
+        Item item = fetch.pending;
+        if (!fetch.queue.offer(item))
+            return false;
+
+        fetch.pending = null;
+        if (item.record != null) {
+            fetch.count++;
+            return true;
+        }
+
+        fetch.done = true;
+        if (item.error == null)
+            logger.info("Segment {} of query thread {} returned {} records in {} ms", fetch.scanner.getSegment(), queryThread, fetch.count, System.currentTimeMillis() - fetch.startTime);
+        return false;
+    }
+
+    /**
+     * Returns true if the worker quits. It leaves first and checks for work after, so a record taken
+     * concurrently is seen either by the leaving worker or by the query thread in signalWorkers().
+     */
+    private boolean retire() {
+        activeWorkers.decrementAndGet();
+        if (!closed && hasRunnable() && tryAddWorker())
+            return false;
+
+        synchronized (this) {
+            notifyAll();
+        }
+        return true;
+    }
+
+    private boolean tryAddWorker() {
+        while (true) {
+            int n = activeWorkers.get();
+            if (n >= nThreads)
+                return false;
+            if (activeWorkers.compareAndSet(n, n + 1))
+                return true;
+        }
+    }
+
+    // called by the query thread around taking records, brings back workers that quit on full queues
+    private void signalWorkers() {
+        if (activeWorkers.get() < nThreads && !closed && hasRunnable() && tryAddWorker()) {
+            submitWorker();
+        }
+    }
+
+    /**
+     * The next record of any segment, or the end of a segment which has a null record.
+     */
+    Item take() {
+        return checkError(takeFrom(arrivalQueue));
+    }
+
+    /**
+     * Records of the i-th segment, in the order that the segment returns them.
+     */
+    Iterator<GTRecord> segmentIterator(final int i) {
+        final BlockingQueue<Item> queue = segmentQueues.get(i);
+        return new Iterator<GTRecord>() {
+            Item next = null;
+
+            @Override
+            public boolean hasNext() {
+                if (next == null)
+                    next = checkError(takeFrom(queue));
+                return next.record != null;
+            }
+
+            @Override
+            public GTRecord next() {
+                if (!hasNext())
+                    throw new NoSuchElementException();
+                GTRecord r = next.record;
+                next = null;
+                return r;
+            }
+
+            @Override
+            public void remove() {
+                throw new UnsupportedOperationException();
+            }
+        };
+    }
+
+    private Item takeFrom(BlockingQueue<Item> queue) {
+        try {
+            signalWorkers();
+            Item item = queue.take();
+            signalWorkers();
+            return item;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted when waiting for segment results", e);
+        }
+    }
+
+    private Item checkError(Item item) {
+        if (item.error != null)
+            throw new RuntimeException("Error fetching segment " + scanners.get(item.segment).getSegment(), item.error);
+        return item;
+    }
+
+    /**
+     * Stops the workers and waits for them to leave the segments, the scanners can be closed afterwards.
+     */
+    @Override
+    public void close() {
+        closed = true;
+
+        // workers not started yet will not touch any segment
+        Worker worker;
+        while ((worker = pendingWorkers.poll()) != null) {
+            if (worker.entered.compareAndSet(false, true))
+                activeWorkers.decrementAndGet();
+        }
+
+        synchronized (this) {
+            while (activeWorkers.get() > 0) {
+                try {
+                    wait(1000);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    logger.warn("Interrupted waiting for {} segment fetch workers of query thread {} to stop", activeWorkers.get(), queryThread);
+                    return;
+                }
+            }
+        }
+    }
+}
@@ -41,6 +41,11 @@ public class SegmentCubeTupleIterator implements ITupleIterator {
 
     private static final Logger logger = LoggerFactory.getLogger(SegmentCubeTupleIterator.class);
 
+    // records are decoded in blocks growing from the min to the max size, not to read ahead much for small results
+    private static final int MIN_BLOCK_SIZE = 16;
+    private static final int MAX_BLOCK_SIZE = 1024;
+    private static final int MIN_BLOCK_SPACE = 64 * 1024;
+
     protected final CubeSegmentScanner scanner;
     protected final Cuboid cuboid;
     protected final Set<TblColRef> selectedDimensions;
@@ -57,8 +62,21 @@ public class SegmentCubeTupleIterator implements ITupleIterator {
     private int advMeasureRowsRemaining;
     private int advMeasureRowIndex;
 
+    private GTRecord[] block; // records reused block after block
+    private byte[] blockSpace; // holds the column bytes of the records in block
+    private int blockCount;
+    private int blockRow;
+
     public SegmentCubeTupleIterator(CubeSegmentScanner scanner, Cuboid cuboid, Set<TblColRef> selectedDimensions, //
             Set<FunctionDesc> selectedMetrics, TupleInfo returnTupleInfo, StorageContext context) {
+        this(scanner, null, cuboid, selectedDimensions, selectedMetrics, returnTupleInfo, context);
+    }
+
+    /**
+     * @param gtItr records of the scanner fetched elsewhere, or null to iterate the scanner directly
+     */
+    public SegmentCubeTupleIterator(CubeSegmentScanner scanner, Iterator<GTRecord> gtItr, Cuboid cuboid, Set<TblColRef> selectedDimensions, //
+            Set<FunctionDesc> selectedMetrics, TupleInfo returnTupleInfo, StorageContext context) {
         this.scanner = scanner;
         this.cuboid = cuboid;
         this.selectedDimensions = selectedDimensions;
@@ -66,7 +84,7 @@ public class SegmentCubeTupleIterator implements ITupleIterator {
         this.tupleInfo = returnTupleInfo;
         this.tuple = new Tuple(returnTupleInfo);
         this.context = context;
-        this.gtItr = getGTItr(scanner);
+        this.gtItr = gtItr != null ? gtItr : getGTItr(scanner);
         this.cubeTupleConverter = new CubeTupleConverter(scanner.cubeSeg, cuboid, selectedDimensions, selectedMetrics, tupleInfo);
     }
 
@@ -91,13 +109,23 @@ public class SegmentCubeTupleIterator implements ITupleIterator {
         }
 
         // now we have a GTRecord
-        if (!gtItr.hasNext()) {
-            return false;
-        }
-        GTRecord curRecord = gtItr.next();
+        if (cubeTupleConverter.hasDictionaryDimensions()) {
+            if (blockRow == blockCount && !fetchBlock()) {
+                return false;
+            }
 
-        // translate into tuple
-        advMeasureFillers = cubeTupleConverter.translateResult(curRecord, tuple);
+            // translate into tuple
+            advMeasureFillers = cubeTupleConverter.translateResult(block[blockRow], blockRow, tuple);
+            blockRow++;
+        } else {
+            if (!gtItr.hasNext()) {
+                return false;
+            }
+            GTRecord curRecord = gtItr.next();
+
+            // translate into tuple
+            advMeasureFillers = cubeTupleConverter.translateResult(curRecord, tuple);
+        }
 
         // the simple case
         if (advMeasureFillers == null) {
@@ -120,6 +148,39 @@ public class SegmentCubeTupleIterator implements ITupleIterator {
         return hasNext();
     }
 
+    private boolean fetchBlock() {
+        int size = block == null ? MIN_BLOCK_SIZE : Math.min(MAX_BLOCK_SIZE, block.length * 2);
+        if (block == null || block.length < size) {
+            GTRecord[] grown = new GTRecord[size];
+            if (block != null)
+                System.arraycopy(block, 0, grown, 0, block.length);
+            block = grown;
+        }
+
+        // scanners reuse the record object, so keep copies, the rows of the last block have been consumed
+        blockCount = 0;
+        blockRow = 0;
+        int pos = 0;
+        while (blockCount < size && gtItr.hasNext()) {
+            GTRecord record = gtItr.next();
+            int len = record.sizeOf(record.getInfo().getAllColumns());
+            if (blockSpace == null || blockSpace.length - pos < len) {
+                // records copied earlier keep referring to the old space
+                blockSpace = new byte[Math.max(MIN_BLOCK_SPACE, Math.max(len, blockSpace == null ? 0 : blockSpace.length * 2))];
+                pos = 0;
+            }
+            if (block[blockCount] == null)
+                block[blockCount] = new GTRecord(record.getInfo());
+            pos = record.copyTo(block[blockCount], blockSpace, pos);
+            blockCount++;
+        }
+        if (blockCount == 0)
+            return false;
+
+        cubeTupleConverter.decodeBlock(block, blockCount);
+        return true;
+    }
+
     @Override
     public ITuple next() {
         // fetch next record
@@ -19,13 +19,16 @@
 package org.apache.kylin.storage.gtrecord;
 
 import java.io.IOException;
+import java.util.ArrayDeque;
 import java.util.Iterator;
 import java.util.List;
+import java.util.NoSuchElementException;
 import java.util.Set;
 
 import javax.annotation.Nullable;
 
 import org.apache.kylin.cube.cuboid.Cuboid;
+import org.apache.kylin.gridtable.GTRecord;
 import org.apache.kylin.metadata.model.FunctionDesc;
 import org.apache.kylin.metadata.model.TblColRef;
 import org.apache.kylin.metadata.tuple.ITuple;
@@ -48,6 +51,7 @@ public class SequentialCubeTupleIterator implements ITupleIterator {
     protected Iterator<ITuple> tupleIterator;
     protected final int storagePushDownLimit;
     protected StorageContext context;
+    protected ParallelSegmentFetcher parallelFetcher;
 
     private int scanCount;
     private int scanCountDelta;
@@ -57,12 +61,19 @@ public class SequentialCubeTupleIterator implements ITupleIterator {
         this.context = context;
         this.scanners = scanners;
 
+        this.storagePushDownLimit = context.getFinalPushDownLimit();
+
+        int parallelism = scanners.isEmpty() ? 1 : scanners.get(0).getSegment().getConfig().getQuerySegmentScanParallelism();
+        if (parallelism > 1 && scanners.size() > 1) {
+            initParallel(cuboid, selectedDimensions, selectedMetrics, returnTupleInfo, parallelism);
+            return;
+        }
+
         segmentCubeTupleIterators = Lists.newArrayList();
         for (CubeSegmentScanner scanner : scanners) {
             segmentCubeTupleIterators.add(new SegmentCubeTupleIterator(scanner, cuboid, selectedDimensions, selectedMetrics, returnTupleInfo, context));
         }
 
-        this.storagePushDownLimit = context.getFinalPushDownLimit();
         if (storagePushDownLimit == Integer.MAX_VALUE) {
             //normal case
             tupleIterator = Iterators.concat(segmentCubeTupleIterators.iterator());
@@ -79,6 +90,80 @@ public class SequentialCubeTupleIterator implements ITupleIterator {
         }
     }
 
+    private void initParallel(Cuboid cuboid, Set<TblColRef> selectedDimensions, Set<FunctionDesc> selectedMetrics, TupleInfo returnTupleInfo, int parallelism) {
+        boolean keepSegmentOrder = storagePushDownLimit != Integer.MAX_VALUE;
+        parallelFetcher = new ParallelSegmentFetcher(scanners, parallelism, keepSegmentOrder);
+
+        segmentCubeTupleIterators = Lists.newArrayList();
+        if (keepSegmentOrder) {
+            //query with limit, merge sort segments fetched in parallel
+            List<Iterator<ITuple>> segmentIterators = Lists.newArrayList();
+            for (int i = 0; i < scanners.size(); i++) {
+                SegmentCubeTupleIterator it = new SegmentCubeTupleIterator(scanners.get(i), parallelFetcher.segmentIterator(i), cuboid, selectedDimensions, selectedMetrics, returnTupleInfo, context);
+                segmentCubeTupleIterators.add(it);
+                segmentIterators.add(it);
+            }
+            tupleIterator = new SortedIteratorMergerWithLimit<ITuple>(segmentIterators.iterator(), storagePushDownLimit, segmentCubeTupleIterators.get(0).getCubeTupleConverter().getTupleDimensionComparator()).getIterator();
+        } else {
+            final List<ArrayDeque<GTRecord>> pendings = Lists.newArrayList();
+            for (int i = 0; i < scanners.size(); i++) {
+                final ArrayDeque<GTRecord> pending = new ArrayDeque<GTRecord>();
+                pendings.add(pending);
+                segmentCubeTupleIterators.add(new SegmentCubeTupleIterator(scanners.get(i), new Iterator<GTRecord>() {
+                    @Override
+                    public boolean hasNext() {
+                        return !pending.isEmpty();
+                    }
+
+                    @Override
+                    public GTRecord next() {
+                        return pending.poll();
+                    }
+
+                    @Override
+                    public void remove() {
+                        throw new UnsupportedOperationException();
+                    }
+                }, cuboid, selectedDimensions, selectedMetrics, returnTupleInfo, context));
+            }
+
+            // tuples in the order their records arrive, each record is converted by its own segment
+            tupleIterator = new Iterator<ITuple>() {
+                SegmentCubeTupleIterator current = null;
+                int finishedSegments = 0;
+
+                @Override
+                public boolean hasNext() {
+                    while (current == null || !current.hasNext()) {
+                        if (finishedSegments == scanners.size())
+                            return false;
+
+                        ParallelSegmentFetcher.Item item = parallelFetcher.take();
+                        if (item.record == null) {
+                            finishedSegments++;
+                        } else {
+                            pendings.get(item.segment).add(item.record);
+                            current = segmentCubeTupleIterators.get(item.segment);
+                        }
+                    }
+                    return true;
+                }
+
+                @Override
+                public ITuple next() {
+                    if (!hasNext())
+                        throw new NoSuchElementException();
+                    return current.next();
+                }
+
+                @Override
+                public void remove() {
+                    throw new UnsupportedOperationException();
+                }
+            };
+        }
+    }
+
     @Override
     public boolean hasNext() {
         return tupleIterator.hasNext();
@@ -104,6 +189,10 @@ public class SequentialCubeTupleIterator implements ITupleIterator {
         // close all the remaining segmentIterator
         flushScanCountDelta();
 
+        if (parallelFetcher != null) {
+            parallelFetcher.close();
+        }
+
         for (SegmentCubeTupleIterator iterator : segmentCubeTupleIterators) {
             iterator.close();
         }
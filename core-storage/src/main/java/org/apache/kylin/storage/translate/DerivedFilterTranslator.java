@@ -18,6 +18,7 @@
 
 package org.apache.kylin.storage.translate;
 
+import java.util.Collection;
 import java.util.List;
 import java.util.Set;
 
@@ -76,7 +77,7 @@ public class DerivedFilterTranslator {
 
         Set<Array<String>> satisfyingHostRecords = Sets.newHashSet();
         SingleColumnTuple tuple = new SingleColumnTuple(derivedCol);
-        for (String[] row : lookup.getAllRows()) {
+        for (String[] row : findCandidateRows(lookup, derivedCol, compf)) {
             tuple.value = row[di];
             if (compf.evaluate(tuple, StringCodeSystem.INSTANCE)) {
                 collect(row, pi, satisfyingHostRecords);
@@ -99,6 +100,37 @@ public class DerivedFilterTranslator {
         return new Pair<TupleFilter, Boolean>(translated, loosened);
     }
 
+    // narrow down the rows to evaluate by the lookup column indexes, falls back to all rows
+    @SuppressWarnings("unchecked")
+    private static Collection<String[]> findCandidateRows(LookupStringTable lookup, TblColRef derivedCol, CompareTupleFilter compf) {
+        Object firstValue = compf.getFirstValue();
+        if (compf.getFunction() != null || !(firstValue instanceof String)) {
+            return lookup.getAllRows();
+        }
+
+        String col = derivedCol.getName();
+        String value = (String) firstValue;
+        switch (compf.getOperator()) {
+        case EQ:
+        case IN:
+            return lookup.getRowsByValues(col, (Set<String>) compf.getValues());
+        case LT:
+        case LTE:
+            // the filter compares as strings, the sorted index only serves columns in string order
+            if (lookup.hasNaturalOrder(col))
+                return lookup.getRowsInRange(col, null, false, value, compf.getOperator() == FilterOperatorEnum.LTE);
+            break;
+        case GT:
+        case GTE:
+            if (lookup.hasNaturalOrder(col))
+                return lookup.getRowsInRange(col, value, compf.getOperator() == FilterOperatorEnum.GTE, null, false);
+            break;
+        default:
+            break;
+        }
+        return lookup.getAllRows();
+    }
+
     private static void collect(String[] row, int[] pi, Set<Array<String>> satisfyingHostRecords) {
         // TODO when go beyond IN_THRESHOLD, only keep min/max is enough
         String[] rec = new String[pi.length];
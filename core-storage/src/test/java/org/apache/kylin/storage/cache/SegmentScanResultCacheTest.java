@@ -0,0 +1,140 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.kylin.storage.cache;
+
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.List;
+
+import org.apache.kylin.common.util.ImmutableBitSet;
+import org.apache.kylin.common.util.LocalFileMetadataTestCase;
+import org.apache.kylin.cube.CubeManager;
+import org.apache.kylin.cube.CubeSegment;
+import org.apache.kylin.cube.cuboid.Cuboid;
+import org.apache.kylin.gridtable.GTInfo;
+import org.apache.kylin.gridtable.GTRecord;
+import org.apache.kylin.gridtable.GTScanRequest;
+import org.apache.kylin.gridtable.GTScanRequestBuilder;
+import org.apache.kylin.gridtable.IGTScanner;
+import org.apache.kylin.gridtable.UnitTestSupport;
+import org.apache.kylin.metadata.cachesync.Broadcaster;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.google.common.collect.Lists;
+
+public class SegmentScanResultCacheTest extends LocalFileMetadataTestCase {
+
+    private GTInfo info;
+    private CubeSegment segment;
+    private Cuboid cuboid;
+
+    @Before
+    public void setUp() throws Exception {
+        this.createTestMetadata();
+        getTestConfig().setProperty("kylin.query.segment.cache.enabled", "true");
+
+        info = UnitTestSupport.basicInfo();
+        segment = CubeManager.getInstance(getTestConfig()).getCube("test_kylin_cube_with_slr_ready").getFirstSegment();
+        cuboid = Cuboid.findById(segment.getCubeDesc(), Cuboid.getBaseCuboidId(segment.getCubeDesc()));
+    }
+
+    @After
+    public void after() throws Exception {
+        SegmentScanResultCache.clearCache();
+        this.cleanupTestMetadata();
+    }
+
+    @Test
+    public void testCacheKey() {
+        SegmentScanResultCache cache = SegmentScanResultCache.getInstance(getTestConfig());
+        Assert.assertTrue(cache.isEnabled());
+
+        // start time and timeout don't matter
+        SegmentScanResultCache.ScanKey key1 = cache.createKey(segment, cuboid, newRequest(Integer.MAX_VALUE, 1000));
+        SegmentScanResultCache.ScanKey key2 = cache.createKey(segment, cuboid, newRequest(Integer.MAX_VALUE, 2000));
+        Assert.assertEquals(key1, key2);
+        Assert.assertEquals(key1.hashCode(), key2.hashCode());
+
+        SegmentScanResultCache.ScanKey key3 = cache.createKey(segment, cuboid, newRequest(100, 1000));
+        Assert.assertNotEquals(key1, key3);
+
+        Assert.assertNull(cache.createKey(segment, cuboid, null));
+    }
+
+    @Test
+    public void testCacheOnComplete() throws IOException {
+        SegmentScanResultCache cache = SegmentScanResultCache.getInstance(getTestConfig());
+        GTScanRequest req = newRequest(Integer.MAX_VALUE, 1000);
+        SegmentScanResultCache.ScanKey key = cache.createKey(segment, cuboid, req);
+        List<GTRecord> data = UnitTestSupport.mockupData(info, 10);
+
+        // partially consumed results are not cached
+        Iterator<GTRecord> it = cache.cacheOnComplete(key, req.getColumns(), newScanner(data));
+        it.next();
+        Assert.assertNull(cache.get(key));
+
+        it = cache.cacheOnComplete(key, req.getColumns(), newScanner(data));
+        List<GTRecord> scanned = Lists.newArrayList(it);
+        Assert.assertEquals(data, scanned);
+        Assert.assertEquals(data, Lists.newArrayList(cache.get(key).iterator()));
+        Assert.assertEquals(100, cache.get(key).getScannedRowCount());
+
+        // each hit gets its own records, changing them leaves the cache intact
+        GTRecord hit = cache.get(key).iterator().next();
+        Assert.assertNotSame(hit, cache.get(key).iterator().next());
+        hit.get(0).array()[hit.get(0).offset()]++;
+        Assert.assertEquals(data, Lists.newArrayList(cache.get(key).iterator()));
+
+        // invalidated when the cube changes
+        Broadcaster.getInstance(getTestConfig()).notifyListener("cube", Broadcaster.Event.UPDATE, segment.getCubeInstance().getName());
+        Assert.assertNull(cache.get(key));
+        Assert.assertEquals(0, cache.size());
+    }
+
+    private IGTScanner newScanner(final List<GTRecord> data) {
+        return new IGTScanner() {
+            @Override
+            public GTInfo getInfo() {
+                return info;
+            }
+
+            @Override
+            public long getScannedRowCount() {
+                return data.size() * 10;
+            }
+
+            @Override
+            public void close() throws IOException {
+            }
+
+            @Override
+            public Iterator<GTRecord> iterator() {
+                return data.iterator();
+            }
+        };
+    }
+
+    private GTScanRequest newRequest(int limit, long startTime) {
+        return new GTScanRequestBuilder().setInfo(info).setRanges(null).setDimensions(new ImmutableBitSet(0, info.getColumnCount())).//
+                setStoragePushDownLimit(limit).setStartTime(startTime).createGTScanRequest();
+    }
+}
@@ -19,6 +19,7 @@
 package org.apache.kylin.storage.gtrecord;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
 
 import java.io.IOException;
 import java.math.BigDecimal;
@@ -211,6 +212,42 @@ public class DictGridTableTest extends LocalFileMetadataTestCase {
         }
     }
 
+    @Test
+    public void verifySegmentCoveredConditions() {
+        ByteArray segmentStart = enc(info, 0, "2015-01-14");
+        ByteArray segmentEnd = enc(info, 0, "2015-01-15");
+        CompareTupleFilter timeGTE = compare(info.colRef(0), FilterOperatorEnum.GTE, enc(info, 0, "2015-01-14"));
+
+        CubeScanRangePlanner planner = new CubeScanRangePlanner(info, Pair.newPair(segmentStart, segmentEnd), info.colRef(0), null);
+        {
+            LogicalTupleFilter filter = and(timeComp1, ageComp1);
+            assertTrue(filter == planner.removeSegmentCoveredConditions(filter));
+        }
+        {
+            LogicalTupleFilter filter = and(timeComp0, ageComp1);
+            assertTrue(filter == planner.removeSegmentCoveredConditions(filter));
+        }
+        {
+            LogicalTupleFilter filter = and(timeGTE, ageComp1);
+            assertTrue(ageComp1 == planner.removeSegmentCoveredConditions(filter));
+        }
+        {
+            LogicalTupleFilter filter = and(timeGTE, timeComp3);
+            assertEquals(null, planner.removeSegmentCoveredConditions(filter));
+        }
+        {
+            LogicalTupleFilter filter = and(timeGTE, timeComp3, ageComp1, ageComp4);
+            assertEquals(and(ageComp1, ageComp4).toString(), planner.removeSegmentCoveredConditions(filter).toString());
+        }
+
+        // unbounded segment start
+        planner = new CubeScanRangePlanner(info, Pair.newPair(new ByteArray(), segmentEnd), info.colRef(0), null);
+        {
+            LogicalTupleFilter filter = and(timeGTE, ageComp1);
+            assertTrue(filter == planner.removeSegmentCoveredConditions(filter));
+        }
+    }
+
     @Test
     public void verifyScanRangePlanner() {
 
@@ -0,0 +1,233 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.kylin.storage.gtrecord;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.kylin.common.debug.BackdoorToggles;
+import org.apache.kylin.common.util.LocalFileMetadataTestCase;
+import org.apache.kylin.cube.CubeInstance;
+import org.apache.kylin.cube.CubeManager;
+import org.apache.kylin.cube.CubeSegment;
+import org.apache.kylin.cube.cuboid.Cuboid;
+import org.apache.kylin.gridtable.GTInfo;
+import org.apache.kylin.gridtable.GTRecord;
+import org.apache.kylin.gridtable.GTScanRequest;
+import org.apache.kylin.gridtable.IGTScanner;
+import org.apache.kylin.gridtable.IGTStorage;
+import org.apache.kylin.metadata.model.FunctionDesc;
+import org.apache.kylin.metadata.model.ISegment;
+import org.apache.kylin.metadata.model.TblColRef;
+import org.apache.kylin.storage.StorageContext;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+
+public class ParallelSegmentFetcherTest extends LocalFileMetadataTestCase {
+
+    // segment name ==> number of records to return, negative means failure
+    static final Map<String, Integer> RECORD_COUNTS = Maps.newConcurrentMap();
+    // segment name ==> query id seen by the thread fetching the segment
+    static final Map<String, String> QUERY_IDS = Maps.newConcurrentMap();
+    static final AtomicInteger RECORDS_FETCHED = new AtomicInteger();
+
+    private List<CubeSegmentScanner> scanners;
+
+    @Before
+    public void setUp() throws Exception {
+        this.createTestMetadata();
+        // much fewer than the records of a segment, so fetching has to wait for the consumer
+        getTestConfig().setProperty("kylin.query.segment.scan.queue.size", "10");
+
+        CubeInstance cube = CubeManager.getInstance(getTestConfig()).getCube("test_kylin_cube_with_slr_ready_3_segments");
+        Cuboid cuboid = Cuboid.getBaseCuboid(cube.getDescriptor());
+        scanners = Lists.newArrayList();
+        int count = 1000;
+        for (CubeSegment seg : cube.getSegments()) {
+            RECORD_COUNTS.put(seg.getName(), count);
+            count *= 3;
+            scanners.add(new CubeSegmentScanner(seg, cuboid, Collections.<TblColRef> emptySet(), Collections.<TblColRef> emptySet(), //
+                    Collections.<FunctionDesc> emptySet(), null, new StorageContext(), MockGTStorage.class.getName()));
+        }
+    }
+
+    @After
+    public void after() throws Exception {
+        RECORD_COUNTS.clear();
+        QUERY_IDS.clear();
+        RECORDS_FETCHED.set(0);
+        BackdoorToggles.cleanToggles();
+        this.cleanupTestMetadata();
+    }
+
+    @Test
+    public void testArrivalOrder() {
+        ParallelSegmentFetcher fetcher = new ParallelSegmentFetcher(scanners, 2, false);
+        int[] counts = new int[scanners.size()];
+        int finished = 0;
+        while (finished < scanners.size()) {
+            ParallelSegmentFetcher.Item item = fetcher.take();
+            if (item.record == null)
+                finished++;
+            else
+                counts[item.segment]++;
+        }
+        fetcher.close();
+
+        for (int i = 0; i < scanners.size(); i++) {
+            Assert.assertEquals((int) RECORD_COUNTS.get(scanners.get(i).getSegment().getName()), counts[i]);
+        }
+    }
+
+    @Test
+    public void testSegmentOrder() {
+        ParallelSegmentFetcher fetcher = new ParallelSegmentFetcher(scanners, 2, true);
+        // consume the last segment first, earlier ones must not block it
+        for (int i = scanners.size() - 1; i >= 0; i--) {
+            Iterator<GTRecord> it = fetcher.segmentIterator(i);
+            int count = 0;
+            while (it.hasNext()) {
+                it.next();
+                count++;
+            }
+            Assert.assertEquals((int) RECORD_COUNTS.get(scanners.get(i).getSegment().getName()), count);
+        }
+        fetcher.close();
+    }
+
+    @Test
+    public void testTogglesPassedOn() {
+        Map<String, String> toggles = Maps.newHashMap();
+        toggles.put(BackdoorToggles.KEY_QUERY_ID, "test-query");
+        BackdoorToggles.setToggles(toggles);
+
+        ParallelSegmentFetcher fetcher = new ParallelSegmentFetcher(scanners, 2, true);
+        for (int i = 0; i < scanners.size(); i++) {
+            Iterator<GTRecord> it = fetcher.segmentIterator(i);
+            while (it.hasNext()) {
+                it.next();
+            }
+        }
+        fetcher.close();
+
+        for (CubeSegmentScanner scanner : scanners) {
+            Assert.assertEquals("test-query", QUERY_IDS.get(scanner.getSegment().getName()));
+        }
+    }
+
+    @Test
+    public void testCloseEarly() throws InterruptedException {
+        ParallelSegmentFetcher fetcher = new ParallelSegmentFetcher(scanners, 3, false);
+        for (int i = 0; i < 100; i++) {
+            fetcher.take();
+        }
+        fetcher.close();
+
+        // no worker is left touching the segments
+        int fetched = RECORDS_FETCHED.get();
+        Thread.sleep(200);
+        Assert.assertEquals(fetched, RECORDS_FETCHED.get());
+        Assert.assertTrue(fetched <= 100 + 10 + 3); // taken, queued and one pending per segment
+    }
+
+    @Test
+    public void testError() {
+        RECORD_COUNTS.put(scanners.get(1).getSegment().getName(), -1);
+        ParallelSegmentFetcher fetcher = new ParallelSegmentFetcher(scanners, 3, true);
+        try {
+            Iterator<GTRecord> it = fetcher.segmentIterator(1);
+            it.hasNext();
+            Assert.fail("segment error is expected");
+        } catch (RuntimeException e) {
+            Assert.assertTrue(e.getMessage().contains(scanners.get(1).getSegment().getName()));
+        } finally {
+            fetcher.close();
+        }
+    }
+
+    public static class MockGTStorage implements IGTStorage {
+        final ISegment segment;
+        final GTInfo info;
+
+        public MockGTStorage(ISegment segment, Cuboid cuboid, GTInfo info) {
+            this.segment = segment;
+            this.info = info;
+        }
+
+        @Override
+        public IGTScanner getGTScanner(GTScanRequest scanRequest) throws IOException {
+            return new IGTScanner() {
+                @Override
+                public GTInfo getInfo() {
+                    return info;
+                }
+
+                @Override
+                public long getScannedRowCount() {
+                    return 0;
+                }
+
+                @Override
+                public void close() throws IOException {
+                }
+
+                @Override
+                public Iterator<GTRecord> iterator() {
+                    final int count = RECORD_COUNTS.get(segment.getName());
+                    if (count < 0)
+                        throw new IllegalStateException("Mock failure of " + segment.getName());
+
+                    String queryId = BackdoorToggles.getQueryId();
+                    if (queryId != null)
+                        QUERY_IDS.put(segment.getName(), queryId);
+
+                    return new Iterator<GTRecord>() {
+                        int i = 0;
+
+                        @Override
+                        public boolean hasNext() {
+                            return i < count;
+                        }
+
+                        @Override
+                        public GTRecord next() {
+                            i++;
+                            RECORDS_FETCHED.incrementAndGet();
+                            return new GTRecord(info);
+                        }
+
+                        @Override
+                        public void remove() {
+                            throw new UnsupportedOperationException();
+                        }
+                    };
+                }
+            };
+        }
+    }
+}
@@ -0,0 +1,148 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+*/
+
+package org.apache.kylin.storage.translate;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.apache.kylin.common.KylinConfig;
+import org.apache.kylin.common.util.DateFormat;
+import org.apache.kylin.common.util.LocalFileMetadataTestCase;
+import org.apache.kylin.common.util.Pair;
+import org.apache.kylin.cube.CubeDescManager;
+import org.apache.kylin.cube.model.CubeDesc;
+import org.apache.kylin.cube.model.CubeDesc.DeriveInfo;
+import org.apache.kylin.dict.lookup.LookupStringTable;
+import org.apache.kylin.dict.lookup.SnapshotManager;
+import org.apache.kylin.metadata.MetadataManager;
+import org.apache.kylin.metadata.filter.ColumnTupleFilter;
+import org.apache.kylin.metadata.filter.CompareTupleFilter;
+import org.apache.kylin.metadata.filter.ConstantTupleFilter;
+import org.apache.kylin.metadata.filter.TupleFilter;
+import org.apache.kylin.metadata.filter.TupleFilter.FilterOperatorEnum;
+import org.apache.kylin.metadata.model.TableDesc;
+import org.apache.kylin.metadata.model.TblColRef;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class DerivedFilterTranslatorTest extends LocalFileMetadataTestCase {
+
+    private static final String SNAPSHOT_PATH = "/table_snapshot/TEST_CAL_DT.csv/4af48c94-86de-4e22-a4fd-c49b06cbaa4f.snapshot";
+
+    private TblColRef derived;
+    private DeriveInfo hostInfo;
+    private LookupStringTable lookup;
+
+    @Before
+    public void setUp() throws Exception {
+        createTestMetadata();
+        KylinConfig config = KylinConfig.getInstanceFromEnv();
+
+        CubeDesc cubeDesc = CubeDescManager.getInstance(config).getCubeDesc("test_kylin_cube_with_slr_desc");
+        for (TblColRef col : cubeDesc.listDimensionColumnsIncludingDerived()) {
+            if (col.getName().equals("WEEK_BEG_DT"))
+                derived = col;
+        }
+        hostInfo = cubeDesc.getHostInfo(derived);
+
+        TableDesc tableDesc = MetadataManager.getInstance(config).getTableDesc("EDW.TEST_CAL_DT");
+        lookup = new LookupStringTable(tableDesc, new String[] { "CAL_DT" }, SnapshotManager.getInstance(config).getSnapshotTable(SNAPSHOT_PATH));
+    }
+
+    @After
+    public void after() throws Exception {
+        cleanupTestMetadata();
+    }
+
+    @Test
+    public void testEqualsByIndex() {
+        String week = millis("2013-05-05");
+        Pair<TupleFilter, Boolean> translated = DerivedFilterTranslator.translate(lookup, hostInfo, newCompare(FilterOperatorEnum.EQ, week));
+
+        assertFalse(translated.getSecond());
+        Set<String> hostValues = getInValues(translated.getFirst());
+        assertEquals(7, hostValues.size());
+        assertEquals(scanHostValues(week), hostValues);
+    }
+
+    @Test
+    public void testInByIndex() {
+        String week1 = millis("2013-05-05");
+        String week2 = millis("2013-08-04");
+        Pair<TupleFilter, Boolean> translated = DerivedFilterTranslator.translate(lookup, hostInfo, newCompare(FilterOperatorEnum.IN, week1, week2));
+
+        assertFalse(translated.getSecond());
+        Set<String> expected = scanHostValues(week1, week2);
+        assertEquals(14, expected.size());
+        assertEquals(expected, getInValues(translated.getFirst()));
+    }
+
+    @Test
+    public void testNoMatch() {
+        Pair<TupleFilter, Boolean> translated = DerivedFilterTranslator.translate(lookup, hostInfo, newCompare(FilterOperatorEnum.EQ, millis("1900-01-01")));
+        assertSame(ConstantTupleFilter.FALSE, translated.getFirst());
+    }
+
+    @Test
+    public void testRangeByScan() {
+        // a date column does not compare in string order, every row is evaluated and the result loosened to a range
+        Pair<TupleFilter, Boolean> translated = DerivedFilterTranslator.translate(lookup, hostInfo, newCompare(FilterOperatorEnum.GTE, millis("2012-01-01")));
+        assertTrue(translated.getSecond());
+    }
+
+    private CompareTupleFilter newCompare(FilterOperatorEnum op, String... values) {
+        CompareTupleFilter compf = new CompareTupleFilter(op);
+        compf.addChild(new ColumnTupleFilter(derived));
+        compf.addChild(new ConstantTupleFilter(Arrays.asList(values)));
+        return compf;
+    }
+
+    @SuppressWarnings("unchecked")
+    private Set<String> getInValues(TupleFilter filter) {
+        CompareTupleFilter in = (CompareTupleFilter) filter;
+        assertEquals(FilterOperatorEnum.IN, in.getOperator());
+        assertEquals(hostInfo.columns[0], in.getColumn());
+        return new HashSet<String>((Set<String>) in.getValues());
+    }
+
+    // the host values of rows having any of the derived values, by scanning all rows
+    private Set<String> scanHostValues(String... derivedValues) {
+        List<String> values = Arrays.asList(derivedValues);
+        int di = derived.getColumnDesc().getZeroBasedIndex();
+        int pi = hostInfo.dimension.getJoin().getPrimaryKeyColumns()[0].getColumnDesc().getZeroBasedIndex();
+        Set<String> result = new HashSet<String>();
+        for (String[] row : lookup.getAllRows()) {
+            if (values.contains(row[di]))
+                result.add(row[pi]);
+        }
+        return result;
+    }
+
+    private String millis(String dateStr) {
+        return String.valueOf(DateFormat.stringToMillis(dateStr));
+    }
+}
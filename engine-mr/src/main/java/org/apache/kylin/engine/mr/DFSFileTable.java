@@ -22,16 +22,17 @@ import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.List;
 
 import org.apache.hadoop.fs.FileStatus;
 import org.apache.hadoop.fs.FileSystem;
 import org.apache.hadoop.fs.Path;
 import org.apache.kylin.common.util.Pair;
-import org.apache.kylin.source.ReadableTable;
+import org.apache.kylin.source.IDeltaReadableTable;
 
 /**
  */
-public class DFSFileTable implements ReadableTable {
+public class DFSFileTable implements IDeltaReadableTable {
 
     public static final String DELIM_AUTO = "auto";
     public static final String DELIM_COMMA = ",";
@@ -69,12 +70,29 @@ public class DFSFileTable implements ReadableTable {
         }
     }
 
+    @Override
+    public TableReader getDeltaReader(TableSignature since) throws IOException {
+        if (since == null || !path.equals(since.getPath()))
+            return null;
+
+        // an append adds new files only, the files of the earlier signature must be intact
+        long oldSize = 0;
+        for (FileStatus file : listFiles(path)) {
+            if (file.getModificationTime() <= since.getLastModifiedTime())
+                oldSize += file.getLen();
+        }
+        if (oldSize != since.getSize())
+            return null;
+
+        return new DFSFileTableReader(path, delim, nColumns, since.getLastModifiedTime());
+    }
+
     @Override
     public String toString() {
         return path;
     }
 
-    public static Pair<Long, Long> getSizeAndLastModified(String path) throws IOException {
+    private static List<FileStatus> listFiles(String path) throws IOException {
         FileSystem fs = HadoopUtil.getFileSystem(path);
 
         // get all contained files if path is directory
@@ -86,6 +104,11 @@ public class DFSFileTable implements ReadableTable {
             FileStatus[] listStatus = fs.listStatus(new Path(path));
             allFiles.addAll(Arrays.asList(listStatus));
         }
+        return allFiles;
+    }
+
+    public static Pair<Long, Long> getSizeAndLastModified(String path) throws IOException {
+        List<FileStatus> allFiles = listFiles(path);
 
         long size = 0;
         long lastModified = 0;
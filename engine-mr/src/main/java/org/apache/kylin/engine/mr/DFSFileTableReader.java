@@ -25,6 +25,7 @@ import java.io.IOException;
 import java.io.InputStreamReader;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Iterator;
 import java.util.List;
 
 import org.apache.commons.io.IOUtils;
@@ -69,6 +70,13 @@ public class DFSFileTableReader implements TableReader {
     }
 
     public DFSFileTableReader(String filePath, String delim, int expectedColumnNumber) throws IOException {
+        this(filePath, delim, expectedColumnNumber, -1);
+    }
+
+    /**
+     * Reads only the files modified after the given time, all files if the time is negative
+     */
+    public DFSFileTableReader(String filePath, String delim, int expectedColumnNumber, long modifiedAfter) throws IOException {
         filePath = HadoopUtil.fixWindowsPath(filePath);
         this.filePath = filePath;
         this.delim = delim;
@@ -85,6 +93,12 @@ public class DFSFileTableReader implements TableReader {
             FileStatus[] listStatus = fs.listStatus(new Path(filePath));
             allFiles.addAll(Arrays.asList(listStatus));
         }
+        if (modifiedAfter >= 0) {
+            for (Iterator<FileStatus> it = allFiles.iterator(); it.hasNext();) {
+                if (it.next().getModificationTime() <= modifiedAfter)
+                    it.remove();
+            }
+        }
 
         try {
             for (FileStatus f : allFiles) {
@@ -33,6 +33,8 @@ public interface BatchConstants {
     String CFG_CUBE_SEGMENT_NAME = "cube.segment.name";
     String CFG_CUBE_SEGMENT_ID = "cube.segment.id";
     String CFG_CUBE_CUBOID_LEVEL = "cube.cuboid.level";
+    String CFG_CUBE_CUBOID_PARTITION_OFFSET = "cube.cuboid.partition.offset";
+    String CFG_CUBE_CUBOID_PARTITION_RANGES = "cube.cuboid.partition.ranges";
 
     String CFG_II_NAME = "ii.name";
     String CFG_II_SEGMENT_NAME = "ii.segment.name";
@@ -19,6 +19,10 @@
 package org.apache.kylin.engine.mr.steps;
 
 import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.TimeUnit;
 
 import org.apache.commons.cli.Options;
 import org.apache.hadoop.fs.Path;
@@ -32,21 +36,34 @@ import org.apache.hadoop.mapreduce.lib.input.TextInputFormat;
 import org.apache.hadoop.mapreduce.lib.output.FileOutputFormat;
 import org.apache.hadoop.mapreduce.lib.output.SequenceFileOutputFormat;
 import org.apache.kylin.common.KylinConfig;
+import org.apache.kylin.common.persistence.ResourceStore;
 import org.apache.kylin.cube.CubeInstance;
 import org.apache.kylin.cube.CubeManager;
 import org.apache.kylin.cube.CubeSegment;
+import org.apache.kylin.cube.cuboid.Cuboid;
 import org.apache.kylin.cube.cuboid.CuboidCLI;
+import org.apache.kylin.cube.cuboid.CuboidScheduler;
+import org.apache.kylin.cube.kv.CubeDimEncMap;
+import org.apache.kylin.cube.kv.RowConstants;
 import org.apache.kylin.cube.model.CubeDesc;
 import org.apache.kylin.engine.mr.CubingJob;
 import org.apache.kylin.engine.mr.IMRInput.IMRTableInputFormat;
 import org.apache.kylin.engine.mr.MRUtil;
 import org.apache.kylin.engine.mr.common.AbstractHadoopJob;
 import org.apache.kylin.engine.mr.common.BatchConstants;
+import org.apache.kylin.engine.mr.common.CubeStatsReader;
 import org.apache.kylin.job.exception.JobException;
 import org.apache.kylin.job.execution.ExecutableManager;
+import org.apache.kylin.metadata.model.MeasureDesc;
+import org.apache.kylin.metadata.model.TblColRef;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+
 /**
  * @author ysong1
  */
@@ -54,6 +71,9 @@ public class CuboidJob extends AbstractHadoopJob {
 
     protected static final Logger logger = LoggerFactory.getLogger(CuboidJob.class);
 
+    // all layer jobs of a segment read the same statistics, keep the cuboid row counts for the next layers
+    private static final Cache<String, Map<Long, Long>> cuboidRowsCache = CacheBuilder.newBuilder().maximumSize(100).expireAfterAccess(1, TimeUnit.HOURS).build();
+
     @SuppressWarnings("rawtypes")
     private Class<? extends Mapper> mapperClass;
 
@@ -134,7 +154,15 @@ public class CuboidJob extends AbstractHadoopJob {
             // add metadata to distributed cache
             attachKylinPropsAndMetadata(cube, job.getConfiguration());
 
-            setReduceTaskNum(job, cube.getDescriptor(), nCuboidLevel);
+            CubeSegment cubeSeg = cube.getSegmentById(segmentID);
+            Map<Long, Double> layerSizes = getLayerCuboidSizes(cubeSeg, nCuboidLevel);
+            if (layerSizes == null) {
+                setReduceTaskNum(job, cube.getDescriptor(), nCuboidLevel);
+            } else {
+                setReduceTaskNum(job, cube.getDescriptor(), nCuboidLevel, layerSizes);
+                if (nCuboidLevel > 0)
+                    setPartitioner(job, cubeSeg, layerSizes);
+            }
 
             this.deletePath(job.getConfiguration(), output);
 
@@ -163,6 +191,102 @@ public class CuboidJob extends AbstractHadoopJob {
         }
     }
 
+    /**
+     * Estimated MB of the cuboids built at the level, by the segment statistics and the segment's spanning tree.
+     * The size is the uncompressed key and value length times the rows, as it goes through the shuffle.
+     * Returns null if disabled or no statistics.
+     */
+    private Map<Long, Double> getLayerCuboidSizes(CubeSegment cubeSeg, int level) {
+        KylinConfig kylinConfig = cubeSeg.getConfig();
+        if (!kylinConfig.isLayerCubingStatsPartitioned())
+            return null;
+
+        Map<Long, Long> cuboidRows;
+        try {
+            cuboidRows = getCuboidRowCounts(cubeSeg);
+        } catch (Exception e) {
+            logger.warn("Cannot read statistics of " + cubeSeg + ", reducers are estimated by input size", e);
+            return null;
+        }
+
+        CuboidScheduler scheduler = cubeSeg.getCuboidScheduler();
+        List<Long> layer = Lists.newArrayList(Cuboid.getBaseCuboidId(cubeSeg.getCubeDesc()));
+        for (int i = 0; i < level; i++) {
+            List<Long> next = Lists.newArrayList();
+            for (Long cuboid : layer) {
+                next.addAll(scheduler.getSpanningCuboid(cuboid));
+            }
+            layer = next;
+        }
+
+        CubeDesc cubeDesc = cubeSeg.getCubeDesc();
+        CubeDimEncMap dimEncMap = cubeSeg.getDimensionEncodingMap();
+        int valueLength = 0;
+        for (MeasureDesc measure : cubeDesc.getMeasures()) {
+            valueLength += measure.getFunction().getReturnDataType().getStorageBytesEstimate();
+        }
+
+        Map<Long, Double> layerSizes = Maps.newHashMap();
+        for (Long cuboid : layer) {
+            Long rows = cuboidRows.get(cuboid);
+            if (rows == null) {
+                logger.warn("No statistics for cuboid " + cuboid + " of " + cubeSeg + ", reducers are estimated by input size");
+                return null;
+            }
+            int keyLength = cubeSeg.getRowKeyPreambleSize();
+            for (TblColRef col : Cuboid.findById(cubeDesc, cuboid).getColumns()) {
+                keyLength += dimEncMap.get(col).getLengthOfEncoding();
+            }
+            layerSizes.put(cuboid, 1.0 * rows * (keyLength + valueLength) / (1024L * 1024L));
+        }
+        return layerSizes;
+    }
+
+    private static Map<Long, Long> getCuboidRowCounts(final CubeSegment cubeSeg) throws Exception {
+        final KylinConfig kylinConfig = cubeSeg.getConfig();
+        String statsPath = cubeSeg.getStatisticsResourcePath();
+        long timestamp = ResourceStore.getStore(kylinConfig).getResourceTimestamp(statsPath);
+        return cuboidRowsCache.get(statsPath + "@" + timestamp, new Callable<Map<Long, Long>>() {
+            @Override
+            public Map<Long, Long> call() throws Exception {
+                return new CubeStatsReader(cubeSeg, kylinConfig).getCuboidRowEstimatesHLL();
+            }
+        });
+    }
+
+    // reducers are planned with the estimated sizes of the layer's cuboids
+    protected void setReduceTaskNum(Job job, CubeDesc cubeDesc, int level, Map<Long, Double> layerSizes) {
+        KylinConfig kylinConfig = cubeDesc.getConfig();
+
+        double perReduceInputMB = kylinConfig.getDefaultHadoopJobReducerInputMB();
+        double reduceCountRatio = kylinConfig.getDefaultHadoopJobReducerCountRatio();
+
+        double totalReduceInputMB = 0;
+        for (Double size : layerSizes.values()) {
+            totalReduceInputMB += size;
+        }
+
+        int numReduceTasks = (int) Math.round(totalReduceInputMB / perReduceInputMB * reduceCountRatio);
+        if (cubeDesc.hasMemoryHungryMeasures()) {
+            numReduceTasks = numReduceTasks * 4;
+        }
+        numReduceTasks = Math.max(kylinConfig.getHadoopJobMinReducerNumber(), numReduceTasks);
+        numReduceTasks = Math.min(kylinConfig.getHadoopJobMaxReducerNumber(), numReduceTasks);
+
+        job.setNumReduceTasks(numReduceTasks);
+
+        logger.info("Having level " + level + ", " + layerSizes.size() + " cuboids of estimated " + Math.round(totalReduceInputMB) + " MB");
+        logger.info("Having per reduce MB " + perReduceInputMB + ", reduce count ratio " + reduceCountRatio);
+        logger.info("Setting " + Context.NUM_REDUCES + "=" + numReduceTasks);
+    }
+
+    private void setPartitioner(Job job, CubeSegment cubeSeg, Map<Long, Double> layerSizes) {
+        Map<Long, int[]> ranges = CuboidLayerPartitioner.assign(layerSizes, job.getNumReduceTasks());
+        job.setPartitionerClass(CuboidLayerPartitioner.class);
+        job.getConfiguration().setInt(BatchConstants.CFG_CUBE_CUBOID_PARTITION_OFFSET, cubeSeg.getRowKeyPreambleSize() - RowConstants.ROWKEY_CUBOIDID_LEN);
+        job.getConfiguration().set(BatchConstants.CFG_CUBE_CUBOID_PARTITION_RANGES, CuboidLayerPartitioner.toConfigString(ranges));
+    }
+
     protected void setReduceTaskNum(Job job, CubeDesc cubeDesc, int level) throws ClassNotFoundException, IOException, InterruptedException, JobException {
         KylinConfig kylinConfig = cubeDesc.getConfig();
 
@@ -0,0 +1,114 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+*/
+
+package org.apache.kylin.engine.mr.steps;
+
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.apache.hadoop.conf.Configurable;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.mapreduce.Partitioner;
+import org.apache.kylin.common.util.Bytes;
+import org.apache.kylin.cube.kv.RowConstants;
+import org.apache.kylin.engine.mr.common.BatchConstants;
+
+import com.google.common.collect.Maps;
+
+/**
+ * Partitions a cuboid layer by the estimated cuboid sizes. Cuboids in id order are cut at equal shares of the layer
+ * size, so each reducer takes a contiguous run of cuboids of about the same bytes. A cuboid larger than a share spans
+ * several reducers and its keys are hashed among them.
+ *
+ * The ranges are planned by assign() at job submission and passed in the job configuration, keys of cuboids not in the
+ * plan are hashed among all reducers.
+ */
+public class CuboidLayerPartitioner extends Partitioner<Text, Text> implements Configurable {
+
+    private Configuration conf;
+    private int cuboidOffset;
+    private Map<Long, int[]> ranges = Maps.newHashMap(); // cuboid ==> { first reducer, reducer count }
+
+    /** Plans the reducer ranges of the cuboids by their sizes, the result goes to the job by toConfigString(). */
+    public static Map<Long, int[]> assign(Map<Long, Double> cuboidSizes, int numReduceTasks) {
+        TreeMap<Long, Double> sorted = new TreeMap<Long, Double>(cuboidSizes);
+        double total = 0;
+        for (Double size : sorted.values()) {
+            total += size;
+        }
+
+        Map<Long, int[]> result = Maps.newHashMap();
+        double share = total / numReduceTasks;
+        double cumulative = 0;
+        for (Map.Entry<Long, Double> entry : sorted.entrySet()) {
+            int first, last;
+            if (share <= 0) {
+                first = 0;
+                last = numReduceTasks - 1;
+            } else {
+                first = Math.min((int) (cumulative / share), numReduceTasks - 1);
+                cumulative += entry.getValue();
+                last = Math.min((int) Math.ceil(cumulative / share) - 1, numReduceTasks - 1);
+                last = Math.max(first, last);
+            }
+            result.put(entry.getKey(), new int[] { first, last - first + 1 });
+        }
+        return result;
+    }
+
+    public static String toConfigString(Map<Long, int[]> ranges) {
+        StringBuilder buf = new StringBuilder();
+        for (Map.Entry<Long, int[]> entry : ranges.entrySet()) {
+            if (buf.length() > 0)
+                buf.append(",");
+            buf.append(entry.getKey()).append(":").append(entry.getValue()[0]).append(":").append(entry.getValue()[1]);
+        }
+        return buf.toString();
+    }
+
+    @Override
+    public void setConf(Configuration conf) {
+        this.conf = conf;
+        this.cuboidOffset = conf.getInt(BatchConstants.CFG_CUBE_CUBOID_PARTITION_OFFSET, 0);
+        this.ranges = Maps.newHashMap();
+        for (String range : conf.getTrimmedStrings(BatchConstants.CFG_CUBE_CUBOID_PARTITION_RANGES)) {
+            String[] parts = range.split(":");
+            ranges.put(Long.parseLong(parts[0]), new int[] { Integer.parseInt(parts[1]), Integer.parseInt(parts[2]) });
+        }
+    }
+
+    @Override
+    public Configuration getConf() {
+        return conf;
+    }
+
+    @Override
+    public int getPartition(Text key, Text value, int numReduceTasks) {
+        int hash = key.hashCode() & Integer.MAX_VALUE;
+        if (key.getLength() < cuboidOffset + RowConstants.ROWKEY_CUBOIDID_LEN)
+            return hash % numReduceTasks;
+
+        long cuboidId = Bytes.toLong(key.getBytes(), cuboidOffset, RowConstants.ROWKEY_CUBOIDID_LEN);
+        int[] range = ranges.get(cuboidId);
+        if (range == null)
+            return hash % numReduceTasks;
+
+        return (range[0] + hash % range[1]) % numReduceTasks;
+    }
+}
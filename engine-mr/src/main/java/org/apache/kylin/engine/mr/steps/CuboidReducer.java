@@ -31,6 +31,7 @@ import org.apache.kylin.engine.mr.common.AbstractHadoopJob;
 import org.apache.kylin.engine.mr.common.BatchConstants;
 import org.apache.kylin.measure.BufferedMeasureCodec;
 import org.apache.kylin.measure.MeasureAggregators;
+import org.apache.kylin.measure.basic.PrimitiveMeasureAggregators;
 import org.apache.kylin.metadata.model.MeasureDesc;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -50,6 +51,10 @@ public class CuboidReducer extends KylinReducer<Text, Text, Text, Text> {
     private BufferedMeasureCodec codec;
     private MeasureAggregators aggs;
 
+    // non-null when all measures are fixed width, then values are aggregated from bytes into primitives
+    private PrimitiveMeasureAggregators primitiveAggs;
+    private ByteBuffer primitiveBuf;
+
     private int counter;
     private int cuboidLevel;
     private boolean[] needAggr;
@@ -83,10 +88,26 @@ public class CuboidReducer extends KylinReducer<Text, Text, Text, Text> {
                 needAggr[i] = !measuresDescs.get(i).getFunction().getMeasureType().onlyAggrInBaseCuboid();
             }
         }
+
+        boolean aggrAll = true;
+        for (int i = 0; i < needAggr.length; i++) {
+            aggrAll &= cuboidLevel == 0 || needAggr[i];
+        }
+        PrimitiveMeasureAggregators.Kind[] kinds = aggrAll ? PrimitiveMeasureAggregators.kindsForCodec(measuresDescs) : null;
+        if (kinds != null) {
+            primitiveAggs = new PrimitiveMeasureAggregators(kinds, 1);
+            primitiveBuf = ByteBuffer.allocate(primitiveAggs.maxEncodedLength());
+            logger.info("All measures are fixed width, aggregate them as primitives");
+        }
     }
 
     @Override
     public void doReduce(Text key, Iterable<Text> values, Context context) throws IOException, InterruptedException {
+        if (primitiveAggs != null) {
+            doReducePrimitive(key, values, context);
+            return;
+        }
+
         aggs.reset();
 
         for (Text value : values) {
@@ -104,6 +125,26 @@ public class CuboidReducer extends KylinReducer<Text, Text, Text, Text> {
         outputValue.set(valueBuf.array(), 0, valueBuf.position());
         context.write(key, outputValue);
 
+        logProgress();
+    }
+
+    private void doReducePrimitive(Text key, Iterable<Text> values, Context context) throws IOException, InterruptedException {
+        boolean first = true;
+        for (Text value : values) {
+            primitiveAggs.decode(0, ByteBuffer.wrap(value.getBytes(), 0, value.getLength()), first);
+            first = false;
+        }
+
+        primitiveBuf.clear();
+        primitiveAggs.encode(0, primitiveBuf);
+
+        outputValue.set(primitiveBuf.array(), 0, primitiveBuf.position());
+        context.write(key, outputValue);
+
+        logProgress();
+    }
+
+    private void logProgress() {
         counter++;
         if (counter % BatchConstants.NORMAL_RECORD_LOG_THRESHOLD == 0) {
             logger.info("Handled " + counter + " records!");
@@ -20,15 +20,13 @@ package org.apache.kylin.engine.mr.steps;
 
 import java.io.IOException;
 import java.util.Arrays;
-import java.util.Collections;
-import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ArrayBlockingQueue;
 import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
-import java.util.concurrent.TimeUnit;
 
 import org.apache.hadoop.conf.Configuration;
 import org.apache.kylin.common.KylinConfig;
@@ -38,6 +36,9 @@ import org.apache.kylin.cube.CubeInstance;
 import org.apache.kylin.cube.CubeManager;
 import org.apache.kylin.cube.CubeSegment;
 import org.apache.kylin.cube.inmemcubing.DoggedCubeBuilder;
+import org.apache.kylin.cube.inmemcubing.EncodedRowBatch;
+import org.apache.kylin.cube.inmemcubing.EncodedRowBatchWriter;
+import org.apache.kylin.cube.inmemcubing.SpillStats;
 import org.apache.kylin.cube.model.CubeDesc;
 import org.apache.kylin.engine.EngineFactory;
 import org.apache.kylin.engine.mr.ByteArrayWritable;
@@ -65,8 +66,10 @@ public class InMemCuboidMapper<KEYIN> extends KylinMapper<KEYIN, Object, ByteArr
     private IMRTableInputFormat flatTableInputFormat;
 
     private int counter;
-    private BlockingQueue<List<String>> queue = new ArrayBlockingQueue<List<String>>(64);
+    private BlockingQueue<EncodedRowBatch> queue = new ArrayBlockingQueue<EncodedRowBatch>(16);
+    private EncodedRowBatchWriter queueWriter;
     private Future<?> future;
+    private DoggedCubeBuilder cubeBuilder;
 
     @Override
     protected void setup(Context context) throws IOException {
@@ -95,12 +98,33 @@ public class InMemCuboidMapper<KEYIN> extends KylinMapper<KEYIN, Object, ByteArr
             dictionaryMap.put(col, cubeSegment.getDictionary(col));
         }
 
-        DoggedCubeBuilder cubeBuilder = new DoggedCubeBuilder(cube.getDescriptor(), flatDesc, dictionaryMap);
+        cubeBuilder = new DoggedCubeBuilder(cube.getDescriptor(), flatDesc, dictionaryMap);
         cubeBuilder.setReserveMemoryMB(calculateReserveMB(context.getConfiguration()));
-
+        cubeBuilder.setConcurrentThreads(calculateThreads(config, conf));
+        cubeBuilder.setCuboidSplitRows(config.getCubingInMemCuboidSplitRows());
+        cubeBuilder.setCuboidMemStore(config.isCubingInMemCuboidMemStore());
+        cubeBuilder.setSpillCompress(config.isCubingInMemSpillCompress());
+        cubeBuilder.setCuboidScheduler(cubeSegment.getCuboidScheduler());
+
+        // rows are encoded by the mapper thread, the builder takes them in batches
+        queueWriter = new EncodedRowBatchWriter(cubeDesc, flatDesc, dictionaryMap, queue);
         ExecutorService executorService = Executors.newSingleThreadExecutor();
-        future = executorService.submit(cubeBuilder.buildAsRunnable(queue, new MapContextGTRecordWriter(context, cubeDesc, cubeSegment)));
+        future = executorService.submit(cubeBuilder.buildEncodedAsRunnable(queue, new MapContextGTRecordWriter(context, cubeDesc, cubeSegment)));
+        queueWriter.setConsumer(future);
+
+    }
 
+    private int calculateThreads(KylinConfig config, Configuration configuration) {
+        int threads = config.getCubingInMemThreads();
+        if (threads < 0) {
+            threads = Runtime.getRuntime().availableProcessors();
+        } else if (threads == 0) {
+            // the cores the task asked for, the node is shared with other tasks; 1 is the default few clusters enforce, keep 4 then
+            int vcores = configuration.getInt("mapreduce.map.cpu.vcores", 1);
+            threads = vcores > 1 ? vcores : 4;
+        }
+        logger.info("Calculate cuboids by " + threads + " threads");
+        return threads;
     }
 
     private int calculateReserveMB(Configuration configuration) {
@@ -114,18 +138,22 @@ public class InMemCuboidMapper<KEYIN> extends KylinMapper<KEYIN, Object, ByteArr
 
     @Override
     public void doMap(KEYIN key, Object record, Context context) throws IOException, InterruptedException {
-        // put each row to the queue
-        String[] row = flatTableInputFormat.parseMapperInput(record);
-        List<String> rowAsList = Arrays.asList(row);
-
-        while (!future.isDone()) {
-            if (queue.offer(rowAsList, 1, TimeUnit.SECONDS)) {
-                counter++;
-                if (counter % BatchConstants.NORMAL_RECORD_LOG_THRESHOLD == 0) {
-                    logger.info("Handled " + counter + " records!");
-                }
-                break;
+        if (future.isDone()) {
+            // the builder failed or ended early, fail the task rather than drop the rest of the input
+            try {
+                future.get();
+            } catch (ExecutionException e) {
+                throw new IOException("Failed to build cube in mapper " + context.getTaskAttemptID().getTaskID().getId(), e.getCause());
             }
+            throw new IOException("Cube builder ended before the input, at record " + counter);
+        }
+
+        // encode each row to the queue
+        String[] row = flatTableInputFormat.parseMapperInput(record);
+        queueWriter.write(Arrays.asList(row));
+        counter++;
+        if (counter % BatchConstants.NORMAL_RECORD_LOG_THRESHOLD == 0) {
+            logger.info("Handled " + counter + " records!");
         }
     }
 
@@ -133,18 +161,24 @@ public class InMemCuboidMapper<KEYIN> extends KylinMapper<KEYIN, Object, ByteArr
     protected void doCleanup(Context context) throws IOException, InterruptedException {
         logger.info("Totally handled " + counter + " records!");
 
-        while (!future.isDone()) {
-            if (queue.offer(Collections.<String> emptyList(), 1, TimeUnit.SECONDS)) {
-                break;
-            }
-        }
+        queueWriter.close();
 
         try {
             future.get();
         } catch (Exception e) {
             throw new IOException("Failed to build cube in mapper " + context.getTaskAttemptID().getTaskID().getId(), e);
+        } finally {
+            updateSpillCounters(context, cubeBuilder.getSpillStats());
         }
         queue.clear();
     }
 
+    private void updateSpillCounters(Context context, SpillStats stats) {
+        logger.info("In-mem cubing " + stats);
+        context.getCounter(BatchConstants.MAPREDUCE_COUNTER_GROUP_NAME, "Spilled bytes").increment(stats.getSpilledBytes());
+        context.getCounter(BatchConstants.MAPREDUCE_COUNTER_GROUP_NAME, "Spilled bytes on disk").increment(stats.getSpilledDiskBytes());
+        context.getCounter(BatchConstants.MAPREDUCE_COUNTER_GROUP_NAME, "Spill stall ms").increment(stats.getStallMillis());
+        context.getCounter(BatchConstants.MAPREDUCE_COUNTER_GROUP_NAME, "Evicted bytes").increment(stats.getEvictedBytes());
+    }
+
 }
@@ -77,8 +77,8 @@ public class NDCuboidMapper extends KylinMapper<Text, Text, Text, Text> {
         cubeSegment = cube.getSegmentById(segmentID);
         cubeDesc = cube.getDescriptor();
 
-        // initialize CubiodScheduler
-        cuboidScheduler = new CuboidScheduler(cubeDesc);
+        // initialize CubiodScheduler, the segment may have a planned tree
+        cuboidScheduler = cubeSegment.getCuboidScheduler();
 
         rowKeySplitter = new RowKeySplitter(cubeSegment, 65, 256);
         rowKeyEncoderProvider = new RowKeyEncoderProvider(cubeSegment);
@@ -19,6 +19,7 @@
 package org.apache.kylin.engine.mr.steps;
 
 import java.io.IOException;
+import java.util.Map;
 import java.util.Random;
 
 import org.apache.hadoop.fs.FSDataInputStream;
@@ -27,7 +28,10 @@ import org.apache.hadoop.fs.Path;
 import org.apache.hadoop.io.IOUtils;
 import org.apache.kylin.common.KylinConfig;
 import org.apache.kylin.common.persistence.ResourceStore;
+import org.apache.kylin.cube.CubeManager;
 import org.apache.kylin.cube.CubeSegment;
+import org.apache.kylin.cube.CubeUpdate;
+import org.apache.kylin.cube.cuboid.CostBasedCuboidPlanner;
 import org.apache.kylin.engine.mr.CubingJob;
 import org.apache.kylin.engine.mr.HadoopUtil;
 import org.apache.kylin.engine.mr.CubingJob.AlgorithmEnum;
@@ -75,8 +79,9 @@ public class SaveStatisticsStep extends AbstractExecutable {
             }
 
             decideCubingAlgorithm(newSegment, kylinConf);
+            String planReport = planCuboidTree(newSegment, kylinConf);
 
-            return new ExecuteResult(ExecuteResult.State.SUCCEED, "succeed");
+            return new ExecuteResult(ExecuteResult.State.SUCCEED, planReport == null ? "succeed" : planReport);
         } catch (IOException e) {
             logger.error("fail to save cuboid statistics", e);
             return new ExecuteResult(ExecuteResult.State.ERROR, e.getLocalizedMessage());
@@ -126,4 +131,22 @@ public class SaveStatisticsStep extends AbstractExecutable {
         cubingJob.setAlgorithm(alg);
     }
 
+    // the planned tree is saved with the segment, so both the layered and the in-mem cubing build by it
+    private String planCuboidTree(CubeSegment seg, KylinConfig kylinConf) throws IOException {
+        if (!kylinConf.isCuboidTreeCostBased())
+            return null;
+
+        CubeStatsReader cubeStats = new CubeStatsReader(seg, kylinConf);
+        CostBasedCuboidPlanner planner = new CostBasedCuboidPlanner(seg.getCubeDesc(), cubeStats.getCuboidRowEstimatesHLL());
+        Map<Long, Long> cuboidParents = planner.plan();
+        String report = planner.getReport(cuboidParents);
+        logger.info(report + " for " + seg);
+
+        seg.setCuboidParents(cuboidParents);
+        CubeUpdate cubeBuilder = new CubeUpdate(seg.getCubeInstance());
+        cubeBuilder.setToUpdateSegs(seg);
+        CubeManager.getInstance(kylinConf).updateCube(cubeBuilder);
+        return report;
+    }
+
 }
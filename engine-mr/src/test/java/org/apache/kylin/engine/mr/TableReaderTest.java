@@ -19,11 +19,17 @@
 package org.apache.kylin.engine.mr;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
 
 import java.io.File;
 import java.io.IOException;
 import java.util.Arrays;
 
+import org.apache.commons.io.FileUtils;
+import org.apache.kylin.source.ReadableTable.TableReader;
+import org.apache.kylin.source.ReadableTable.TableSignature;
 import org.junit.Test;
 
 /**
@@ -43,4 +49,33 @@ public class TableReaderTest {
         reader.close();
 
     }
+
+    @Test
+    public void testDeltaReader() throws IOException {
+        File dir = new File(System.getProperty("java.io.tmpdir"), "kylin_delta_table_" + System.currentTimeMillis());
+        dir.mkdirs();
+        try {
+            File f1 = new File(dir, "part-0");
+            FileUtils.writeStringToFile(f1, "1,a\n2,b\n");
+            f1.setLastModified(1000000000000L);
+            DFSFileTable table = new DFSFileTable("file://" + dir.getAbsolutePath(), DFSFileTable.DELIM_COMMA, 2);
+            TableSignature since = table.getSignature();
+
+            File f2 = new File(dir, "part-1");
+            FileUtils.writeStringToFile(f2, "3,c\n");
+            f2.setLastModified(1000000001000L);
+            TableReader delta = table.getDeltaReader(since);
+            assertTrue(delta.next());
+            assertEquals("[3, c]", Arrays.toString(delta.getRow()));
+            assertFalse(delta.next());
+            delta.close();
+
+            // a changed old file is not an append
+            FileUtils.writeStringToFile(f1, "1,a\n");
+            f1.setLastModified(1000000000000L);
+            assertNull(table.getDeltaReader(since));
+        } finally {
+            FileUtils.deleteDirectory(dir);
+        }
+    }
 }
@@ -0,0 +1,111 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+*/
+
+package org.apache.kylin.engine.mr.steps;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Map;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.io.Text;
+import org.apache.kylin.common.util.Bytes;
+import org.apache.kylin.cube.kv.RowConstants;
+import org.apache.kylin.engine.mr.common.BatchConstants;
+import org.junit.Test;
+
+import com.google.common.collect.Maps;
+
+public class CuboidLayerPartitionerTest {
+
+    @Test
+    public void testAssign() {
+        Map<Long, Double> sizes = Maps.newHashMap();
+        sizes.put(7L, 10.0);
+        sizes.put(11L, 10.0);
+        sizes.put(13L, 60.0);
+        sizes.put(14L, 20.0);
+
+        Map<Long, int[]> ranges = CuboidLayerPartitioner.assign(sizes, 10);
+        assertRange(0, 1, ranges.get(7L));
+        assertRange(1, 1, ranges.get(11L));
+        assertRange(2, 6, ranges.get(13L));
+        assertRange(8, 2, ranges.get(14L));
+    }
+
+    @Test
+    public void testAssignCoversAllReducers() {
+        Map<Long, Double> sizes = Maps.newHashMap();
+        for (long i = 1; i <= 37; i++) {
+            sizes.put(i, (double) (i * 31 % 17));
+        }
+
+        int numReduceTasks = 13;
+        Map<Long, int[]> ranges = CuboidLayerPartitioner.assign(sizes, numReduceTasks);
+        boolean[] used = new boolean[numReduceTasks];
+        int lastEnd = 0;
+        for (long i = 1; i <= 37; i++) {
+            int[] range = ranges.get(i);
+            assertTrue(range[1] >= 1);
+            assertTrue(range[0] + range[1] <= numReduceTasks);
+            assertTrue(range[0] >= lastEnd - 1); // contiguous in cuboid order, neighbours may share a reducer
+            lastEnd = range[0] + range[1];
+            for (int r = range[0]; r < range[0] + range[1]; r++) {
+                used[r] = true;
+            }
+        }
+        for (boolean u : used) {
+            assertTrue(u);
+        }
+    }
+
+    @Test
+    public void testGetPartition() {
+        Map<Long, Double> sizes = Maps.newHashMap();
+        sizes.put(3L, 1.0);
+        sizes.put(5L, 3.0);
+
+        Configuration conf = new Configuration(false);
+        conf.setInt(BatchConstants.CFG_CUBE_CUBOID_PARTITION_OFFSET, RowConstants.ROWKEY_SHARDID_LEN);
+        conf.set(BatchConstants.CFG_CUBE_CUBOID_PARTITION_RANGES, CuboidLayerPartitioner.toConfigString(CuboidLayerPartitioner.assign(sizes, 4)));
+        CuboidLayerPartitioner partitioner = new CuboidLayerPartitioner();
+        partitioner.setConf(conf);
+
+        for (int i = 0; i < 100; i++) {
+            assertEquals(0, partitioner.getPartition(newKey(3L, i), new Text(), 4));
+            int p = partitioner.getPartition(newKey(5L, i), new Text(), 4);
+            assertTrue(p >= 1 && p < 4);
+            p = partitioner.getPartition(newKey(9L, i), new Text(), 4);
+            assertTrue(p >= 0 && p < 4);
+        }
+    }
+
+    private Text newKey(long cuboidId, int body) {
+        byte[] key = new byte[RowConstants.ROWKEY_SHARDID_LEN + RowConstants.ROWKEY_CUBOIDID_LEN + 4];
+        Bytes.putShort(key, 0, (short) (body % 7));
+        Bytes.putLong(key, RowConstants.ROWKEY_SHARDID_LEN, cuboidId);
+        Bytes.putInt(key, RowConstants.ROWKEY_SHARDID_LEN + RowConstants.ROWKEY_CUBOIDID_LEN, body);
+        return new Text(key);
+    }
+
+    private void assertRange(int first, int count, int[] range) {
+        assertEquals(first, range[0]);
+        assertEquals(count, range[1]);
+    }
+}
@@ -24,7 +24,6 @@ import java.io.Serializable;
 import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.Collection;
-import java.util.Collections;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.LinkedList;
@@ -67,6 +66,8 @@ import org.apache.kylin.cube.cuboid.Cuboid;
 import org.apache.kylin.cube.cuboid.CuboidScheduler;
 import org.apache.kylin.cube.inmemcubing.AbstractInMemCubeBuilder;
 import org.apache.kylin.cube.inmemcubing.DoggedCubeBuilder;
+import org.apache.kylin.cube.inmemcubing.EncodedRowBatch;
+import org.apache.kylin.cube.inmemcubing.EncodedRowBatchWriter;
 import org.apache.kylin.cube.kv.CubeDimEncMap;
 import org.apache.kylin.cube.model.CubeDesc;
 import org.apache.kylin.cube.model.CubeJoinedFlatTableEnrich;
@@ -365,19 +366,21 @@ public class SparkCubing extends AbstractApplication {
 
                 final CubeInstance cubeInstance = CubeManager.getInstance(KylinConfig.getInstanceFromEnv()).getCube(cubeName);
 
-                LinkedBlockingQueue<List<String>> blockingQueue = new LinkedBlockingQueue();
+                LinkedBlockingQueue<EncodedRowBatch> blockingQueue = new LinkedBlockingQueue<EncodedRowBatch>(16);
                 System.out.println("load properties finished");
                 IJoinedFlatTableDesc flatDesc = EngineFactory.getJoinedFlatTableDesc(cubeSegment);
                 AbstractInMemCubeBuilder inMemCubeBuilder = new DoggedCubeBuilder(cubeInstance.getDescriptor(), flatDesc, dictionaryMap);
+                inMemCubeBuilder.setCuboidScheduler(cubeInstance.getSegmentById(segmentId).getCuboidScheduler());
                 final SparkCuboidWriter sparkCuboidWriter = new BufferedCuboidWriter(new DefaultTupleConverter(cubeInstance.getSegmentById(segmentId), columnLengthMap));
-                Executors.newCachedThreadPool().submit(inMemCubeBuilder.buildAsRunnable(blockingQueue, sparkCuboidWriter));
+                EncodedRowBatchWriter batchWriter = new EncodedRowBatchWriter(cubeInstance.getDescriptor(), flatDesc, dictionaryMap, blockingQueue);
+                batchWriter.setConsumer(Executors.newCachedThreadPool().submit(inMemCubeBuilder.buildEncodedAsRunnable(blockingQueue, sparkCuboidWriter)));
                 try {
                     while (listIterator.hasNext()) {
                         for (List<String> row : listIterator.next()) {
-                            blockingQueue.put(row);
+                            batchWriter.write(row);
                         }
                     }
-                    blockingQueue.put(Collections.<String> emptyList());
+                    batchWriter.close();
                 } catch (Exception e) {
                     throw new RuntimeException(e);
                 }
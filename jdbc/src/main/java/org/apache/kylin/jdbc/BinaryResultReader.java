@@ -0,0 +1,260 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.kylin.jdbc;
+
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.sql.Types;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+import org.apache.kylin.jdbc.json.SQLResponseStub;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * Reads the batched binary query result written by the server's BinaryResultWriter, one batch at a time,
+ * so rows are available to the caller while the server is still producing the rest.
+ *
+ * <pre>
+ * int magic, byte version, int length + json of column metas
+ * repeated: byte TAG_BATCH, int row count, then per column:
+ *           byte encoding, null bitmap, values (long / double / int length + utf8) of non-null cells
+ * finally:  byte TAG_END, long result row count, long total scan count, boolean partial
+ *       or  byte TAG_ERROR, int length + utf8 message
+ * </pre>
+ *
+ * The reader is its own (single use) iterator; closing it before the end releases the underlying stream. It is
+ * also released as soon as the end, a server error or a read failure is met.
+ */
+public class BinaryResultReader implements Iterable<Object>, Iterator<Object>, Closeable {
+
+    public static final String CONTENT_TYPE = "application/x-kylin-result-batch";
+
+    public static final int MAGIC = 0x4B594C42; // "KYLB"
+    public static final byte VERSION = 1;
+
+    public static final byte TAG_BATCH = 1;
+    public static final byte TAG_END = 2;
+    public static final byte TAG_ERROR = 3;
+
+    public static final byte ENC_STRING = 0;
+    public static final byte ENC_LONG = 1;
+    public static final byte ENC_DOUBLE = 2;
+
+    private final DataInputStream in;
+    private final List<SQLResponseStub.ColumnMetaStub> columnMetas;
+    private final int[] columnTypes;
+
+    private Object[][] batch = new Object[0][];
+    private int next = 0;
+    private boolean finished = false;
+    private boolean closed = false;
+
+    private long resultRowCount;
+    private long totalScanCount;
+    private boolean partial;
+
+    public BinaryResultReader(InputStream input) throws IOException {
+        this.in = new DataInputStream(new BufferedInputStream(input, 64 * 1024));
+
+        int magic = in.readInt();
+        if (magic != MAGIC)
+            throw new IOException("Not a Kylin binary result, magic " + Integer.toHexString(magic));
+        byte version = in.readByte();
+        if (version != VERSION)
+            throw new IOException("Unsupported Kylin binary result version " + version);
+
+        this.columnMetas = new ObjectMapper().readValue(readBytes(), new TypeReference<List<SQLResponseStub.ColumnMetaStub>>() {
+        });
+        this.columnTypes = new int[columnMetas.size()];
+        for (int i = 0; i < columnTypes.length; i++) {
+            columnTypes[i] = columnMetas.get(i).getColumnType();
+        }
+    }
+
+    public List<SQLResponseStub.ColumnMetaStub> getColumnMetas() {
+        return columnMetas;
+    }
+
+    /**
+     * Make sure the next batch (if any) is read, so an error reported by the server before the first row
+     * surfaces here rather than during iteration.
+     */
+    public void prefetch() throws IOException {
+        try {
+            while (next >= batch.length && !finished) {
+                readNext();
+            }
+        } catch (IOException | RuntimeException e) {
+            // a broken or failed result is never read further, release it right away
+            close();
+            throw e;
+        }
+    }
+
+    private void readNext() throws IOException {
+        byte tag = in.readByte();
+        switch (tag) {
+        case TAG_BATCH:
+            readBatch();
+            break;
+        case TAG_END:
+            resultRowCount = in.readLong();
+            totalScanCount = in.readLong();
+            partial = in.readBoolean();
+            finished = true;
+            close();
+            break;
+        case TAG_ERROR:
+            String message = new String(readBytes(), StandardCharsets.UTF_8);
+            finished = true;
+            close();
+            throw new IOException(message);
+        default:
+            throw new IOException("Unknown tag " + tag + " in Kylin binary result");
+        }
+    }
+
+    private void readBatch() throws IOException {
+        int rows = in.readInt();
+        Object[][] result = new Object[rows][columnTypes.length];
+
+        byte[] nulls = new byte[(rows + 7) / 8];
+        for (int c = 0; c < columnTypes.length; c++) {
+            byte enc = in.readByte();
+            in.readFully(nulls);
+            int sqlType = columnTypes[c];
+
+            for (int r = 0; r < rows; r++) {
+                if ((nulls[r >> 3] & (1 << (r & 7))) != 0)
+                    continue;
+
+                switch (enc) {
+                case ENC_LONG:
+                    result[r][c] = wrapLong(in.readLong(), sqlType);
+                    break;
+                case ENC_DOUBLE:
+                    result[r][c] = wrapDouble(in.readDouble(), sqlType);
+                    break;
+                case ENC_STRING:
+                    result[r][c] = KylinClient.wrapObject(new String(readBytes(), StandardCharsets.UTF_8), sqlType);
+                    break;
+                default:
+                    throw new IOException("Unknown column encoding " + enc + " in Kylin binary result");
+                }
+            }
+        }
+
+        batch = result;
+        next = 0;
+    }
+
+    private static Object wrapLong(long v, int sqlType) {
+        switch (sqlType) {
+        case Types.TINYINT:
+            return (byte) v;
+        case Types.SMALLINT:
+            return (short) v;
+        case Types.INTEGER:
+            return (int) v;
+        default:
+            return v;
+        }
+    }
+
+    private static Object wrapDouble(double v, int sqlType) {
+        if (sqlType == Types.FLOAT)
+            return (float) v;
+        return v;
+    }
+
+    private byte[] readBytes() throws IOException {
+        byte[] bytes = new byte[in.readInt()];
+        in.readFully(bytes);
+        return bytes;
+    }
+
+    @Override
+    public Iterator<Object> iterator() {
+        return this;
+    }
+
+    @Override
+    public boolean hasNext() {
+        try {
+            prefetch();
+        } catch (IOException e) {
+            throw new RuntimeException("Error reading query result", e);
+        }
+        return next < batch.length;
+    }
+
+    @Override
+    public Object next() {
+        if (!hasNext())
+            throw new NoSuchElementException();
+        Object[] row = batch[next];
+        batch[next++] = null;
+        return row;
+    }
+
+    @Override
+    public void remove() {
+        throw new UnsupportedOperationException();
+    }
+
+    public boolean isFinished() {
+        return finished;
+    }
+
+    public long getResultRowCount() {
+        return resultRowCount;
+    }
+
+    public long getTotalScanCount() {
+        return totalScanCount;
+    }
+
+    public boolean isPartial() {
+        return partial;
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (closed)
+            return;
+        closed = true;
+        release(finished);
+    }
+
+    /**
+     * Called once when the result is closed, complete tells whether the whole result was read.
+     * Subclasses holding a connection should abort it if the result is incomplete.
+     */
+    protected void release(boolean complete) throws IOException {
+        in.close();
+    }
+}
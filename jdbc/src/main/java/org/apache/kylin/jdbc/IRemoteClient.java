@@ -28,13 +28,28 @@ import org.apache.kylin.jdbc.KylinMeta.KMetaProject;
 
 public interface IRemoteClient extends Closeable {
 
-    public static class QueryResult {
+    public static class QueryResult implements Closeable {
         public final List<ColumnMetaData> columnMeta;
         public final Iterable<Object> iterable;
+        private final Closeable resource;
 
         public QueryResult(List<ColumnMetaData> columnMeta, Iterable<Object> iterable) {
+            this(columnMeta, iterable, null);
+        }
+
+        /**
+         * A result streamed from the server holds resource (e.g. the http connection) until closed.
+         */
+        public QueryResult(List<ColumnMetaData> columnMeta, Iterable<Object> iterable, Closeable resource) {
             this.columnMeta = columnMeta;
             this.iterable = iterable;
+            this.resource = resource;
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (resource != null)
+                resource.close();
         }
     }
 
@@ -48,6 +48,7 @@ import org.apache.http.conn.ssl.TrustStrategy;
 import org.apache.http.entity.ContentType;
 import org.apache.http.entity.StringEntity;
 import org.apache.http.impl.client.DefaultHttpClient;
+import org.apache.http.impl.conn.PoolingClientConnectionManager;
 import org.apache.http.util.EntityUtils;
 import org.apache.kylin.jdbc.KylinMeta.KMetaCatalog;
 import org.apache.kylin.jdbc.KylinMeta.KMetaColumn;
@@ -74,12 +75,15 @@ public class KylinClient implements IRemoteClient {
     private final Properties connProps;
     private DefaultHttpClient httpClient;
     private final ObjectMapper jsonMapper;
+    private volatile boolean binaryTransport;
 
     public KylinClient(KylinConnection conn) {
         this.conn = conn;
         this.connProps = conn.getConnectionProperties();
-        this.httpClient = new DefaultHttpClient();
+        // pooled, since a streamed result set keeps its connection until it is read or closed
+        this.httpClient = new DefaultHttpClient(new PoolingClientConnectionManager());
         this.jsonMapper = new ObjectMapper();
+        this.binaryTransport = Boolean.parseBoolean(connProps.getProperty("binaryTransport", "true"));
 
         // trust all certificates
         if (isSSL()) {
@@ -323,6 +327,12 @@ public class KylinClient implements IRemoteClient {
     @Override
     public QueryResult executeQuery(String sql, List<AvaticaParameter> params, List<Object> paramValues) throws IOException {
 
+        if (binaryTransport) {
+            QueryResult result = executeKylinQueryBinary(sql, convertParameters(params, paramValues));
+            if (result != null)
+                return result;
+        }
+
         SQLResponseStub queryResp = executeKylinQuery(sql, convertParameters(params, paramValues));
         if (queryResp.getIsException())
             throw new IOException(queryResp.getExceptionMessage());
@@ -346,7 +356,7 @@ public class KylinClient implements IRemoteClient {
         return result;
     }
 
-    private SQLResponseStub executeKylinQuery(String sql, List<StatementParameter> params) throws IOException {
+    private HttpPost buildQueryPost(String sql, List<StatementParameter> params, String urlSuffix) throws IOException {
         String url = baseUrl() + "/kylin/api/query";
         String project = conn.getProject();
 
@@ -361,29 +371,90 @@ public class KylinClient implements IRemoteClient {
         request.setSql(sql);
         request.setProject(project);
 
-        HttpPost post = new HttpPost(url);
+        HttpPost post = new HttpPost(url + urlSuffix);
         addHttpHeaders(post);
 
         String postBody = jsonMapper.writeValueAsString(request);
         logger.debug("Post body:\n " + postBody);
         StringEntity requestEntity = new StringEntity(postBody, ContentType.create("application/json", "UTF-8"));
         post.setEntity(requestEntity);
+        return post;
+    }
+
+    private SQLResponseStub executeKylinQuery(String sql, List<StatementParameter> params) throws IOException {
+        HttpPost post = buildQueryPost(sql, params, "");
+
+        try {
+            HttpResponse response = httpClient.execute(post);
+
+            if (response.getStatusLine().getStatusCode() != 200 && response.getStatusLine().getStatusCode() != 201) {
+                throw asIOException(post, response);
+            }
+
+            return jsonMapper.readValue(response.getEntity().getContent(), SQLResponseStub.class);
+        } finally {
+            post.releaseConnection();
+        }
+    }
+
+    /**
+     * Query through the batched binary transport, rows are decoded lazily as the caller iterates.
+     * Returns null if the server does not support it, in which case the json transport is used from then on.
+     */
+    private QueryResult executeKylinQueryBinary(String sql, List<StatementParameter> params) throws IOException {
+        final HttpPost post = buildQueryPost(sql, params, "/binary");
+        post.setHeader("Accept", BinaryResultReader.CONTENT_TYPE + ", application/json");
 
         HttpResponse response = httpClient.execute(post);
 
-        if (response.getStatusLine().getStatusCode() != 200 && response.getStatusLine().getStatusCode() != 201) {
-            throw asIOException(post, response);
+        int code = response.getStatusLine().getStatusCode();
+        if (code == 404 || code == 405) {
+            logger.info("Server does not support binary query results, fall back to json");
+            post.releaseConnection();
+            binaryTransport = false;
+            return null;
+        }
+        if (code != 200 && code != 201) {
+            try {
+                throw asIOException(post, response);
+            } finally {
+                post.releaseConnection();
+            }
         }
 
-        SQLResponseStub stub = jsonMapper.readValue(response.getEntity().getContent(), SQLResponseStub.class);
-        post.releaseConnection();
-        return stub;
+        BinaryResultReader reader = null;
+        try {
+            reader = new BinaryResultReader(response.getEntity().getContent()) {
+                @Override
+                protected void release(boolean complete) {
+                    if (complete) {
+                        post.releaseConnection();
+                    } else {
+                        // don't drain the rest of a large result just to reuse the connection
+                        post.abort();
+                    }
+                }
+            };
+            reader.prefetch();
+            List<ColumnMetaData> metas = convertColumnMeta(reader.getColumnMetas());
+            return new QueryResult(metas, reader, reader);
+        } catch (IOException | RuntimeException e) {
+            if (reader != null)
+                reader.close();
+            else
+                post.abort();
+            throw e;
+        }
     }
 
     private List<ColumnMetaData> convertColumnMeta(SQLResponseStub queryResp) {
+        return convertColumnMeta(queryResp.getColumnMetas());
+    }
+
+    private List<ColumnMetaData> convertColumnMeta(List<SQLResponseStub.ColumnMetaStub> columnMetas) {
         List<ColumnMetaData> metas = new ArrayList<ColumnMetaData>();
-        for (int i = 0; i < queryResp.getColumnMetas().size(); i++) {
-            SQLResponseStub.ColumnMetaStub scm = queryResp.getColumnMetas().get(i);
+        for (int i = 0; i < columnMetas.size(); i++) {
+            SQLResponseStub.ColumnMetaStub scm = columnMetas.get(i);
             Class columnClass = convertType(scm.getColumnType());
             ScalarType type = ColumnMetaData.scalar(scm.getColumnType(), scm.getColumnTypeName(), Rep.of(columnClass));
 
@@ -417,5 +488,6 @@ public class KylinClient implements IRemoteClient {
 
     @Override
     public void close() throws IOException {
+        httpClient.getConnectionManager().shutdown();
     }
 }
@@ -32,9 +32,16 @@ import org.apache.calcite.avatica.Meta.Signature;
 import org.apache.calcite.avatica.MetaImpl;
 import org.apache.calcite.avatica.QueryState;
 import org.apache.kylin.jdbc.IRemoteClient.QueryResult;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 public class KylinResultSet extends AvaticaResultSet {
 
+    private static final Logger logger = LoggerFactory.getLogger(KylinResultSet.class);
+
+    // a streamed result holds its http connection until closed
+    private QueryResult result;
+
     public KylinResultSet(AvaticaStatement statement, QueryState state, Signature signature, ResultSetMetaData resultSetMetaData, TimeZone timeZone, Frame firstFrame) {
         super(statement, state, signature, resultSetMetaData, timeZone, firstFrame);
     }
@@ -57,18 +64,48 @@ public class KylinResultSet extends AvaticaResultSet {
         }
 
         IRemoteClient client = ((KylinConnection) statement.connection).getRemoteClient();
-        QueryResult result;
         try {
             result = client.executeQuery(sql, params, paramValues);
         } catch (IOException e) {
             throw new SQLException(e);
         }
 
-        columnMetaDataList.clear();
-        columnMetaDataList.addAll(result.columnMeta);
+        boolean success = false;
+        try {
+            columnMetaDataList.clear();
+            columnMetaDataList.addAll(result.columnMeta);
+
+            cursor = MetaImpl.createCursor(signature.cursorFactory, result.iterable);
+            AvaticaResultSet ret = super.execute2(cursor, columnMetaDataList);
+            success = true;
+            return ret;
+        } finally {
+            if (!success)
+                closeResult();
+        }
+    }
 
-        cursor = MetaImpl.createCursor(signature.cursorFactory, result.iterable);
-        return super.execute2(cursor, columnMetaDataList);
+    // also called when the statement is closed
+    @Override
+    public void close() {
+        try {
+            super.close();
+        } finally {
+            closeResult();
+        }
+    }
+
+    private void closeResult() {
+        if (result == null)
+            return;
+
+        try {
+            result.close();
+        } catch (IOException e) {
+            logger.warn("Error closing query result", e);
+        } finally {
+            result = null;
+        }
     }
 
 }
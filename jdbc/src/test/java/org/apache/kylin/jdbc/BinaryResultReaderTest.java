@@ -0,0 +1,151 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.kylin.jdbc;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.sql.Date;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+public class BinaryResultReaderTest {
+
+    private static final String COLUMN_METAS = "[ { \"label\":\"CAL_DT\", \"name\":\"CAL_DT\", \"columnType\":91, \"columnTypeName\":\"DATE\" }, " //
+            + "{ \"label\":\"CNT\", \"name\":\"CNT\", \"columnType\":-5, \"columnTypeName\":\"BIGINT\" }, " //
+            + "{ \"label\":\"PRICE\", \"name\":\"PRICE\", \"columnType\":8, \"columnTypeName\":\"DOUBLE\" }, " //
+            + "{ \"label\":\"AMOUNT\", \"name\":\"AMOUNT\", \"columnType\":3, \"columnTypeName\":\"DECIMAL\" } ]";
+
+    private DataOutputStream out;
+    private ByteArrayOutputStream bytes;
+
+    private void writeHeader() throws IOException {
+        bytes = new ByteArrayOutputStream();
+        out = new DataOutputStream(bytes);
+        out.writeInt(BinaryResultReader.MAGIC);
+        out.writeByte(BinaryResultReader.VERSION);
+        writeString(COLUMN_METAS);
+    }
+
+    private void writeString(String s) throws IOException {
+        byte[] b = s.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(b.length);
+        out.write(b);
+    }
+
+    // two rows: ("2013-08-07", 15, 49.5, "10.01") and (null, null, null, null)
+    private void writeBatch() throws IOException {
+        out.writeByte(BinaryResultReader.TAG_BATCH);
+        out.writeInt(2);
+
+        out.writeByte(BinaryResultReader.ENC_STRING);
+        out.writeByte(2);
+        writeString("2013-08-07");
+
+        out.writeByte(BinaryResultReader.ENC_LONG);
+        out.writeByte(2);
+        out.writeLong(15);
+
+        out.writeByte(BinaryResultReader.ENC_DOUBLE);
+        out.writeByte(2);
+        out.writeDouble(49.5);
+
+        out.writeByte(BinaryResultReader.ENC_STRING);
+        out.writeByte(2);
+        writeString("10.01");
+    }
+
+    private BinaryResultReader reader() throws IOException {
+        out.flush();
+        return new BinaryResultReader(new ByteArrayInputStream(bytes.toByteArray()));
+    }
+
+    @Test
+    public void testReadBatches() throws IOException {
+        writeHeader();
+        writeBatch();
+        writeBatch();
+        out.writeByte(BinaryResultReader.TAG_END);
+        out.writeLong(4);
+        out.writeLong(1000);
+        out.writeBoolean(false);
+
+        BinaryResultReader reader = reader();
+        assertEquals(4, reader.getColumnMetas().size());
+        assertEquals("PRICE", reader.getColumnMetas().get(2).getLabel());
+
+        List<Object> rows = new ArrayList<Object>();
+        for (Object row : reader) {
+            rows.add(row);
+        }
+        assertEquals(4, rows.size());
+        assertArrayEquals(new Object[] { Date.valueOf("2013-08-07"), 15L, 49.5, new BigDecimal("10.01") }, (Object[]) rows.get(0));
+        assertArrayEquals(new Object[] { null, null, null, null }, (Object[]) rows.get(1));
+        assertTrue(reader.isFinished());
+        assertEquals(4, reader.getResultRowCount());
+        assertEquals(1000, reader.getTotalScanCount());
+        assertFalse(reader.isPartial());
+    }
+
+    @Test
+    public void testErrorBeforeFirstRow() throws IOException {
+        writeHeader();
+        out.writeByte(BinaryResultReader.TAG_ERROR);
+        writeString("Scan row count exceeded threshold");
+
+        BinaryResultReader reader = reader();
+        try {
+            reader.prefetch();
+            fail("expect IOException");
+        } catch (IOException e) {
+            assertEquals("Scan row count exceeded threshold", e.getMessage());
+        }
+    }
+
+    @Test
+    public void testErrorAfterRows() throws IOException {
+        writeHeader();
+        writeBatch();
+        out.writeByte(BinaryResultReader.TAG_ERROR);
+        writeString("region server down");
+
+        BinaryResultReader reader = reader();
+        reader.prefetch();
+        assertTrue(reader.hasNext());
+        reader.next();
+        reader.next();
+        try {
+            reader.hasNext();
+            fail("expect RuntimeException");
+        } catch (RuntimeException e) {
+            assertEquals("region server down", e.getCause().getMessage());
+        }
+    }
+}
@@ -0,0 +1,193 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+*/
+
+package org.apache.kylin.jdbc;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Properties;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Streamed results hold a pooled http connection (2 per route), they must give it back however they end.
+ */
+public class StreamedResultReleaseTest {
+
+    private static final String COLUMN_METAS = "[ { \"label\":\"CNT\", \"name\":\"CNT\", \"columnType\":-5, \"columnTypeName\":\"BIGINT\" } ]";
+
+    // more than a socket buffers, so an abandoned result can't be read to the end behind the scene
+    private static final int BATCHES = 10000;
+    private static final int BATCH_ROWS = 1000;
+
+    private HttpServer server;
+    private ExecutorService executor;
+    private Connection conn;
+
+    @Before
+    public void setUp() throws Exception {
+        server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.createContext("/kylin/api/user/authentication", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                drain(exchange);
+                byte[] body = "{}".getBytes(StandardCharsets.UTF_8);
+                exchange.sendResponseHeaders(200, body.length);
+                exchange.getResponseBody().write(body);
+                exchange.close();
+            }
+        });
+        server.createContext("/kylin/api/query/binary", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                String request = drain(exchange);
+                exchange.getResponseHeaders().set("Content-Type", BinaryResultReader.CONTENT_TYPE);
+                exchange.sendResponseHeaders(200, 0);
+                try {
+                    writeResult(new DataOutputStream(exchange.getResponseBody()), request.contains("error"));
+                } catch (IOException e) {
+                    // the client has gone
+                } finally {
+                    exchange.close();
+                }
+            }
+        });
+        // a handler blocked on an abandoned result must not hold back the others
+        executor = Executors.newCachedThreadPool();
+        server.setExecutor(executor);
+        server.start();
+
+        Properties props = new Properties();
+        props.put("user", "ADMIN");
+        props.put("password", "KYLIN");
+        conn = new Driver().connect("jdbc:kylin://localhost:" + server.getAddress().getPort() + "/default", props);
+    }
+
+    @After
+    public void after() throws Exception {
+        conn.close();
+        server.stop(0);
+        executor.shutdownNow();
+    }
+
+    @Test(timeout = 60000)
+    public void testCloseResultSetEarly() throws SQLException {
+        for (int i = 0; i < 5; i++) {
+            Statement stmt = conn.createStatement();
+            ResultSet rs = stmt.executeQuery("select count(*) from test_kylin_fact");
+            assertTrue(rs.next());
+            assertEquals(0, rs.getLong(1));
+            rs.close();
+            stmt.close();
+        }
+    }
+
+    @Test(timeout = 60000)
+    public void testCloseStatementEarly() throws SQLException {
+        for (int i = 0; i < 5; i++) {
+            Statement stmt = conn.createStatement();
+            ResultSet rs = stmt.executeQuery("select count(*) from test_kylin_fact");
+            assertTrue(rs.next());
+            stmt.close();
+        }
+    }
+
+    @Test(timeout = 60000)
+    public void testErrorInStream() throws SQLException {
+        for (int i = 0; i < 5; i++) {
+            Statement stmt = conn.createStatement();
+            ResultSet rs = stmt.executeQuery("select count(*) from test_kylin_fact where error");
+            try {
+                while (rs.next()) {
+                }
+                fail("server error is expected");
+            } catch (Exception e) {
+                // expected, the connection goes back without closing the result set
+            }
+        }
+
+        Statement stmt = conn.createStatement();
+        ResultSet rs = stmt.executeQuery("select count(*) from test_kylin_fact");
+        assertTrue(rs.next());
+        stmt.close();
+    }
+
+    private static String drain(HttpExchange exchange) throws IOException {
+        InputStream in = exchange.getRequestBody();
+        StringBuilder buf = new StringBuilder();
+        byte[] bytes = new byte[4096];
+        int n;
+        while ((n = in.read(bytes)) > 0) {
+            buf.append(new String(bytes, 0, n, StandardCharsets.UTF_8));
+        }
+        return buf.toString();
+    }
+
+    private static void writeResult(DataOutputStream out, boolean error) throws IOException {
+        out.writeInt(BinaryResultReader.MAGIC);
+        out.writeByte(BinaryResultReader.VERSION);
+        writeString(out, COLUMN_METAS);
+
+        byte[] nulls = new byte[(BATCH_ROWS + 7) / 8];
+        for (int b = 0; b < (error ? 1 : BATCHES); b++) {
+            out.writeByte(BinaryResultReader.TAG_BATCH);
+            out.writeInt(BATCH_ROWS);
+            out.writeByte(BinaryResultReader.ENC_LONG);
+            out.write(nulls);
+            for (int r = 0; r < BATCH_ROWS; r++) {
+                out.writeLong(b * BATCH_ROWS + r);
+            }
+        }
+
+        if (error) {
+            out.writeByte(BinaryResultReader.TAG_ERROR);
+            writeString(out, "Scan row count exceeded threshold");
+        } else {
+            out.writeByte(BinaryResultReader.TAG_END);
+            out.writeLong(BATCHES * BATCH_ROWS);
+            out.writeLong(BATCHES * BATCH_ROWS);
+            out.writeBoolean(false);
+        }
+        out.flush();
+    }
+
+    private static void writeString(DataOutputStream out, String s) throws IOException {
+        byte[] b = s.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(b.length);
+        out.write(b);
+    }
+}
@@ -118,6 +118,86 @@ public class ITDoggedCubeBuilderTest extends LocalFileMetadataTestCase {
         inmemResult.file.delete();
     }
 
+    @Test
+    public void testEncodedInput() throws Exception {
+        ArrayBlockingQueue<List<String>> queue = new ArrayBlockingQueue<List<String>>(INPUT_ROWS + 1);
+        ExecutorService executorService = Executors.newSingleThreadExecutor();
+        long randSeed = System.currentTimeMillis();
+
+        IJoinedFlatTableDesc flatDesc = EngineFactory.getJoinedFlatTableDesc(cube.getDescriptor());
+        DoggedCubeBuilder doggedBuilder = new DoggedCubeBuilder(cube.getDescriptor(), flatDesc, dictionaryMap);
+        doggedBuilder.setConcurrentThreads(THREADS);
+        doggedBuilder.setSplitRowThreshold(SPLIT_ROWS);
+        FileRecordWriter encodedResult = new FileRecordWriter();
+
+        // encode in the feeding thread, as the mapper does
+        {
+            ArrayBlockingQueue<EncodedRowBatch> batchQueue = new ArrayBlockingQueue<EncodedRowBatch>(16);
+            EncodedRowBatchWriter batchWriter = new EncodedRowBatchWriter(cube.getDescriptor(), flatDesc, dictionaryMap, batchQueue);
+            Future<?> future = executorService.submit(doggedBuilder.buildEncodedAsRunnable(batchQueue, encodedResult));
+            batchWriter.setConsumer(future);
+            ITInMemCubeBuilderTest.feedData(cube, flatTable, queue, INPUT_ROWS, randSeed);
+            for (List<String> row = queue.take(); row.isEmpty() == false; row = queue.take()) {
+                batchWriter.write(row);
+            }
+            batchWriter.close();
+            future.get();
+            encodedResult.close();
+            assertEquals(INPUT_ROWS, batchWriter.getRowCount());
+        }
+
+        InMemCubeBuilder inmemBuilder = new InMemCubeBuilder(cube.getDescriptor(), flatDesc, dictionaryMap);
+        inmemBuilder.setConcurrentThreads(THREADS);
+        FileRecordWriter inmemResult = new FileRecordWriter();
+
+        {
+            Future<?> future = executorService.submit(inmemBuilder.buildAsRunnable(queue, inmemResult));
+            ITInMemCubeBuilderTest.feedData(cube, flatTable, queue, INPUT_ROWS, randSeed);
+            future.get();
+            inmemResult.close();
+        }
+
+        fileCompare(encodedResult.file, inmemResult.file);
+        encodedResult.file.delete();
+        inmemResult.file.delete();
+    }
+
+    @Test
+    public void testCuboidSplit() throws Exception {
+        ArrayBlockingQueue<List<String>> queue = new ArrayBlockingQueue<List<String>>(1000);
+        ExecutorService executorService = Executors.newSingleThreadExecutor();
+        long randSeed = System.currentTimeMillis();
+
+        IJoinedFlatTableDesc flatDesc = EngineFactory.getJoinedFlatTableDesc(cube.getDescriptor());
+        InMemCubeBuilder splitBuilder = new InMemCubeBuilder(cube.getDescriptor(), flatDesc, dictionaryMap);
+        splitBuilder.setConcurrentThreads(THREADS);
+        splitBuilder.setCuboidSplitRows(100);
+        FileRecordWriter splitResult = new FileRecordWriter();
+
+        {
+            Future<?> future = executorService.submit(splitBuilder.buildAsRunnable(queue, splitResult));
+            ITInMemCubeBuilderTest.feedData(cube, flatTable, queue, INPUT_ROWS, randSeed);
+            future.get();
+            splitResult.close();
+        }
+
+        InMemCubeBuilder inmemBuilder = new InMemCubeBuilder(cube.getDescriptor(), flatDesc, dictionaryMap);
+        inmemBuilder.setConcurrentThreads(1);
+        inmemBuilder.setCuboidSplitRows(0);
+        FileRecordWriter inmemResult = new FileRecordWriter();
+
+        {
+            Future<?> future = executorService.submit(inmemBuilder.buildAsRunnable(queue, inmemResult));
+            ITInMemCubeBuilderTest.feedData(cube, flatTable, queue, INPUT_ROWS, randSeed);
+            future.get();
+            inmemResult.close();
+        }
+
+        fileCompare(splitResult.file, inmemResult.file);
+        splitResult.file.delete();
+        inmemResult.file.delete();
+    }
+
     private void fileCompare(File file, File file2) throws IOException {
         BufferedReader r1 = new BufferedReader(new InputStreamReader(new FileInputStream(file), "UTF-8"));
         BufferedReader r2 = new BufferedReader(new InputStreamReader(new FileInputStream(file2), "UTF-8"));
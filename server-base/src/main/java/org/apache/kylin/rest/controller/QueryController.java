@@ -26,6 +26,7 @@ import java.util.List;
 import javax.servlet.http.HttpServletResponse;
 
 import org.apache.commons.io.IOUtils;
+import org.apache.kylin.common.KylinConfig;
 import org.apache.kylin.rest.exception.InternalErrorException;
 import org.apache.kylin.rest.model.Query;
 import org.apache.kylin.rest.model.SelectedColumnMeta;
@@ -34,8 +35,11 @@ import org.apache.kylin.rest.request.MetaRequest;
 import org.apache.kylin.rest.request.PrepareSqlRequest;
 import org.apache.kylin.rest.request.SQLRequest;
 import org.apache.kylin.rest.request.SaveSqlRequest;
+import org.apache.kylin.rest.response.BinaryResultWriter;
 import org.apache.kylin.rest.response.SQLResponse;
+import org.apache.kylin.rest.response.SQLResultWriter;
 import org.apache.kylin.rest.service.QueryService;
+import org.apache.kylin.rest.util.SpillableResultBuffer;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -45,11 +49,15 @@ import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestMethod;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.ResponseBody;
 import org.supercsv.io.CsvListWriter;
 import org.supercsv.io.ICsvListWriter;
 import org.supercsv.prefs.CsvPreference;
 
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
 /**
  * Handle query requests.
  * 
@@ -99,33 +107,101 @@ public class QueryController extends BasicController {
         return queryService.getQueries(creator);
     }
 
+    /**
+     * Same as "/query", but rows are written to the response as they arrive instead of being built up in memory.
+     * With countFirst=true, rows are buffered (spilling to disk when large) so "size" can be written before "results".
+     */
+    @RequestMapping(value = "/query/stream", method = RequestMethod.POST, produces = "application/json")
+    public void queryStream(@RequestBody SQLRequest sqlRequest, @RequestParam(value = "countFirst", required = false, defaultValue = "false") boolean countFirst, HttpServletResponse response) {
+        JsonResultWriter jsonWriter = new JsonResultWriter(response);
+        SpillableResultBuffer buffer = null;
+        try {
+            SQLResponse result;
+            if (countFirst) {
+                buffer = new SpillableResultBuffer(KylinConfig.getInstanceFromEnv().getQueryResultSpillThresholdMB() * 1024L * 1024L);
+                result = queryService.doQueryStreaming(sqlRequest, buffer);
+                jsonWriter.writeSize(buffer.getRowCount());
+                buffer.replayTo(jsonWriter);
+            } else {
+                result = queryService.doQueryStreaming(sqlRequest, jsonWriter);
+            }
+            jsonWriter.finish(result, null);
+        } catch (InternalErrorException e) {
+            if (!jsonWriter.isStarted())
+                throw e;
+            // the response is already committed, report the error inside the json
+            jsonWriter.finish(null, e.getMessage());
+        } catch (IOException e) {
+            throw new InternalErrorException(e);
+        } finally {
+            IOUtils.closeQuietly(buffer);
+            jsonWriter.close();
+        }
+    }
+
+    /**
+     * Query returning rows in the batched binary format of BinaryResultWriter, used by the JDBC driver.
+     */
+    @RequestMapping(value = "/query/binary", method = RequestMethod.POST)
+    public void queryBinary(@RequestBody SQLRequest sqlRequest, HttpServletResponse response) {
+        doQueryBinary(sqlRequest, response);
+    }
+
+    @RequestMapping(value = "/query/prestate/binary", method = RequestMethod.POST)
+    public void prepareQueryBinary(@RequestBody PrepareSqlRequest sqlRequest, HttpServletResponse response) {
+        doQueryBinary(sqlRequest, response);
+    }
+
+    private void doQueryBinary(SQLRequest sqlRequest, HttpServletResponse response) {
+        try {
+            BinaryResultWriter binaryWriter = new BinaryResultWriter(response.getOutputStream());
+            response.setContentType(BinaryResultWriter.CONTENT_TYPE);
+            try {
+                SQLResponse result = queryService.doQueryStreaming(sqlRequest, binaryWriter);
+                if (!binaryWriter.isStarted()) {
+                    binaryWriter.writeColumnMetas(result.getColumnMetas());
+                }
+                binaryWriter.finish(result);
+            } catch (InternalErrorException e) {
+                if (!binaryWriter.isStarted())
+                    throw e;
+                binaryWriter.error(e.getMessage());
+            }
+        } catch (IOException e) {
+            throw new InternalErrorException(e);
+        }
+    }
+
     @RequestMapping(value = "/query/format/{format}", method = RequestMethod.GET)
     @ResponseBody
-    public void downloadQueryResult(@PathVariable String format, SQLRequest sqlRequest, HttpServletResponse response) {
-        SQLResponse result = queryService.doQueryWithCache(sqlRequest);
+    public void downloadQueryResult(@PathVariable String format, SQLRequest sqlRequest, final HttpServletResponse response) {
         response.setContentType("text/" + format + ";charset=utf-8");
         response.setHeader("Content-Disposition", "attachment; filename=\"result." + format + "\"");
-        ICsvListWriter csvWriter = null;
 
+        // rows go to the csv writer as they arrive, the result is never held in memory as a whole
+        final ICsvListWriter[] csvWriter = new ICsvListWriter[1];
         try {
-            csvWriter = new CsvListWriter(response.getWriter(), CsvPreference.STANDARD_PREFERENCE);
-
-            List<String> headerList = new ArrayList<String>();
+            queryService.doQueryStreaming(sqlRequest, new SQLResultWriter() {
+                @Override
+                public void writeColumnMetas(List<SelectedColumnMeta> columnMetas) throws IOException {
+                    csvWriter[0] = new CsvListWriter(response.getWriter(), CsvPreference.STANDARD_PREFERENCE);
 
-            for (SelectedColumnMeta column : result.getColumnMetas()) {
-                headerList.add(column.getName());
-            }
+                    List<String> headerList = new ArrayList<String>();
+                    for (SelectedColumnMeta column : columnMetas) {
+                        headerList.add(column.getName());
+                    }
 
-            String[] headers = new String[headerList.size()];
-            csvWriter.writeHeader(headerList.toArray(headers));
+                    String[] headers = new String[headerList.size()];
+                    csvWriter[0].writeHeader(headerList.toArray(headers));
+                }
 
-            for (List<String> row : result.getResults()) {
-                csvWriter.write(row);
-            }
-        } catch (IOException e) {
-            throw new InternalErrorException(e);
+                @Override
+                public void writeRow(List<String> row) throws IOException {
+                    csvWriter[0].write(row);
+                }
+            });
         } finally {
-            IOUtils.closeQuietly(csvWriter);
+            IOUtils.closeQuietly(csvWriter[0]);
         }
     }
 
@@ -142,4 +218,83 @@ public class QueryController extends BasicController {
     public void setQueryService(QueryService queryService) {
         this.queryService = queryService;
     }
+
+    /**
+     * Writes a streamed query result in the same json layout as SQLResponse.
+     */
+    private static class JsonResultWriter implements SQLResultWriter {
+
+        private static final ObjectMapper mapper = new ObjectMapper();
+
+        private final HttpServletResponse response;
+        private JsonGenerator generator;
+        private boolean inResults = false;
+
+        JsonResultWriter(HttpServletResponse response) {
+            this.response = response;
+        }
+
+        boolean isStarted() {
+            return generator != null;
+        }
+
+        private void start() throws IOException {
+            if (generator == null) {
+                response.setContentType("application/json;charset=utf-8");
+                generator = mapper.getFactory().createGenerator(response.getOutputStream());
+                generator.writeStartObject();
+            }
+        }
+
+        void writeSize(long size) throws IOException {
+            start();
+            generator.writeNumberField("size", size);
+        }
+
+        @Override
+        public void writeColumnMetas(List<SelectedColumnMeta> columnMetas) throws IOException {
+            start();
+            generator.writeFieldName("columnMetas");
+            generator.writeObject(columnMetas);
+            generator.writeArrayFieldStart("results");
+            inResults = true;
+        }
+
+        @Override
+        public void writeRow(List<String> row) throws IOException {
+            generator.writeStartArray();
+            for (String v : row) {
+                generator.writeString(v);
+            }
+            generator.writeEndArray();
+        }
+
+        void finish(SQLResponse result, String exceptionMessage) {
+            try {
+                start();
+                if (inResults) {
+                    generator.writeEndArray();
+                    inResults = false;
+                }
+                if (result != null) {
+                    generator.writeStringField("cube", result.getCube());
+                    generator.writeNumberField("affectedRowCount", result.getAffectedRowCount());
+                    generator.writeNumberField("resultRowCount", result.getResultRowCount());
+                    generator.writeNumberField("duration", result.getDuration());
+                    generator.writeNumberField("totalScanCount", result.getTotalScanCount());
+                    generator.writeBooleanField("partial", result.isPartial());
+                    generator.writeBooleanField("storageCacheUsed", result.isStorageCacheUsed());
+                }
+                generator.writeBooleanField("isException", exceptionMessage != null);
+                generator.writeStringField("exceptionMessage", exceptionMessage);
+                generator.writeEndObject();
+            } catch (IOException e) {
+                throw new InternalErrorException(e);
+            }
+        }
+
+        void close() {
+            IOUtils.closeQuietly(generator);
+        }
+    }
 }
@@ -0,0 +1,49 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+*/
+
+package org.apache.kylin.rest.metrics;
+
+import static org.apache.hadoop.metrics2.lib.Interns.info;
+
+import javax.annotation.concurrent.ThreadSafe;
+
+import org.apache.hadoop.metrics2.MetricsCollector;
+import org.apache.hadoop.metrics2.MetricsRecordBuilder;
+import org.apache.hadoop.metrics2.MetricsSource;
+import org.apache.kylin.common.KylinConfig;
+import org.apache.kylin.dict.DictionaryManager;
+
+import com.google.common.cache.CacheStats;
+
+/**
+ * Exports the value cache counts of the dictionaries, summed when the metrics are polled instead of per query.
+ * Dictionaries are shared by all projects, so there is only the server total.
+ */
+@ThreadSafe
+public class DictionaryCacheMetrics implements MetricsSource {
+
+    @Override
+    public void getMetrics(MetricsCollector collector, boolean all) {
+        CacheStats stats = DictionaryManager.getInstance(KylinConfig.getInstanceFromEnv()).getDictionaryCacheStats();
+
+        MetricsRecordBuilder builder = collector.addRecord("DictionaryCache").setContext("Kylin");
+        builder.addCounter(info("DictCacheHitCount", "Dictionary value cache hits"), stats.hitCount());
+        builder.addCounter(info("DictCacheMissCount", "Dictionary value cache misses"), stats.missCount());
+        builder.addCounter(info("DictCacheEvictionCount", "Dictionary value cache evictions"), stats.evictionCount());
+    }
+}
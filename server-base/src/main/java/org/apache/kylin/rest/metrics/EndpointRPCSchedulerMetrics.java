@@ -0,0 +1,51 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+*/
+
+package org.apache.kylin.rest.metrics;
+
+import static org.apache.hadoop.metrics2.lib.Interns.info;
+
+import javax.annotation.concurrent.ThreadSafe;
+
+import org.apache.hadoop.metrics2.MetricsCollector;
+import org.apache.hadoop.metrics2.MetricsRecordBuilder;
+import org.apache.hadoop.metrics2.MetricsSource;
+import org.apache.kylin.storage.hbase.cube.v2.EndpointRPCScheduler;
+
+/**
+ * Exports the state of the coprocessor call scheduler, read from the scheduler when the metrics are polled.
+ */
+@ThreadSafe
+public class EndpointRPCSchedulerMetrics implements MetricsSource {
+
+    @Override
+    public void getMetrics(MetricsCollector collector, boolean all) {
+        EndpointRPCScheduler scheduler = EndpointRPCScheduler.getInstanceIfCreated();
+        if (scheduler == null)
+            return;
+
+        MetricsRecordBuilder builder = collector.addRecord("EndpointRPCScheduler").setContext("Kylin");
+        builder.addGauge(info("ThreadCount", "Threads running coprocessor calls"), scheduler.getThreadCount());
+        builder.addGauge(info("QueueDepth", "Pending coprocessor calls"), scheduler.getQueueDepth());
+        builder.addGauge(info("ActiveCount", "Running coprocessor calls"), scheduler.getActiveCount());
+        builder.addCounter(info("CompletedCount", "Completed coprocessor calls"), scheduler.getCompletedCount());
+        builder.addCounter(info("RejectedCount", "Coprocessor calls rejected by a full queue"), scheduler.getRejectedCount());
+        builder.addGauge(info("AverageWaitMillis", "Average queue wait of coprocessor calls in milli second"), scheduler.getAverageWaitMillis());
+        builder.addGauge(info("MaxWaitMillis", "Max queue wait of coprocessor calls in milli second"), scheduler.getMaxWaitMillis());
+    }
+}
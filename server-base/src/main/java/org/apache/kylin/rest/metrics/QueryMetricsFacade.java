@@ -46,6 +46,16 @@ public class QueryMetricsFacade {
             return;
 
         DefaultMetricsSystem.initialize("Kylin");
+        try {
+            DefaultMetricsSystem.instance().register("EndpointRPCScheduler", "Coprocessor call scheduler", new EndpointRPCSchedulerMetrics());
+        } catch (MetricsException e) {
+            logger.warn("EndpointRPCScheduler register error: ", e);
+        }
+        try {
+            DefaultMetricsSystem.instance().register("DictionaryCache", "Dictionary value cache", new DictionaryCacheMetrics());
+        } catch (MetricsException e) {
+            logger.warn("DictionaryCache register error: ", e);
+        }
     }
 
     public static void updateMetrics(SQLRequest sqlRequest, SQLResponse sqlResponse) {
@@ -71,7 +81,7 @@ public class QueryMetricsFacade {
             if (!sqlResponse.getIsException()) {
                 queryMetrics.addQueryLatency(sqlResponse.getDuration());
                 queryMetrics.addScanRowCount(sqlResponse.getTotalScanCount());
-                queryMetrics.addResultRowCount(sqlResponse.getResults().size());
+                queryMetrics.addResultRowCount(sqlResponse.getResults() != null ? sqlResponse.getResults().size() : sqlResponse.getResultRowCount());
             }
         } catch (Exception e) {
             logger.error(e.getMessage());
@@ -0,0 +1,212 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.kylin.rest.response;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.sql.Types;
+import java.util.List;
+
+import org.apache.kylin.rest.model.SelectedColumnMeta;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.collect.Lists;
+
+/**
+ * Writes query results in the compact, batched binary format read by the JDBC driver (see BinaryResultReader there).
+ *
+ * <pre>
+ * int magic, byte version, int length + json of column metas
+ * repeated: byte TAG_BATCH, int row count, then per column:
+ *           byte encoding, null bitmap, values (long / double / int length + utf8) of non-null cells
+ * finally:  byte TAG_END, long result row count, long total scan count, boolean partial
+ *       or  byte TAG_ERROR, int length + utf8 message
+ * </pre>
+ *
+ * Each batch is flushed as soon as it is full, so the client can consume rows while the query is still running.
+ */
+public class BinaryResultWriter implements SQLResultWriter {
+
+    public static final String CONTENT_TYPE = "application/x-kylin-result-batch";
+
+    public static final int MAGIC = 0x4B594C42; // "KYLB"
+    public static final byte VERSION = 1;
+
+    public static final byte TAG_BATCH = 1;
+    public static final byte TAG_END = 2;
+    public static final byte TAG_ERROR = 3;
+
+    public static final byte ENC_STRING = 0;
+    public static final byte ENC_LONG = 1;
+    public static final byte ENC_DOUBLE = 2;
+
+    public static final int DEFAULT_BATCH_ROWS = 1024;
+
+    private static final ObjectMapper mapper = new ObjectMapper();
+
+    private final OutputStream rawOut;
+    private final int batchRows;
+    private DataOutputStream out;
+    private int[] columnTypes;
+    private final List<String[]> batch = Lists.newArrayList();
+
+    public BinaryResultWriter(OutputStream out) {
+        this(out, DEFAULT_BATCH_ROWS);
+    }
+
+    public BinaryResultWriter(OutputStream out, int batchRows) {
+        this.rawOut = out;
+        this.batchRows = batchRows;
+    }
+
+    public boolean isStarted() {
+        return out != null;
+    }
+
+    @Override
+    public void writeColumnMetas(List<SelectedColumnMeta> columnMetas) throws IOException {
+        if (columnMetas == null)
+            columnMetas = Lists.newArrayList();
+
+        out = new DataOutputStream(new BufferedOutputStream(rawOut, 64 * 1024));
+        out.writeInt(MAGIC);
+        out.writeByte(VERSION);
+        writeBytes(mapper.writeValueAsBytes(columnMetas));
+
+        columnTypes = new int[columnMetas.size()];
+        for (int i = 0; i < columnTypes.length; i++) {
+            columnTypes[i] = columnMetas.get(i).getColumnType();
+        }
+    }
+
+    @Override
+    public void writeRow(List<String> row) throws IOException {
+        batch.add(row.toArray(new String[row.size()]));
+        if (batch.size() >= batchRows) {
+            flushBatch();
+        }
+    }
+
+    private void flushBatch() throws IOException {
+        if (batch.isEmpty())
+            return;
+
+        out.writeByte(TAG_BATCH);
+        out.writeInt(batch.size());
+        for (int c = 0; c < columnTypes.length; c++) {
+            writeColumn(c);
+        }
+        batch.clear();
+        out.flush();
+    }
+
+    private void writeColumn(int c) throws IOException {
+        byte enc = encodingOf(columnTypes[c]);
+        long[] longs = null;
+        double[] doubles = null;
+
+        // numbers are parsed back from the strings, fall back to strings for the batch if anything is unexpected
+        try {
+            if (enc == ENC_LONG) {
+                longs = new long[batch.size()];
+                for (int r = 0; r < batch.size(); r++) {
+                    String v = batch.get(r)[c];
+                    if (v != null)
+                        longs[r] = Long.parseLong(v);
+                }
+            } else if (enc == ENC_DOUBLE) {
+                doubles = new double[batch.size()];
+                for (int r = 0; r < batch.size(); r++) {
+                    String v = batch.get(r)[c];
+                    if (v != null)
+                        doubles[r] = Double.parseDouble(v);
+                }
+            }
+        } catch (NumberFormatException e) {
+            enc = ENC_STRING;
+        }
+
+        out.writeByte(enc);
+
+        byte[] nulls = new byte[(batch.size() + 7) / 8];
+        for (int r = 0; r < batch.size(); r++) {
+            if (batch.get(r)[c] == null)
+                nulls[r >> 3] |= 1 << (r & 7);
+        }
+        out.write(nulls);
+
+        for (int r = 0; r < batch.size(); r++) {
+            String v = batch.get(r)[c];
+            if (v == null)
+                continue;
+
+            switch (enc) {
+            case ENC_LONG:
+                out.writeLong(longs[r]);
+                break;
+            case ENC_DOUBLE:
+                out.writeDouble(doubles[r]);
+                break;
+            default:
+                writeBytes(v.getBytes(StandardCharsets.UTF_8));
+            }
+        }
+    }
+
+    private static byte encodingOf(int sqlType) {
+        switch (sqlType) {
+        case Types.TINYINT:
+        case Types.SMALLINT:
+        case Types.INTEGER:
+        case Types.BIGINT:
+            return ENC_LONG;
+        case Types.REAL:
+        case Types.FLOAT:
+        case Types.DOUBLE:
+            return ENC_DOUBLE;
+        default:
+            return ENC_STRING;
+        }
+    }
+
+    private void writeBytes(byte[] bytes) throws IOException {
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    public void finish(SQLResponse result) throws IOException {
+        flushBatch();
+        out.writeByte(TAG_END);
+        out.writeLong(result.getResultRowCount());
+        out.writeLong(result.getTotalScanCount());
+        out.writeBoolean(result.isPartial());
+        out.flush();
+    }
+
+    /** report an error that happens after the response is committed */
+    public void error(String message) throws IOException {
+        batch.clear();
+        out.writeByte(TAG_ERROR);
+        writeBytes(String.valueOf(message).getBytes(StandardCharsets.UTF_8));
+        out.flush();
+    }
+}
@@ -55,6 +55,9 @@ public class SQLResponse implements Serializable {
 
     protected long totalScanCount;
 
+    // number of result rows, also set when rows are streamed instead of collected in results
+    protected long resultRowCount;
+
     protected boolean hitExceptionCache = false;
 
     protected boolean storageCacheUsed = false;
@@ -101,6 +104,14 @@ public class SQLResponse implements Serializable {
         this.results = results;
     }
 
+    public long getResultRowCount() {
+        return resultRowCount;
+    }
+
+    public void setResultRowCount(long resultRowCount) {
+        this.resultRowCount = resultRowCount;
+    }
+
     public String getCube() {
         return cube;
     }
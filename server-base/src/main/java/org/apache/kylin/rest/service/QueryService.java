@@ -73,6 +73,7 @@ import org.apache.kylin.rest.model.TableMeta;
 import org.apache.kylin.rest.request.PrepareSqlRequest;
 import org.apache.kylin.rest.request.SQLRequest;
 import org.apache.kylin.rest.response.SQLResponse;
+import org.apache.kylin.rest.response.SQLResultWriter;
 import org.apache.kylin.rest.util.QueryUtil;
 import org.apache.kylin.rest.util.Serializer;
 import org.apache.kylin.rest.util.TableauInterceptor;
@@ -84,6 +85,7 @@ import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.security.access.AccessDeniedException;
 import org.springframework.security.access.prepost.PreAuthorize;
+import org.springframework.security.core.Authentication;
 import org.springframework.security.core.GrantedAuthority;
 import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.stereotype.Component;
@@ -144,11 +146,18 @@ public class QueryService extends BasicService {
     }
 
     public SQLResponse query(SQLRequest sqlRequest) throws Exception {
+        return query(sqlRequest, null);
+    }
+
+    /**
+     * @param resultWriter if not null, result rows are passed to it as they arrive, instead of being collected in the response
+     */
+    public SQLResponse query(SQLRequest sqlRequest, SQLResultWriter resultWriter) throws Exception {
         try {
             final String user = SecurityContextHolder.getContext().getAuthentication().getName();
             badQueryDetector.queryStart(Thread.currentThread(), sqlRequest, user);
 
-            return queryWithSqlMassage(sqlRequest);
+            return queryWithSqlMassage(sqlRequest, resultWriter);
 
         } finally {
             badQueryDetector.queryEnd(Thread.currentThread());
@@ -257,9 +266,11 @@ public class QueryService extends BasicService {
             }
         }
 
-        int resultRowCount = 0;
+        long resultRowCount = 0;
         if (!response.getIsException() && response.getResults() != null) {
             resultRowCount = response.getResults().size();
+        } else if (!response.getIsException()) {
+            resultRowCount = response.getResultRowCount();
         }
 
         String newLine = System.getProperty("line.separator");
@@ -316,13 +327,14 @@ public class QueryService extends BasicService {
         }
     }
 
-    public SQLResponse doQueryWithCache(SQLRequest sqlRequest) {
-        KylinConfig kylinConfig = KylinConfig.getInstanceFromEnv();
+    private void checkServerMode(KylinConfig kylinConfig) {
         String serverMode = kylinConfig.getServerMode();
         if (!(Constant.SERVER_MODE_QUERY.equals(serverMode.toLowerCase()) || Constant.SERVER_MODE_ALL.equals(serverMode.toLowerCase()))) {
             throw new InternalErrorException("Query is not allowed in " + serverMode + " mode.");
         }
+    }
 
+    private String setupToggles(SQLRequest sqlRequest) {
         final String queryId = UUID.randomUUID().toString();
 
         Map<String, String> toggles = new HashMap<>();
@@ -330,18 +342,36 @@ public class QueryService extends BasicService {
         if (sqlRequest.getBackdoorToggles() != null) {
             toggles.putAll(sqlRequest.getBackdoorToggles());
         }
+        // the user decides the fair share of coprocessor calls, never take it from the request
+        toggles.remove(BackdoorToggles.KEY_QUERY_USER);
+        Authentication auth = SecurityContextHolder.getContext().getAuthentication();
+        if (auth != null) {
+            toggles.put(BackdoorToggles.KEY_QUERY_USER, auth.getName());
+        }
         BackdoorToggles.setToggles(toggles);
+        return queryId;
+    }
+
+    private void checkSql(SQLRequest sqlRequest) {
+        String sql = sqlRequest.getSql();
+        String project = sqlRequest.getProject();
+        logger.info("Using project: " + project);
+        logger.info("The original query:  " + sql);
+
+        if (!sql.toLowerCase().contains("select")) {
+            logger.debug("Directly return exception as not supported");
+            throw new InternalErrorException("Not Supported SQL.");
+        }
+    }
+
+    public SQLResponse doQueryWithCache(SQLRequest sqlRequest) {
+        KylinConfig kylinConfig = KylinConfig.getInstanceFromEnv();
+        checkServerMode(kylinConfig);
+
+        final String queryId = setupToggles(sqlRequest);
 
         try (SetThreadName ignored = new SetThreadName("Query %s", queryId)) {
-            String sql = sqlRequest.getSql();
-            String project = sqlRequest.getProject();
-            logger.info("Using project: " + project);
-            logger.info("The original query:  " + sql);
-
-            if (!sql.toLowerCase().contains("select")) {
-                logger.debug("Directly return exception as not supported");
-                throw new InternalErrorException("Not Supported SQL.");
-            }
+            checkSql(sqlRequest);
 
             long startTime = System.currentTimeMillis();
 
@@ -397,6 +427,68 @@ public class QueryService extends BasicService {
         }
     }
 
+    /**
+     * Like doQueryWithCache(), but result rows are passed to the writer as they come out of the query engine,
+     * so the memory of the query server does not grow with the size of the result.
+     * The returned response carries the column metas and statistics, but no result rows.
+     * Streamed results are not put in the query cache.
+     */
+    public SQLResponse doQueryStreaming(SQLRequest sqlRequest, SQLResultWriter resultWriter) {
+        KylinConfig kylinConfig = KylinConfig.getInstanceFromEnv();
+        checkServerMode(kylinConfig);
+
+        final String queryId = setupToggles(sqlRequest);
+
+        try (SetThreadName ignored = new SetThreadName("Query %s", queryId)) {
+            checkSql(sqlRequest);
+
+            long startTime = System.currentTimeMillis();
+
+            SQLResponse sqlResponse = null;
+            boolean queryCacheEnabled = kylinConfig.isQueryCacheEnabled() && !BackdoorToggles.getDisableCache();
+
+            try {
+                SQLResponse cached = queryCacheEnabled ? searchQueryInCache(sqlRequest) : null;
+                if (cached != null && !cached.getIsException()) {
+                    checkQueryAuth(cached);
+                    resultWriter.writeColumnMetas(cached.getColumnMetas());
+                    for (List<String> row : cached.getResults()) {
+                        resultWriter.writeRow(row);
+                    }
+                    sqlResponse = new SQLResponse(cached.getColumnMetas(), null, cached.getCube(), 0, false, null, cached.isPartial());
+                    sqlResponse.setTotalScanCount(cached.getTotalScanCount());
+                    sqlResponse.setResultRowCount(cached.getResults().size());
+                    sqlResponse.setStorageCacheUsed(true);
+                } else if (cached != null) {
+                    sqlResponse = cached;
+                } else {
+                    sqlResponse = query(sqlRequest, resultWriter);
+                }
+                sqlResponse.setDuration(System.currentTimeMillis() - startTime);
+                logger.info("Stats of streamed SQL response: isException: {}, duration: {}, total scan count {}, result row count {}", //
+                        String.valueOf(sqlResponse.getIsException()), String.valueOf(sqlResponse.getDuration()), String.valueOf(sqlResponse.getTotalScanCount()), String.valueOf(sqlResponse.getResultRowCount()));
+
+            } catch (Throwable e) { // calcite may throw AssertError
+                logger.error("Exception when execute sql", e);
+                String errMsg = QueryUtil.makeErrorMsgUserFriendly(e);
+
+                sqlResponse = new SQLResponse(null, null, 0, true, errMsg);
+            }
+
+            logQuery(sqlRequest, sqlResponse);
+
+            QueryMetricsFacade.updateMetrics(sqlRequest, sqlResponse);
+
+            if (sqlResponse.getIsException())
+                throw new InternalErrorException(sqlResponse.getExceptionMessage());
+
+            return sqlResponse;
+
+        } finally {
+            BackdoorToggles.cleanToggles();
+        }
+    }
+
     public SQLResponse searchQueryInCache(SQLRequest sqlRequest) {
         SQLResponse response = null;
         Cache exceptionCache = cacheManager.getCache(EXCEPTION_QUERY_CACHE);
@@ -418,12 +510,30 @@ public class QueryService extends BasicService {
     }
 
     private void checkQueryAuth(SQLResponse sqlResponse) throws AccessDeniedException {
-        if (!sqlResponse.getIsException() && KylinConfig.getInstanceFromEnv().isQuerySecureEnabled()) {
-            checkAuthorization(sqlResponse.getCube());
+        if (!sqlResponse.getIsException()) {
+            checkQueryAuth(sqlResponse.getCube());
         }
     }
 
-    private SQLResponse queryWithSqlMassage(SQLRequest sqlRequest) throws Exception {
+    private void checkQueryAuth(String cube) throws AccessDeniedException {
+        if (KylinConfig.getInstanceFromEnv().isQuerySecureEnabled()) {
+            checkAuthorization(cube);
+        }
+    }
+
+    private String getRealizationName() {
+        String cube = "";
+        if (OLAPContext.getThreadLocalContexts() != null) {
+            for (OLAPContext ctx : OLAPContext.getThreadLocalContexts()) {
+                if (ctx.realization != null) {
+                    cube = ctx.realization.getName();
+                }
+            }
+        }
+        return cube;
+    }
+
+    private SQLResponse queryWithSqlMassage(SQLRequest sqlRequest, SQLResultWriter resultWriter) throws Exception {
         String userInfo = SecurityContextHolder.getContext().getAuthentication().getName();
         final Collection<? extends GrantedAuthority> grantedAuthorities = SecurityContextHolder.getContext().getAuthentication().getAuthorities();
         for (GrantedAuthority grantedAuthority : grantedAuthorities) {
@@ -434,6 +544,14 @@ public class QueryService extends BasicService {
         SQLResponse fakeResponse = TableauInterceptor.tableauIntercept(sqlRequest.getSql());
         if (null != fakeResponse) {
             logger.debug("Return fake response, is exception? " + fakeResponse.getIsException());
+            if (resultWriter != null && !fakeResponse.getIsException()) {
+                resultWriter.writeColumnMetas(fakeResponse.getColumnMetas());
+                if (fakeResponse.getResults() != null) {
+                    for (List<String> row : fakeResponse.getResults()) {
+                        resultWriter.writeRow(row);
+                    }
+                }
+            }
             return fakeResponse;
         }
 
@@ -451,7 +569,7 @@ public class QueryService extends BasicService {
         // force clear the query context before a new query
         OLAPContext.clearThreadLocalContexts();
 
-        return execute(correctedSql, sqlRequest);
+        return execute(correctedSql, sqlRequest, resultWriter);
 
     }
 
@@ -516,12 +634,13 @@ public class QueryService extends BasicService {
      * @return
      * @throws Exception
      */
-    private SQLResponse execute(String sql, SQLRequest sqlRequest) throws Exception {
+    private SQLResponse execute(String sql, SQLRequest sqlRequest, SQLResultWriter resultWriter) throws Exception {
         Connection conn = null;
         Statement stat = null;
         ResultSet resultSet = null;
 
-        List<List<String>> results = Lists.newArrayList();
+        List<List<String>> results = resultWriter == null ? Lists.<List<String>> newArrayList() : null;
+        long resultRowCount = 0;
         List<SelectedColumnMeta> columnMetas = Lists.newArrayList();
 
         try {
@@ -548,6 +667,12 @@ public class QueryService extends BasicService {
                 columnMetas.add(new SelectedColumnMeta(metaData.isAutoIncrement(i), metaData.isCaseSensitive(i), metaData.isSearchable(i), metaData.isCurrency(i), metaData.isNullable(i), metaData.isSigned(i), metaData.getColumnDisplaySize(i), metaData.getColumnLabel(i), metaData.getColumnName(i), metaData.getSchemaName(i), metaData.getCatalogName(i), metaData.getTableName(i), metaData.getPrecision(i), metaData.getScale(i), metaData.getColumnType(i), metaData.getColumnTypeName(i), metaData.isReadOnly(i), metaData.isWritable(i), metaData.isDefinitelyWritable(i)));
             }
 
+            if (resultWriter != null) {
+                // realizations are chosen once the query is planned, check access before any row goes out
+                checkQueryAuth(getRealizationName());
+                resultWriter.writeColumnMetas(columnMetas);
+            }
+
             // fill in results
             while (resultSet.next()) {
                 List<String> oneRow = Lists.newArrayListWithCapacity(columnCount);
@@ -555,7 +680,12 @@ public class QueryService extends BasicService {
                     oneRow.add((resultSet.getString(i + 1)));
                 }
 
-                results.add(oneRow);
+                if (resultWriter != null) {
+                    resultWriter.writeRow(oneRow);
+                } else {
+                    results.add(oneRow);
+                }
+                resultRowCount++;
             }
         } finally {
             close(resultSet, stat, conn);
@@ -579,6 +709,7 @@ public class QueryService extends BasicService {
 
         SQLResponse response = new SQLResponse(columnMetas, results, cube, 0, false, null, isPartialResult);
         response.setTotalScanCount(totalScanCount);
+        response.setResultRowCount(resultRowCount);
 
         return response;
     }
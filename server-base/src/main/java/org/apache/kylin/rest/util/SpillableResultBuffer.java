@@ -0,0 +1,162 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.kylin.rest.util;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.List;
+
+import org.apache.commons.io.IOUtils;
+import org.apache.kylin.common.util.Bytes;
+import org.apache.kylin.rest.model.SelectedColumnMeta;
+import org.apache.kylin.rest.response.SQLResultWriter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.collect.Lists;
+
+/**
+ * Buffers query result rows for consumers that need the row count before the rows.
+ * Rows are kept in memory up to a byte threshold, after which all further rows go to a temp file.
+ */
+public class SpillableResultBuffer implements SQLResultWriter, Closeable {
+
+    private static final Logger logger = LoggerFactory.getLogger(SpillableResultBuffer.class);
+
+    private final long memThresholdBytes;
+
+    private List<SelectedColumnMeta> columnMetas;
+    private final List<List<String>> memRows = Lists.newArrayList();
+    private long memBytes = 0;
+    private long rowCount = 0;
+
+    private File spillFile;
+    private DataOutputStream spillOut;
+    private long spilledRows = 0;
+
+    public SpillableResultBuffer(long memThresholdBytes) {
+        this.memThresholdBytes = memThresholdBytes;
+    }
+
+    @Override
+    public void writeColumnMetas(List<SelectedColumnMeta> columnMetas) {
+        this.columnMetas = columnMetas;
+    }
+
+    @Override
+    public void writeRow(List<String> row) throws IOException {
+        rowCount++;
+
+        if (spillOut == null && memBytes < memThresholdBytes) {
+            memRows.add(Lists.newArrayList(row)); // the caller may reuse the row list
+            memBytes += estimateBytes(row);
+            return;
+        }
+
+        if (spillOut == null) {
+            spillFile = File.createTempFile("kylin-query-result-", ".tmp");
+            spillOut = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(spillFile)));
+            logger.info("Query result exceeds {} bytes in memory, spilling to {}", memThresholdBytes, spillFile);
+        }
+        spillOut.writeInt(row.size());
+        for (String v : row) {
+            if (v == null) {
+                spillOut.writeInt(-1);
+            } else {
+                byte[] bytes = Bytes.toBytes(v);
+                spillOut.writeInt(bytes.length);
+                spillOut.write(bytes);
+            }
+        }
+        spilledRows++;
+    }
+
+    private static long estimateBytes(List<String> row) {
+        long bytes = 16 + 8L * row.size();
+        for (String v : row) {
+            if (v != null)
+                bytes += 40 + 2L * v.length();
+        }
+        return bytes;
+    }
+
+    public List<SelectedColumnMeta> getColumnMetas() {
+        return columnMetas;
+    }
+
+    public long getRowCount() {
+        return rowCount;
+    }
+
+    public boolean isSpilled() {
+        return spillFile != null;
+    }
+
+    /** replay all buffered rows, in their original order, to the given writer */
+    public void replayTo(SQLResultWriter writer) throws IOException {
+        writer.writeColumnMetas(columnMetas);
+        for (List<String> row : memRows) {
+            writer.writeRow(row);
+        }
+
+        if (spillOut == null)
+            return;
+
+        spillOut.flush();
+        DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(spillFile)));
+        try {
+            List<String> row = Lists.newArrayList();
+            for (long i = 0; i < spilledRows; i++) {
+                row.clear();
+                int size = in.readInt();
+                for (int c = 0; c < size; c++) {
+                    int len = in.readInt();
+                    if (len < 0) {
+                        row.add(null);
+                    } else {
+                        byte[] bytes = new byte[len];
+                        in.readFully(bytes);
+                        row.add(Bytes.toString(bytes));
+                    }
+                }
+                writer.writeRow(row);
+            }
+        } finally {
+            IOUtils.closeQuietly(in);
+        }
+    }
+
+    @Override
+    public void close() {
+        memRows.clear();
+        IOUtils.closeQuietly(spillOut);
+        spillOut = null;
+        if (spillFile != null && spillFile.exists() && !spillFile.delete()) {
+            logger.warn("Failed to delete query result spill file {}", spillFile);
+        }
+        spillFile = null;
+    }
+}
@@ -0,0 +1,87 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.kylin.rest.util;
+
+import java.io.IOException;
+import java.util.List;
+
+import org.apache.kylin.rest.model.SelectedColumnMeta;
+import org.apache.kylin.rest.response.SQLResultWriter;
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.google.common.collect.Lists;
+
+public class SpillableResultBufferTest {
+
+    private static class CollectingWriter implements SQLResultWriter {
+        List<List<String>> rows = Lists.newArrayList();
+
+        @Override
+        public void writeColumnMetas(List<SelectedColumnMeta> columnMetas) {
+        }
+
+        @Override
+        public void writeRow(List<String> row) {
+            rows.add(Lists.newArrayList(row));
+        }
+    }
+
+    private List<List<String>> testRows(int n) {
+        List<List<String>> rows = Lists.newArrayList();
+        for (int i = 0; i < n; i++) {
+            rows.add(Lists.newArrayList("row" + i, i % 3 == 0 ? null : "中文" + i, ""));
+        }
+        return rows;
+    }
+
+    private void verify(long threshold, boolean expectSpill) throws IOException {
+        List<List<String>> rows = testRows(1000);
+        SpillableResultBuffer buffer = new SpillableResultBuffer(threshold);
+        try {
+            buffer.writeColumnMetas(null);
+            List<String> reused = Lists.newArrayList();
+            for (List<String> row : rows) {
+                // one list for all rows, as the SQLResultWriter contract allows
+                reused.clear();
+                reused.addAll(row);
+                buffer.writeRow(reused);
+            }
+            Assert.assertEquals(rows.size(), buffer.getRowCount());
+            Assert.assertEquals(expectSpill, buffer.isSpilled());
+
+            CollectingWriter writer = new CollectingWriter();
+            buffer.replayTo(writer);
+            Assert.assertEquals(rows, writer.rows);
+        } finally {
+            buffer.close();
+        }
+    }
+
+    @Test
+    public void testInMemory() throws IOException {
+        verify(Long.MAX_VALUE, false);
+    }
+
+    @Test
+    public void testSpill() throws IOException {
+        verify(10 * 1024, true);
+        verify(0, true);
+    }
+}
@@ -79,6 +79,7 @@ public class QueryMetricsTest extends ServiceTestBase {
         Assert.assertEquals(1L, mBeanServer.getAttribute(objectName, "QuerySuccessCount"));
         Assert.assertEquals(0L, mBeanServer.getAttribute(objectName, "QueryFailCount"));
         Assert.assertEquals(1L, mBeanServer.getAttribute(objectName, "CacheHitCount"));
+        Assert.assertEquals(0L, mBeanServer.getAttribute(new ObjectName("Hadoop:service=Kylin,name=DictionaryCache"), "DictCacheEvictionCount"));
 
         Assert.assertEquals(1L, mBeanServer.getAttribute(objectName, "ScanRowCountNumOps"));
         Assert.assertEquals(100.0, mBeanServer.getAttribute(objectName, "ScanRowCountAvgTime"));
@@ -26,6 +26,7 @@ import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
 import java.util.List;
+import java.util.Map;
 
 import org.apache.commons.lang3.StringUtils;
 import org.apache.hadoop.hive.ql.CommandNeedRetryException;
@@ -33,6 +34,7 @@ import org.apache.kylin.common.util.DBUtils;
 
 import com.google.common.base.Preconditions;
 import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
 
 public class BeelineHiveClient implements IHiveClient {
 
@@ -201,6 +203,21 @@ public class BeelineHiveClient implements IHiveClient {
             if ("OutputFormat:".equals(resultSet.getString(1).trim())) {
                 builder.setSdOutputFormat(resultSet.getString(2).trim());
             }
+            if ("SerDe Library:".equals(resultSet.getString(1).trim())) {
+                builder.setSdSerdeLib(resultSet.getString(2).trim());
+            }
+            if ("Storage Desc Params:".equals(resultSet.getString(1).trim())) {
+                Map<String, String> serdeParams = Maps.newHashMap();
+                while (resultSet.next()) {
+                    if (resultSet.getString(2) == null) {
+                        break;
+                    }
+                    // values are padded, a whitespace value cannot be told from the padding and is left unknown
+                    String value = StringUtils.trimToNull(resultSet.getString(3));
+                    serdeParams.put(resultSet.getString(2).trim(), value);
+                }
+                builder.setSdSerdeParams(serdeParams);
+            }
         }
     }
 
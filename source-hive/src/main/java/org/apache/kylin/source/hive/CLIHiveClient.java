@@ -106,6 +106,11 @@ public class CLIHiveClient implements IHiveClient {
         builder.setTableName(tableName);
         builder.setSdInputFormat(table.getSd().getInputFormat());
         builder.setSdOutputFormat(table.getSd().getOutputFormat());
+        if (table.getSd().getSerdeInfo() != null) {
+            builder.setSdSerdeLib(table.getSd().getSerdeInfo().getSerializationLib());
+            if (table.getSd().getSerdeInfo().getParameters() != null)
+                builder.setSdSerdeParams(table.getSd().getSerdeInfo().getParameters());
+        }
         builder.setOwner(table.getOwner());
         builder.setLastAccessTime(table.getLastAccessTime());
         builder.setTableType(table.getTableType());
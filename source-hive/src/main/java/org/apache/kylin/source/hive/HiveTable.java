@@ -19,21 +19,40 @@
 package org.apache.kylin.source.hive;
 
 import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
+import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.compress.CompressionCodecFactory;
 import org.apache.kylin.common.KylinConfig;
 import org.apache.kylin.common.util.Pair;
+import org.apache.kylin.common.util.StringSplitter;
 import org.apache.kylin.engine.mr.DFSFileTable;
+import org.apache.kylin.engine.mr.DFSFileTableReader;
+import org.apache.kylin.engine.mr.HadoopUtil;
 import org.apache.kylin.metadata.model.TableDesc;
-import org.apache.kylin.source.ReadableTable;
+import org.apache.kylin.source.IDeltaReadableTable;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.google.common.collect.Lists;
+
 /**
  */
-public class HiveTable implements ReadableTable {
+public class HiveTable implements IDeltaReadableTable {
 
     private static final Logger logger = LoggerFactory.getLogger(HiveTable.class);
 
+    private static final String TEXT_INPUT_FORMAT = "org.apache.hadoop.mapred.TextInputFormat";
+    private static final String LAZY_SIMPLE_SERDE = "org.apache.hadoop.hive.serde2.lazy.LazySimpleSerDe";
+    private static final String HIVE_NULL = "\\N";
+    private static final Pattern VARCHAR_TYPE = Pattern.compile("varchar\\((\\d+)\\)");
+    private static final Pattern INTEGER_VALUE = Pattern.compile("([+-]?\\d+)(\\.\\d*)?");
+
     final private String database;
     final private String hiveTable;
 
@@ -78,6 +97,81 @@ public class HiveTable implements ReadableTable {
         }
     }
 
+    /**
+     * Reads the files added to the table location since the signature. Only for a plain text
+     * table whose values read the same from the files as from HCatalog, null otherwise.
+     */
+    @Override
+    public TableReader getDeltaReader(TableSignature since) throws IOException {
+        String delim = getTextFieldDelim();
+        if (since == null || delim == null)
+            return null;
+
+        try {
+            String path = computeHDFSLocation();
+            if (!path.equals(since.getPath()))
+                return null;
+
+            FileSystem fs = HadoopUtil.getFileSystem(path);
+            CompressionCodecFactory codecs = new CompressionCodecFactory(HadoopUtil.getCurrentConfiguration());
+
+            // an append adds new files only, the files of the earlier signature must be intact
+            long oldSize = 0;
+            List<String> newFiles = Lists.newArrayList();
+            for (FileStatus file : fs.listStatus(new Path(path))) {
+                if (file.getModificationTime() <= since.getLastModifiedTime()) {
+                    oldSize += file.getLen();
+                    continue;
+                }
+                String name = file.getPath().getName();
+                if (name.startsWith("_") || name.startsWith("."))
+                    continue; // hive skips hidden files, e.g. the staging dir of a running insert
+                if (file.isDirectory() || codecs.getCodec(file.getPath()) != null)
+                    return null;
+                newFiles.add(file.getPath().toString());
+            }
+            if (oldSize != since.getSize())
+                return null;
+
+            return new TextDeltaReader(newFiles, delim);
+
+        } catch (Exception e) {
+            if (e instanceof IOException)
+                throw (IOException) e;
+            else
+                throw new IOException(e);
+        }
+    }
+
+    private String getTextFieldDelim() {
+        if (!hiveTableMeta.isNative || !hiveTableMeta.partitionColumns.isEmpty())
+            return null;
+        if (!TEXT_INPUT_FORMAT.equals(hiveTableMeta.sdInputFormat) || !LAZY_SIMPLE_SERDE.equals(hiveTableMeta.sdSerdeLib))
+            return null;
+
+        // escapes and a custom null format would have to be decoded like the serde does
+        Map<String, String> params = hiveTableMeta.sdSerdeParams;
+        if (params.containsKey("escape.delim") || params.containsKey("serialization.null.format"))
+            return null;
+
+        for (HiveTableMeta.HiveTableColumnMeta column : hiveTableMeta.allColumns) {
+            String type = column.dataType.toLowerCase();
+            if (!"string".equals(type) && !"int".equals(type) && !"bigint".equals(type) && !VARCHAR_TYPE.matcher(type).matches())
+                return null;
+        }
+
+        // same as the serde, a number is the byte value of the delimiter
+        String delim = params.containsKey("field.delim") ? params.get("field.delim") : params.get("serialization.format");
+        if (delim == null || delim.isEmpty())
+            return null;
+        try {
+            byte b = Byte.parseByte(delim);
+            return b > 0 ? String.valueOf((char) b) : null;
+        } catch (NumberFormatException e) {
+            return delim.substring(0, 1);
+        }
+    }
+
     private String computeHDFSLocation() throws Exception {
 
         String override = KylinConfig.getInstanceFromEnv().getOverrideHiveTableLocation(hiveTable);
@@ -102,4 +196,94 @@ public class HiveTable implements ReadableTable {
         return "hive: database=[" + database + "], table=[" + hiveTable + "]";
     }
 
+    /**
+     * Splits the lines of the given text files into values as HCatalog would return them.
+     */
+    private class TextDeltaReader implements TableReader {
+
+        final List<String> files;
+        final String delim;
+        final String[] types;
+
+        int fileIndex = -1;
+        DFSFileTableReader fileReader;
+        String[] row;
+
+        TextDeltaReader(List<String> files, String delim) {
+            this.files = files;
+            this.delim = delim;
+            this.types = new String[hiveTableMeta.allColumns.size()];
+            for (int i = 0; i < types.length; i++) {
+                types[i] = hiveTableMeta.allColumns.get(i).dataType.toLowerCase();
+            }
+        }
+
+        @Override
+        public boolean next() throws IOException {
+            while (true) {
+                if (fileReader != null && fileReader.next()) {
+                    row = toRow(fileReader.getLine());
+                    return true;
+                }
+                if (fileReader != null) {
+                    fileReader.close();
+                    fileReader = null;
+                }
+                if (++fileIndex >= files.size())
+                    return false;
+                fileReader = new DFSFileTableReader(files.get(fileIndex), delim, types.length);
+            }
+        }
+
+        private String[] toRow(String line) {
+            // missing trailing values are null and extra values are ignored, like the serde does
+            String[] values = StringSplitter.split(line, delim);
+            String[] result = new String[types.length];
+            for (int i = 0; i < types.length && i < values.length; i++) {
+                result[i] = toValue(values[i], types[i]);
+            }
+            return result;
+        }
+
+        private String toValue(String value, String type) {
+            if (HIVE_NULL.equals(value))
+                return null;
+
+            if ("string".equals(type))
+                return value;
+
+            Matcher varchar = VARCHAR_TYPE.matcher(type);
+            if (varchar.matches()) {
+                int maxLength = Integer.parseInt(varchar.group(1));
+                if (value.codePointCount(0, value.length()) > maxLength)
+                    value = value.substring(0, value.offsetByCodePoints(0, maxLength));
+                return value;
+            }
+
+            // int or bigint, the serde drops a fraction and reads anything else as null
+            Matcher integer = INTEGER_VALUE.matcher(value);
+            if (!integer.matches())
+                return null;
+            try {
+                if ("int".equals(type))
+                    return String.valueOf(Integer.parseInt(integer.group(1)));
+                else
+                    return String.valueOf(Long.parseLong(integer.group(1)));
+            } catch (NumberFormatException e) {
+                return null;
+            }
+        }
+
+        @Override
+        public String[] getRow() {
+            return row;
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (fileReader != null)
+                fileReader.close();
+        }
+    }
+
 }
@@ -19,6 +19,7 @@
 package org.apache.kylin.source.hive;
 
 import java.util.List;
+import java.util.Map;
 
 class HiveTableMeta {
     static class HiveTableColumnMeta {
@@ -42,6 +43,8 @@ class HiveTableMeta {
     String sdLocation;//sd is short for storage descriptor
     String sdInputFormat;
     String sdOutputFormat;
+    String sdSerdeLib;
+    Map<String, String> sdSerdeParams;
     String owner;
     String tableType;
     int lastAccessTime;
@@ -51,11 +54,13 @@ class HiveTableMeta {
     List<HiveTableColumnMeta> allColumns;
     List<HiveTableColumnMeta> partitionColumns;
 
-    public HiveTableMeta(String tableName, String sdLocation, String sdInputFormat, String sdOutputFormat, String owner, String tableType, int lastAccessTime, long fileSize, long fileNum, boolean isNative, List<HiveTableColumnMeta> allColumns, List<HiveTableColumnMeta> partitionColumns) {
+    public HiveTableMeta(String tableName, String sdLocation, String sdInputFormat, String sdOutputFormat, String sdSerdeLib, Map<String, String> sdSerdeParams, String owner, String tableType, int lastAccessTime, long fileSize, long fileNum, boolean isNative, List<HiveTableColumnMeta> allColumns, List<HiveTableColumnMeta> partitionColumns) {
         this.tableName = tableName;
         this.sdLocation = sdLocation;
         this.sdInputFormat = sdInputFormat;
         this.sdOutputFormat = sdOutputFormat;
+        this.sdSerdeLib = sdSerdeLib;
+        this.sdSerdeParams = sdSerdeParams;
         this.owner = owner;
         this.tableType = tableType;
         this.lastAccessTime = lastAccessTime;
@@ -68,6 +73,6 @@ class HiveTableMeta {
 
     @Override
     public String toString() {
-        return "HiveTableMeta{" + "tableName='" + tableName + '\'' + ", sdLocation='" + sdLocation + '\'' + ", sdInputFormat='" + sdInputFormat + '\'' + ", sdOutputFormat='" + sdOutputFormat + '\'' + ", owner='" + owner + '\'' + ", tableType='" + tableType + '\'' + ", lastAccessTime=" + lastAccessTime + ", fileSize=" + fileSize + ", fileNum=" + fileNum + ", isNative=" + isNative + ", allColumns=" + allColumns + ", partitionColumns=" + partitionColumns + '}';
+        return "HiveTableMeta{" + "tableName='" + tableName + '\'' + ", sdLocation='" + sdLocation + '\'' + ", sdInputFormat='" + sdInputFormat + '\'' + ", sdOutputFormat='" + sdOutputFormat + '\'' + ", sdSerdeLib='" + sdSerdeLib + '\'' + ", sdSerdeParams=" + sdSerdeParams + ", owner='" + owner + '\'' + ", tableType='" + tableType + '\'' + ", lastAccessTime=" + lastAccessTime + ", fileSize=" + fileSize + ", fileNum=" + fileNum + ", isNative=" + isNative + ", allColumns=" + allColumns + ", partitionColumns=" + partitionColumns + '}';
     }
 }
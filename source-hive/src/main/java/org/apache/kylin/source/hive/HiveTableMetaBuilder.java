@@ -19,14 +19,18 @@
 package org.apache.kylin.source.hive;
 
 import java.util.List;
+import java.util.Map;
 
 import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
 
 public class HiveTableMetaBuilder {
     private String tableName;
     private String sdLocation;
     private String sdInputFormat;
     private String sdOutputFormat;
+    private String sdSerdeLib;
+    private Map<String, String> sdSerdeParams = Maps.newHashMap();
     private String owner;
     private String tableType;
     private int lastAccessTime;
@@ -56,6 +60,16 @@ public class HiveTableMetaBuilder {
         return this;
     }
 
+    public HiveTableMetaBuilder setSdSerdeLib(String sdSerdeLib) {
+        this.sdSerdeLib = sdSerdeLib;
+        return this;
+    }
+
+    public HiveTableMetaBuilder setSdSerdeParams(Map<String, String> sdSerdeParams) {
+        this.sdSerdeParams = sdSerdeParams;
+        return this;
+    }
+
     public HiveTableMetaBuilder setOwner(String owner) {
         this.owner = owner;
         return this;
@@ -97,6 +111,6 @@ public class HiveTableMetaBuilder {
     }
 
     public HiveTableMeta createHiveTableMeta() {
-        return new HiveTableMeta(tableName, sdLocation, sdInputFormat, sdOutputFormat, owner, tableType, lastAccessTime, fileSize, fileNum, isNative, allColumns, partitionColumns);
+        return new HiveTableMeta(tableName, sdLocation, sdInputFormat, sdOutputFormat, sdSerdeLib, sdSerdeParams, owner, tableType, lastAccessTime, fileSize, fileNum, isNative, allColumns, partitionColumns);
     }
 }
\ No newline at end of file
@@ -22,7 +22,7 @@ import java.io.IOException;
 import java.nio.BufferOverflowException;
 import java.nio.ByteBuffer;
 import java.util.List;
-import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.atomic.AtomicLong;
 import java.util.zip.DataFormatException;
 
@@ -38,7 +38,6 @@ import org.apache.kylin.common.util.BytesSerializer;
 import org.apache.kylin.common.util.BytesUtil;
 import org.apache.kylin.common.util.CompressionUtils;
 import org.apache.kylin.common.util.ImmutableBitSet;
-import org.apache.kylin.common.util.LoggableCachedThreadPool;
 import org.apache.kylin.common.util.Pair;
 import org.apache.kylin.metadata.model.ISegment;
 import org.apache.kylin.cube.cuboid.Cuboid;
@@ -48,6 +47,7 @@ import org.apache.kylin.gridtable.GTScanSelfTerminatedException;
 import org.apache.kylin.gridtable.IGTScanner;
 import org.apache.kylin.storage.gtrecord.StorageResponseGTScatter;
 import org.apache.kylin.storage.hbase.HBaseConnection;
+import org.apache.kylin.storage.hbase.cube.v2.coprocessor.endpoint.EndpointResultCodec;
 import org.apache.kylin.storage.hbase.cube.v2.coprocessor.endpoint.generated.CubeVisitProtos;
 import org.apache.kylin.storage.hbase.cube.v2.coprocessor.endpoint.generated.CubeVisitProtos.CubeVisitRequest;
 import org.apache.kylin.storage.hbase.cube.v2.coprocessor.endpoint.generated.CubeVisitProtos.CubeVisitResponse;
@@ -57,6 +57,8 @@ import org.apache.kylin.storage.hbase.cube.v2.coprocessor.endpoint.generated.Cub
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.google.common.base.Function;
+import com.google.common.collect.Iterators;
 import com.google.common.collect.Lists;
 import com.google.protobuf.ByteString;
 import com.google.protobuf.HBaseZeroCopyByteString;
@@ -65,8 +67,6 @@ public class CubeHBaseEndpointRPC extends CubeHBaseRPC {
 
     private static final Logger logger = LoggerFactory.getLogger(CubeHBaseEndpointRPC.class);
 
-    private static ExecutorService executorService = new LoggableCachedThreadPool();
-
     public CubeHBaseEndpointRPC(ISegment segment, Cuboid cuboid, GTInfo fullGTInfo) {
         super(segment, cuboid, fullGTInfo);
     }
@@ -150,6 +150,8 @@ public class CubeHBaseEndpointRPC extends CubeHBaseRPC {
         // for different cubes until redeployment of coprocessor jar.
         final KylinConfig kylinConfig = KylinConfig.getInstanceFromEnv();
         final boolean compressionResult = kylinConfig.getCompressionResult();
+        final int rowsChunkSize = kylinConfig.getQueryEndpointResultChunkSize();
+        final EndpointResultCodec resultCodec = getResultCodec(kylinConfig);
         final CubeVisitProtos.CubeVisitRequest.Builder builder = CubeVisitProtos.CubeVisitRequest.newBuilder();
         builder.setGtScanRequest(scanRequestByteString).setHbaseRawScan(rawScanByteString);
         for (IntList intList : hbaseColumnsToGTIntList) {
@@ -157,18 +159,28 @@ public class CubeHBaseEndpointRPC extends CubeHBaseRPC {
         }
         builder.setRowkeyPreambleSize(cubeSeg.getRowKeyPreambleSize());
         builder.setKylinProperties(kylinConfig.getConfigAsString());
+        if (rowsChunkSize > 0) {
+            builder.setRowsChunkSize(rowsChunkSize);
+        }
+        builder.setResultCodec(resultCodec.name());
         final String queryId = BackdoorToggles.getQueryId();
         if (queryId != null) {
             builder.setQueryId(queryId);
         }
+        final String queryUser = BackdoorToggles.getQueryUser();
+
+        EndpointRPCScheduler scheduler = EndpointRPCScheduler.getInstance();
+        logger.debug("Coprocessor call scheduler status: {}", scheduler);
 
         for (final Pair<byte[], byte[]> epRange : getEPKeyRanges(cuboidBaseShard, shardNum, totalShards)) {
-            executorService.submit(new Runnable() {
+            final long submitTime = System.currentTimeMillis();
+            Runnable rpc = new Runnable() {
                 @Override
                 public void run() {
 
                     final String logHeader = String.format("<sub-thread for Query %s GTScanRequest %s>", queryId, Integer.toHexString(System.identityHashCode(scanRequest)));
                     final boolean[] abnormalFinish = new boolean[1];
+                    logger.debug(logHeader + "Waited {} ms for a coprocessor call thread", System.currentTimeMillis() - submitTime);
 
                     try {
                         HTableInterface table = conn.getTable(cubeSeg.getStorageLocationIdentifier(), HBaseConnection.getCoprocessorPool());
@@ -202,15 +214,27 @@ public class CubeHBaseEndpointRPC extends CubeHBaseRPC {
                                             abnormalFinish[0] = true;
                                             return;
                                         }
-                                        try {
-                                            if (compressionResult) {
-                                                epResultItr.append(CompressionUtils.decompress(HBaseZeroCopyByteString.zeroCopyGetBytes(result.getCompressedRows())));
-                                            } else {
-                                                epResultItr.append(HBaseZeroCopyByteString.zeroCopyGetBytes(result.getCompressedRows()));
+                                        // older coprocessors ignore rowsChunkSize and return all rows in compressedRows
+                                        List<ByteString> chunks = result.getCompressedRowsChunksCount() > 0 ? result.getCompressedRowsChunksList() : Lists.<ByteString> newArrayList(result.getCompressedRows());
+                                        final boolean codecBlocks = result.hasResultCodec();
+                                        epResultItr.append(Iterators.transform(chunks.iterator(), new Function<ByteString, byte[]>() {
+                                            @Override
+                                            public byte[] apply(ByteString chunk) {
+                                                // decompress lazily, when the query thread reaches the chunk
+                                                try {
+                                                    if (codecBlocks) {
+                                                        byte[] block = HBaseZeroCopyByteString.zeroCopyGetBytes(chunk);
+                                                        return EndpointResultCodec.decodeBlock(block, 0, block.length);
+                                                    } else if (compressionResult) {
+                                                        return CompressionUtils.decompress(HBaseZeroCopyByteString.zeroCopyGetBytes(chunk));
+                                                    } else {
+                                                        return HBaseZeroCopyByteString.zeroCopyGetBytes(chunk);
+                                                    }
+                                                } catch (IOException | DataFormatException e) {
+                                                    throw new RuntimeException(logHeader + "Error when decompressing", e);
+                                                }
                                             }
-                                        } catch (IOException | DataFormatException e) {
-                                            throw new RuntimeException(logHeader + "Error when decompressing", e);
-                                        }
+                                        }));
                                     }
                                 });
 
@@ -227,12 +251,35 @@ public class CubeHBaseEndpointRPC extends CubeHBaseRPC {
                         return;
                     }
                 }
-            });
+            };
+
+            try {
+                scheduler.submit(queryUser, queryId, rpc);
+            } catch (RejectedExecutionException ex) {
+                logger.error("Coprocessor call rejected, " + scheduler, ex);
+                epResultItr.notifyCoprocException(ex);
+            }
         }
 
         return new StorageResponseGTScatter(fullGTInfo, epResultItr, scanRequest.getColumns(), totalScannedCount.get(), scanRequest.getStoragePushDownLimit());
     }
 
+    private EndpointResultCodec getResultCodec(KylinConfig kylinConfig) {
+        if (!kylinConfig.getCompressionResult()) {
+            return EndpointResultCodec.NONE;
+        }
+        String codec = BackdoorToggles.getEndpointResultCodec();
+        if (codec == null) {
+            codec = kylinConfig.getQueryEndpointCompressionCodec();
+        }
+        try {
+            return EndpointResultCodec.valueOf(codec.trim().toUpperCase());
+        } catch (IllegalArgumentException e) {
+            logger.warn("Unknown endpoint result codec '" + codec + "', using " + EndpointResultCodec.DEFAULT);
+            return EndpointResultCodec.DEFAULT;
+        }
+    }
+
     private ByteString serializeGTScanReq(GTScanRequest scanRequest) {
         ByteString scanRequestByteString;
         int scanRequestBufferSize = BytesSerializer.SERIALIZE_BUFFER_SIZE;
@@ -281,7 +328,8 @@ public class CubeHBaseEndpointRPC extends CubeHBaseRPC {
         sb.append("Time elapsed in EP: ").append(stats.getServiceEndTime() - stats.getServiceStartTime()).append("(ms). ");
         sb.append("Server CPU usage: ").append(stats.getSystemCpuLoad()).append(", server physical mem left: ").append(stats.getFreePhysicalMemorySize()).append(", server swap mem left:").append(stats.getFreeSwapSpaceSize()).append(".");
         sb.append("Etc message: ").append(stats.getEtcMsg()).append(".");
-        sb.append("Normal Complete: ").append(stats.getNormalComplete() == 1).append(".");
+        sb.append("Normal Complete: ").append(stats.getNormalComplete() == 1).append(". ");
+        sb.append("Result chunks: ").append(Math.max(1, result.getCompressedRowsChunksCount())).append(", codec: ").append(result.hasResultCodec() ? result.getResultCodec() : "legacy").append(".");
         return sb.toString();
 
     }
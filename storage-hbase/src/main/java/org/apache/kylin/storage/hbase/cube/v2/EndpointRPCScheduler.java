@@ -0,0 +1,268 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.kylin.storage.hbase.cube.v2;
+
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.apache.kylin.common.KylinConfig;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A bounded pool of threads running coprocessor calls for all queries.
+ *
+ * Pending calls are taken round robin, first across users, then across the queries of a user,
+ * so a query with many regions to visit can't hold back the small queries behind it.
+ * Calls beyond the queue limit are rejected instead of piling up threads.
+ */
+public class EndpointRPCScheduler {
+
+    private static final Logger logger = LoggerFactory.getLogger(EndpointRPCScheduler.class);
+
+    public static final String UNKNOWN_USER = "UNKNOWN";
+
+    private static volatile EndpointRPCScheduler instance;
+
+    public static EndpointRPCScheduler getInstance() {
+        if (instance == null) {
+            synchronized (EndpointRPCScheduler.class) {
+                if (instance == null) {
+                    KylinConfig config = KylinConfig.getInstanceFromEnv();
+                    instance = new EndpointRPCScheduler(config.getQueryEndpointRPCThreads(), config.getQueryEndpointRPCQueueMax());
+                }
+            }
+        }
+        return instance;
+    }
+
+    /** The shared scheduler, or null if no query has used it yet. */
+    public static EndpointRPCScheduler getInstanceIfCreated() {
+        return instance;
+    }
+
+    private static class Task {
+        final Runnable runnable;
+        final long enqueueTime;
+
+        Task(Runnable runnable) {
+            this.runnable = runnable;
+            this.enqueueTime = System.currentTimeMillis();
+        }
+    }
+
+    private static class UserQueue {
+        final ArrayDeque<String> queryRing = new ArrayDeque<>();
+        final Map<String, ArrayDeque<Task>> queryTasks = new HashMap<>();
+    }
+
+    private final int maxQueued;
+    private final Thread[] workers;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition notEmpty = lock.newCondition();
+    private final ArrayDeque<String> userRing = new ArrayDeque<>();
+    private final Map<String, UserQueue> userQueues = new HashMap<>();
+    private int queued = 0;
+    private volatile boolean shutdown = false;
+
+    private final AtomicLong activeCount = new AtomicLong();
+    private final AtomicLong startedCount = new AtomicLong();
+    private final AtomicLong completedCount = new AtomicLong();
+    private final AtomicLong rejectedCount = new AtomicLong();
+    private final AtomicLong totalWaitMillis = new AtomicLong();
+    private final AtomicLong maxWaitMillis = new AtomicLong();
+
+    public EndpointRPCScheduler(int threads, int maxQueued) {
+        if (threads <= 0)
+            throw new IllegalArgumentException("threads must be positive: " + threads);
+
+        this.maxQueued = maxQueued;
+        this.workers = new Thread[threads];
+        for (int i = 0; i < threads; i++) {
+            workers[i] = new Thread(new Worker(), "kylin-endpoint-rpc-" + i);
+            workers[i].setDaemon(true);
+            workers[i].start();
+        }
+        logger.info("EndpointRPCScheduler started with {} threads, max {} queued calls", threads, maxQueued);
+    }
+
+    /**
+     * Queue a coprocessor call on behalf of the given user and query.
+     *
+     * @throws RejectedExecutionException if the queue is full or the scheduler is shut down
+     */
+    public void submit(String user, String queryId, Runnable runnable) {
+        if (user == null)
+            user = UNKNOWN_USER;
+        if (queryId == null)
+            queryId = Thread.currentThread().getName();
+
+        lock.lock();
+        try {
+            if (shutdown)
+                throw new RejectedExecutionException("EndpointRPCScheduler is shut down");
+
+            if (maxQueued > 0 && queued >= maxQueued) {
+                rejectedCount.incrementAndGet();
+                throw new RejectedExecutionException("Too many pending coprocessor calls (" + queued + "), rejecting call of query " + queryId + " from user " + user);
+            }
+
+            UserQueue uq = userQueues.get(user);
+            if (uq == null) {
+                uq = new UserQueue();
+                userQueues.put(user, uq);
+                userRing.addLast(user);
+            }
+            ArrayDeque<Task> tasks = uq.queryTasks.get(queryId);
+            if (tasks == null) {
+                tasks = new ArrayDeque<>();
+                uq.queryTasks.put(queryId, tasks);
+                uq.queryRing.addLast(queryId);
+            }
+            tasks.addLast(new Task(runnable));
+            queued++;
+            notEmpty.signal();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private Task take() throws InterruptedException {
+        lock.lock();
+        try {
+            while (queued == 0) {
+                if (shutdown)
+                    return null;
+                notEmpty.await();
+            }
+
+            String user = userRing.pollFirst();
+            UserQueue uq = userQueues.get(user);
+            String queryId = uq.queryRing.pollFirst();
+            ArrayDeque<Task> tasks = uq.queryTasks.get(queryId);
+            Task task = tasks.pollFirst();
+            queued--;
+
+            if (tasks.isEmpty()) {
+                uq.queryTasks.remove(queryId);
+            } else {
+                uq.queryRing.addLast(queryId);
+            }
+
+            if (uq.queryRing.isEmpty()) {
+                userQueues.remove(user);
+            } else {
+                userRing.addLast(user);
+            }
+            return task;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private class Worker implements Runnable {
+        @Override
+        public void run() {
+            while (true) {
+                Task task;
+                try {
+                    task = take();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                if (task == null)
+                    return;
+
+                long wait = System.currentTimeMillis() - task.enqueueTime;
+                totalWaitMillis.addAndGet(wait);
+                startedCount.incrementAndGet();
+                long max = maxWaitMillis.get();
+                while (wait > max && !maxWaitMillis.compareAndSet(max, wait)) {
+                    max = maxWaitMillis.get();
+                }
+
+                activeCount.incrementAndGet();
+                try {
+                    task.runnable.run();
+                } catch (Throwable t) {
+                    logger.error("Uncaught error in coprocessor call", t);
+                } finally {
+                    activeCount.decrementAndGet();
+                    completedCount.incrementAndGet();
+                }
+            }
+        }
+    }
+
+    public void shutdown() {
+        lock.lock();
+        try {
+            shutdown = true;
+            notEmpty.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public int getThreadCount() {
+        return workers.length;
+    }
+
+    public int getQueueDepth() {
+        lock.lock();
+        try {
+            return queued;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public long getActiveCount() {
+        return activeCount.get();
+    }
+
+    public long getCompletedCount() {
+        return completedCount.get();
+    }
+
+    public long getRejectedCount() {
+        return rejectedCount.get();
+    }
+
+    public long getMaxWaitMillis() {
+        return maxWaitMillis.get();
+    }
+
+    public long getAverageWaitMillis() {
+        long started = startedCount.get();
+        return started == 0 ? 0 : totalWaitMillis.get() / started;
+    }
+
+    @Override
+    public String toString() {
+        return "EndpointRPCScheduler[threads=" + workers.length + ", active=" + getActiveCount() + ", queued=" + getQueueDepth() + ", completed=" + getCompletedCount() //
+                + ", rejected=" + getRejectedCount() + ", avgWaitMs=" + getAverageWaitMillis() + ", maxWaitMs=" + getMaxWaitMillis() + "]";
+    }
+}
@@ -27,18 +27,25 @@ import org.apache.commons.lang.NotImplementedException;
 import org.apache.kylin.gridtable.GTScanRequest;
 
 import com.google.common.base.Throwables;
+import com.google.common.collect.Iterators;
 
+/**
+ * Iterates the row blocks returned by the expected number of endpoint calls (one per shard).
+ * Each call may return its rows in several blocks (chunks), which are handed out one by one,
+ * so that decompression of a chunk is deferred until the consumer actually reaches it.
+ */
 class ExpectedSizeIterator implements Iterator<byte[]> {
-    private BlockingQueue<byte[]> queue;
+    private BlockingQueue<Iterator<byte[]>> queue;
     private int expectedSize;
     private int current = 0;
+    private Iterator<byte[]> currentBlocks = null;
     private int coprocessorTimeout;
     private long deadline;
     private volatile Throwable coprocException;
 
     public ExpectedSizeIterator(int expectedSize, int coprocessorTimeout) {
         this.expectedSize = expectedSize;
-        this.queue = new ArrayBlockingQueue<byte[]>(expectedSize);
+        this.queue = new ArrayBlockingQueue<Iterator<byte[]>>(expectedSize);
 
         this.coprocessorTimeout = coprocessorTimeout;
         //longer timeout than coprocessor so that query thread will not timeout faster than coprocessor
@@ -47,17 +54,27 @@ class ExpectedSizeIterator implements Iterator<byte[]> {
 
     @Override
     public boolean hasNext() {
-        return (current < expectedSize);
+        while (currentBlocks == null || !currentBlocks.hasNext()) {
+            if (current >= expectedSize) {
+                return false;
+            }
+            currentBlocks = takeNextResponse();
+        }
+        return true;
     }
 
     @Override
     public byte[] next() {
-        if (current >= expectedSize) {
+        if (!hasNext()) {
             throw new IllegalStateException("Won't have more data");
         }
+        return currentBlocks.next();
+    }
+
+    private Iterator<byte[]> takeNextResponse() {
         try {
             current++;
-            byte[] ret = null;
+            Iterator<byte[]> ret = null;
 
             while (ret == null && coprocException == null && deadline > System.currentTimeMillis()) {
                 ret = queue.poll(1000, TimeUnit.MILLISECONDS);
@@ -84,8 +101,15 @@ class ExpectedSizeIterator implements Iterator<byte[]> {
     }
 
     public void append(byte[] data) {
+        append(Iterators.singletonIterator(data));
+    }
+
+    /**
+     * append all the blocks returned by one endpoint call
+     */
+    public void append(Iterator<byte[]> blocks) {
         try {
-            queue.put(data);
+            queue.put(blocks);
         } catch (InterruptedException e) {
             throw new RuntimeException("error when waiting queue", e);
         }
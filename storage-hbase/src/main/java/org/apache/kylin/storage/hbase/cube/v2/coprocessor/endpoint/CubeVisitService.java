@@ -68,6 +68,7 @@ import org.slf4j.LoggerFactory;
 
 import com.google.common.collect.Iterators;
 import com.google.common.collect.Lists;
+import com.google.protobuf.ByteString;
 import com.google.protobuf.HBaseZeroCopyByteString;
 import com.google.protobuf.RpcCallback;
 import com.google.protobuf.RpcController;
@@ -165,6 +166,40 @@ public class CubeVisitService extends CubeVisitProtos.CubeVisitService implement
         sb.append(",");
     }
 
+    /**
+     * compress what is buffered in outputStream as one block of the response and reset the stream for next rows
+     */
+    private ByteString compressChunk(ByteArrayOutputStream outputStream, ChunkEncoder encoder) throws IOException {
+        byte[] rows = outputStream.toByteArray();
+        outputStream.reset();
+        return HBaseZeroCopyByteString.wrap(encoder.encode(rows));
+    }
+
+    /**
+     * legacy responses are deflated or not as a whole according to kylin.query.endpoint.compression.result,
+     * when the query server asks for a EndpointResultCodec every chunk becomes a self-describing codec block
+     */
+    private static class ChunkEncoder {
+        private final EndpointResultCodec codec;
+        private final boolean compressionResult;
+        private final int minCompressSize;
+        private final double maxCompressRatio;
+
+        ChunkEncoder(CubeVisitProtos.CubeVisitRequest request, KylinConfig kylinConfig) {
+            this.codec = request.hasResultCodec() ? EndpointResultCodec.valueOf(request.getResultCodec()) : null;
+            this.compressionResult = kylinConfig.getCompressionResult();
+            this.minCompressSize = kylinConfig.getQueryEndpointCompressionMinBytes();
+            this.maxCompressRatio = kylinConfig.getQueryEndpointCompressionMaxRatio();
+        }
+
+        byte[] encode(byte[] rows) throws IOException {
+            if (codec != null) {
+                return codec.encodeBlock(rows, 0, rows.length, minCompressSize, maxCompressRatio);
+            }
+            return compressionResult ? CompressionUtils.compress(rows) : rows;
+        }
+    }
+
     @SuppressWarnings("checkstyle:methodlength")
     @Override
     public void visitCube(final RpcController controller, final CubeVisitProtos.CubeVisitRequest request, RpcCallback<CubeVisitProtos.CubeVisitResponse> done) {
@@ -172,7 +207,6 @@ public class CubeVisitService extends CubeVisitProtos.CubeVisitService implement
         HRegion region = null;
 
         StringBuilder sb = new StringBuilder();
-        byte[] allRows;
         String debugGitTag = "";
 
         String queryId = request.hasQueryId() ? request.getQueryId() : "UnknownId";
@@ -286,6 +320,11 @@ public class CubeVisitService extends CubeVisitProtos.CubeVisitService implement
             ByteArrayOutputStream outputStream = new ByteArrayOutputStream(BufferedMeasureCodec.DEFAULT_BUFFER_SIZE);//ByteArrayOutputStream will auto grow
             int finalRowCount = 0;
 
+            // in chunked mode the uncompressed rows never exceed one chunk, each full chunk is compressed right away
+            final ChunkEncoder chunkEncoder = new ChunkEncoder(request, kylinConfig);
+            final int rowsChunkSize = request.hasRowsChunkSize() ? request.getRowsChunkSize() : 0;
+            final List<ByteString> compressedChunks = Lists.newArrayList();
+
             try {
                 for (GTRecord oneRecord : finalScanner) {
 
@@ -304,6 +343,9 @@ public class CubeVisitService extends CubeVisitProtos.CubeVisitService implement
                     }
 
                     outputStream.write(buffer.array(), 0, buffer.position());
+                    if (rowsChunkSize > 0 && outputStream.size() >= rowsChunkSize) {
+                        compressedChunks.add(compressChunk(outputStream, chunkEncoder));
+                    }
 
                     finalRowCount++;
 
@@ -327,19 +369,21 @@ public class CubeVisitService extends CubeVisitProtos.CubeVisitService implement
             appendProfileInfo(sb, "agg done");
 
             //outputStream.close() is not necessary
-            byte[] compressedAllRows;
-            if (scanNormalComplete.booleanValue()) {
-                allRows = outputStream.toByteArray();
-            } else {
-                allRows = new byte[0];
+            if (!scanNormalComplete.booleanValue()) {
+                compressedChunks.clear();
+                outputStream.reset();
             }
-            if (!kylinConfig.getCompressionResult()) {
-                compressedAllRows = allRows;
+            ByteString compressedAllRows;
+            if (rowsChunkSize > 0) {
+                if (outputStream.size() > 0 || compressedChunks.isEmpty()) {
+                    compressedChunks.add(compressChunk(outputStream, chunkEncoder));
+                }
+                compressedAllRows = ByteString.EMPTY;
             } else {
-                compressedAllRows = CompressionUtils.compress(allRows);
+                compressedAllRows = compressChunk(outputStream, chunkEncoder);
             }
 
-            appendProfileInfo(sb, "compress done");
+            appendProfileInfo(sb, "compress done, " + (rowsChunkSize > 0 ? compressedChunks.size() : 1) + " chunks");
 
             OperatingSystemMXBean operatingSystemMXBean = (OperatingSystemMXBean) ManagementFactory.getOperatingSystemMXBean();
             double systemCpuLoad = operatingSystemMXBean.getSystemCpuLoad();
@@ -350,8 +394,12 @@ public class CubeVisitService extends CubeVisitProtos.CubeVisitService implement
             sb.append(" debugGitTag:" + debugGitTag);
 
             CubeVisitProtos.CubeVisitResponse.Builder responseBuilder = CubeVisitProtos.CubeVisitResponse.newBuilder();
+            if (request.hasResultCodec()) {
+                responseBuilder.setResultCodec(request.getResultCodec());
+            }
             done.run(responseBuilder.//
-                    setCompressedRows(HBaseZeroCopyByteString.wrap(compressedAllRows)).//too many array copies 
+                    setCompressedRows(compressedAllRows).//
+                    addAllCompressedRowsChunks(compressedChunks).//
                     setStats(CubeVisitProtos.CubeVisitResponse.Stats.newBuilder().//
                             setAggregatedRowCount(finalScanner.getScannedRowCount() - finalRowCount).//
                             setScannedRowCount(finalScanner.getScannedRowCount()).//
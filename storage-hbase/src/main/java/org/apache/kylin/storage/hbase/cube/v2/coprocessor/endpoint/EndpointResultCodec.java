@@ -0,0 +1,193 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.kylin.storage.hbase.cube.v2.coprocessor.endpoint;
+
+import java.io.IOException;
+import java.util.zip.DataFormatException;
+
+import org.apache.kylin.common.util.Bytes;
+import org.apache.kylin.common.util.CompressionUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.xerial.snappy.Snappy;
+
+import net.jpountz.lz4.LZ4Factory;
+
+/**
+ * Codecs to compress the rows returned by CubeVisitService. The codec is chosen per query by the query server
+ * and sent along with CubeVisitRequest.
+ *
+ * Each compressed block is self-describing: one byte of codec id, four bytes of uncompressed length, then the payload.
+ * The coprocessor falls back to NONE for a block that is too small or hardly compressible, so the decoding side
+ * should never assume the requested codec was used.
+ */
+public enum EndpointResultCodec {
+
+    NONE((byte) 0) {
+        @Override
+        protected byte[] compress(byte[] data, int offset, int length) {
+            byte[] ret = new byte[length];
+            System.arraycopy(data, offset, ret, 0, length);
+            return ret;
+        }
+
+        @Override
+        protected byte[] decompress(byte[] data, int offset, int length, int originalLength) {
+            byte[] ret = new byte[length];
+            System.arraycopy(data, offset, ret, 0, length);
+            return ret;
+        }
+    },
+
+    DEFLATE((byte) 1) {
+        @Override
+        protected byte[] compress(byte[] data, int offset, int length) throws IOException {
+            return CompressionUtils.compress(Bytes.copy(data, offset, length));
+        }
+
+        @Override
+        protected byte[] decompress(byte[] data, int offset, int length, int originalLength) throws IOException {
+            try {
+                return CompressionUtils.decompress(Bytes.copy(data, offset, length));
+            } catch (DataFormatException e) {
+                throw new IOException(e);
+            }
+        }
+    },
+
+    LZ4((byte) 2) {
+        @Override
+        protected byte[] compress(byte[] data, int offset, int length) {
+            return LZ4Factory.fastestInstance().fastCompressor().compress(data, offset, length);
+        }
+
+        @Override
+        protected byte[] decompress(byte[] data, int offset, int length, int originalLength) {
+            return LZ4Factory.fastestInstance().fastDecompressor().decompress(data, offset, originalLength);
+        }
+    },
+
+    SNAPPY((byte) 3) {
+        @Override
+        protected boolean isAvailable() {
+            return SnappyHolder.AVAILABLE;
+        }
+
+        @Override
+        protected byte[] compress(byte[] data, int offset, int length) throws IOException {
+            byte[] buf = new byte[Snappy.maxCompressedLength(length)];
+            int compressedLength = Snappy.compress(data, offset, length, buf, 0);
+            return Bytes.copy(buf, 0, compressedLength);
+        }
+
+        @Override
+        protected byte[] decompress(byte[] data, int offset, int length, int originalLength) throws IOException {
+            byte[] ret = new byte[originalLength];
+            Snappy.uncompress(data, offset, length, ret, 0);
+            return ret;
+        }
+    };
+
+    public static final EndpointResultCodec DEFAULT = LZ4;
+
+    private static final Logger logger = LoggerFactory.getLogger(EndpointResultCodec.class);
+
+    private static final int HEADER_SIZE = 1 + Bytes.SIZEOF_INT;
+
+    // snappy-java loads a native library, which may be missing or unloadable on a region server
+    private static class SnappyHolder {
+        static final boolean AVAILABLE = checkSnappy();
+
+        private static boolean checkSnappy() {
+            try {
+                Snappy.maxCompressedLength(1);
+                return true;
+            } catch (Throwable e) {
+                logger.warn("Snappy is not available, result blocks are not compressed with it", e);
+                return false;
+            }
+        }
+    }
+
+    private final byte id;
+
+    EndpointResultCodec(byte id) {
+        this.id = id;
+    }
+
+    /** Whether this codec can compress here, a block is stored as NONE otherwise. */
+    protected boolean isAvailable() {
+        return true;
+    }
+
+    abstract protected byte[] compress(byte[] data, int offset, int length) throws IOException;
+
+    abstract protected byte[] decompress(byte[] data, int offset, int length, int originalLength) throws IOException;
+
+    /**
+     * Compress data into a self-describing block. NONE is used instead of this codec when length is less
+     * than minCompressSize, when the compressed payload is larger than maxCompressRatio of the original, or when
+     * this codec is not available.
+     */
+    public byte[] encodeBlock(byte[] data, int offset, int length, int minCompressSize, double maxCompressRatio) throws IOException {
+        EndpointResultCodec used = this;
+        byte[] payload = null;
+        if (this != NONE && length >= minCompressSize && isAvailable()) {
+            payload = compress(data, offset, length);
+            if (payload.length > length * maxCompressRatio) {
+                payload = null;
+            }
+        }
+        if (payload == null) {
+            used = NONE;
+        }
+
+        int payloadLength = payload == null ? length : payload.length;
+        byte[] block = new byte[HEADER_SIZE + payloadLength];
+        block[0] = used.id;
+        Bytes.putInt(block, 1, length);
+        if (payload == null) {
+            System.arraycopy(data, offset, block, HEADER_SIZE, length);
+        } else {
+            System.arraycopy(payload, 0, block, HEADER_SIZE, payloadLength);
+        }
+        return block;
+    }
+
+    /**
+     * Decode a block produced by {@link #encodeBlock}, whatever codec it was compressed with.
+     */
+    public static byte[] decodeBlock(byte[] block, int offset, int length) throws IOException {
+        if (length < HEADER_SIZE) {
+            throw new IOException("Corrupted result block of " + length + " bytes");
+        }
+        EndpointResultCodec codec = valueOf(block[offset]);
+        int originalLength = Bytes.toInt(block, offset + 1);
+        return codec.decompress(block, offset + HEADER_SIZE, length - HEADER_SIZE, originalLength);
+    }
+
+    public static EndpointResultCodec valueOf(byte id) {
+        for (EndpointResultCodec codec : values()) {
+            if (codec.id == id) {
+                return codec;
+            }
+        }
+        throw new IllegalArgumentException("Unknown result codec id " + id);
+    }
+}
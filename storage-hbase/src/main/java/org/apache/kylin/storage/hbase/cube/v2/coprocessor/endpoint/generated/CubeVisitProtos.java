@@ -107,6 +107,51 @@ public final class CubeVisitProtos {
      */
     com.google.protobuf.ByteString
         getQueryIdBytes();
+
+    // optional int32 rowsChunkSize = 7;
+    /**
+     * <code>optional int32 rowsChunkSize = 7;</code>
+     *
+     * <pre>
+     * when set, rows are returned in chunks of about this many bytes each
+     * </pre>
+     */
+    boolean hasRowsChunkSize();
+    /**
+     * <code>optional int32 rowsChunkSize = 7;</code>
+     *
+     * <pre>
+     * when set, rows are returned in chunks of about this many bytes each
+     * </pre>
+     */
+    int getRowsChunkSize();
+
+    // optional string resultCodec = 8;
+    /**
+     * <code>optional string resultCodec = 8;</code>
+     *
+     * <pre>
+     * name of EndpointResultCodec, when set each chunk is a self-describing codec block
+     * </pre>
+     */
+    boolean hasResultCodec();
+    /**
+     * <code>optional string resultCodec = 8;</code>
+     *
+     * <pre>
+     * name of EndpointResultCodec, when set each chunk is a self-describing codec block
+     * </pre>
+     */
+    java.lang.String getResultCodec();
+    /**
+     * <code>optional string resultCodec = 8;</code>
+     *
+     * <pre>
+     * name of EndpointResultCodec, when set each chunk is a self-describing codec block
+     * </pre>
+     */
+    com.google.protobuf.ByteString
+        getResultCodecBytes();
   }
   /**
    * Protobuf type {@code CubeVisitRequest}
@@ -192,6 +237,16 @@ public final class CubeVisitProtos {
               queryId_ = input.readBytes();
               break;
             }
+            case 56: {
+              bitField0_ |= 0x00000020;
+              rowsChunkSize_ = input.readInt32();
+              break;
+            }
+            case 66: {
+              bitField0_ |= 0x00000040;
+              resultCodec_ = input.readBytes();
+              break;
+            }
           }
         }
       } catch (com.google.protobuf.InvalidProtocolBufferException e) {
@@ -921,6 +976,85 @@ public final class CubeVisitProtos {
       }
     }
 
+    // optional int32 rowsChunkSize = 7;
+    public static final int ROWSCHUNKSIZE_FIELD_NUMBER = 7;
+    private int rowsChunkSize_;
+    /**
+     * <code>optional int32 rowsChunkSize = 7;</code>
+     *
+     * <pre>
+     * when set, rows are returned in chunks of about this many bytes each
+     * </pre>
+     */
+    public boolean hasRowsChunkSize() {
+      return ((bitField0_ & 0x00000020) == 0x00000020);
+    }
+    /**
+     * <code>optional int32 rowsChunkSize = 7;</code>
+     *
+     * <pre>
+     * when set, rows are returned in chunks of about this many bytes each
+     * </pre>
+     */
+    public int getRowsChunkSize() {
+      return rowsChunkSize_;
+    }
+
+    // optional string resultCodec = 8;
+    public static final int RESULTCODEC_FIELD_NUMBER = 8;
+    private java.lang.Object resultCodec_;
+    /**
+     * <code>optional string resultCodec = 8;</code>
+     *
+     * <pre>
+     * name of EndpointResultCodec, when set each chunk is a self-describing codec block
+     * </pre>
+     */
+    public boolean hasResultCodec() {
+      return ((bitField0_ & 0x00000040) == 0x00000040);
+    }
+    /**
+     * <code>optional string resultCodec = 8;</code>
+     *
+     * <pre>
+     * name of EndpointResultCodec, when set each chunk is a self-describing codec block
+     * </pre>
+     */
+    public java.lang.String getResultCodec() {
+      java.lang.Object ref = resultCodec_;
+      if (ref instanceof java.lang.String) {
+        return (java.lang.String) ref;
+      } else {
+        com.google.protobuf.ByteString bs = 
+            (com.google.protobuf.ByteString) ref;
+        java.lang.String s = bs.toStringUtf8();
+        if (bs.isValidUtf8()) {
+          resultCodec_ = s;
+        }
+        return s;
+      }
+    }
+    /**
+     * <code>optional string resultCodec = 8;</code>
+     *
+     * <pre>
+     * name of EndpointResultCodec, when set each chunk is a self-describing codec block
+     * </pre>
+     */
+    public com.google.protobuf.ByteString
+        getResultCodecBytes() {
+      java.lang.Object ref = resultCodec_;
+      if (ref instanceof java.lang.String) {
+        com.google.protobuf.ByteString b = 
+            com.google.protobuf.ByteString.copyFromUtf8(
+                (java.lang.String) ref);
+        resultCodec_ = b;
+        return b;
+      } else {
+        return (com.google.protobuf.ByteString) ref;
+      }
+    }
+
     private void initFields() {
       gtScanRequest_ = com.google.protobuf.ByteString.EMPTY;
       hbaseRawScan_ = com.google.protobuf.ByteString.EMPTY;
@@ -928,6 +1062,8 @@ public final class CubeVisitProtos {
       hbaseColumnsToGT_ = java.util.Collections.emptyList();
       kylinProperties_ = "";
       queryId_ = "";
+      rowsChunkSize_ = 0;
+      resultCodec_ = "";
     }
     private byte memoizedIsInitialized = -1;
     public final boolean isInitialized() {
@@ -975,6 +1111,12 @@ public final class CubeVisitProtos {
       if (((bitField0_ & 0x00000010) == 0x00000010)) {
         output.writeBytes(6, getQueryIdBytes());
       }
+      if (((bitField0_ & 0x00000020) == 0x00000020)) {
+        output.writeInt32(7, rowsChunkSize_);
+      }
+      if (((bitField0_ & 0x00000040) == 0x00000040)) {
+        output.writeBytes(8, getResultCodecBytes());
+      }
       getUnknownFields().writeTo(output);
     }
 
@@ -1008,6 +1150,14 @@ public final class CubeVisitProtos {
         size += com.google.protobuf.CodedOutputStream
           .computeBytesSize(6, getQueryIdBytes());
       }
+      if (((bitField0_ & 0x00000020) == 0x00000020)) {
+        size += com.google.protobuf.CodedOutputStream
+          .computeInt32Size(7, rowsChunkSize_);
+      }
+      if (((bitField0_ & 0x00000040) == 0x00000040)) {
+        size += com.google.protobuf.CodedOutputStream
+          .computeBytesSize(8, getResultCodecBytes());
+      }
       size += getUnknownFields().getSerializedSize();
       memoizedSerializedSize = size;
       return size;
@@ -1058,6 +1208,16 @@ public final class CubeVisitProtos {
         result = result && getQueryId()
             .equals(other.getQueryId());
       }
+      result = result && (hasRowsChunkSize() == other.hasRowsChunkSize());
+      if (hasRowsChunkSize()) {
+        result = result && (getRowsChunkSize()
+            == other.getRowsChunkSize());
+      }
+      result = result && (hasResultCodec() == other.hasResultCodec());
+      if (hasResultCodec()) {
+        result = result && getResultCodec()
+            .equals(other.getResultCodec());
+      }
       result = result &&
           getUnknownFields().equals(other.getUnknownFields());
       return result;
@@ -1095,6 +1255,14 @@ public final class CubeVisitProtos {
         hash = (37 * hash) + QUERYID_FIELD_NUMBER;
         hash = (53 * hash) + getQueryId().hashCode();
       }
+      if (hasRowsChunkSize()) {
+        hash = (37 * hash) + ROWSCHUNKSIZE_FIELD_NUMBER;
+        hash = (53 * hash) + getRowsChunkSize();
+      }
+      if (hasResultCodec()) {
+        hash = (37 * hash) + RESULTCODEC_FIELD_NUMBER;
+        hash = (53 * hash) + getResultCodec().hashCode();
+      }
       hash = (29 * hash) + getUnknownFields().hashCode();
       memoizedHashCode = hash;
       return hash;
@@ -1221,6 +1389,10 @@ public final class CubeVisitProtos {
         bitField0_ = (bitField0_ & ~0x00000010);
         queryId_ = "";
         bitField0_ = (bitField0_ & ~0x00000020);
+        rowsChunkSize_ = 0;
+        bitField0_ = (bitField0_ & ~0x00000040);
+        resultCodec_ = "";
+        bitField0_ = (bitField0_ & ~0x00000080);
         return this;
       }
 
@@ -1278,6 +1450,14 @@ public final class CubeVisitProtos {
           to_bitField0_ |= 0x00000010;
         }
         result.queryId_ = queryId_;
+        if (((from_bitField0_ & 0x00000040) == 0x00000040)) {
+          to_bitField0_ |= 0x00000020;
+        }
+        result.rowsChunkSize_ = rowsChunkSize_;
+        if (((from_bitField0_ & 0x00000080) == 0x00000080)) {
+          to_bitField0_ |= 0x00000040;
+        }
+        result.resultCodec_ = resultCodec_;
         result.bitField0_ = to_bitField0_;
         onBuilt();
         return result;
@@ -1339,6 +1519,14 @@ public final class CubeVisitProtos {
           queryId_ = other.queryId_;
           onChanged();
         }
+        if (other.hasRowsChunkSize()) {
+          setRowsChunkSize(other.getRowsChunkSize());
+        }
+        if (other.hasResultCodec()) {
+          bitField0_ |= 0x00000080;
+          resultCodec_ = other.resultCodec_;
+          onChanged();
+        }
         this.mergeUnknownFields(other.getUnknownFields());
         return this;
       }
@@ -1899,6 +2087,153 @@ public final class CubeVisitProtos {
         return this;
       }
 
+      // optional int32 rowsChunkSize = 7;
+      private int rowsChunkSize_ ;
+      /**
+       * <code>optional int32 rowsChunkSize = 7;</code>
+       *
+       * <pre>
+       * when set, rows are returned in chunks of about this many bytes each
+       * </pre>
+       */
+      public boolean hasRowsChunkSize() {
+        return ((bitField0_ & 0x00000040) == 0x00000040);
+      }
+      /**
+       * <code>optional int32 rowsChunkSize = 7;</code>
+       *
+       * <pre>
+       * when set, rows are returned in chunks of about this many bytes each
+       * </pre>
+       */
+      public int getRowsChunkSize() {
+        return rowsChunkSize_;
+      }
+      /**
+       * <code>optional int32 rowsChunkSize = 7;</code>
+       *
+       * <pre>
+       * when set, rows are returned in chunks of about this many bytes each
+       * </pre>
+       */
+      public Builder setRowsChunkSize(int value) {
+        bitField0_ |= 0x00000040;
+        rowsChunkSize_ = value;
+        onChanged();
+        return this;
+      }
+      /**
+       * <code>optional int32 rowsChunkSize = 7;</code>
+       *
+       * <pre>
+       * when set, rows are returned in chunks of about this many bytes each
+       * </pre>
+       */
+      public Builder clearRowsChunkSize() {
+        bitField0_ = (bitField0_ & ~0x00000040);
+        rowsChunkSize_ = 0;
+        onChanged();
+        return this;
+      }
+
+      // optional string resultCodec = 8;
+      private java.lang.Object resultCodec_ = "";
+      /**
+       * <code>optional string resultCodec = 8;</code>
+       *
+       * <pre>
+       * name of EndpointResultCodec, when set each chunk is a self-describing codec block
+       * </pre>
+       */
+      public boolean hasResultCodec() {
+        return ((bitField0_ & 0x00000080) == 0x00000080);
+      }
+      /**
+       * <code>optional string resultCodec = 8;</code>
+       *
+       * <pre>
+       * name of EndpointResultCodec, when set each chunk is a self-describing codec block
+       * </pre>
+       */
+      public java.lang.String getResultCodec() {
+        java.lang.Object ref = resultCodec_;
+        if (!(ref instanceof java.lang.String)) {
+          java.lang.String s = ((com.google.protobuf.ByteString) ref)
+              .toStringUtf8();
+          resultCodec_ = s;
+          return s;
+        } else {
+          return (java.lang.String) ref;
+        }
+      }
+      /**
+       * <code>optional string resultCodec = 8;</code>
+       *
+       * <pre>
+       * name of EndpointResultCodec, when set each chunk is a self-describing codec block
+       * </pre>
+       */
+      public com.google.protobuf.ByteString
+          getResultCodecBytes() {
+        java.lang.Object ref = resultCodec_;
+        if (ref instanceof String) {
+          com.google.protobuf.ByteString b = 
+              com.google.protobuf.ByteString.copyFromUtf8(
+                  (java.lang.String) ref);
+          resultCodec_ = b;
+          return b;
+        } else {
+          return (com.google.protobuf.ByteString) ref;
+        }
+      }
+      /**
+       * <code>optional string resultCodec = 8;</code>
+       *
+       * <pre>
+       * name of EndpointResultCodec, when set each chunk is a self-describing codec block
+       * </pre>
+       */
+      public Builder setResultCodec(
+          java.lang.String value) {
+        if (value == null) {
+    throw new NullPointerException();
+  }
+  bitField0_ |= 0x00000080;
+        resultCodec_ = value;
+        onChanged();
+        return this;
+      }
+      /**
+       * <code>optional string resultCodec = 8;</code>
+       *
+       * <pre>
+       * name of EndpointResultCodec, when set each chunk is a self-describing codec block
+       * </pre>
+       */
+      public Builder clearResultCodec() {
+        bitField0_ = (bitField0_ & ~0x00000080);
+        resultCodec_ = getDefaultInstance().getResultCodec();
+        onChanged();
+        return this;
+      }
+      /**
+       * <code>optional string resultCodec = 8;</code>
+       *
+       * <pre>
+       * name of EndpointResultCodec, when set each chunk is a self-describing codec block
+       * </pre>
+       */
+      public Builder setResultCodecBytes(
+          com.google.protobuf.ByteString value) {
+        if (value == null) {
+    throw new NullPointerException();
+  }
+  bitField0_ |= 0x00000080;
+        resultCodec_ = value;
+        onChanged();
+        return this;
+      }
+
       // @@protoc_insertion_point(builder_scope:CubeVisitRequest)
     }
 
@@ -1936,6 +2271,59 @@ public final class CubeVisitProtos {
      * <code>required .CubeVisitResponse.Stats stats = 2;</code>
      */
     org.apache.kylin.storage.hbase.cube.v2.coprocessor.endpoint.generated.CubeVisitProtos.CubeVisitResponse.StatsOrBuilder getStatsOrBuilder();
+
+    // repeated bytes compressedRowsChunks = 3;
+    /**
+     * <code>repeated bytes compressedRowsChunks = 3;</code>
+     *
+     * <pre>
+     * used instead of compressedRows when rowsChunkSize is requested
+     * </pre>
+     */
+    java.util.List<com.google.protobuf.ByteString> getCompressedRowsChunksList();
+    /**
+     * <code>repeated bytes compressedRowsChunks = 3;</code>
+     *
+     * <pre>
+     * used instead of compressedRows when rowsChunkSize is requested
+     * </pre>
+     */
+    int getCompressedRowsChunksCount();
+    /**
+     * <code>repeated bytes compressedRowsChunks = 3;</code>
+     *
+     * <pre>
+     * used instead of compressedRows when rowsChunkSize is requested
+     * </pre>
+     */
+    com.google.protobuf.ByteString getCompressedRowsChunks(int index);
+
+    // optional string resultCodec = 4;
+    /**
+     * <code>optional string resultCodec = 4;</code>
+     *
+     * <pre>
+     * echoed when the requested resultCodec is honored
+     * </pre>
+     */
+    boolean hasResultCodec();
+    /**
+     * <code>optional string resultCodec = 4;</code>
+     *
+     * <pre>
+     * echoed when the requested resultCodec is honored
+     * </pre>
+     */
+    java.lang.String getResultCodec();
+    /**
+     * <code>optional string resultCodec = 4;</code>
+     *
+     * <pre>
+     * echoed when the requested resultCodec is honored
+     * </pre>
+     */
+    com.google.protobuf.ByteString
+        getResultCodecBytes();
   }
   /**
    * Protobuf type {@code CubeVisitResponse}
@@ -2006,6 +2394,19 @@ public final class CubeVisitProtos {
               bitField0_ |= 0x00000002;
               break;
             }
+            case 26: {
+              if (!((mutable_bitField0_ & 0x00000004) == 0x00000004)) {
+                compressedRowsChunks_ = new java.util.ArrayList<com.google.protobuf.ByteString>();
+                mutable_bitField0_ |= 0x00000004;
+              }
+              compressedRowsChunks_.add(input.readBytes());
+              break;
+            }
+            case 34: {
+              bitField0_ |= 0x00000004;
+              resultCodec_ = input.readBytes();
+              break;
+            }
           }
         }
       } catch (com.google.protobuf.InvalidProtocolBufferException e) {
@@ -2014,6 +2415,9 @@ public final class CubeVisitProtos {
         throw new com.google.protobuf.InvalidProtocolBufferException(
             e.getMessage()).setUnfinishedMessage(this);
       } finally {
+        if (((mutable_bitField0_ & 0x00000004) == 0x00000004)) {
+          compressedRowsChunks_ = java.util.Collections.unmodifiableList(compressedRowsChunks_);
+        }
         this.unknownFields = unknownFields.build();
         makeExtensionsImmutable();
       }
@@ -3510,9 +3914,101 @@ public final class CubeVisitProtos {
       return stats_;
     }
 
+    // repeated bytes compressedRowsChunks = 3;
+    public static final int COMPRESSEDROWSCHUNKS_FIELD_NUMBER = 3;
+    private java.util.List<com.google.protobuf.ByteString> compressedRowsChunks_;
+    /**
+     * <code>repeated bytes compressedRowsChunks = 3;</code>
+     *
+     * <pre>
+     * used instead of compressedRows when rowsChunkSize is requested
+     * </pre>
+     */
+    public java.util.List<com.google.protobuf.ByteString>
+        getCompressedRowsChunksList() {
+      return compressedRowsChunks_;
+    }
+    /**
+     * <code>repeated bytes compressedRowsChunks = 3;</code>
+     *
+     * <pre>
+     * used instead of compressedRows when rowsChunkSize is requested
+     * </pre>
+     */
+    public int getCompressedRowsChunksCount() {
+      return compressedRowsChunks_.size();
+    }
+    /**
+     * <code>repeated bytes compressedRowsChunks = 3;</code>
+     *
+     * <pre>
+     * used instead of compressedRows when rowsChunkSize is requested
+     * </pre>
+     */
+    public com.google.protobuf.ByteString getCompressedRowsChunks(int index) {
+      return compressedRowsChunks_.get(index);
+    }
+
+    // optional string resultCodec = 4;
+    public static final int RESULTCODEC_FIELD_NUMBER = 4;
+    private java.lang.Object resultCodec_;
+    /**
+     * <code>optional string resultCodec = 4;</code>
+     *
+     * <pre>
+     * echoed when the requested resultCodec is honored
+     * </pre>
+     */
+    public boolean hasResultCodec() {
+      return ((bitField0_ & 0x00000004) == 0x00000004);
+    }
+    /**
+     * <code>optional string resultCodec = 4;</code>
+     *
+     * <pre>
+     * echoed when the requested resultCodec is honored
+     * </pre>
+     */
+    public java.lang.String getResultCodec() {
+      java.lang.Object ref = resultCodec_;
+      if (ref instanceof java.lang.String) {
+        return (java.lang.String) ref;
+      } else {
+        com.google.protobuf.ByteString bs = 
+            (com.google.protobuf.ByteString) ref;
+        java.lang.String s = bs.toStringUtf8();
+        if (bs.isValidUtf8()) {
+          resultCodec_ = s;
+        }
+        return s;
+      }
+    }
+    /**
+     * <code>optional string resultCodec = 4;</code>
+     *
+     * <pre>
+     * echoed when the requested resultCodec is honored
+     * </pre>
+     */
+    public com.google.protobuf.ByteString
+        getResultCodecBytes() {
+      java.lang.Object ref = resultCodec_;
+      if (ref instanceof java.lang.String) {
+        com.google.protobuf.ByteString b = 
+            com.google.protobuf.ByteString.copyFromUtf8(
+                (java.lang.String) ref);
+        resultCodec_ = b;
+        return b;
+      } else {
+        return (com.google.protobuf.ByteString) ref;
+      }
+    }
+
     private void initFields() {
       compressedRows_ = com.google.protobuf.ByteString.EMPTY;
       stats_ = org.apache.kylin.storage.hbase.cube.v2.coprocessor.endpoint.generated.CubeVisitProtos.CubeVisitResponse.Stats.getDefaultInstance();
+      compressedRowsChunks_ = java.util.Collections.emptyList();
+      resultCodec_ = "";
     }
     private byte memoizedIsInitialized = -1;
     public final boolean isInitialized() {
@@ -3540,6 +4036,12 @@ public final class CubeVisitProtos {
       if (((bitField0_ & 0x00000002) == 0x00000002)) {
         output.writeMessage(2, stats_);
       }
+      for (int i = 0; i < compressedRowsChunks_.size(); i++) {
+        output.writeBytes(3, compressedRowsChunks_.get(i));
+      }
+      if (((bitField0_ & 0x00000004) == 0x00000004)) {
+        output.writeBytes(4, getResultCodecBytes());
+      }
       getUnknownFields().writeTo(output);
     }
 
@@ -3557,6 +4059,19 @@ public final class CubeVisitProtos {
         size += com.google.protobuf.CodedOutputStream
           .computeMessageSize(2, stats_);
       }
+      {
+        int dataSize = 0;
+        for (int i = 0; i < compressedRowsChunks_.size(); i++) {
+          dataSize += com.google.protobuf.CodedOutputStream
+            .computeBytesSizeNoTag(compressedRowsChunks_.get(i));
+        }
+        size += dataSize;
+        size += 1 * getCompressedRowsChunksList().size();
+      }
+      if (((bitField0_ & 0x00000004) == 0x00000004)) {
+        size += com.google.protobuf.CodedOutputStream
+          .computeBytesSize(4, getResultCodecBytes());
+      }
       size += getUnknownFields().getSerializedSize();
       memoizedSerializedSize = size;
       return size;
@@ -3590,6 +4105,13 @@ public final class CubeVisitProtos {
         result = result && getStats()
             .equals(other.getStats());
       }
+      result = result && getCompressedRowsChunksList()
+          .equals(other.getCompressedRowsChunksList());
+      result = result && (hasResultCodec() == other.hasResultCodec());
+      if (hasResultCodec()) {
+        result = result && getResultCodec()
+            .equals(other.getResultCodec());
+      }
       result = result &&
           getUnknownFields().equals(other.getUnknownFields());
       return result;
@@ -3611,6 +4133,14 @@ public final class CubeVisitProtos {
         hash = (37 * hash) + STATS_FIELD_NUMBER;
         hash = (53 * hash) + getStats().hashCode();
       }
+      if (getCompressedRowsChunksCount() > 0) {
+        hash = (37 * hash) + COMPRESSEDROWSCHUNKS_FIELD_NUMBER;
+        hash = (53 * hash) + getCompressedRowsChunksList().hashCode();
+      }
+      if (hasResultCodec()) {
+        hash = (37 * hash) + RESULTCODEC_FIELD_NUMBER;
+        hash = (53 * hash) + getResultCodec().hashCode();
+      }
       hash = (29 * hash) + getUnknownFields().hashCode();
       memoizedHashCode = hash;
       return hash;
@@ -3729,6 +4259,10 @@ public final class CubeVisitProtos {
           statsBuilder_.clear();
         }
         bitField0_ = (bitField0_ & ~0x00000002);
+        compressedRowsChunks_ = java.util.Collections.emptyList();
+        bitField0_ = (bitField0_ & ~0x00000004);
+        resultCodec_ = "";
+        bitField0_ = (bitField0_ & ~0x00000008);
         return this;
       }
 
@@ -3769,6 +4303,15 @@ public final class CubeVisitProtos {
         } else {
           result.stats_ = statsBuilder_.build();
         }
+        if (((bitField0_ & 0x00000004) == 0x00000004)) {
+          compressedRowsChunks_ = java.util.Collections.unmodifiableList(compressedRowsChunks_);
+          bitField0_ = (bitField0_ & ~0x00000004);
+        }
+        result.compressedRowsChunks_ = compressedRowsChunks_;
+        if (((from_bitField0_ & 0x00000008) == 0x00000008)) {
+          to_bitField0_ |= 0x00000004;
+        }
+        result.resultCodec_ = resultCodec_;
         result.bitField0_ = to_bitField0_;
         onBuilt();
         return result;
@@ -3791,6 +4334,21 @@ public final class CubeVisitProtos {
         if (other.hasStats()) {
           mergeStats(other.getStats());
         }
+        if (!other.compressedRowsChunks_.isEmpty()) {
+          if (compressedRowsChunks_.isEmpty()) {
+            compressedRowsChunks_ = other.compressedRowsChunks_;
+            bitField0_ = (bitField0_ & ~0x00000004);
+          } else {
+            ensureCompressedRowsChunksIsMutable();
+            compressedRowsChunks_.addAll(other.compressedRowsChunks_);
+          }
+          onChanged();
+        }
+        if (other.hasResultCodec()) {
+          bitField0_ |= 0x00000008;
+          resultCodec_ = other.resultCodec_;
+          onChanged();
+        }
         this.mergeUnknownFields(other.getUnknownFields());
         return this;
       }
@@ -3979,6 +4537,204 @@ public final class CubeVisitProtos {
         return statsBuilder_;
       }
 
+      // repeated bytes compressedRowsChunks = 3;
+      private java.util.List<com.google.protobuf.ByteString> compressedRowsChunks_ = java.util.Collections.emptyList();
+      private void ensureCompressedRowsChunksIsMutable() {
+        if (!((bitField0_ & 0x00000004) == 0x00000004)) {
+          compressedRowsChunks_ = new java.util.ArrayList<com.google.protobuf.ByteString>(compressedRowsChunks_);
+          bitField0_ |= 0x00000004;
+         }
+      }
+      /**
+       * <code>repeated bytes compressedRowsChunks = 3;</code>
+       *
+       * <pre>
+       * used instead of compressedRows when rowsChunkSize is requested
+       * </pre>
+       */
+      public java.util.List<com.google.protobuf.ByteString>
+          getCompressedRowsChunksList() {
+        return java.util.Collections.unmodifiableList(compressedRowsChunks_);
+      }
+      /**
+       * <code>repeated bytes compressedRowsChunks = 3;</code>
+       *
+       * <pre>
+       * used instead of compressedRows when rowsChunkSize is requested
+       * </pre>
+       */
+      public int getCompressedRowsChunksCount() {
+        return compressedRowsChunks_.size();
+      }
+      /**
+       * <code>repeated bytes compressedRowsChunks = 3;</code>
+       *
+       * <pre>
+       * used instead of compressedRows when rowsChunkSize is requested
+       * </pre>
+       */
+      public com.google.protobuf.ByteString getCompressedRowsChunks(int index) {
+        return compressedRowsChunks_.get(index);
+      }
+      /**
+       * <code>repeated bytes compressedRowsChunks = 3;</code>
+       *
+       * <pre>
+       * used instead of compressedRows when rowsChunkSize is requested
+       * </pre>
+       */
+      public Builder setCompressedRowsChunks(
+          int index, com.google.protobuf.ByteString value) {
+        if (value == null) {
+    throw new NullPointerException();
+  }
+  ensureCompressedRowsChunksIsMutable();
+        compressedRowsChunks_.set(index, value);
+        onChanged();
+        return this;
+      }
+      /**
+       * <code>repeated bytes compressedRowsChunks = 3;</code>
+       *
+       * <pre>
+       * used instead of compressedRows when rowsChunkSize is requested
+       * </pre>
+       */
+      public Builder addCompressedRowsChunks(com.google.protobuf.ByteString value) {
+        if (value == null) {
+    throw new NullPointerException();
+  }
+  ensureCompressedRowsChunksIsMutable();
+        compressedRowsChunks_.add(value);
+        onChanged();
+        return this;
+      }
+      /**
+       * <code>repeated bytes compressedRowsChunks = 3;</code>
+       *
+       * <pre>
+       * used instead of compressedRows when rowsChunkSize is requested
+       * </pre>
+       */
+      public Builder addAllCompressedRowsChunks(
+          java.lang.Iterable<? extends com.google.protobuf.ByteString> values) {
+        ensureCompressedRowsChunksIsMutable();
+        super.addAll(values, compressedRowsChunks_);
+        onChanged();
+        return this;
+      }
+      /**
+       * <code>repeated bytes compressedRowsChunks = 3;</code>
+       *
+       * <pre>
+       * used instead of compressedRows when rowsChunkSize is requested
+       * </pre>
+       */
+      public Builder clearCompressedRowsChunks() {
+        compressedRowsChunks_ = java.util.Collections.emptyList();
+        bitField0_ = (bitField0_ & ~0x00000004);
+        onChanged();
+        return this;
+      }
+
+      // optional string resultCodec = 4;
+      private java.lang.Object resultCodec_ = "";
+      /**
+       * <code>optional string resultCodec = 4;</code>
+       *
+       * <pre>
+       * echoed when the requested resultCodec is honored
+       * </pre>
+       */
+      public boolean hasResultCodec() {
+        return ((bitField0_ & 0x00000008) == 0x00000008);
+      }
+      /**
+       * <code>optional string resultCodec = 4;</code>
+       *
+       * <pre>
+       * echoed when the requested resultCodec is honored
+       * </pre>
+       */
+      public java.lang.String getResultCodec() {
+        java.lang.Object ref = resultCodec_;
+        if (!(ref instanceof java.lang.String)) {
+          java.lang.String s = ((com.google.protobuf.ByteString) ref)
+              .toStringUtf8();
+          resultCodec_ = s;
+          return s;
+        } else {
+          return (java.lang.String) ref;
+        }
+      }
+      /**
+       * <code>optional string resultCodec = 4;</code>
+       *
+       * <pre>
+       * echoed when the requested resultCodec is honored
+       * </pre>
+       */
+      public com.google.protobuf.ByteString
+          getResultCodecBytes() {
+        java.lang.Object ref = resultCodec_;
+        if (ref instanceof String) {
+          com.google.protobuf.ByteString b = 
+              com.google.protobuf.ByteString.copyFromUtf8(
+                  (java.lang.String) ref);
+          resultCodec_ = b;
+          return b;
+        } else {
+          return (com.google.protobuf.ByteString) ref;
+        }
+      }
+      /**
+       * <code>optional string resultCodec = 4;</code>
+       *
+       * <pre>
+       * echoed when the requested resultCodec is honored
+       * </pre>
+       */
+      public Builder setResultCodec(
+          java.lang.String value) {
+        if (value == null) {
+    throw new NullPointerException();
+  }
+  bitField0_ |= 0x00000008;
+        resultCodec_ = value;
+        onChanged();
+        return this;
+      }
+      /**
+       * <code>optional string resultCodec = 4;</code>
+       *
+       * <pre>
+       * echoed when the requested resultCodec is honored
+       * </pre>
+       */
+      public Builder clearResultCodec() {
+        bitField0_ = (bitField0_ & ~0x00000008);
+        resultCodec_ = getDefaultInstance().getResultCodec();
+        onChanged();
+        return this;
+      }
+      /**
+       * <code>optional string resultCodec = 4;</code>
+       *
+       * <pre>
+       * echoed when the requested resultCodec is honored
+       * </pre>
+       */
+      public Builder setResultCodecBytes(
+          com.google.protobuf.ByteString value) {
+        if (value == null) {
+    throw new NullPointerException();
+  }
+  bitField0_ |= 0x00000008;
+        resultCodec_ = value;
+        onChanged();
+        return this;
+      }
+
       // @@protoc_insertion_point(builder_scope:CubeVisitResponse)
     }
 
@@ -4253,25 +5009,28 @@ public final class CubeVisitProtos {
     java.lang.String[] descriptorData = {
       "\npstorage-hbase/src/main/java/org/apache" +
       "/kylin/storage/hbase/cube/v2/coprocessor" +
-      "/endpoint/protobuf/CubeVisit.proto\"\323\001\n\020C" +
+      "/endpoint/protobuf/CubeVisit.proto\"\377\001\n\020C" +
       "ubeVisitRequest\022\025\n\rgtScanRequest\030\001 \002(\014\022\024" +
       "\n\014hbaseRawScan\030\002 \002(\014\022\032\n\022rowkeyPreambleSi" +
       "ze\030\003 \002(\005\0223\n\020hbaseColumnsToGT\030\004 \003(\0132\031.Cub" +
       "eVisitRequest.IntList\022\027\n\017kylinProperties" +
-      "\030\005 \002(\t\022\017\n\007queryId\030\006 \001(\t\032\027\n\007IntList\022\014\n\004in" +
-      "ts\030\001 \003(\005\"\321\002\n\021CubeVisitResponse\022\026\n\016compre" +
-      "ssedRows\030\001 \002(\014\022\'\n\005stats\030\002 \002(\0132\030.CubeVisi",
-      "tResponse.Stats\032\372\001\n\005Stats\022\030\n\020serviceStar" +
-      "tTime\030\001 \001(\003\022\026\n\016serviceEndTime\030\002 \001(\003\022\027\n\017s" +
-      "cannedRowCount\030\003 \001(\003\022\032\n\022aggregatedRowCou" +
-      "nt\030\004 \001(\003\022\025\n\rsystemCpuLoad\030\005 \001(\001\022\036\n\026freeP" +
-      "hysicalMemorySize\030\006 \001(\001\022\031\n\021freeSwapSpace" +
-      "Size\030\007 \001(\001\022\020\n\010hostname\030\010 \001(\t\022\016\n\006etcMsg\030\t" +
-      " \001(\t\022\026\n\016normalComplete\030\n \001(\0052F\n\020CubeVisi" +
-      "tService\0222\n\tvisitCube\022\021.CubeVisitRequest" +
-      "\032\022.CubeVisitResponseB`\nEorg.apache.kylin" +
-      ".storage.hbase.cube.v2.coprocessor.endpo",
-      "int.generatedB\017CubeVisitProtosH\001\210\001\001\240\001\001"
+      "\030\005 \002(\t\022\017\n\007queryId\030\006 \001(\t\022\025\n\rrowsChunkSize" +
+      "\030\007 \001(\005\022\023\n\013resultCodec\030\010 \001(\t\032\027\n\007IntList\022\014" +
+      "\n\004ints\030\001 \003(\005\"\204\003\n\021CubeVisitResponse\022\026\n\016co",
+      "mpressedRows\030\001 \002(\014\022\'\n\005stats\030\002 \002(\0132\030.Cube" +
+      "VisitResponse.Stats\022\034\n\024compressedRowsChu" +
+      "nks\030\003 \003(\014\022\023\n\013resultCodec\030\004 \001(\t\032\372\001\n\005Stats" +
+      "\022\030\n\020serviceStartTime\030\001 \001(\003\022\026\n\016serviceEnd" +
+      "Time\030\002 \001(\003\022\027\n\017scannedRowCount\030\003 \001(\003\022\032\n\022a" +
+      "ggregatedRowCount\030\004 \001(\003\022\025\n\rsystemCpuLoad" +
+      "\030\005 \001(\001\022\036\n\026freePhysicalMemorySize\030\006 \001(\001\022\031" +
+      "\n\021freeSwapSpaceSize\030\007 \001(\001\022\020\n\010hostname\030\010 " +
+      "\001(\t\022\016\n\006etcMsg\030\t \001(\t\022\026\n\016normalComplete\030\n " +
+      "\001(\0052F\n\020CubeVisitService\0222\n\tvisitCube\022\021.C",
+      "ubeVisitRequest\032\022.CubeVisitResponseB`\nEo" +
+      "rg.apache.kylin.storage.hbase.cube.v2.co" +
+      "processor.endpoint.generatedB\017CubeVisitP" +
+      "rotosH\001\210\001\001\240\001\001"
     };
     com.google.protobuf.Descriptors.FileDescriptor.InternalDescriptorAssigner assigner =
       new com.google.protobuf.Descriptors.FileDescriptor.InternalDescriptorAssigner() {
@@ -4283,7 +5042,7 @@ public final class CubeVisitProtos {
           internal_static_CubeVisitRequest_fieldAccessorTable = new
             com.google.protobuf.GeneratedMessage.FieldAccessorTable(
               internal_static_CubeVisitRequest_descriptor,
-              new java.lang.String[] { "GtScanRequest", "HbaseRawScan", "RowkeyPreambleSize", "HbaseColumnsToGT", "KylinProperties", "QueryId", });
+              new java.lang.String[] { "GtScanRequest", "HbaseRawScan", "RowkeyPreambleSize", "HbaseColumnsToGT", "KylinProperties", "QueryId", "RowsChunkSize", "ResultCodec", });
           internal_static_CubeVisitRequest_IntList_descriptor =
             internal_static_CubeVisitRequest_descriptor.getNestedTypes().get(0);
           internal_static_CubeVisitRequest_IntList_fieldAccessorTable = new
@@ -4295,7 +5054,7 @@ public final class CubeVisitProtos {
           internal_static_CubeVisitResponse_fieldAccessorTable = new
             com.google.protobuf.GeneratedMessage.FieldAccessorTable(
               internal_static_CubeVisitResponse_descriptor,
-              new java.lang.String[] { "CompressedRows", "Stats", });
+              new java.lang.String[] { "CompressedRows", "Stats", "CompressedRowsChunks", "ResultCodec", });
           internal_static_CubeVisitResponse_Stats_descriptor =
             internal_static_CubeVisitResponse_descriptor.getNestedTypes().get(0);
           internal_static_CubeVisitResponse_Stats_fieldAccessorTable = new
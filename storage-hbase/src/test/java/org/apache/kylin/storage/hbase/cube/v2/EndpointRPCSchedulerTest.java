@@ -0,0 +1,127 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.kylin.storage.hbase.cube.v2;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.google.common.collect.Lists;
+
+public class EndpointRPCSchedulerTest {
+
+    private EndpointRPCScheduler scheduler;
+    private CountDownLatch blocker;
+    private List<String> executed;
+
+    @Before
+    public void setup() throws InterruptedException {
+        scheduler = new EndpointRPCScheduler(1, 10);
+        executed = Collections.synchronizedList(Lists.<String> newArrayList());
+        blocker = new CountDownLatch(1);
+
+        // occupy the only thread so later calls queue up
+        final CountDownLatch started = new CountDownLatch(1);
+        scheduler.submit("admin", "blocker", new Runnable() {
+            @Override
+            public void run() {
+                started.countDown();
+                try {
+                    blocker.await();
+                } catch (InterruptedException e) {
+                    throw new RuntimeException(e);
+                }
+            }
+        });
+        started.await();
+    }
+
+    @After
+    public void after() {
+        blocker.countDown();
+        scheduler.shutdown();
+    }
+
+    private Runnable record(final String name, final CountDownLatch done) {
+        return new Runnable() {
+            @Override
+            public void run() {
+                executed.add(name);
+                done.countDown();
+            }
+        };
+    }
+
+    @Test
+    public void testFairAcrossQueries() throws InterruptedException {
+        CountDownLatch done = new CountDownLatch(6);
+        for (int i = 0; i < 4; i++) {
+            scheduler.submit("u1", "big", record("big", done));
+        }
+        scheduler.submit("u1", "small", record("small", done));
+        scheduler.submit("u1", "small", record("small", done));
+        Assert.assertEquals(6, scheduler.getQueueDepth());
+
+        blocker.countDown();
+        Assert.assertTrue(done.await(10, TimeUnit.SECONDS));
+        Assert.assertEquals(Lists.newArrayList("big", "small", "big", "small", "big", "big"), executed);
+        Assert.assertEquals(0, scheduler.getQueueDepth());
+    }
+
+    @Test
+    public void testFairAcrossUsers() throws InterruptedException {
+        CountDownLatch done = new CountDownLatch(5);
+        scheduler.submit("u1", "q1", record("u1", done));
+        scheduler.submit("u1", "q2", record("u1", done));
+        scheduler.submit("u1", "q3", record("u1", done));
+        scheduler.submit("u2", "q4", record("u2", done));
+        scheduler.submit(null, null, record("unknown", done));
+
+        blocker.countDown();
+        Assert.assertTrue(done.await(10, TimeUnit.SECONDS));
+        Assert.assertEquals(Lists.newArrayList("u1", "u2", "unknown", "u1", "u1"), executed);
+    }
+
+    @Test
+    public void testAdmissionControl() throws InterruptedException {
+        CountDownLatch done = new CountDownLatch(10);
+        for (int i = 0; i < 10; i++) {
+            scheduler.submit("u1", "q1", record("q1", done));
+        }
+        try {
+            scheduler.submit("u1", "q1", record("q1", done));
+            Assert.fail("expect RejectedExecutionException");
+        } catch (RejectedExecutionException ex) {
+            // expected
+        }
+        Assert.assertEquals(1, scheduler.getRejectedCount());
+
+        blocker.countDown();
+        Assert.assertTrue(done.await(10, TimeUnit.SECONDS));
+        Assert.assertEquals(10, executed.size());
+        Assert.assertTrue(scheduler.getMaxWaitMillis() >= scheduler.getAverageWaitMillis());
+    }
+}
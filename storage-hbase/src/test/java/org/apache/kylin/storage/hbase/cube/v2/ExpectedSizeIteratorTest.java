@@ -0,0 +1,52 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.kylin.storage.hbase.cube.v2;
+
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.google.common.collect.Lists;
+
+public class ExpectedSizeIteratorTest {
+
+    @Test
+    public void testChunkedResponses() {
+        ExpectedSizeIterator itr = new ExpectedSizeIterator(3, 1000);
+        itr.append(new byte[] { 1 });
+        itr.append(Lists.newArrayList(new byte[] { 2 }, new byte[] { 3 }).iterator());
+        itr.append(Lists.<byte[]> newArrayList().iterator());
+
+        List<Byte> result = Lists.newArrayList();
+        while (itr.hasNext()) {
+            result.add(itr.next()[0]);
+        }
+        Assert.assertEquals(Lists.newArrayList((byte) 1, (byte) 2, (byte) 3), result);
+    }
+
+    @Test(expected = RuntimeException.class)
+    public void testCoprocException() {
+        ExpectedSizeIterator itr = new ExpectedSizeIterator(2, 1000);
+        itr.append(new byte[] { 1 });
+        itr.notifyCoprocException(new IllegalStateException("coprocessor failed"));
+        itr.next();
+        itr.next();
+    }
+}
@@ -0,0 +1,120 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.kylin.storage.hbase.cube.v2.coprocessor.endpoint;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.kylin.common.util.ImmutableBitSet;
+import org.apache.kylin.gridtable.GTInfo;
+import org.apache.kylin.gridtable.GTRecord;
+import org.apache.kylin.gridtable.GTSampleCodeSystem;
+import org.apache.kylin.gridtable.benchmark.SortedGTRecordGenerator;
+import org.apache.kylin.metadata.datatype.DataType;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Compares the codecs on a block of GTRecords exported the same way CubeVisitService does,
+ * 5 int4 dimensions and 2 long8 measures per record.
+ *
+ * Run the main method, or "java -cp ... org.openjdk.jmh.Main EndpointResultCodecBenchmark" from the test classpath.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class EndpointResultCodecBenchmark {
+
+    @Param({ "NONE", "DEFLATE", "LZ4", "SNAPPY" })
+    public String codecName;
+
+    @Param({ "1048576" })
+    public int blockSize;
+
+    private EndpointResultCodec codec;
+    private byte[] rows;
+    private byte[] block;
+
+    @Setup
+    public void setup() throws IOException {
+        GTInfo.Builder builder = GTInfo.builder();
+        builder.setCodeSystem(new GTSampleCodeSystem());
+        DataType tint = DataType.getType("int4");
+        DataType tlong = DataType.getType("long8");
+        builder.setColumns(tint, tint, tint, tint, tint, tlong, tlong);
+        builder.setPrimaryKey(ImmutableBitSet.valueOf(0, 1, 2, 3, 4));
+        GTInfo info = builder.build();
+
+        SortedGTRecordGenerator gen = new SortedGTRecordGenerator(info);
+        gen.addDimension(10, 4, null);
+        gen.addDimension(10, 4, null);
+        gen.addDimension(100, 4, null);
+        gen.addDimension(1000, 4, null);
+        gen.addDimension(10000, 4, null);
+        gen.addMeasure(8);
+        gen.addMeasure(8);
+
+        ImmutableBitSet columns = info.getAllColumns();
+        ByteBuffer buffer = ByteBuffer.allocate(1024);
+        ByteArrayOutputStream out = new ByteArrayOutputStream(blockSize);
+        for (GTRecord rec : gen.generate(Long.MAX_VALUE)) {
+            buffer.clear();
+            rec.exportColumns(columns, buffer);
+            out.write(buffer.array(), 0, buffer.position());
+            if (out.size() >= blockSize) {
+                break;
+            }
+        }
+        rows = out.toByteArray();
+
+        codec = EndpointResultCodec.valueOf(codecName);
+        block = codec.encodeBlock(rows, 0, rows.length, 0, 1.0);
+    }
+
+    @Benchmark
+    public byte[] encode() throws IOException {
+        return codec.encodeBlock(rows, 0, rows.length, 0, 1.0);
+    }
+
+    @Benchmark
+    public byte[] decode() throws IOException {
+        return EndpointResultCodec.decodeBlock(block, 0, block.length);
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(EndpointResultCodecBenchmark.class.getSimpleName()).build()).run();
+    }
+}
@@ -0,0 +1,64 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.kylin.storage.hbase.cube.v2.coprocessor.endpoint;
+
+import java.io.IOException;
+import java.util.Random;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class EndpointResultCodecTest {
+
+    @Test
+    public void testRoundTrip() throws IOException {
+        byte[] data = compressible(100000);
+        for (EndpointResultCodec codec : EndpointResultCodec.values()) {
+            byte[] block = codec.encodeBlock(data, 0, data.length, 0, 1.0);
+            Assert.assertEquals(codec, EndpointResultCodec.valueOf(block[0]));
+            Assert.assertArrayEquals(data, EndpointResultCodec.decodeBlock(block, 0, block.length));
+            if (codec != EndpointResultCodec.NONE) {
+                Assert.assertTrue(block.length < data.length);
+            }
+        }
+    }
+
+    @Test
+    public void testSkipSmallOrIncompressible() throws IOException {
+        byte[] small = compressible(100);
+        byte[] block = EndpointResultCodec.LZ4.encodeBlock(small, 0, small.length, 1024, 0.9);
+        Assert.assertEquals(EndpointResultCodec.NONE, EndpointResultCodec.valueOf(block[0]));
+        Assert.assertArrayEquals(small, EndpointResultCodec.decodeBlock(block, 0, block.length));
+
+        byte[] random = new byte[100000];
+        new Random(0).nextBytes(random);
+        block = EndpointResultCodec.SNAPPY.encodeBlock(random, 0, random.length, 1024, 0.9);
+        Assert.assertEquals(EndpointResultCodec.NONE, EndpointResultCodec.valueOf(block[0]));
+        Assert.assertArrayEquals(random, EndpointResultCodec.decodeBlock(block, 0, block.length));
+    }
+
+    private byte[] compressible(int size) {
+        byte[] data = new byte[size];
+        Random rand = new Random(0);
+        for (int i = 0; i < size; i++) {
+            data[i] = (byte) rand.nextInt(8);
+        }
+        return data;
+    }
+}
@@ -19,6 +19,7 @@
 package org.apache.kylin.tool;
 
 import java.io.File;
+import java.io.IOException;
 import java.util.List;
 import java.util.Set;
 
@@ -35,6 +36,7 @@ import org.apache.kylin.cube.CubeInstance;
 import org.apache.kylin.cube.CubeManager;
 import org.apache.kylin.cube.CubeSegment;
 import org.apache.kylin.cube.model.CubeDesc;
+import org.apache.kylin.dict.lookup.SnapshotManager;
 import org.apache.kylin.metadata.streaming.StreamingConfig;
 import org.apache.kylin.metadata.streaming.StreamingManager;
 import org.apache.kylin.job.dao.ExecutableDao;
@@ -270,8 +272,13 @@ public class CubeMetaExtractor extends AbstractInfoExtractor {
                         for (String dictPat : segment.getDictionaryPaths()) {
                             addRequired(dictPat);
                         }
-                        for (String snapshotPath : segment.getSnapshotPaths()) {
-                            addRequired(snapshotPath);
+                        try {
+                            // a snapshot stored as a delta needs its base snapshots too
+                            for (String snapshotPath : SnapshotManager.getInstance(kylinConfig).getSnapshotPathsWithBases(segment.getSnapshotPaths())) {
+                                addRequired(snapshotPath);
+                            }
+                        } catch (IOException e) {
+                            throw new RuntimeException("Failed to list the snapshots of " + segment, e);
                         }
                     }
 
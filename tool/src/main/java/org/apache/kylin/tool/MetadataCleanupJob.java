@@ -30,6 +30,7 @@ import org.apache.hadoop.util.ToolRunner;
 import org.apache.kylin.common.KylinConfig;
 import org.apache.kylin.common.persistence.ResourceStore;
 import org.apache.kylin.cube.CubeManager;
+import org.apache.kylin.dict.lookup.SnapshotManager;
 import org.apache.kylin.engine.mr.common.AbstractHadoopJob;
 import org.apache.kylin.job.dao.ExecutableDao;
 import org.apache.kylin.job.dao.ExecutableOutputPO;
@@ -134,7 +135,8 @@ public class MetadataCleanupJob extends AbstractHadoopJob {
         Set<String> activeResourceList = Sets.newHashSet();
         for (org.apache.kylin.cube.CubeInstance cube : cubeManager.listAllCubes()) {
             for (org.apache.kylin.cube.CubeSegment segment : cube.getSegments()) {
-                activeResourceList.addAll(segment.getSnapshotPaths());
+                // a snapshot stored as a delta needs its base snapshots too
+                activeResourceList.addAll(SnapshotManager.getInstance(config).getSnapshotPathsWithBases(segment.getSnapshotPaths()));
                 activeResourceList.addAll(segment.getDictionaryPaths());
                 activeResourceList.add(segment.getStatisticsResourcePath());
             }